@@ -69,7 +69,11 @@ public interface AndroidSenseService {
     @Scope(key = "device:android-sense:enroll", name = "", description = "")
     @Produces("application/json")
     Response getAndroidSenseDeviceStats(@PathParam("deviceId") String deviceId, @PathParam("sensorName") String sensor,
-                                        @QueryParam("from") long from, @QueryParam("to") long to);
+                                        @QueryParam("from") long from, @QueryParam("to") long to,
+                                        @QueryParam("cursor") long cursor, @QueryParam("offset") int offset,
+                                        @QueryParam("limit") int limit,
+                                        @QueryParam("interval") long interval,
+                                        @QueryParam("aggregate") String aggregate);
 
     /**
      * Enroll devices.
@@ -20,8 +20,6 @@ package org.wso2.carbon.device.mgt.iot.androidsense.service.impl;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.wso2.carbon.analytics.dataservice.commons.SortByField;
-import org.wso2.carbon.analytics.dataservice.commons.SortType;
 import org.wso2.carbon.analytics.datasource.commons.exception.AnalyticsException;
 import org.wso2.carbon.device.mgt.common.*;
 import org.wso2.carbon.device.mgt.common.authorization.DeviceAccessAuthorizationException;
@@ -34,7 +32,7 @@ import org.wso2.carbon.device.mgt.iot.androidsense.plugin.constants.AndroidSense
 import org.wso2.carbon.device.mgt.iot.androidsense.service.impl.util.APIUtil;
 import org.wso2.carbon.device.mgt.iot.androidsense.service.impl.util.AndroidConfiguration;
 import org.wso2.carbon.device.mgt.iot.androidsense.service.impl.util.Constants;
-import org.wso2.carbon.device.mgt.iot.androidsense.service.impl.util.SensorRecord;
+import org.wso2.carbon.device.mgt.iot.stats.DeviceStatsQuery;
 import org.wso2.carbon.device.mgt.iot.util.Utils;
 
 import javax.ws.rs.*;
@@ -43,6 +41,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The api for
@@ -176,11 +175,12 @@ public class AndroidSenseServiceImpl implements AndroidSenseService {
     @Consumes("application/json")
     @Produces("application/json")
     public Response getAndroidSenseDeviceStats(@PathParam("deviceId") String deviceId, @PathParam("sensorName") String sensor,
-                                        @QueryParam("from") long from, @QueryParam("to") long to) {
-        String fromDate = String.valueOf(from);
-        String toDate = String.valueOf(to);
-        String query = "deviceId:" + deviceId + " AND deviceType:" +
-                AndroidSenseConstants.DEVICE_TYPE + " AND time : [" + fromDate + " TO " + toDate + "]";
+                                        @QueryParam("from") long from, @QueryParam("to") long to,
+                                        @QueryParam("cursor") long cursor, @QueryParam("offset") int offset,
+                                        @QueryParam("limit") int limit,
+                                        @QueryParam("interval") long interval,
+                                        @QueryParam("aggregate") String aggregate) {
+        String query = "deviceId:" + deviceId + " AND deviceType:" + AndroidSenseConstants.DEVICE_TYPE;
         if (sensor.equals(AndroidSenseConstants.SENSOR_WORDCOUNT)) {
             query = "deviceId:" + deviceId;
         }
@@ -191,16 +191,20 @@ public class AndroidSenseServiceImpl implements AndroidSenseService {
                     AndroidSenseConstants.DEVICE_TYPE), DeviceGroupConstants.Permissions.DEFAULT_STATS_MONITOR_PERMISSIONS)) {
                 return Response.status(Response.Status.UNAUTHORIZED.getStatusCode()).build();
             }
-            List<SensorRecord> sensorDatas;
+            DeviceStatsQuery statsQuery;
             if (!sensor.equals(AndroidSenseConstants.SENSOR_WORDCOUNT)) {
-                List<SortByField> sortByFields = new ArrayList<>();
-                SortByField sortByField = new SortByField("time", SortType.ASC);
-                sortByFields.add(sortByField);
-                sensorDatas = APIUtil.getAllEventsForDevice(sensorTableName, query, sortByFields);
+                statsQuery = new DeviceStatsQuery(sensorTableName, query, "time", TimeUnit.SECONDS);
+                statsQuery.setTimeWindow(from, to);
+                statsQuery.setCursor(cursor);
             } else {
-                sensorDatas = APIUtil.getAllEventsForDevice(sensorTableName, query, null);
+                statsQuery = new DeviceStatsQuery(sensorTableName, query);
             }
-            return Response.ok().entity(sensorDatas).build();
+            statsQuery.setAggregation(interval, aggregate);
+            statsQuery.setOffset(offset);
+            statsQuery.setLimit(limit);
+            return Response.ok().entity(APIUtil.getDeviceStats(statsQuery)).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST.getStatusCode()).entity(e.getMessage()).build();
         } catch (AnalyticsException e) {
             String errorMsg = "Error on retrieving stats on table " + sensorTableName + " with query " + query;
             log.error(errorMsg);
@@ -36,10 +36,15 @@ public interface ArduinoService {
     @Scope(key = "device:arduino:enroll", name = "", description = "")
     Response switchBulb(@PathParam("deviceId") String deviceId, @QueryParam("state") String state);
 
+    /**
+     * Returns up to count pending controls, one per line. Given a timeout in seconds, waits that long for a control
+     * to be queued if there is none pending.
+     */
     @Path("device/{deviceId}/controls")
     @GET
     @Scope(key = "device:arduino:enroll", name = "", description = "")
-    Response readControls(@PathParam("deviceId") String deviceId);
+    Response readControls(@PathParam("deviceId") String deviceId, @QueryParam("timeout") int timeout,
+                          @QueryParam("count") int count);
 
     /**
      * Retreive Sensor data for the device type
@@ -50,7 +55,10 @@ public interface ArduinoService {
     @Produces("application/json")
     @Scope(key = "device:arduino:enroll", name = "", description = "")
     Response getArduinoTemperatureStats(@PathParam("deviceId") String deviceId, @QueryParam("from") long from,
-                                               @QueryParam("to") long to);
+                                        @QueryParam("to") long to, @QueryParam("cursor") long cursor,
+                                        @QueryParam("offset") int offset, @QueryParam("limit") int limit,
+                                        @QueryParam("interval") long interval,
+                                        @QueryParam("aggregate") String aggregate);
 
     /**
      * download device agent
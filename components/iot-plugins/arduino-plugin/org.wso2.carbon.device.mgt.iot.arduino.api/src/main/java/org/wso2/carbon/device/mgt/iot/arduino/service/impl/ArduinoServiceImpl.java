@@ -18,13 +18,12 @@
 
 package org.wso2.carbon.device.mgt.iot.arduino.service.impl;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.wso2.carbon.analytics.dataservice.commons.SortByField;
-import org.wso2.carbon.analytics.dataservice.commons.SortType;
+import org.apache.cxf.continuations.Continuation;
+import org.apache.cxf.continuations.ContinuationProvider;
+import org.apache.cxf.jaxrs.ext.MessageContext;
 import org.wso2.carbon.analytics.datasource.commons.exception.AnalyticsException;
-import org.wso2.carbon.apimgt.application.extension.APIManagementProviderService;
 import org.wso2.carbon.apimgt.application.extension.dto.ApiApplicationKey;
 import org.wso2.carbon.apimgt.application.extension.exception.APIManagerException;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
@@ -35,9 +34,11 @@ import org.wso2.carbon.device.mgt.common.operation.mgt.Operation;
 import org.wso2.carbon.device.mgt.common.operation.mgt.OperationManagementException;
 import org.wso2.carbon.device.mgt.core.operation.mgt.CommandOperation;
 import org.wso2.carbon.device.mgt.iot.arduino.plugin.constants.ArduinoConstants;
-import org.wso2.carbon.device.mgt.iot.arduino.service.impl.dto.SensorRecord;
 import org.wso2.carbon.device.mgt.iot.arduino.service.impl.util.APIUtil;
+import org.wso2.carbon.device.mgt.iot.arduino.service.impl.util.OperationNotificationRegistry;
 import org.wso2.carbon.device.mgt.iot.arduino.service.impl.util.ZipUtil;
+import org.wso2.carbon.device.mgt.iot.stats.DeviceStatsQuery;
+import org.wso2.carbon.device.mgt.iot.util.ApiApplicationKeyCache;
 import org.wso2.carbon.device.mgt.iot.util.ZipArchive;
 import org.wso2.carbon.identity.jwt.client.extension.JWTClient;
 import org.wso2.carbon.identity.jwt.client.extension.dto.AccessTokenInfo;
@@ -45,18 +46,24 @@ import org.wso2.carbon.identity.jwt.client.extension.exception.JWTClientExceptio
 import org.wso2.carbon.user.api.UserStoreException;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 public class ArduinoServiceImpl implements ArduinoService {
 
     private static Log log = LogFactory.getLog(ArduinoServiceImpl.class);
     private static Map<String, LinkedList<String>> internalControlsQueue = new HashMap<>();
     private static final String KEY_TYPE = "PRODUCTION";
-    private static ApiApplicationKey apiApplicationKey;
+
+    @Context
+    private MessageContext messageContext;
 
     @Override
     @Path("device/{deviceId}/bulb")
@@ -78,6 +85,8 @@ public class ArduinoServiceImpl implements ArduinoService {
             deviceIdentifiers.add(new DeviceIdentifier(deviceId, ArduinoConstants.DEVICE_TYPE));
             APIUtil.getDeviceManagementService().addOperation(ArduinoConstants.DEVICE_TYPE, commandOp,
                     deviceIdentifiers);
+            OperationNotificationRegistry.getInstance().notifyOperationAdded(
+                    PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId(), deviceId);
             return Response.status(Response.Status.OK.getStatusCode()).build();
         } catch (InvalidDeviceException e) {
             String msg = "Invalid Device Identifiers found.";
@@ -96,40 +105,73 @@ public class ArduinoServiceImpl implements ArduinoService {
     @Override
     @Path("device/{deviceId}/controls")
     @GET
-    public Response readControls(@PathParam("deviceId") String deviceId) {
+    public Response readControls(@PathParam("deviceId") String deviceId, @QueryParam("timeout") int timeout,
+                                 @QueryParam("count") int count) {
         try {
             if (!APIUtil.getDeviceAccessAuthorizationService().isUserAuthorized(new DeviceIdentifier(deviceId,
                     ArduinoConstants.DEVICE_TYPE), DeviceGroupConstants.Permissions.DEFAULT_OPERATOR_PERMISSIONS)) {
                 return Response.status(Response.Status.UNAUTHORIZED.getStatusCode()).build();
             }
-            String result;
-            Operation operation = APIUtil.getDeviceManagementService()
-                    .getNextPendingOperation(new DeviceIdentifier(deviceId, ArduinoConstants.DEVICE_TYPE));
+            DeviceIdentifier deviceIdentifier = new DeviceIdentifier(deviceId, ArduinoConstants.DEVICE_TYPE);
+            int maxOperations = Math.min(Math.max(count, 1), ArduinoConstants.MAX_OPERATIONS_PER_POLL);
+            Continuation continuation = timeout > 0 ? getContinuation() : null;
+            List<Operation> operations;
+            if (continuation == null) {
+                operations = getPendingOperations(deviceIdentifier, maxOperations);
+            } else {
+                int tenantId = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId();
+                OperationNotificationRegistry registry = OperationNotificationRegistry.getInstance();
+                boolean suspended = false;
+                try {
+                    synchronized (continuation) {
+                        if (continuation.isNew()) {
+                            // registered before reading, so that an operation queued in between resumes the poll
+                            registry.register(tenantId, deviceId, continuation);
+                            operations = getPendingOperations(deviceIdentifier, maxOperations);
+                            if (operations.isEmpty()) {
+                                int timeoutInSeconds = Math.min(timeout,
+                                                                ArduinoConstants.MAX_POLL_TIMEOUT_IN_SECONDS);
+                                continuation.suspend(TimeUnit.SECONDS.toMillis(timeoutInSeconds));
+                                suspended = true;
+                                return null;
+                            }
+                        } else {
+                            // resumed, either by a queued operation or by the timeout
+                            operations = getPendingOperations(deviceIdentifier, maxOperations);
+                        }
+                    }
+                } finally {
+                    // only a suspended poll stays registered, even a failed read unregisters it
+                    if (!suspended) {
+                        registry.unregister(tenantId, deviceId, continuation);
+                    }
+                }
+            }
 
-            String owner = PrivilegedCarbonContext.getThreadLocalCarbonContext().getUsername();
-            if (operation == null) {
+            String result;
+            if (operations.isEmpty()) {
+                String owner = PrivilegedCarbonContext.getThreadLocalCarbonContext().getUsername();
                 result = "No controls have been set for device " + deviceId + " of owner " + owner;
                 if (log.isDebugEnabled()) {
                     log.debug(result);
                 }
                 return Response.status(Response.Status.CONFLICT.getStatusCode()).entity(result).build();
-            } else {
-                try {
-                    if (operation.getType() == Operation.Type.COMMAND) {
-                        result = (String) operation.getPayLoad();
-                        if (log.isDebugEnabled()) {
-                            log.debug(result);
-                        }
-                    } else {
-                        result = "No controls have been found";
+            }
+            // one command per line, so that the device can read them without a parser
+            StringBuilder commands = new StringBuilder();
+            for (Operation operation : operations) {
+                if (operation.getType() == Operation.Type.COMMAND) {
+                    if (commands.length() > 0) {
+                        commands.append('\n');
                     }
-                    return Response.status(Response.Status.ACCEPTED.getStatusCode()).entity(result).build();
-                } catch (NoSuchElementException ex) {
-                    result = "There are no more controls for device " + deviceId + " of owner " + owner;
-                    log.error(result, ex);
-                    return Response.status(Response.Status.NO_CONTENT.getStatusCode()).entity(result).build();
+                    commands.append(operation.getPayLoad());
                 }
             }
+            result = commands.length() > 0 ? commands.toString() : "No controls have been found";
+            if (log.isDebugEnabled()) {
+                log.debug(result);
+            }
+            return Response.status(Response.Status.ACCEPTED.getStatusCode()).entity(result).build();
         } catch (DeviceAccessAuthorizationException e) {
             log.error(e.getErrorMessage(), e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
@@ -140,29 +182,64 @@ public class ArduinoServiceImpl implements ArduinoService {
         }
     }
 
+    /**
+     * Reads the pending operations of the device in a single call and takes up to the given number of them, in the
+     * order they were queued. The taken operations are marked as in progress, so that they are not delivered again by
+     * the next poll.
+     */
+    private List<Operation> getPendingOperations(DeviceIdentifier deviceIdentifier, int maxOperations)
+            throws OperationManagementException {
+        List<? extends Operation> pendingOperations =
+                APIUtil.getDeviceManagementService().getPendingOperations(deviceIdentifier);
+        if (pendingOperations == null || pendingOperations.isEmpty()) {
+            return new ArrayList<>();
+        }
+        int operationCount = Math.min(maxOperations, pendingOperations.size());
+        List<Operation> operations = new ArrayList<Operation>(pendingOperations.subList(0, operationCount));
+        for (Operation operation : operations) {
+            operation.setStatus(Operation.Status.IN_PROGRESS);
+            APIUtil.getDeviceManagementService().updateOperation(deviceIdentifier, operation);
+        }
+        return operations;
+    }
+
+    /**
+     * @return the continuation of the current request, or null if the transport cannot suspend requests.
+     */
+    private Continuation getContinuation() {
+        ContinuationProvider continuationProvider =
+                (ContinuationProvider) messageContext.get(ContinuationProvider.class.getName());
+        return continuationProvider != null ? continuationProvider.getContinuation() : null;
+    }
+
     @Override
     @Path("device/stats/{deviceId}")
     @GET
     @Consumes("application/json")
     @Produces("application/json")
     public Response getArduinoTemperatureStats(@PathParam("deviceId") String deviceId, @QueryParam("from") long from,
-                                               @QueryParam("to") long to) {
+                                               @QueryParam("to") long to, @QueryParam("cursor") long cursor,
+                                               @QueryParam("offset") int offset, @QueryParam("limit") int limit,
+                                               @QueryParam("interval") long interval,
+                                               @QueryParam("aggregate") String aggregate) {
         try {
             if (!APIUtil.getDeviceAccessAuthorizationService().isUserAuthorized(new DeviceIdentifier(deviceId,
                    ArduinoConstants.DEVICE_TYPE), DeviceGroupConstants.Permissions.DEFAULT_STATS_MONITOR_PERMISSIONS)) {
                 return Response.status(Response.Status.UNAUTHORIZED.getStatusCode()).build();
             }
-            String fromDate = String.valueOf(from);
-            String toDate = String.valueOf(to);
-            String query = "deviceId:" + deviceId + " AND deviceType:" +
-                    ArduinoConstants.DEVICE_TYPE + " AND time : [" + fromDate + " TO " + toDate + "]";
+            String query = "deviceId:" + deviceId + " AND deviceType:" + ArduinoConstants.DEVICE_TYPE;
             String sensorTableName = ArduinoConstants.TEMPERATURE_EVENT_TABLE;
             try {
-                List<SortByField> sortByFields = new ArrayList<>();
-                SortByField sortByField = new SortByField("time", SortType.ASC);
-                sortByFields.add(sortByField);
-                List<SensorRecord> sensorRecords = APIUtil.getAllEventsForDevice(sensorTableName, query, sortByFields);
-                return Response.status(Response.Status.OK.getStatusCode()).entity(sensorRecords).build();
+                DeviceStatsQuery statsQuery = new DeviceStatsQuery(sensorTableName, query, "time", TimeUnit.SECONDS);
+                statsQuery.setTimeWindow(from, to);
+                statsQuery.setCursor(cursor);
+                statsQuery.setAggregation(interval, aggregate);
+                statsQuery.setOffset(offset);
+                statsQuery.setLimit(limit);
+                return Response.status(Response.Status.OK.getStatusCode()).entity(APIUtil.getDeviceStats(statsQuery))
+                        .build();
+            } catch (IllegalArgumentException e) {
+                return Response.status(Response.Status.BAD_REQUEST.getStatusCode()).entity(e.getMessage()).build();
             } catch (AnalyticsException e) {
                 String errorMsg = "Error on retrieving stats on table " + sensorTableName + " with query " + query;
                 log.error(errorMsg);
@@ -180,14 +257,18 @@ public class ArduinoServiceImpl implements ArduinoService {
     @Produces("application/zip")
     public Response downloadSketch(@QueryParam("deviceName") String deviceName) {
         try {
-            ZipArchive zipFile = createDownloadFile(APIUtil.getAuthenticatedUser(), deviceName);
-            Response.ResponseBuilder response = Response.ok(FileUtils.readFileToByteArray(zipFile.getZipFile()));
+            final ZipArchive zipFile = createDownloadFile(APIUtil.getAuthenticatedUser(), deviceName);
+            StreamingOutput zipOutput = new StreamingOutput() {
+                @Override
+                public void write(OutputStream outputStream) throws IOException {
+                    zipFile.write(outputStream);
+                }
+            };
+            Response.ResponseBuilder response = Response.ok(zipOutput);
             response.status(Response.Status.OK);
             response.type("application/zip");
             response.header("Content-Disposition", "attachment; filename=\"" + zipFile.getFileName() + "\"");
-            Response resp = response.build();
-            zipFile.getZipFile().delete();
-            return resp;
+            return response.build();
         } catch (IllegalArgumentException ex) {
             return Response.status(400).entity(ex.getMessage()).build();//bad request
         } catch (DeviceManagementException ex) {
@@ -199,9 +280,6 @@ public class ArduinoServiceImpl implements ArduinoService {
         } catch (APIManagerException ex) {
             log.error(ex.getMessage(), ex);
             return Response.status(500).entity(ex.getMessage()).build();
-        } catch (IOException ex) {
-            log.error(ex.getMessage(), ex);
-            return Response.status(500).entity(ex.getMessage()).build();
         } catch (UserStoreException ex) {
             log.error(ex.getMessage(), ex);
             return Response.status(500).entity(ex.getMessage()).build();
@@ -221,18 +299,20 @@ public class ArduinoServiceImpl implements ArduinoService {
             String msg = "Error occurred while registering the device with " + "id: " + deviceId + " owner:" + owner;
             throw new DeviceManagementException(msg);
         }
-        String applicationUsername = PrivilegedCarbonContext.getThreadLocalCarbonContext().getUserRealm()
-                .getRealmConfiguration().getAdminUserName();
-        if (apiApplicationKey == null) {
-            APIManagementProviderService apiManagementProviderService = APIUtil.getAPIManagementProviderService();
-            String[] tags = {ArduinoConstants.DEVICE_TYPE};
-            apiApplicationKey = apiManagementProviderService.generateAndRetrieveApplicationKeys(
-                    ArduinoConstants.DEVICE_TYPE, tags, KEY_TYPE, applicationUsername, true);
-        }
+        ApiApplicationKeyCache apiApplicationKeyCache = ApiApplicationKeyCache.getInstance();
+        ApiApplicationKey apiApplicationKey = apiApplicationKeyCache.getApiApplicationKey(ArduinoConstants.DEVICE_TYPE,
+                                                                                          KEY_TYPE);
         JWTClient jwtClient = APIUtil.getJWTClientManagerService().getJWTClient();
         String scopes = "arduino_device cdmf/" + ArduinoConstants.DEVICE_TYPE + "/" + deviceId;
-        AccessTokenInfo accessTokenInfo = jwtClient.getAccessToken(apiApplicationKey.getConsumerKey(),
-                                                                   apiApplicationKey.getConsumerSecret(), owner, scopes);
+        AccessTokenInfo accessTokenInfo;
+        try {
+            accessTokenInfo = jwtClient.getAccessToken(apiApplicationKey.getConsumerKey(),
+                                                       apiApplicationKey.getConsumerSecret(), owner, scopes);
+        } catch (JWTClientException e) {
+            // the cached key may belong to an application that no longer exists
+            apiApplicationKeyCache.invalidate(ArduinoConstants.DEVICE_TYPE, KEY_TYPE);
+            throw e;
+        }
         //create token
         String accessToken = accessTokenInfo.getAccessToken();
         String refreshToken = accessTokenInfo.getRefreshToken();
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.arduino.service.impl.util;
+
+import org.apache.cxf.continuations.Continuation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory registry of the suspended long-poll requests of devices waiting for operations. When an operation is
+ * queued for a device, the requests waiting on it are resumed so that they pick up the operation right away instead
+ * of at the end of their timeout.
+ * <p/>
+ * Only operations queued through this API are notified. An operation queued elsewhere is delivered when the poll
+ * times out, as the pending operations are read again at that point.
+ */
+public class OperationNotificationRegistry {
+
+    private static final OperationNotificationRegistry instance = new OperationNotificationRegistry();
+
+    private final Map<String, List<Continuation>> waitingPolls = new HashMap<>();
+
+    private OperationNotificationRegistry() {
+    }
+
+    public static OperationNotificationRegistry getInstance() {
+        return instance;
+    }
+
+    public synchronized void register(int tenantId, String deviceId, Continuation continuation) {
+        String key = getKey(tenantId, deviceId);
+        List<Continuation> continuations = waitingPolls.get(key);
+        if (continuations == null) {
+            continuations = new ArrayList<>(1);
+            waitingPolls.put(key, continuations);
+        }
+        continuations.add(continuation);
+    }
+
+    public synchronized void unregister(int tenantId, String deviceId, Continuation continuation) {
+        String key = getKey(tenantId, deviceId);
+        List<Continuation> continuations = waitingPolls.get(key);
+        if (continuations != null && continuations.remove(continuation) && continuations.isEmpty()) {
+            waitingPolls.remove(key);
+        }
+    }
+
+    /**
+     * Resumes the requests waiting for operations of the given device.
+     */
+    public void notifyOperationAdded(int tenantId, String deviceId) {
+        List<Continuation> continuations;
+        synchronized (this) {
+            continuations = waitingPolls.remove(getKey(tenantId, deviceId));
+        }
+        if (continuations == null) {
+            return;
+        }
+        for (Continuation continuation : continuations) {
+            // the lock is held by the request until it is suspended, so that it does not miss the resume
+            synchronized (continuation) {
+                if (continuation.isPending()) {
+                    continuation.resume();
+                }
+            }
+        }
+    }
+
+    private static String getKey(int tenantId, String deviceId) {
+        return tenantId + ":" + deviceId;
+    }
+}
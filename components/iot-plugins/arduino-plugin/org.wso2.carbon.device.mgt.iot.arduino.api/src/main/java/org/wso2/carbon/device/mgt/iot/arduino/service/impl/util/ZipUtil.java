@@ -25,7 +25,6 @@ import org.wso2.carbon.device.mgt.common.configuration.mgt.ConfigurationManageme
 import org.wso2.carbon.device.mgt.common.configuration.mgt.PlatformConfiguration;
 import org.wso2.carbon.device.mgt.iot.util.Utils;
 import org.wso2.carbon.device.mgt.iot.util.ZipArchive;
-import org.wso2.carbon.utils.CarbonUtils;
 
 import java.io.File;
 import java.io.IOException;
@@ -46,8 +45,6 @@ public class ZipUtil {
                                     String refreshToken) throws DeviceManagementException {
 
         String sketchFolder = "repository" + File.separator + "resources" + File.separator + "sketches";
-        String archivesPath = CarbonUtils.getCarbonHome() + File.separator + sketchFolder + File.separator + "archives" +
-                        File.separator + deviceId;
         String templateSketchPath = sketchFolder + File.separator + deviceType;
         String iotServerIP;
 
@@ -88,7 +85,7 @@ public class ZipUtil {
             contextParams.put("DEVICE_REFRESH_TOKEN", refreshToken);
 
             ZipArchive zipFile;
-            zipFile = Utils.getSketchArchive(archivesPath, templateSketchPath, contextParams, deviceName);
+            zipFile = Utils.getSketchArchive(templateSketchPath, contextParams, deviceName);
             return zipFile;
         } catch (IOException e) {
             throw new DeviceManagementException("Zip File Creation Failed", e);
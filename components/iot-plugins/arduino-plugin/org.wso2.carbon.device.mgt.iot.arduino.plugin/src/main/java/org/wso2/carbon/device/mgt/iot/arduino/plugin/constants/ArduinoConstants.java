@@ -28,4 +28,8 @@ public class ArduinoConstants {
     //sensor events summerized table name
     public static final String TEMPERATURE_EVENT_TABLE = "DEVICE_TEMPERATURE_SUMMARY";
 
+    //limits of a single poll for controls
+    public static final int MAX_POLL_TIMEOUT_IN_SECONDS = 60;
+    public static final int MAX_OPERATIONS_PER_POLL = 10;
+
 }
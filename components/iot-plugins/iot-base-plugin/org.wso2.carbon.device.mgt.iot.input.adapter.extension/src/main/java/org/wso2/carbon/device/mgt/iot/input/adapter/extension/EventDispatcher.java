@@ -0,0 +1,226 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.carbon.device.mgt.iot.input.adapter.extension;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decouples the thread receiving events of an input adapter from their processing. Received events are placed in
+ * bounded queues and a fixed set of workers drain them in micro-batches, so that a slow content transformer does not
+ * stall the connection the events are received on. Each worker has its own queue and the events of an ordering key,
+ * such as a topic or a sender, always go to the same worker so that they are processed in the order they arrived.
+ * <p/>
+ * With a worker pool size of 0 the events are instead processed on the receiving thread.
+ *
+ * @param <E> the type of the received events.
+ */
+public abstract class EventDispatcher<E> {
+
+    public static final String OVERFLOW_POLICY_BLOCK = "block";
+    public static final String OVERFLOW_POLICY_DROP_OLDEST = "drop-oldest";
+    public static final String OVERFLOW_POLICY_DROP_NEWEST = "drop-newest";
+    public static final List<String> OVERFLOW_POLICIES = Collections.unmodifiableList(Arrays.asList(
+            OVERFLOW_POLICY_BLOCK, OVERFLOW_POLICY_DROP_OLDEST, OVERFLOW_POLICY_DROP_NEWEST));
+    public static final long OVERFLOW_BLOCK_TIMEOUT_IN_MILLIS = 1000;
+    public static final long WORKER_POLL_TIMEOUT_IN_MILLIS = 500;
+    public static final long WORKER_SHUTDOWN_TIMEOUT_IN_MILLIS = 2000;
+
+    private static final Log log = LogFactory.getLog(EventDispatcher.class);
+
+    private final List<BlockingQueue<E>> eventQueues;
+    private final int workerPoolSize;
+    private final int batchSize;
+    private final String overflowPolicy;
+    private final AtomicLong droppedEventCount = new AtomicLong();
+    private ExecutorService workerPool;
+    private volatile boolean running;
+
+    /**
+     * @param workerPoolSize number of workers, 0 to process the events on the receiving thread.
+     * @param eventQueueSize number of events waiting to be processed, shared among the workers.
+     * @param batchSize      maximum number of events processed in one batch.
+     * @param overflowPolicy one of {@link #OVERFLOW_POLICIES}, what to do with an event when its queue is full.
+     */
+    protected EventDispatcher(int workerPoolSize, int eventQueueSize, int batchSize, String overflowPolicy) {
+        this.workerPoolSize = workerPoolSize;
+        this.eventQueues = new ArrayList<>(workerPoolSize);
+        int queueSize = Math.max(1, (eventQueueSize + workerPoolSize - 1) / Math.max(1, workerPoolSize));
+        for (int i = 0; i < workerPoolSize; i++) {
+            eventQueues.add(new ArrayBlockingQueue<E>(queueSize));
+        }
+        this.batchSize = Math.max(1, batchSize);
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        if (workerPoolSize == 0) {
+            return;
+        }
+        workerPool = Executors.newFixedThreadPool(workerPoolSize);
+        for (BlockingQueue<E> eventQueue : eventQueues) {
+            workerPool.execute(new EventWorker(eventQueue));
+        }
+    }
+
+    /**
+     * Stops the workers, waiting for a bounded time for the queued events to be processed.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        if (workerPool == null) {
+            return;
+        }
+        workerPool.shutdown();
+        try {
+            if (!workerPool.awaitTermination(WORKER_SHUTDOWN_TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS)) {
+                workerPool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workerPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            workerPool = null;
+        }
+    }
+
+    /**
+     * Hands over a received event to the worker of its ordering key, applying the configured overflow policy when
+     * the worker's queue is full. The blocking policy waits for queue space only for a bounded time and then drops
+     * the event, since the receiving thread may be serving other adapters as well. Without workers the event is
+     * processed right away.
+     */
+    public void dispatch(E event) {
+        if (workerPoolSize == 0) {
+            processBatch(Collections.singletonList(event), new HashMap<String, Object>());
+            return;
+        }
+        String orderingKey = getOrderingKey(event);
+        int worker = orderingKey == null ? 0 : (orderingKey.hashCode() & Integer.MAX_VALUE) % workerPoolSize;
+        BlockingQueue<E> eventQueue = eventQueues.get(worker);
+        if (OVERFLOW_POLICY_DROP_NEWEST.equals(overflowPolicy)) {
+            if (!eventQueue.offer(event)) {
+                onEventDropped(event);
+            }
+        } else if (OVERFLOW_POLICY_BLOCK.equals(overflowPolicy)) {
+            try {
+                if (!eventQueue.offer(event, OVERFLOW_BLOCK_TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS)) {
+                    onEventDropped(event);
+                }
+            } catch (InterruptedException e) {
+                onEventDropped(event);
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            while (!eventQueue.offer(event)) {
+                E evictedEvent = eventQueue.poll();
+                if (evictedEvent != null) {
+                    onEventDropped(evictedEvent);
+                }
+            }
+        }
+    }
+
+    public long getDroppedEventCount() {
+        return droppedEventCount.get();
+    }
+
+    public int getQueueDepth() {
+        int queueDepth = 0;
+        for (BlockingQueue<E> eventQueue : eventQueues) {
+            queueDepth += eventQueue.size();
+        }
+        return queueDepth;
+    }
+
+    /**
+     * @return the key whose events have to be processed in order, or null if the event has none.
+     */
+    protected abstract String getOrderingKey(E event);
+
+    /**
+     * Processes a batch of events on a worker thread, or a single event on the receiving thread when there are no
+     * workers. An exception thrown by the batch is logged and the worker carries on with the next one.
+     *
+     * @param batch             the events in the order they arrived.
+     * @param dynamicProperties a map owned by the calling thread, which can be reused for each event.
+     */
+    protected abstract void processBatch(List<E> batch, Map<String, Object> dynamicProperties);
+
+    private void onEventDropped(E event) {
+        long dropped = droppedEventCount.incrementAndGet();
+        if (log.isDebugEnabled()) {
+            log.debug("Event queue is full, dropped event of " + getOrderingKey(event) + ", total dropped : "
+                              + dropped);
+        }
+    }
+
+    private class EventWorker implements Runnable {
+
+        private final BlockingQueue<E> eventQueue;
+
+        private EventWorker(BlockingQueue<E> eventQueue) {
+            this.eventQueue = eventQueue;
+        }
+
+        @Override
+        public void run() {
+            List<E> batch = new ArrayList<>(batchSize);
+            Map<String, Object> dynamicProperties = new HashMap<>();
+            while (running || !eventQueue.isEmpty()) {
+                try {
+                    E event = eventQueue.poll(WORKER_POLL_TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS);
+                    if (event == null) {
+                        continue;
+                    }
+                    batch.add(event);
+                    eventQueue.drainTo(batch, batchSize - 1);
+                    processBatch(batch, dynamicProperties);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (RuntimeException e) {
+                    log.error("Error occurred while processing a batch of " + batch.size() + " events", e);
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.carbon.device.mgt.iot.input.adapter.extension.mqtt;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.mqtt.exception.MQTTCredentialException;
+
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the OAuth application registered for an MQTT adapter and the access token issued to it, per tenant,
+ * username and scopes, so that connecting or reconnecting to the broker does not hit the key manager every time.
+ * Concurrent requests for the same credentials share a single in-flight request. A single instance is shared by
+ * the MQTT input and output adapters, so that adapters connecting with the same credentials share a token too. The
+ * credentials are obtained through the issuer of the adapter that requests them first.
+ * <p/>
+ * Once the configured fraction of a token's lifetime has elapsed the token is refreshed in the background, as long
+ * as it has been used since it was issued, so that a reconnecting client finds a valid token without waiting for
+ * the key manager. Tokens that are not refreshed in time are refreshed on the next request.
+ */
+public class MQTTCredentialCache {
+
+    public static final double DEFAULT_REFRESH_FRACTION = 0.8;
+
+    private static final Log log = LogFactory.getLog(MQTTCredentialCache.class);
+    private static final ScheduledExecutorService refreshScheduler =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "MQTTCredentialRefresher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private static final MQTTCredentialCache instance = new MQTTCredentialCache();
+
+    private final ConcurrentMap<CredentialKey, CachedCredential> credentials = new ConcurrentHashMap<>();
+    private final ConcurrentMap<CredentialKey, FutureTask<CachedCredential>> inFlightRequests =
+            new ConcurrentHashMap<>();
+    private volatile double refreshFraction = DEFAULT_REFRESH_FRACTION;
+
+    MQTTCredentialCache() {
+    }
+
+    public static MQTTCredentialCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Sets the fraction of a token's lifetime after which it is refreshed. A value that is not a number within
+     * (0, 1] is logged and ignored, keeping the current fraction.
+     */
+    public void setRefreshFraction(String refreshFraction) {
+        if (refreshFraction == null) {
+            return;
+        }
+        try {
+            double fraction = Double.parseDouble(refreshFraction.trim());
+            if (fraction > 0 && fraction <= 1) {
+                this.refreshFraction = fraction;
+                return;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below along with the out of range values
+        }
+        log.error("Token refresh fraction should be a number within (0, 1], hence ignoring '" + refreshFraction
+                          + "' and using " + this.refreshFraction);
+    }
+
+    public String getAccessToken(int tenantId, String username, String scopes, String dcrUrl,
+                                 CredentialIssuer credentialIssuer) throws MQTTCredentialException {
+        CredentialKey key = new CredentialKey(tenantId, username, scopes, dcrUrl);
+        CachedCredential credential = credentials.get(key);
+        long currentTime = System.currentTimeMillis();
+        if (credential != null && !credential.isRefreshRequired(currentTime)) {
+            credential.used = true;
+            return credential.accessToken;
+        }
+        CachedCredential refreshedCredential = refresh(key, credential, credentialIssuer, credential != null
+                && credential.isValid(currentTime));
+        refreshedCredential.used = true;
+        return refreshedCredential.accessToken;
+    }
+
+    /**
+     * Discards the cached access token, e.g. when the broker rejects it, while keeping the registered client so
+     * that the next request only fetches a new token.
+     */
+    public void invalidateAccessToken(int tenantId, String username, String scopes, String dcrUrl) {
+        CredentialKey key = new CredentialKey(tenantId, username, scopes, dcrUrl);
+        CachedCredential credential = credentials.get(key);
+        if (credential != null) {
+            credentials.replace(key, credential, new CachedCredential(credential.credentialIssuer,
+                                                                   credential.clientCredentials, null, 0, 0));
+        }
+    }
+
+    /**
+     * Issues a new token unless another thread is already doing so, in which case that request is awaited, or the
+     * given credential is returned if it is still usable meanwhile.
+     */
+    private CachedCredential refresh(final CredentialKey key, final CachedCredential credential,
+                                     final CredentialIssuer credentialIssuer, boolean useCurrentWhileRefreshing)
+            throws MQTTCredentialException {
+        FutureTask<CachedCredential> request = new FutureTask<>(new Callable<CachedCredential>() {
+            @Override
+            public CachedCredential call() throws MQTTCredentialException {
+                return issueCredential(key, credential, credentialIssuer);
+            }
+        });
+        FutureTask<CachedCredential> inFlightRequest = inFlightRequests.putIfAbsent(key, request);
+        if (inFlightRequest == null) {
+            try {
+                request.run();
+            } finally {
+                inFlightRequests.remove(key, request);
+            }
+            inFlightRequest = request;
+        } else if (useCurrentWhileRefreshing) {
+            return credential;
+        }
+        try {
+            return inFlightRequest.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MQTTCredentialException("Interrupted while waiting for the access token of " + key.username, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof MQTTCredentialException) {
+                throw (MQTTCredentialException) e.getCause();
+            }
+            throw new MQTTCredentialException("Failed to obtain the access token of " + key.username, e.getCause());
+        }
+    }
+
+    private CachedCredential issueCredential(CredentialKey key, CachedCredential previousCredential,
+                                             CredentialIssuer credentialIssuer) throws MQTTCredentialException {
+        ClientCredentials clientCredentials = previousCredential != null ? previousCredential.clientCredentials : null;
+        AccessToken accessToken;
+        if (clientCredentials == null) {
+            clientCredentials = credentialIssuer.registerClient(key.tenantId, key.username, key.dcrUrl);
+            accessToken = credentialIssuer.getAccessToken(key.tenantId, clientCredentials, key.username, key.scopes);
+        } else {
+            try {
+                accessToken = credentialIssuer.getAccessToken(key.tenantId, clientCredentials, key.username,
+                                                              key.scopes);
+            } catch (MQTTCredentialException e) {
+                // The cached client may have been removed from the key manager, hence register it again
+                log.warn("Failed to obtain an access token with the cached client of " + key.username
+                                 + ", registering the client again", e);
+                credentials.remove(key, previousCredential);
+                clientCredentials = credentialIssuer.registerClient(key.tenantId, key.username, key.dcrUrl);
+                accessToken = credentialIssuer.getAccessToken(key.tenantId, clientCredentials, key.username,
+                                                              key.scopes);
+            }
+        }
+        long issuedTime = System.currentTimeMillis();
+        long lifetime = accessToken.getExpiresIn() * 1000;
+        CachedCredential credential = new CachedCredential(credentialIssuer, clientCredentials, accessToken.getToken(),
+                                                           issuedTime + (long) (lifetime * refreshFraction),
+                                                           issuedTime + lifetime);
+        credentials.put(key, credential);
+        if (lifetime > 0) {
+            scheduleRefresh(key, credential);
+        }
+        return credential;
+    }
+
+    private void scheduleRefresh(final CredentialKey key, final CachedCredential credential) {
+        refreshScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                // Skip tokens that were replaced or invalidated meanwhile, or that nobody used since issued
+                if (credentials.get(key) != credential || !credential.used) {
+                    return;
+                }
+                try {
+                    refresh(key, credential, credential.credentialIssuer, true);
+                } catch (MQTTCredentialException e) {
+                    log.warn("Failed to refresh the access token of " + key.username
+                                     + ", it will be refreshed on the next request", e);
+                }
+            }
+        }, Math.max(0, credential.refreshTime - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Obtains client credentials and access tokens from the key manager.
+     */
+    public interface CredentialIssuer {
+
+        ClientCredentials registerClient(int tenantId, String username, String dcrUrl)
+                throws MQTTCredentialException;
+
+        AccessToken getAccessToken(int tenantId, ClientCredentials clientCredentials, String username,
+                                   String scopes) throws MQTTCredentialException;
+    }
+
+    public static class ClientCredentials {
+        private final String clientId;
+        private final String clientSecret;
+
+        public ClientCredentials(String clientId, String clientSecret) {
+            this.clientId = clientId;
+            this.clientSecret = clientSecret;
+        }
+
+        public String getClientId() {
+            return clientId;
+        }
+
+        public String getClientSecret() {
+            return clientSecret;
+        }
+    }
+
+    public static class AccessToken {
+        private final String token;
+        private final long expiresIn;
+
+        /**
+         * @param token     the access token.
+         * @param expiresIn lifetime of the token in seconds.
+         */
+        public AccessToken(String token, long expiresIn) {
+            this.token = token;
+            this.expiresIn = expiresIn;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public long getExpiresIn() {
+            return expiresIn;
+        }
+    }
+
+    private static class CachedCredential {
+        private final CredentialIssuer credentialIssuer;
+        private final ClientCredentials clientCredentials;
+        private final String accessToken;
+        private final long refreshTime;
+        private final long expiryTime;
+        private volatile boolean used;
+
+        private CachedCredential(CredentialIssuer credentialIssuer, ClientCredentials clientCredentials,
+                                 String accessToken, long refreshTime, long expiryTime) {
+            this.credentialIssuer = credentialIssuer;
+            this.clientCredentials = clientCredentials;
+            this.accessToken = accessToken;
+            this.refreshTime = refreshTime;
+            this.expiryTime = expiryTime;
+        }
+
+        private boolean isRefreshRequired(long currentTime) {
+            return accessToken == null || currentTime >= refreshTime;
+        }
+
+        private boolean isValid(long currentTime) {
+            return accessToken != null && currentTime < expiryTime;
+        }
+    }
+
+    private static class CredentialKey {
+        private final int tenantId;
+        private final String username;
+        private final String scopes;
+        private final String dcrUrl;
+
+        private CredentialKey(int tenantId, String username, String scopes, String dcrUrl) {
+            this.tenantId = tenantId;
+            this.username = username;
+            this.scopes = scopes;
+            this.dcrUrl = dcrUrl;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CredentialKey)) {
+                return false;
+            }
+            CredentialKey that = (CredentialKey) o;
+            return tenantId == that.tenantId && Objects.equals(username, that.username)
+                    && Objects.equals(scopes, that.scopes) && Objects.equals(dcrUrl, that.dcrUrl);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(tenantId, username, scopes, dcrUrl);
+        }
+    }
+}
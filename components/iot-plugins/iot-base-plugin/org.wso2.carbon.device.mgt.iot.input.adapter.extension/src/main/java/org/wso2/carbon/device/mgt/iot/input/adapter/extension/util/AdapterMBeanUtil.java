@@ -0,0 +1,76 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.carbon.device.mgt.iot.input.adapter.extension.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers the statistics MBeans of the IoT event adapters on the platform MBean server, under a common domain and
+ * keyed by adapter type, tenant and adapter name.
+ */
+public class AdapterMBeanUtil {
+
+    public static final String MBEAN_DOMAIN = "org.wso2.carbon.device.mgt.iot";
+
+    private static final Log log = LogFactory.getLog(AdapterMBeanUtil.class);
+
+    private AdapterMBeanUtil() {
+    }
+
+    /**
+     * Registers the given MBean, replacing an MBean left behind by a previous instance of the same adapter.
+     *
+     * @return the name the MBean is registered with, or null if it could not be registered.
+     */
+    public static ObjectName registerMBean(Object mBean, String type, int tenantId, String adapterName) {
+        try {
+            ObjectName name = new ObjectName(MBEAN_DOMAIN + ":type=" + type + ",tenant=" + tenantId + ",name="
+                                                     + ObjectName.quote(adapterName));
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (mBeanServer.isRegistered(name)) {
+                mBeanServer.unregisterMBean(name);
+            }
+            mBeanServer.registerMBean(mBean, name);
+            return name;
+        } catch (JMException e) {
+            log.warn("Cannot register the " + type + " statistics MBean of adapter " + adapterName, e);
+            return null;
+        }
+    }
+
+    /**
+     * Unregisters the MBean with the given name, if any.
+     */
+    public static void unregisterMBean(ObjectName name) {
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            log.warn("Cannot unregister the statistics MBean " + name, e);
+        }
+    }
+}
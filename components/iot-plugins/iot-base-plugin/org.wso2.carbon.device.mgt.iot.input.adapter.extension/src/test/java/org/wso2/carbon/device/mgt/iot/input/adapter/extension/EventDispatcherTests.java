@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.input.adapter.extension;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class for holding unit-tests related to EventDispatcher class.
+ */
+public class EventDispatcherTests {
+
+    @Test
+    public void testEventsOfAKeyAreProcessedInOrder() throws Exception {
+        RecordingDispatcher dispatcher = new RecordingDispatcher(4, 1000, EventDispatcher.OVERFLOW_POLICY_BLOCK);
+        dispatcher.start();
+        for (int i = 0; i < 200; i++) {
+            dispatcher.dispatch("a:" + i);
+            dispatcher.dispatch("b:" + i);
+        }
+        dispatcher.gate.countDown();
+        dispatcher.stop();
+        Map<String, List<Integer>> eventsByKey = new HashMap<>();
+        for (String event : dispatcher.getProcessedEvents()) {
+            String key = event.substring(0, 1);
+            List<Integer> events = eventsByKey.get(key);
+            if (events == null) {
+                events = new ArrayList<>();
+                eventsByKey.put(key, events);
+            }
+            events.add(Integer.parseInt(event.substring(2)));
+        }
+        for (List<Integer> events : eventsByKey.values()) {
+            Assert.assertEquals(events.size(), 200);
+            for (int i = 0; i < events.size(); i++) {
+                Assert.assertEquals(events.get(i).intValue(), i, "Events of a key were processed out of order");
+            }
+        }
+        Assert.assertEquals(dispatcher.getDroppedEventCount(), 0);
+    }
+
+    @Test
+    public void testDropNewestKeepsQueuedEvents() throws Exception {
+        RecordingDispatcher dispatcher = fillQueue(EventDispatcher.OVERFLOW_POLICY_DROP_NEWEST);
+        dispatcher.dispatch("a:3");
+        Assert.assertEquals(dispatcher.getDroppedEventCount(), 1);
+        Assert.assertEquals(drain(dispatcher), Arrays.asList("a:0", "a:1", "a:2"));
+    }
+
+    @Test
+    public void testDropOldestKeepsLatestEvents() throws Exception {
+        RecordingDispatcher dispatcher = fillQueue(EventDispatcher.OVERFLOW_POLICY_DROP_OLDEST);
+        dispatcher.dispatch("a:3");
+        Assert.assertEquals(dispatcher.getDroppedEventCount(), 1);
+        Assert.assertEquals(drain(dispatcher), Arrays.asList("a:0", "a:2", "a:3"));
+    }
+
+    @Test
+    public void testBlockWaitsForABoundedTime() throws Exception {
+        RecordingDispatcher dispatcher = fillQueue(EventDispatcher.OVERFLOW_POLICY_BLOCK);
+        long startTime = System.currentTimeMillis();
+        dispatcher.dispatch("a:3");
+        long blockedTime = System.currentTimeMillis() - startTime;
+        Assert.assertTrue(blockedTime >= EventDispatcher.OVERFLOW_BLOCK_TIMEOUT_IN_MILLIS - 50,
+                          "Dispatching did not wait for queue space, blocked for " + blockedTime + "ms");
+        Assert.assertEquals(dispatcher.getDroppedEventCount(), 1);
+        Assert.assertEquals(drain(dispatcher), Arrays.asList("a:0", "a:1", "a:2"));
+    }
+
+    @Test
+    public void testEventsAreProcessedOnReceivingThreadWithoutWorkers() {
+        RecordingDispatcher dispatcher = new RecordingDispatcher(0, 10, EventDispatcher.OVERFLOW_POLICY_DROP_OLDEST);
+        dispatcher.gate.countDown();
+        dispatcher.start();
+        dispatcher.dispatch("a:0");
+        Assert.assertEquals(dispatcher.getProcessedEvents(), Collections.singletonList("a:0"));
+        Assert.assertSame(dispatcher.processingThread, Thread.currentThread());
+        Assert.assertEquals(dispatcher.getQueueDepth(), 0);
+        dispatcher.stop();
+    }
+
+    /**
+     * Starts a single worker that is stuck processing "a:0", with "a:1" and "a:2" filling its queue.
+     */
+    private static RecordingDispatcher fillQueue(String overflowPolicy) throws InterruptedException {
+        RecordingDispatcher dispatcher = new RecordingDispatcher(1, 2, overflowPolicy);
+        dispatcher.start();
+        dispatcher.dispatch("a:0");
+        Assert.assertTrue(dispatcher.processing.await(5, TimeUnit.SECONDS), "Worker did not take the event");
+        dispatcher.dispatch("a:1");
+        dispatcher.dispatch("a:2");
+        Assert.assertEquals(dispatcher.getQueueDepth(), 2);
+        return dispatcher;
+    }
+
+    private static List<String> drain(RecordingDispatcher dispatcher) {
+        dispatcher.gate.countDown();
+        dispatcher.stop();
+        return dispatcher.getProcessedEvents();
+    }
+
+    /**
+     * Dispatcher of "key:sequence" events which records the processed events. Processing waits until the gate is
+     * opened, which makes it as slow as the test needs it to be.
+     */
+    private static class RecordingDispatcher extends EventDispatcher<String> {
+
+        private final List<String> processedEvents = new ArrayList<>();
+        private final CountDownLatch processing = new CountDownLatch(1);
+        private final CountDownLatch gate = new CountDownLatch(1);
+        private volatile Thread processingThread;
+
+        private RecordingDispatcher(int workerPoolSize, int eventQueueSize, String overflowPolicy) {
+            super(workerPoolSize, eventQueueSize, 10, overflowPolicy);
+        }
+
+        @Override
+        protected String getOrderingKey(String event) {
+            return event.substring(0, event.indexOf(':'));
+        }
+
+        @Override
+        protected void processBatch(List<String> batch, Map<String, Object> dynamicProperties) {
+            processingThread = Thread.currentThread();
+            processing.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            synchronized (processedEvents) {
+                processedEvents.addAll(batch);
+            }
+        }
+
+        private List<String> getProcessedEvents() {
+            synchronized (processedEvents) {
+                return new ArrayList<>(processedEvents);
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.input.adapter.extension.mqtt;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.mqtt.exception.MQTTCredentialException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class for holding unit-tests related to MQTTCredentialCache class.
+ */
+public class MQTTCredentialCacheTests {
+
+    private static final int TENANT_ID = -1234;
+    private static final String USERNAME = "admin";
+    private static final String SCOPES = "perm:device:publish";
+    private static final String DCR_URL = "https://localhost:9443/dynamic-client-web/register";
+
+    @Test
+    public void testConcurrentRequestsShareSingleInFlightRequest() throws Exception {
+        final MQTTCredentialCache credentialCache = new MQTTCredentialCache();
+        final CountDownLatch tokenRequested = new CountDownLatch(1);
+        final CountDownLatch releaseToken = new CountDownLatch(1);
+        final CountingCredentialIssuer credentialIssuer = new CountingCredentialIssuer(3600) {
+            @Override
+            public MQTTCredentialCache.AccessToken getAccessToken(
+                    int tenantId, MQTTCredentialCache.ClientCredentials clientCredentials, String username,
+                    String scopes) throws MQTTCredentialException {
+                tokenRequested.countDown();
+                try {
+                    releaseToken.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getAccessToken(tenantId, clientCredentials, username, scopes);
+            }
+        };
+        int requestCount = 10;
+        ExecutorService executorService = Executors.newFixedThreadPool(requestCount);
+        try {
+            List<Future<String>> tokens = new ArrayList<>();
+            for (int i = 0; i < requestCount; i++) {
+                tokens.add(executorService.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws MQTTCredentialException {
+                        return credentialCache.getAccessToken(TENANT_ID, USERNAME, SCOPES, DCR_URL,
+                                                              credentialIssuer);
+                    }
+                }));
+            }
+            Assert.assertTrue(tokenRequested.await(5, TimeUnit.SECONDS), "Token was never requested");
+            // Give the remaining requests time to join the in-flight request before it completes
+            Thread.sleep(200);
+            releaseToken.countDown();
+            for (Future<String> token : tokens) {
+                Assert.assertEquals(token.get(5, TimeUnit.SECONDS), "token-1");
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        Assert.assertEquals(credentialIssuer.registrationCount.get(), 1);
+        Assert.assertEquals(credentialIssuer.tokenCount.get(), 1);
+    }
+
+    @Test
+    public void testUsedTokenIsRefreshedAheadOfExpiry() throws Exception {
+        MQTTCredentialCache credentialCache = new MQTTCredentialCache();
+        credentialCache.setRefreshFraction("0.25");
+        CountingCredentialIssuer credentialIssuer = new CountingCredentialIssuer(2);
+        Assert.assertEquals(credentialCache.getAccessToken(TENANT_ID, USERNAME, SCOPES, DCR_URL, credentialIssuer),
+                            "token-1");
+        // The token is refreshed in the background after 500ms, well before it expires after 2s
+        long deadline = System.currentTimeMillis() + 1500;
+        while (credentialIssuer.tokenCount.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(credentialIssuer.tokenCount.get(), 2, "Token was not refreshed ahead of expiry");
+        Assert.assertEquals(credentialCache.getAccessToken(TENANT_ID, USERNAME, SCOPES, DCR_URL, credentialIssuer),
+                            "token-2");
+        Assert.assertEquals(credentialIssuer.registrationCount.get(), 1);
+    }
+
+    @Test
+    public void testCachedTokenIsReused() throws Exception {
+        MQTTCredentialCache credentialCache = new MQTTCredentialCache();
+        CountingCredentialIssuer credentialIssuer = new CountingCredentialIssuer(3600);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(credentialCache.getAccessToken(TENANT_ID, USERNAME, SCOPES, DCR_URL,
+                                                               credentialIssuer), "token-1");
+        }
+        Assert.assertEquals(credentialIssuer.tokenCount.get(), 1);
+    }
+
+    @Test
+    public void testInvalidatedTokenKeepsRegisteredClient() throws Exception {
+        MQTTCredentialCache credentialCache = new MQTTCredentialCache();
+        CountingCredentialIssuer credentialIssuer = new CountingCredentialIssuer(3600);
+        credentialCache.getAccessToken(TENANT_ID, USERNAME, SCOPES, DCR_URL, credentialIssuer);
+        credentialCache.invalidateAccessToken(TENANT_ID, USERNAME, SCOPES, DCR_URL);
+        Assert.assertEquals(credentialCache.getAccessToken(TENANT_ID, USERNAME, SCOPES, DCR_URL, credentialIssuer),
+                            "token-2");
+        Assert.assertEquals(credentialIssuer.registrationCount.get(), 1);
+    }
+
+    @Test
+    public void testInvalidRefreshFractionIsIgnored() throws Exception {
+        MQTTCredentialCache credentialCache = new MQTTCredentialCache();
+        credentialCache.setRefreshFraction("1.5");
+        credentialCache.setRefreshFraction("abc");
+        CountingCredentialIssuer credentialIssuer = new CountingCredentialIssuer(3600);
+        credentialCache.getAccessToken(TENANT_ID, USERNAME, SCOPES, DCR_URL, credentialIssuer);
+        // With the default fraction the token is not due for a refresh yet
+        Assert.assertEquals(credentialCache.getAccessToken(TENANT_ID, USERNAME, SCOPES, DCR_URL, credentialIssuer),
+                            "token-1");
+    }
+
+    private static class CountingCredentialIssuer implements MQTTCredentialCache.CredentialIssuer {
+
+        private final long expiresIn;
+        private final AtomicInteger registrationCount = new AtomicInteger();
+        private final AtomicInteger tokenCount = new AtomicInteger();
+
+        private CountingCredentialIssuer(long expiresIn) {
+            this.expiresIn = expiresIn;
+        }
+
+        @Override
+        public MQTTCredentialCache.ClientCredentials registerClient(int tenantId, String username, String dcrUrl)
+                throws MQTTCredentialException {
+            int registration = registrationCount.incrementAndGet();
+            return new MQTTCredentialCache.ClientCredentials("client-" + registration, "secret-" + registration);
+        }
+
+        @Override
+        public MQTTCredentialCache.AccessToken getAccessToken(
+                int tenantId, MQTTCredentialCache.ClientCredentials clientCredentials, String username,
+                String scopes) throws MQTTCredentialException {
+            return new MQTTCredentialCache.AccessToken("token-" + tokenCount.incrementAndGet(), expiresIn);
+        }
+    }
+}
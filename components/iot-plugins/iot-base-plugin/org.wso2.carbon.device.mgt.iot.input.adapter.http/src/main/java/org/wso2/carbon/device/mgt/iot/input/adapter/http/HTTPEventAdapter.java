@@ -28,15 +28,15 @@ import org.wso2.carbon.event.input.adapter.core.exception.InputEventAdapterExcep
 import org.wso2.carbon.event.input.adapter.core.exception.InputEventAdapterRuntimeException;
 import org.wso2.carbon.event.input.adapter.core.exception.TestConnectionNotSupportedException;
 import org.wso2.carbon.device.mgt.iot.input.adapter.http.util.HTTPEventAdapterConstants;
+import org.wso2.carbon.device.mgt.iot.input.adapter.http.util.HTTPUtil;
 import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
 
 import javax.servlet.ServletException;
 import java.util.Hashtable;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -46,7 +46,7 @@ public final class HTTPEventAdapter implements InputEventAdapter {
     private final Map<String, String> globalProperties;
     private InputEventAdapterListener eventAdaptorListener;
     private final String id = UUID.randomUUID().toString();
-    public static ExecutorService executorService;
+    private ExecutorService executorService;
     private static final Log log = LogFactory.getLog(HTTPEventAdapter.class);
     private boolean isConnected = false;
 
@@ -60,58 +60,26 @@ public final class HTTPEventAdapter implements InputEventAdapter {
     public void init(InputEventAdapterListener eventAdaptorListener) throws InputEventAdapterException {
         this.eventAdaptorListener = eventAdaptorListener;
 
-        //ThreadPoolExecutor will be assigned  if it is null
-        if (executorService == null) {
-            int minThread;
-            int maxThread;
-            long defaultKeepAliveTime;
-            int jobQueueSize;
-
-            //If global properties are available those will be assigned else constant values will be assigned
-            if (globalProperties.get(HTTPEventAdapterConstants.ADAPTER_MIN_THREAD_POOL_SIZE_NAME) != null) {
-                minThread = Integer
-                        .parseInt(globalProperties.get(HTTPEventAdapterConstants.ADAPTER_MIN_THREAD_POOL_SIZE_NAME));
-            } else {
-                minThread = HTTPEventAdapterConstants.ADAPTER_MIN_THREAD_POOL_SIZE;
-            }
-
-            if (globalProperties.get(HTTPEventAdapterConstants.ADAPTER_MAX_THREAD_POOL_SIZE_NAME) != null) {
-                maxThread = Integer
-                        .parseInt(globalProperties.get(HTTPEventAdapterConstants.ADAPTER_MAX_THREAD_POOL_SIZE_NAME));
-            } else {
-                maxThread = HTTPEventAdapterConstants.ADAPTER_MAX_THREAD_POOL_SIZE;
-            }
-
-            if (globalProperties.get(HTTPEventAdapterConstants.ADAPTER_KEEP_ALIVE_TIME_NAME) != null) {
-                defaultKeepAliveTime = Integer
-                        .parseInt(globalProperties.get(HTTPEventAdapterConstants.ADAPTER_KEEP_ALIVE_TIME_NAME));
-            } else {
-                defaultKeepAliveTime = HTTPEventAdapterConstants.DEFAULT_KEEP_ALIVE_TIME_IN_MILLS;
-            }
-
-            if (globalProperties.get(HTTPEventAdapterConstants.ADAPTER_EXECUTOR_JOB_QUEUE_SIZE_NAME) != null) {
-                jobQueueSize = Integer
-                        .parseInt(globalProperties.get(HTTPEventAdapterConstants.ADAPTER_EXECUTOR_JOB_QUEUE_SIZE_NAME));
-            } else {
-                jobQueueSize = HTTPEventAdapterConstants.ADAPTER_EXECUTOR_JOB_QUEUE_SIZE;
-            }
-
-            RejectedExecutionHandler rejectedExecutionHandler = new RejectedExecutionHandler() {
-                @Override
-                public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-                    try {
-                        executor.getQueue().put(r);
-                    } catch (InterruptedException e) {
-                        log.error("Exception while adding event to executor queue : " + e.getMessage(), e);
-                    }
-                }
-
-            };
-
-            executorService = new ThreadPoolExecutor(minThread, maxThread, defaultKeepAliveTime, TimeUnit.MILLISECONDS,
-                    new LinkedBlockingQueue<Runnable>(jobQueueSize), rejectedExecutionHandler);
-
-        }
+        //Adapter properties take precedence over global properties, else constant values will be assigned
+        int minThread = getPoolProperty(HTTPEventAdapterConstants.ADAPTER_MIN_THREAD_POOL_SIZE_NAME,
+                                        HTTPEventAdapterConstants.ADAPTER_MIN_THREAD_POOL_SIZE, 0);
+        int maxThread = getPoolProperty(HTTPEventAdapterConstants.ADAPTER_MAX_THREAD_POOL_SIZE_NAME,
+                                        HTTPEventAdapterConstants.ADAPTER_MAX_THREAD_POOL_SIZE, 1);
+        // Core threads time out, which requires a positive keep alive time
+        long defaultKeepAliveTime = getPoolProperty(
+                HTTPEventAdapterConstants.ADAPTER_KEEP_ALIVE_TIME_NAME,
+                (int) HTTPEventAdapterConstants.DEFAULT_KEEP_ALIVE_TIME_IN_MILLS, 1);
+        int jobQueueSize = getPoolProperty(HTTPEventAdapterConstants.ADAPTER_EXECUTOR_JOB_QUEUE_SIZE_NAME,
+                                           HTTPEventAdapterConstants.ADAPTER_EXECUTOR_JOB_QUEUE_SIZE, 1);
+        maxThread = Math.max(minThread, maxThread);
+
+        // Each adapter belongs to a single tenant, so a bounded queue per adapter keeps a noisy tenant from
+        // starving the others. Requests that do not fit are rejected and answered with 429 by the servlet.
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+                minThread, maxThread, defaultKeepAliveTime, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(jobQueueSize), new ThreadPoolExecutor.AbortPolicy());
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        executorService = threadPoolExecutor;
     }
 
     @Override
@@ -135,6 +103,9 @@ public final class HTTPEventAdapter implements InputEventAdapter {
 
     @Override
     public void destroy() {
+        if (executorService != null) {
+            executorService.shutdown();
+        }
     }
 
     @Override
@@ -186,7 +157,7 @@ public final class HTTPEventAdapter implements InputEventAdapter {
                         "HttpService not available, Error in registering endpoint " + endpoint);
             }
             httpService.registerServlet(endpoint, new HTTPMessageServlet(eventAdaptorListener, tenantId,
-                    eventAdapterConfiguration),
+                    eventAdapterConfiguration, executorService),
                     new Hashtable(), httpService.createDefaultHttpContext());
         } catch (ServletException | NamespaceException e) {
             throw new InputEventAdapterRuntimeException("Error in registering endpoint " + endpoint, e);
@@ -210,4 +181,20 @@ public final class HTTPEventAdapter implements InputEventAdapter {
         }
 
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads a thread pool property, falling back to the default value when it is below the minimum value the
+     * thread pool accepts.
+     */
+    private int getPoolProperty(String name, int defaultValue, int minValue) {
+        String globalValue = globalProperties.get(name);
+        int value = HTTPUtil.getIntProperty(eventAdapterConfiguration.getProperties(), name,
+                                            globalValue != null ? globalValue : String.valueOf(defaultValue));
+        if (value < minValue) {
+            log.warn("Invalid value " + value + " for " + name + " of adapter " + eventAdapterConfiguration.getName()
+                             + ", it should be at least " + minValue + ". Using the default value " + defaultValue);
+            return defaultValue;
+        }
+        return value;
+    }
+}
@@ -114,6 +114,77 @@ public class HTTPEventAdapterFactory extends InputEventAdapterFactory {
 		maxTotalHttpConnection.setDefaultValue(HTTPEventAdapterConstants.MAX_TOTAL_HTTP_CONNECTION);
 		propertyList.add(maxTotalHttpConnection);
 
+		// Authentication without http sessions
+		Property statelessAuthentication = new Property(HTTPEventAdapterConstants.STATELESS_AUTHENTICATION);
+		statelessAuthentication.setRequired(false);
+		statelessAuthentication.setDisplayName(
+				resourceBundle.getString(HTTPEventAdapterConstants.STATELESS_AUTHENTICATION));
+		statelessAuthentication.setHint(
+				resourceBundle.getString(HTTPEventAdapterConstants.STATELESS_AUTHENTICATION_HINT));
+		statelessAuthentication.setOptions(new String[]{"true", "false"});
+		statelessAuthentication.setDefaultValue(HTTPEventAdapterConstants.DEFAULT_STATELESS_AUTHENTICATION);
+		propertyList.add(statelessAuthentication);
+
+		// Worker pool and admission queue of the adapter, global properties apply when not set
+		Property minThread = new Property(HTTPEventAdapterConstants.ADAPTER_MIN_THREAD_POOL_SIZE_NAME);
+		minThread.setRequired(false);
+		minThread.setDisplayName(resourceBundle.getString(
+				HTTPEventAdapterConstants.ADAPTER_MIN_THREAD_POOL_SIZE_NAME));
+		minThread.setHint(resourceBundle.getString(
+				HTTPEventAdapterConstants.ADAPTER_MIN_THREAD_POOL_SIZE_HINT));
+		propertyList.add(minThread);
+
+		Property maxThread = new Property(HTTPEventAdapterConstants.ADAPTER_MAX_THREAD_POOL_SIZE_NAME);
+		maxThread.setRequired(false);
+		maxThread.setDisplayName(resourceBundle.getString(
+				HTTPEventAdapterConstants.ADAPTER_MAX_THREAD_POOL_SIZE_NAME));
+		maxThread.setHint(resourceBundle.getString(
+				HTTPEventAdapterConstants.ADAPTER_MAX_THREAD_POOL_SIZE_HINT));
+		propertyList.add(maxThread);
+
+		Property keepAliveTime = new Property(HTTPEventAdapterConstants.ADAPTER_KEEP_ALIVE_TIME_NAME);
+		keepAliveTime.setRequired(false);
+		keepAliveTime.setDisplayName(resourceBundle.getString(
+				HTTPEventAdapterConstants.ADAPTER_KEEP_ALIVE_TIME_NAME));
+		keepAliveTime.setHint(resourceBundle.getString(
+				HTTPEventAdapterConstants.ADAPTER_KEEP_ALIVE_TIME_HINT));
+		propertyList.add(keepAliveTime);
+
+		Property jobQueueSize = new Property(HTTPEventAdapterConstants.ADAPTER_EXECUTOR_JOB_QUEUE_SIZE_NAME);
+		jobQueueSize.setRequired(false);
+		jobQueueSize.setDisplayName(resourceBundle.getString(
+				HTTPEventAdapterConstants.ADAPTER_EXECUTOR_JOB_QUEUE_SIZE_NAME));
+		jobQueueSize.setHint(resourceBundle.getString(
+				HTTPEventAdapterConstants.ADAPTER_EXECUTOR_JOB_QUEUE_SIZE_HINT));
+		propertyList.add(jobQueueSize);
+
+		// Token validation cache
+		Property tokenCacheSize = new Property(HTTPEventAdapterConstants.TOKEN_CACHE_SIZE);
+		tokenCacheSize.setRequired(false);
+		tokenCacheSize.setDisplayName(resourceBundle.getString(HTTPEventAdapterConstants.TOKEN_CACHE_SIZE));
+		tokenCacheSize.setHint(resourceBundle.getString(HTTPEventAdapterConstants.TOKEN_CACHE_SIZE_HINT));
+		tokenCacheSize.setDefaultValue(HTTPEventAdapterConstants.DEFAULT_TOKEN_CACHE_SIZE);
+		propertyList.add(tokenCacheSize);
+
+		Property tokenCacheMaxTimeToLive = new Property(HTTPEventAdapterConstants.TOKEN_CACHE_MAX_TIME_TO_LIVE);
+		tokenCacheMaxTimeToLive.setRequired(false);
+		tokenCacheMaxTimeToLive.setDisplayName(resourceBundle.getString(
+				HTTPEventAdapterConstants.TOKEN_CACHE_MAX_TIME_TO_LIVE));
+		tokenCacheMaxTimeToLive.setHint(resourceBundle.getString(
+				HTTPEventAdapterConstants.TOKEN_CACHE_MAX_TIME_TO_LIVE_HINT));
+		tokenCacheMaxTimeToLive.setDefaultValue(HTTPEventAdapterConstants.DEFAULT_TOKEN_CACHE_MAX_TIME_TO_LIVE);
+		propertyList.add(tokenCacheMaxTimeToLive);
+
+		Property invalidTokenCacheTimeToLive = new Property(HTTPEventAdapterConstants.INVALID_TOKEN_CACHE_TIME_TO_LIVE);
+		invalidTokenCacheTimeToLive.setRequired(false);
+		invalidTokenCacheTimeToLive.setDisplayName(resourceBundle.getString(
+				HTTPEventAdapterConstants.INVALID_TOKEN_CACHE_TIME_TO_LIVE));
+		invalidTokenCacheTimeToLive.setHint(resourceBundle.getString(
+				HTTPEventAdapterConstants.INVALID_TOKEN_CACHE_TIME_TO_LIVE_HINT));
+		invalidTokenCacheTimeToLive.setDefaultValue(
+				HTTPEventAdapterConstants.DEFAULT_INVALID_TOKEN_CACHE_TIME_TO_LIVE);
+		propertyList.add(invalidTokenCacheTimeToLive);
+
 		//Content Validator details
 		Property contentValidator = new Property(HTTPEventAdapterConstants.ADAPTER_CONF_CONTENT_VALIDATOR_CLASSNAME);
 		contentValidator.setDisplayName(
@@ -22,24 +22,34 @@ import org.wso2.carbon.device.mgt.iot.input.adapter.extension.ContentInfo;
 import org.wso2.carbon.device.mgt.iot.input.adapter.extension.ContentTransformer;
 import org.wso2.carbon.device.mgt.iot.input.adapter.extension.DefaultContentTransformer;
 import org.wso2.carbon.device.mgt.iot.input.adapter.extension.DefaultContentValidator;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.util.AdapterMBeanUtil;
 import org.wso2.carbon.device.mgt.iot.input.adapter.http.exception.HTTPContentInitializationException;
 import org.wso2.carbon.device.mgt.iot.input.adapter.http.jwt.JWTAuthenticator;
 import org.wso2.carbon.device.mgt.iot.input.adapter.http.oauth.OAuthAuthenticator;
 import org.wso2.carbon.device.mgt.iot.input.adapter.http.util.AuthenticationInfo;
+import org.wso2.carbon.device.mgt.iot.input.adapter.http.util.HTTPBatchEventReader;
 import org.wso2.carbon.device.mgt.iot.input.adapter.http.util.HTTPEventAdapterConstants;
 import org.wso2.carbon.event.input.adapter.core.InputEventAdapterConfiguration;
 import org.wso2.carbon.event.input.adapter.core.InputEventAdapterListener;
 import org.wso2.carbon.device.mgt.iot.input.adapter.extension.ContentValidator;
 
+import javax.management.ObjectName;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * This will act as the event reciver.
@@ -56,15 +66,25 @@ public class HTTPMessageServlet extends HttpServlet {
 	private InputEventAdapterListener eventAdaptorListener;
 	private int tenantId;
 	private String exposedTransports;
-	private static JWTAuthenticator jwtAuthenticator;
-	private static OAuthAuthenticator oAuthAuthenticator;
+	private boolean statelessAuthentication;
+	private JWTAuthenticator jwtAuthenticator;
+	private OAuthAuthenticator oAuthAuthenticator;
+	private ExecutorService executorService;
+	private ObjectName tokenCacheMBeanName;
+	private ObjectName verifiedTokenCacheMBeanName;
 
 	public HTTPMessageServlet(InputEventAdapterListener eventAdaptorListener, int tenantId,
-							  InputEventAdapterConfiguration eventAdapterConfiguration) {
+							  InputEventAdapterConfiguration eventAdapterConfiguration,
+							  ExecutorService executorService) {
 		this.eventAdaptorListener = eventAdaptorListener;
 		this.tenantId = tenantId;
+		this.executorService = executorService;
 		this.exposedTransports = eventAdapterConfiguration.getProperties().get(
 				HTTPEventAdapterConstants.EXPOSED_TRANSPORTS);
+		String statelessAuthentication = eventAdapterConfiguration.getProperties().get(
+				HTTPEventAdapterConstants.STATELESS_AUTHENTICATION);
+		this.statelessAuthentication = Boolean.parseBoolean(statelessAuthentication != null ?
+				statelessAuthentication : HTTPEventAdapterConstants.DEFAULT_STATELESS_AUTHENTICATION);
 
 		String className = eventAdapterConfiguration.getProperties().get(
 				HTTPEventAdapterConstants.ADAPTER_CONF_CONTENT_VALIDATOR_CLASSNAME);
@@ -106,19 +126,27 @@ public class HTTPMessageServlet extends HttpServlet {
 			}
 		}
 
-		jwtAuthenticator = new JWTAuthenticator();
+		jwtAuthenticator = new JWTAuthenticator(eventAdapterConfiguration);
 		oAuthAuthenticator = new OAuthAuthenticator(eventAdapterConfiguration);
+		tokenCacheMBeanName = AdapterMBeanUtil.registerMBean(
+				oAuthAuthenticator.getTokenCache(), HTTPEventAdapterConstants.MBEAN_TYPE_TOKEN_CACHE, tenantId,
+				eventAdapterConfiguration.getName());
+		verifiedTokenCacheMBeanName = AdapterMBeanUtil.registerMBean(
+				jwtAuthenticator.getVerifiedTokenCache(), HTTPEventAdapterConstants.MBEAN_TYPE_VERIFIED_JWT_CACHE,
+				tenantId, eventAdapterConfiguration.getName());
+	}
+
+	@Override
+	public void destroy() {
+		AdapterMBeanUtil.unregisterMBean(tokenCacheMBeanName);
+		AdapterMBeanUtil.unregisterMBean(verifiedTokenCacheMBeanName);
+		super.destroy();
 	}
 
 	@Override
 	protected void doPost(HttpServletRequest req,
 						  HttpServletResponse res) throws IOException {
 
-		String data = this.inputStreamToString(req.getInputStream());
-		if (data == null) {
-			log.warn("Event Object is empty/null");
-			return;
-		}
 		AuthenticationInfo authenticationInfo = null;
 		if (exposedTransports.equalsIgnoreCase(HTTPEventAdapterConstants.HTTPS)) {
 			if (!req.isSecure()) {
@@ -162,10 +190,6 @@ public class HTTPMessageServlet extends HttpServlet {
 			}
 		}
 
-		if (log.isDebugEnabled()) {
-			log.debug("Message : " + data);
-		}
-
 		if (authenticationInfo != null) {
 			Map<String, Object> paramMap = new HashMap<>();
 			Enumeration<String> reqParameterNames = req.getParameterNames();
@@ -176,15 +200,152 @@ public class HTTPMessageServlet extends HttpServlet {
 			paramMap.put(HTTPEventAdapterConstants.USERNAME_TAG, authenticationInfo.getUsername());
 			paramMap.put(HTTPEventAdapterConstants.TENANT_DOMAIN_TAG, authenticationInfo.getTenantDomain());
 			paramMap.put(HTTPEventAdapterConstants.SCOPE_TAG, authenticationInfo.getScopes());
-			if (contentValidator != null && contentTransformer != null) {
-				data = (String) contentTransformer.transform(data, paramMap);
-				ContentInfo contentInfo = contentValidator.validate(data, paramMap);
-				if (contentInfo != null && contentInfo.isValidContent()) {
-					HTTPEventAdapter.executorService.submit(new HTTPRequestProcessor(eventAdaptorListener,
-																					 (String) contentInfo.getMessage(), tenantId));
+			if (isBatchRequest(req)) {
+				processBatch(req, res, paramMap);
+				return;
+			}
+			String data = this.inputStreamToString(req);
+			if (data.isEmpty()) {
+				log.warn("Event Object is empty/null");
+				return;
+			}
+			if (log.isDebugEnabled()) {
+				log.debug("Message : " + data);
+			}
+			String payload = validateEvent(data, paramMap);
+			if (payload != null && !dispatch(new HTTPRequestProcessor(eventAdaptorListener, payload, tenantId))) {
+				setThrottledResponse(res);
+			}
+		}
+	}
+
+	/**
+	 * Reads the events of a batch request one at a time, validates each of them and dispatches the valid ones in
+	 * groups so that the tenant flow is started once per group. The response lists the outcome of each event in
+	 * the order they were received. Once a group is not admitted the remaining valid events are reported as
+	 * throttled and the client is asked to retry them later.
+	 */
+	private void processBatch(HttpServletRequest req, HttpServletResponse res, Map<String, Object> paramMap)
+			throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				req.getInputStream(), HTTPEventAdapterConstants.DEFAULT_CHARSET), getReadBufferSize(req));
+		HTTPBatchEventReader batchEventReader = new HTTPBatchEventReader(reader);
+		List<String> payloads = new ArrayList<>(HTTPEventAdapterConstants.BATCH_DISPATCH_SIZE);
+		List<Integer> pendingEvents = new ArrayList<>(HTTPEventAdapterConstants.BATCH_DISPATCH_SIZE);
+		List<String> statuses = new ArrayList<>();
+		boolean admitted = true;
+		String data;
+		while ((data = batchEventReader.next()) != null) {
+			if (log.isDebugEnabled()) {
+				log.debug("Message : " + data);
+			}
+			String payload;
+			try {
+				payload = validateEvent(data, paramMap);
+			} catch (RuntimeException e) {
+				log.error("Invalid event in the batch request : " + data, e);
+				payload = null;
+			}
+			if (payload == null) {
+				statuses.add(HTTPEventAdapterConstants.BATCH_EVENT_REJECTED);
+			} else if (!admitted) {
+				statuses.add(HTTPEventAdapterConstants.BATCH_EVENT_THROTTLED);
+			} else {
+				pendingEvents.add(statuses.size());
+				statuses.add(HTTPEventAdapterConstants.BATCH_EVENT_ACCEPTED);
+				payloads.add(payload);
+				if (payloads.size() == HTTPEventAdapterConstants.BATCH_DISPATCH_SIZE) {
+					admitted = dispatchBatch(payloads, pendingEvents, statuses);
+					payloads = new ArrayList<>(HTTPEventAdapterConstants.BATCH_DISPATCH_SIZE);
+					pendingEvents.clear();
 				}
 			}
 		}
+		if (admitted && !payloads.isEmpty()) {
+			admitted = dispatchBatch(payloads, pendingEvents, statuses);
+		}
+		int accepted = 0;
+		int rejected = 0;
+		StringBuilder results = new StringBuilder();
+		for (String status : statuses) {
+			if (results.length() > 0) {
+				results.append(',');
+			}
+			results.append('"').append(status).append('"');
+			if (HTTPEventAdapterConstants.BATCH_EVENT_ACCEPTED.equals(status)) {
+				accepted++;
+			} else if (HTTPEventAdapterConstants.BATCH_EVENT_REJECTED.equals(status)) {
+				rejected++;
+			}
+		}
+		String summary = "{\"total\":" + statuses.size() + ",\"accepted\":" + accepted + ",\"rejected\":"
+				+ rejected + ",\"throttled\":" + (statuses.size() - accepted - rejected) + ",\"results\":["
+				+ results + "]}";
+		if (!admitted) {
+			setThrottledResponse(res);
+		}
+		res.setContentType(HTTPEventAdapterConstants.JSON_CONTENT_TYPE);
+		res.setCharacterEncoding(HTTPEventAdapterConstants.DEFAULT_CHARSET);
+		res.getOutputStream().write(summary.getBytes(HTTPEventAdapterConstants.DEFAULT_CHARSET));
+	}
+
+	private boolean dispatchBatch(List<String> payloads, List<Integer> pendingEvents, List<String> statuses) {
+		if (dispatch(new HTTPRequestProcessor(eventAdaptorListener, payloads, tenantId))) {
+			return true;
+		}
+		for (Integer index : pendingEvents) {
+			statuses.set(index, HTTPEventAdapterConstants.BATCH_EVENT_THROTTLED);
+		}
+		return false;
+	}
+
+	/**
+	 * Hands over the events to the adapter's workers without waiting for queue space.
+	 *
+	 * @return false if the work queue of the adapter is full or the adapter is shutting down.
+	 */
+	private boolean dispatch(HTTPRequestProcessor requestProcessor) {
+		try {
+			executorService.execute(requestProcessor);
+			return true;
+		} catch (RejectedExecutionException e) {
+			if (log.isDebugEnabled()) {
+				log.debug("Event queue of the http adapter is full, rejecting the request", e);
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Answers 429 when the work queue is full and 503 when the adapter is shutting down, with a Retry-After
+	 * header so that well behaved clients back off instead of retrying immediately.
+	 */
+	private void setThrottledResponse(HttpServletResponse res) {
+		res.setStatus(executorService.isShutdown() ? HttpServletResponse.SC_SERVICE_UNAVAILABLE :
+							  HTTPEventAdapterConstants.HTTP_STATUS_TOO_MANY_REQUESTS);
+		res.setHeader(HTTPEventAdapterConstants.RETRY_AFTER_HEADER, HTTPEventAdapterConstants.RETRY_AFTER_IN_SECONDS);
+	}
+
+	/**
+	 * Transforms and validates an event.
+	 *
+	 * @return the event to be dispatched or null if the event is not valid.
+	 */
+	private String validateEvent(String data, Map<String, Object> paramMap) {
+		if (contentValidator != null && contentTransformer != null) {
+			data = (String) contentTransformer.transform(data, paramMap);
+			ContentInfo contentInfo = contentValidator.validate(data, paramMap);
+			if (contentInfo != null && contentInfo.isValidContent()) {
+				return (String) contentInfo.getMessage();
+			}
+		}
+		return null;
+	}
+
+	private boolean isBatchRequest(HttpServletRequest req) {
+		String contentType = req.getContentType();
+		return Boolean.parseBoolean(req.getParameter(HTTPEventAdapterConstants.BATCH_REQUEST_PARAMETER))
+				|| (contentType != null && contentType.startsWith(HTTPEventAdapterConstants.NDJSON_CONTENT_TYPE));
 	}
 
 	@Override
@@ -196,12 +357,17 @@ public class HTTPMessageServlet extends HttpServlet {
 	public class HTTPRequestProcessor implements Runnable {
 
 		private InputEventAdapterListener inputEventAdapterListener;
-		private String payload;
+		private List<String> payloads;
 		private int tenantId;
 
 		public HTTPRequestProcessor(InputEventAdapterListener inputEventAdapterListener, String payload, int tenantId) {
+			this(inputEventAdapterListener, Collections.singletonList(payload), tenantId);
+		}
+
+		public HTTPRequestProcessor(InputEventAdapterListener inputEventAdapterListener, List<String> payloads,
+									int tenantId) {
 			this.inputEventAdapterListener = inputEventAdapterListener;
-			this.payload = payload;
+			this.payloads = payloads;
 			this.tenantId = tenantId;
 		}
 
@@ -209,27 +375,38 @@ public class HTTPMessageServlet extends HttpServlet {
 			try {
 				PrivilegedCarbonContext.startTenantFlow();
 				PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(tenantId, true);
-				if (log.isDebugEnabled()) {
-					log.debug("Event received in HTTP Event Adapter - " + payload);
+				for (String payload : payloads) {
+					try {
+						if (log.isDebugEnabled()) {
+							log.debug("Event received in HTTP Event Adapter - " + payload);
+						}
+						if (payload != null) {
+							inputEventAdapterListener.onEvent(payload);
+						} else {
+							log.warn("Dropping the empty/null event received through http adapter");
+						}
+					} catch (Exception e) {
+						log.error("Error while parsing http request for processing: " + e.getMessage(), e);
+					}
 				}
-				if (payload != null) {
-					inputEventAdapterListener.onEvent(payload);
-				} else {
-					log.warn("Dropping the empty/null event received through http adapter");
-				}
-			} catch (Exception e) {
-				log.error("Error while parsing http request for processing: " + e.getMessage(), e);
 			} finally {
 				PrivilegedCarbonContext.endTenantFlow();
 			}
 		}
 	}
 
+	/**
+	 * Authenticates the request. In stateless mode the result is only kept in the token caches of the
+	 * authenticators and no http session is created, otherwise it is also stored in the session of the client.
+	 */
 	private AuthenticationInfo checkAuthentication(HttpServletRequest req) {
-		AuthenticationInfo authenticationInfo = (AuthenticationInfo) req.getSession().getAttribute(
-				AUTH_MESSAGE_STORE_AUTHENTICATION_INFO);
-		if (authenticationInfo != null) {
-			return authenticationInfo;
+		AuthenticationInfo authenticationInfo;
+		if (!statelessAuthentication) {
+			authenticationInfo = (AuthenticationInfo) req.getSession().getAttribute(
+					AUTH_MESSAGE_STORE_AUTHENTICATION_INFO);
+			if (authenticationInfo != null) {
+				return authenticationInfo;
+			}
 		}
 		if (jwtAuthenticator.isJWTHeaderExist(req)) {
 			authenticationInfo = jwtAuthenticator.authenticate(req);
@@ -238,22 +415,37 @@ public class HTTPMessageServlet extends HttpServlet {
 		}
 		if (authenticationInfo != null) {
 			boolean success = authenticationInfo.isAuthenticated();
-			if (success) {
+			if (success && !statelessAuthentication) {
 				req.getSession().setAttribute(AUTH_MESSAGE_STORE_AUTHENTICATION_INFO, authenticationInfo);
 			}
 		}
 		return authenticationInfo;
 	}
 
-	private String inputStreamToString(InputStream in) throws IOException {
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		byte[] buff = new byte[1024];
+	private String inputStreamToString(HttpServletRequest req) throws IOException {
+		InputStream in = req.getInputStream();
+		// The declared content length is not trusted beyond the read buffer cap, the output grows as data arrives
+		int bufferSize = getReadBufferSize(req);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(bufferSize);
+		byte[] buff = new byte[bufferSize];
 		int i;
 		while ((i = in.read(buff)) > 0) {
 			out.write(buff, 0, i);
 		}
 		out.close();
-		return out.toString();
+		return out.toString(HTTPEventAdapterConstants.DEFAULT_CHARSET);
+	}
+
+	/**
+	 * Sizes the read buffer from the content length so that small bodies are read in a single call, while
+	 * keeping the buffer of large or chunked bodies bounded.
+	 */
+	private int getReadBufferSize(HttpServletRequest req) {
+		int contentLength = req.getContentLength();
+		if (contentLength <= 0) {
+			return HTTPEventAdapterConstants.DEFAULT_READ_BUFFER_SIZE;
+		}
+		return Math.min(contentLength, HTTPEventAdapterConstants.MAX_READ_BUFFER_SIZE);
 	}
 
 }
@@ -21,6 +21,7 @@ package org.wso2.carbon.device.mgt.iot.input.adapter.http.jwt;
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSVerifier;
 import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jwt.ReadOnlyJWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 import org.apache.axiom.util.base64.Base64Utils;
 import org.apache.axis2.transport.http.HTTPConstants;
@@ -29,14 +30,25 @@ import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.core.util.KeyStoreManager;
 import org.wso2.carbon.device.mgt.iot.input.adapter.http.internal.InputAdapterServiceDataHolder;
 import org.wso2.carbon.device.mgt.iot.input.adapter.http.util.AuthenticationInfo;
+import org.wso2.carbon.device.mgt.iot.input.adapter.http.util.HTTPEventAdapterConstants;
+import org.wso2.carbon.device.mgt.iot.input.adapter.http.util.HTTPUtil;
+import org.wso2.carbon.device.mgt.iot.input.adapter.http.util.TokenAuthenticationCache;
+import org.wso2.carbon.event.input.adapter.core.InputEventAdapterConfiguration;
 import org.wso2.carbon.user.api.TenantManager;
 import org.wso2.carbon.user.api.UserStoreException;
 import org.wso2.carbon.user.api.UserStoreManager;
 import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
 import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
 import javax.servlet.http.HttpServletRequest;
+import java.security.PublicKey;
 import java.security.interfaces.RSAPublicKey;
 import java.text.ParseException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This authenticator authenticates HTTP requests using JWT header.
@@ -46,6 +58,29 @@ public class JWTAuthenticator {
 	private static final Log log = LogFactory.getLog(JWTAuthenticator.class);
 	public static final String SIGNED_JWT_AUTH_USERNAME = "Username";
 	private static final String JWT_ASSERTION_HEADER = "X-JWT-Assertion";
+	private static final long KEY_REFRESH_INTERVAL_IN_MILLIS = 300000;
+	private static final long MIN_KEY_RELOAD_INTERVAL_IN_MILLIS = 30000;
+	private static final long USER_EXISTENCE_CACHE_TIME_TO_LIVE_IN_MILLIS = 60000;
+	private static final int USER_EXISTENCE_CACHE_SIZE = 10000;
+
+	private final ConcurrentMap<Integer, VerificationKey> verificationKeys = new ConcurrentHashMap<>();
+	private final Map<String, Long> existingUsers = Collections.synchronizedMap(new UserExistenceCache());
+	private final TokenAuthenticationCache verifiedTokenCache;
+
+	public JWTAuthenticator(InputEventAdapterConfiguration eventAdapterConfiguration) {
+		Map<String, String> properties = eventAdapterConfiguration.getProperties();
+		int tokenCacheSize = HTTPUtil.getIntProperty(properties, HTTPEventAdapterConstants.TOKEN_CACHE_SIZE,
+													 HTTPEventAdapterConstants.DEFAULT_TOKEN_CACHE_SIZE);
+		int maxTimeToLive = HTTPUtil.getIntProperty(properties,
+													HTTPEventAdapterConstants.TOKEN_CACHE_MAX_TIME_TO_LIVE,
+													HTTPEventAdapterConstants.DEFAULT_TOKEN_CACHE_MAX_TIME_TO_LIVE);
+		// Only verified tokens are cached, a token failing verification is checked again on the next request
+		this.verifiedTokenCache = new TokenAuthenticationCache(tokenCacheSize, maxTimeToLive * 1000L, 0);
+	}
+
+	public TokenAuthenticationCache getVerifiedTokenCache() {
+		return verifiedTokenCache;
+	}
 
 	public boolean isJWTHeaderExist(HttpServletRequest request) {
 		String authorizationHeader = request.getHeader(JWT_ASSERTION_HEADER);
@@ -57,17 +92,17 @@ public class JWTAuthenticator {
 
 	public AuthenticationInfo authenticate(HttpServletRequest request) {
 	    AuthenticationInfo authenticationInfo = new AuthenticationInfo();
-		//Get the filesystem keystore default primary certificate
-		KeyStoreManager keyStoreManager = KeyStoreManager.getInstance(MultitenantConstants.SUPER_TENANT_ID);
 		try {
-			keyStoreManager.getDefaultPrimaryCertificate();
 			String authorizationHeader = request.getHeader(HTTPConstants.HEADER_AUTHORIZATION);
 			String headerData = decodeAuthorizationHeader(authorizationHeader);
-			JWSVerifier verifier =
-					new RSASSAVerifier((RSAPublicKey) keyStoreManager.getDefaultPublicKey());
+			AuthenticationInfo cachedAuthenticationInfo = verifiedTokenCache.get(headerData);
+			if (cachedAuthenticationInfo != null) {
+				return cachedAuthenticationInfo;
+			}
 			SignedJWT jwsObject = SignedJWT.parse(headerData);
-			if (jwsObject.verify(verifier)) {
-				String username = jwsObject.getJWTClaimsSet().getStringClaim(SIGNED_JWT_AUTH_USERNAME);
+			if (verify(jwsObject, MultitenantConstants.SUPER_TENANT_ID)) {
+				ReadOnlyJWTClaimsSet claimsSet = jwsObject.getJWTClaimsSet();
+				String username = claimsSet.getStringClaim(SIGNED_JWT_AUTH_USERNAME);
 				String tenantDomain = MultitenantUtils.getTenantDomain(username);
 				username = MultitenantUtils.getTenantAwareUsername(username);
 				TenantManager tenantManager = InputAdapterServiceDataHolder.getRealmService().
@@ -77,13 +112,16 @@ public class JWTAuthenticator {
 					log.error("tenantDomain is not valid. username : " + username + ", tenantDomain " +
 					          ": " + tenantDomain);
 				} else {
-                    UserStoreManager userStore = InputAdapterServiceDataHolder.getRealmService().
-                            getTenantUserRealm(tenantId).getUserStoreManager();
-                    if (userStore.isExistingUser(username)) {
+                    if (isExistingUser(tenantId, username)) {
                         authenticationInfo.setTenantId(tenantId);
                         authenticationInfo.setUsername(username);
                         authenticationInfo.setTenantDomain(tenantDomain);
 						authenticationInfo.setAuthenticated(true);
+						Date expirationTime = claimsSet.getExpirationTime();
+						if (expirationTime != null) {
+							verifiedTokenCache.put(headerData, authenticationInfo,
+												   expirationTime.getTime() - System.currentTimeMillis());
+						}
                     }
                 }
     		}
@@ -99,6 +137,67 @@ public class JWTAuthenticator {
 		return authenticationInfo;
 	}
 
+	/**
+	 * Verifies the JWT with the cached key of the tenant. When the verification fails the key is reloaded from the
+	 * keystore, at most once in {@link #MIN_KEY_RELOAD_INTERVAL_IN_MILLIS}, and the JWT is verified again if the key
+	 * has changed.
+	 */
+	private boolean verify(SignedJWT jwsObject, int tenantId) throws Exception {
+		VerificationKey verificationKey = getVerificationKey(tenantId);
+		if (jwsObject.verify(verificationKey.verifier)) {
+			return true;
+		}
+		if (System.currentTimeMillis() - verificationKey.loadedTime < MIN_KEY_RELOAD_INTERVAL_IN_MILLIS) {
+			return false;
+		}
+		VerificationKey reloadedKey = loadVerificationKey(tenantId);
+		return !reloadedKey.publicKey.equals(verificationKey.publicKey) && jwsObject.verify(reloadedKey.verifier);
+	}
+
+	private VerificationKey getVerificationKey(int tenantId) throws Exception {
+		VerificationKey verificationKey = verificationKeys.get(tenantId);
+		if (verificationKey == null ||
+				System.currentTimeMillis() - verificationKey.loadedTime >= KEY_REFRESH_INTERVAL_IN_MILLIS) {
+			verificationKey = loadVerificationKey(tenantId);
+		}
+		return verificationKey;
+	}
+
+	private VerificationKey loadVerificationKey(int tenantId) throws Exception {
+		//Get the filesystem keystore default primary certificate
+		KeyStoreManager keyStoreManager = KeyStoreManager.getInstance(tenantId);
+		keyStoreManager.getDefaultPrimaryCertificate();
+		PublicKey publicKey = keyStoreManager.getDefaultPublicKey();
+		VerificationKey verificationKey = verificationKeys.get(tenantId);
+		if (verificationKey == null || !verificationKey.publicKey.equals(publicKey)) {
+			verificationKey = new VerificationKey(publicKey, new RSASSAVerifier((RSAPublicKey) publicKey));
+		} else {
+			verificationKey = new VerificationKey(publicKey, verificationKey.verifier);
+		}
+		verificationKeys.put(tenantId, verificationKey);
+		return verificationKey;
+	}
+
+	/**
+	 * Checks the user store for the user, remembering the users found for a short period so that repeated
+	 * requests of the same user do not hit the user store.
+	 */
+	private boolean isExistingUser(int tenantId, String username) throws UserStoreException {
+		String key = tenantId + ":" + username;
+		Long expiryTime = existingUsers.get(key);
+		if (expiryTime != null && expiryTime > System.currentTimeMillis()) {
+			return true;
+		}
+		UserStoreManager userStore = InputAdapterServiceDataHolder.getRealmService().
+				getTenantUserRealm(tenantId).getUserStoreManager();
+		if (!userStore.isExistingUser(username)) {
+			existingUsers.remove(key);
+			return false;
+		}
+		existingUsers.put(key, System.currentTimeMillis() + USER_EXISTENCE_CACHE_TIME_TO_LIVE_IN_MILLIS);
+		return true;
+	}
+
 	private String decodeAuthorizationHeader(String authorizationHeader) {
 
 		if(authorizationHeader == null) {
@@ -117,4 +216,31 @@ public class JWTAuthenticator {
 		}
 	}
 
+	/**
+	 * Users found in the user store, mapped to the time their existence has to be checked again. The least recently
+	 * used user is dropped when the cache is full.
+	 */
+	private static class UserExistenceCache extends LinkedHashMap<String, Long> {
+
+		private UserExistenceCache() {
+			super(16, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+			return size() > USER_EXISTENCE_CACHE_SIZE;
+		}
+	}
+
+	private static class VerificationKey {
+		private final PublicKey publicKey;
+		private final JWSVerifier verifier;
+		private final long loadedTime;
+
+		private VerificationKey(PublicKey publicKey, JWSVerifier verifier) {
+			this.publicKey = publicKey;
+			this.verifier = verifier;
+			this.loadedTime = System.currentTimeMillis();
+		}
+	}
 }
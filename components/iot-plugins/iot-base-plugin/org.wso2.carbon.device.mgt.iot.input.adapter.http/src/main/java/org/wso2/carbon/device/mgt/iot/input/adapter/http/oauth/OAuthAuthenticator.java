@@ -25,6 +25,9 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.commons.pool.impl.GenericObjectPool;
 import org.wso2.carbon.device.mgt.iot.input.adapter.http.internal.InputAdapterServiceDataHolder;
 import org.wso2.carbon.device.mgt.iot.input.adapter.http.util.AuthenticationInfo;
+import org.wso2.carbon.device.mgt.iot.input.adapter.http.util.HTTPEventAdapterConstants;
+import org.wso2.carbon.device.mgt.iot.input.adapter.http.util.HTTPUtil;
+import org.wso2.carbon.device.mgt.iot.input.adapter.http.util.TokenAuthenticationCache;
 import org.wso2.carbon.event.input.adapter.core.InputEventAdapterConfiguration;
 import org.wso2.carbon.identity.oauth2.stub.OAuth2TokenValidationServiceStub;
 import org.wso2.carbon.identity.oauth2.stub.dto.OAuth2TokenValidationRequestDTO;
@@ -36,6 +39,8 @@ import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
 
 import javax.servlet.http.HttpServletRequest;
 import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -45,6 +50,7 @@ import java.util.regex.Pattern;
 public class OAuthAuthenticator {
     private static String cookie;
     private GenericObjectPool stubs;
+    private TokenAuthenticationCache tokenCache;
 
     private static final Pattern PATTERN = Pattern.compile("[B|b]earer\\s");
     private static final String TOKEN_TYPE = "bearer";
@@ -53,6 +59,21 @@ public class OAuthAuthenticator {
 
     public OAuthAuthenticator(InputEventAdapterConfiguration eventAdapterConfiguration) {
         this.stubs = new GenericObjectPool(new OAuthTokenValidaterStubFactory(eventAdapterConfiguration));
+        Map<String, String> properties = eventAdapterConfiguration.getProperties();
+        int tokenCacheSize = HTTPUtil.getIntProperty(properties, HTTPEventAdapterConstants.TOKEN_CACHE_SIZE,
+                                                     HTTPEventAdapterConstants.DEFAULT_TOKEN_CACHE_SIZE);
+        int maxTimeToLive = HTTPUtil.getIntProperty(properties,
+                                                    HTTPEventAdapterConstants.TOKEN_CACHE_MAX_TIME_TO_LIVE,
+                                                    HTTPEventAdapterConstants.DEFAULT_TOKEN_CACHE_MAX_TIME_TO_LIVE);
+        int invalidTokenTimeToLive = HTTPUtil.getIntProperty(
+                properties, HTTPEventAdapterConstants.INVALID_TOKEN_CACHE_TIME_TO_LIVE,
+                HTTPEventAdapterConstants.DEFAULT_INVALID_TOKEN_CACHE_TIME_TO_LIVE);
+        this.tokenCache = new TokenAuthenticationCache(tokenCacheSize, maxTimeToLive * 1000L,
+                                                       invalidTokenTimeToLive * 1000L);
+    }
+
+    public TokenAuthenticationCache getTokenCache() {
+        return tokenCache;
     }
 
     public AuthenticationInfo authenticate(HttpServletRequest req) {
@@ -61,6 +82,10 @@ public class OAuthAuthenticator {
         if (bearerToken == null) {
             return authenticationInfo;
         }
+        AuthenticationInfo cachedAuthenticationInfo = tokenCache.get(bearerToken);
+        if (cachedAuthenticationInfo != null) {
+            return cachedAuthenticationInfo;
+        }
         try {
             authenticationInfo = validateToken(bearerToken);
         } catch (Exception e) {
@@ -110,6 +135,7 @@ public class OAuthAuthenticator {
             return authenticationInfo;
         }
         authenticated = tokenValidationResponse.getValid();
+        long validityPeriod = 0;
         if (authenticated) {
             String authorizedUser = tokenValidationResponse.getAuthorizedUser();
             String username = MultitenantUtils.getTenantAwareUsername(authorizedUser);
@@ -120,7 +146,10 @@ public class OAuthAuthenticator {
             int tenantId = realmService.getTenantManager().getTenantId(authenticationInfo.getTenantDomain());
             authenticationInfo.setTenantId(tenantId);
             authenticationInfo.setScopes(tokenValidationResponse.getScope());
+            // Saturates instead of overflowing for tokens that practically never expire
+            validityPeriod = TimeUnit.SECONDS.toMillis(tokenValidationResponse.getExpiryTime());
         } else {
+            authenticationInfo.setTenantId(-1);
             if (log.isDebugEnabled()) {
                 log.debug("Token validation failed for token: " + token);
             }
@@ -129,6 +158,7 @@ public class OAuthAuthenticator {
                 .getLastOperationContext().getServiceContext();
         cookie = (String) serviceContext.getProperty(HTTPConstants.COOKIE_STRING);
         authenticationInfo.setAuthenticated(authenticated);
+        tokenCache.put(token, authenticationInfo, validityPeriod);
         return authenticationInfo;
     }
 
@@ -0,0 +1,137 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.carbon.device.mgt.iot.input.adapter.http.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Splits a batch request body into its events while reading it, so that only the event being read is held in
+ * memory. The body is either a JSON array of events or newline delimited JSON, which is detected from the first
+ * non whitespace character. Elements are returned as raw JSON text and are not validated here.
+ */
+public class HTTPBatchEventReader {
+
+	private static final char JSON_ARRAY_START_CHAR = '[';
+	private static final char JSON_ARRAY_END_CHAR = ']';
+	private static final char JSON_OBJECT_START_CHAR = '{';
+	private static final char JSON_OBJECT_END_CHAR = '}';
+	private static final char JSON_VALUE_SEPARATOR = ',';
+	private static final char JSON_STRING_QUOTE = '"';
+	private static final char JSON_ESCAPE_CHAR = '\\';
+
+	private final BufferedReader reader;
+	private final StringBuilder element = new StringBuilder();
+	private boolean jsonArray;
+	private boolean initialized;
+	private boolean completed;
+
+	public HTTPBatchEventReader(BufferedReader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Returns the next event of the batch.
+	 *
+	 * @return raw JSON text of the event or null when the batch has no more events.
+	 */
+	public String next() throws IOException {
+		if (!initialized) {
+			initialize();
+		}
+		if (completed) {
+			return null;
+		}
+		return jsonArray ? nextArrayElement() : nextLine();
+	}
+
+	private void initialize() throws IOException {
+		initialized = true;
+		int c;
+		do {
+			reader.mark(1);
+			c = reader.read();
+		} while (c != -1 && Character.isWhitespace(c));
+		if (c == -1) {
+			completed = true;
+		} else if (c == JSON_ARRAY_START_CHAR) {
+			jsonArray = true;
+		} else {
+			reader.reset();
+		}
+	}
+
+	private String nextLine() throws IOException {
+		String line;
+		while ((line = reader.readLine()) != null) {
+			line = line.trim();
+			if (!line.isEmpty()) {
+				return line;
+			}
+		}
+		completed = true;
+		return null;
+	}
+
+	private String nextArrayElement() throws IOException {
+		element.setLength(0);
+		int depth = 0;
+		boolean inString = false;
+		boolean escaped = false;
+		int c;
+		while ((c = reader.read()) != -1) {
+			char ch = (char) c;
+			if (inString) {
+				element.append(ch);
+				if (escaped) {
+					escaped = false;
+				} else if (ch == JSON_ESCAPE_CHAR) {
+					escaped = true;
+				} else if (ch == JSON_STRING_QUOTE) {
+					inString = false;
+				}
+				continue;
+			}
+			if (depth == 0) {
+				if (ch == JSON_VALUE_SEPARATOR) {
+					if (element.length() > 0) {
+						return element.toString().trim();
+					}
+					continue;
+				} else if (ch == JSON_ARRAY_END_CHAR) {
+					completed = true;
+					return element.length() > 0 ? element.toString().trim() : null;
+				} else if (element.length() == 0 && Character.isWhitespace(ch)) {
+					continue;
+				}
+			}
+			element.append(ch);
+			if (ch == JSON_STRING_QUOTE) {
+				inString = true;
+			} else if (ch == JSON_OBJECT_START_CHAR || ch == JSON_ARRAY_START_CHAR) {
+				depth++;
+			} else if (ch == JSON_OBJECT_END_CHAR || ch == JSON_ARRAY_END_CHAR) {
+				depth--;
+			}
+		}
+		// Body ended before the closing bracket, hand over whatever was read so that it is reported as invalid
+		completed = true;
+		return element.length() > 0 ? element.toString().trim() : null;
+	}
+}
@@ -39,6 +39,10 @@ public final class HTTPEventAdapterConstants {
     public static final String ADAPTER_MAX_THREAD_POOL_SIZE_NAME = "maxThread";
     public static final String ADAPTER_KEEP_ALIVE_TIME_NAME = "keepAliveTimeInMillis";
     public static final String ADAPTER_EXECUTOR_JOB_QUEUE_SIZE_NAME = "jobQueueSize";
+    public static final String ADAPTER_MIN_THREAD_POOL_SIZE_HINT = "minThread.hint";
+    public static final String ADAPTER_MAX_THREAD_POOL_SIZE_HINT = "maxThread.hint";
+    public static final String ADAPTER_KEEP_ALIVE_TIME_HINT = "keepAliveTimeInMillis.hint";
+    public static final String ADAPTER_EXECUTOR_JOB_QUEUE_SIZE_HINT = "jobQueueSize.hint";
     public static final String EXPOSED_TRANSPORTS = "transports";
     public static final String HTTPS = "https";
     public static final String HTTP = "http";
@@ -71,4 +75,31 @@ public final class HTTPEventAdapterConstants {
     public static final String HTTP_CONTENT_VALIDATION_DEFAULT_PARAMETERS = "";
     public static final String ADAPTER_CONF_CONTENT_TRANSFORMER_CLASSNAME = "contentTransformer";
     public static final String ADAPTER_CONF_CONTENT_TRANSFORMER_CLASSNAME_HINT = "contentTransformer.hint";
+    public static final String TOKEN_CACHE_SIZE = "tokenCacheSize";
+    public static final String TOKEN_CACHE_SIZE_HINT = "tokenCacheSize.hint";
+    public static final String TOKEN_CACHE_MAX_TIME_TO_LIVE = "tokenCacheMaxTimeToLive";
+    public static final String TOKEN_CACHE_MAX_TIME_TO_LIVE_HINT = "tokenCacheMaxTimeToLive.hint";
+    public static final String INVALID_TOKEN_CACHE_TIME_TO_LIVE = "invalidTokenCacheTimeToLive";
+    public static final String INVALID_TOKEN_CACHE_TIME_TO_LIVE_HINT = "invalidTokenCacheTimeToLive.hint";
+    public static final String DEFAULT_TOKEN_CACHE_SIZE = "10000";
+    public static final String DEFAULT_TOKEN_CACHE_MAX_TIME_TO_LIVE = "900";
+    public static final String DEFAULT_INVALID_TOKEN_CACHE_TIME_TO_LIVE = "30";
+    public static final String MBEAN_TYPE_TOKEN_CACHE = "HTTPInputAdapterTokenCache";
+    public static final String MBEAN_TYPE_VERIFIED_JWT_CACHE = "HTTPInputAdapterVerifiedJWTCache";
+    public static final String STATELESS_AUTHENTICATION = "statelessAuthentication";
+    public static final String STATELESS_AUTHENTICATION_HINT = "statelessAuthentication.hint";
+    public static final String DEFAULT_STATELESS_AUTHENTICATION = "false";
+    public static final String BATCH_REQUEST_PARAMETER = "batch";
+    public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+    public static final String JSON_CONTENT_TYPE = "application/json";
+    public static final String DEFAULT_CHARSET = "UTF-8";
+    public static final int DEFAULT_READ_BUFFER_SIZE = 1024;
+    public static final int MAX_READ_BUFFER_SIZE = 65536;
+    public static final int BATCH_DISPATCH_SIZE = 100;
+    public static final String BATCH_EVENT_ACCEPTED = "accepted";
+    public static final String BATCH_EVENT_REJECTED = "rejected";
+    public static final String BATCH_EVENT_THROTTLED = "throttled";
+    public static final int HTTP_STATUS_TOO_MANY_REQUESTS = 429;
+    public static final String RETRY_AFTER_HEADER = "Retry-After";
+    public static final String RETRY_AFTER_IN_SECONDS = "1";
 }
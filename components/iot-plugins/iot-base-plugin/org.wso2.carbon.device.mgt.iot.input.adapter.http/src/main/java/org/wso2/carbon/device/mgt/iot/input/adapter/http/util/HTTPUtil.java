@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.device.mgt.iot.input.adapter.http.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Map;
+
+/**
+ * This is the utility class that is used for HTTP input adapter.
+ */
+public class HTTPUtil {
+	private static final Log log = LogFactory.getLog(HTTPUtil.class);
+
+	/**
+	 * Reads an integer adapter property, falling back to the default value when the property is not set or is not
+	 * a valid number.
+	 *
+	 * @param properties   adapter properties.
+	 * @param name         name of the property.
+	 * @param defaultValue default value of the property.
+	 * @return the value of the property.
+	 */
+	public static int getIntProperty(Map<String, String> properties, String name, String defaultValue) {
+		String value = properties.get(name);
+		if (value == null || value.trim().isEmpty()) {
+			value = defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			log.warn("Invalid value '" + value + "' for " + name + ", using the default value " + defaultValue);
+			return Integer.parseInt(defaultValue);
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.device.mgt.iot.input.adapter.http.util;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of authentication results keyed by the hash of the token they were obtained for, so that a device
+ * posting repeatedly with the same token is validated once per token lifetime. The cache is split into segments,
+ * each of which is a least recently used map guarded by its own lock. Its hit, miss and eviction counts are exposed
+ * through JMX by the servlet of the adapter.
+ */
+public class TokenAuthenticationCache implements TokenAuthenticationCacheMBean {
+
+	private static final int SEGMENT_COUNT = 16;
+	private static final String TOKEN_HASH_ALGORITHM = "SHA-256";
+	private static final Charset TOKEN_CHARSET = Charset.forName("UTF-8");
+	private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+	private final Segment[] segments;
+	private final long maxTimeToLiveInMillis;
+	private final long invalidTokenTimeToLiveInMillis;
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * @param maxSize                        maximum number of tokens kept, the cache is disabled when it is not
+	 *                                       positive.
+	 * @param maxTimeToLiveInMillis          upper bound for keeping a valid token, regardless of its validity.
+	 * @param invalidTokenTimeToLiveInMillis time an invalid token is remembered.
+	 */
+	public TokenAuthenticationCache(int maxSize, long maxTimeToLiveInMillis, long invalidTokenTimeToLiveInMillis) {
+		this.maxTimeToLiveInMillis = maxTimeToLiveInMillis;
+		this.invalidTokenTimeToLiveInMillis = invalidTokenTimeToLiveInMillis;
+		if (maxSize > 0) {
+			int segmentCapacity = (maxSize + SEGMENT_COUNT - 1) / SEGMENT_COUNT;
+			segments = new Segment[SEGMENT_COUNT];
+			for (int i = 0; i < SEGMENT_COUNT; i++) {
+				segments[i] = new Segment(segmentCapacity, evictionCount);
+			}
+		} else {
+			segments = null;
+		}
+	}
+
+	/**
+	 * Returns the cached authentication result of the token. Callers get their own copy, so that changing it does
+	 * not affect the cached result.
+	 *
+	 * @return the authentication info or null if the token is not cached or the cached result has expired.
+	 */
+	public AuthenticationInfo get(String token) {
+		if (segments == null || token == null) {
+			return null;
+		}
+		String key = hash(token);
+		Segment segment = segmentFor(key);
+		CachedAuthentication cachedAuthentication;
+		synchronized (segment) {
+			cachedAuthentication = segment.get(key);
+			if (cachedAuthentication != null && cachedAuthentication.isExpired()) {
+				segment.remove(key);
+				cachedAuthentication = null;
+			}
+		}
+		if (cachedAuthentication == null) {
+			missCount.incrementAndGet();
+			return null;
+		}
+		hitCount.incrementAndGet();
+		return copyOf(cachedAuthentication.authenticationInfo);
+	}
+
+	/**
+	 * Caches the result of a token validation. A valid token is kept for its remaining validity, capped by the
+	 * maximum time to live, and an invalid token for the invalid token time to live.
+	 *
+	 * @param validityPeriodInMillis remaining validity of the token, a valid token without a known validity is
+	 *                               not cached.
+	 */
+	public void put(String token, AuthenticationInfo authenticationInfo, long validityPeriodInMillis) {
+		if (segments == null || token == null) {
+			return;
+		}
+		long timeToLive;
+		if (authenticationInfo.isAuthenticated()) {
+			timeToLive = Math.min(validityPeriodInMillis, maxTimeToLiveInMillis);
+		} else {
+			timeToLive = invalidTokenTimeToLiveInMillis;
+		}
+		if (timeToLive <= 0) {
+			return;
+		}
+		String key = hash(token);
+		Segment segment = segmentFor(key);
+		CachedAuthentication cachedAuthentication = new CachedAuthentication(copyOf(authenticationInfo),
+																			 System.currentTimeMillis() + timeToLive);
+		synchronized (segment) {
+			segment.put(key, cachedAuthentication);
+		}
+	}
+
+	@Override
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	@Override
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	@Override
+	public int getSize() {
+		if (segments == null) {
+			return 0;
+		}
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	private Segment segmentFor(String key) {
+		return segments[(key.hashCode() & Integer.MAX_VALUE) % SEGMENT_COUNT];
+	}
+
+	private static AuthenticationInfo copyOf(AuthenticationInfo authenticationInfo) {
+		AuthenticationInfo copy = new AuthenticationInfo();
+		copy.setAuthenticated(authenticationInfo.isAuthenticated());
+		copy.setUsername(authenticationInfo.getUsername());
+		copy.setTenantDomain(authenticationInfo.getTenantDomain());
+		copy.setTenantId(authenticationInfo.getTenantId());
+		String[] scopes = authenticationInfo.getScopes();
+		copy.setScopes(scopes != null ? scopes.clone() : null);
+		return copy;
+	}
+
+	/**
+	 * Tokens are kept as hashes so that the cache does not hold usable credentials.
+	 */
+	private static String hash(String token) {
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance(TOKEN_HASH_ALGORITHM).digest(token.getBytes(TOKEN_CHARSET));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(TOKEN_HASH_ALGORITHM + " is not supported by the JVM", e);
+		}
+		char[] hex = new char[digest.length * 2];
+		for (int i = 0; i < digest.length; i++) {
+			hex[i * 2] = HEX_CHARS[(digest[i] >> 4) & 0xF];
+			hex[i * 2 + 1] = HEX_CHARS[digest[i] & 0xF];
+		}
+		return new String(hex);
+	}
+
+	private static class Segment extends LinkedHashMap<String, CachedAuthentication> {
+		private final int capacity;
+		private final AtomicLong evictionCount;
+
+		private Segment(int capacity, AtomicLong evictionCount) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+			this.evictionCount = evictionCount;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedAuthentication> eldest) {
+			if (size() > capacity) {
+				evictionCount.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	private static class CachedAuthentication {
+		private final AuthenticationInfo authenticationInfo;
+		private final long expiryTime;
+
+		private CachedAuthentication(AuthenticationInfo authenticationInfo, long expiryTime) {
+			this.authenticationInfo = authenticationInfo;
+			this.expiryTime = expiryTime;
+		}
+
+		private boolean isExpired() {
+			return System.currentTimeMillis() >= expiryTime;
+		}
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.device.mgt.iot.input.adapter.http;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+import org.wso2.carbon.device.mgt.iot.input.adapter.http.oauth.OAuthAuthenticator;
+import org.wso2.carbon.device.mgt.iot.input.adapter.http.util.AuthenticationInfo;
+import org.wso2.carbon.device.mgt.iot.input.adapter.http.util.HTTPEventAdapterConstants;
+import org.wso2.carbon.event.input.adapter.core.InputEventAdapterConfiguration;
+import org.wso2.carbon.event.input.adapter.core.InputEventAdapterListener;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Class for holding unit-tests related to the authentication of HTTPMessageServlet, with and without http sessions.
+ */
+public class HTTPMessageServletTests {
+
+	private static final int TENANT_ID = -1234;
+	private static final String TOKEN = "a1b2c3d4";
+
+	private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+	@AfterClass
+	public void shutdownExecutor() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void testSessionAuthenticationIsTheDefault() throws Exception {
+		HTTPMessageServlet servlet = createServlet(null);
+		cacheToken(servlet, TOKEN);
+		FakeRequest firstRequest = new FakeRequest(TOKEN, new FakeSession());
+		Assert.assertTrue(checkAuthentication(servlet, firstRequest).isAuthenticated());
+		Assert.assertTrue(firstRequest.session.attributes.size() == 1, "Authentication was not kept in the session");
+
+		// A request of the same session is authenticated without a token
+		FakeRequest secondRequest = new FakeRequest(null, firstRequest.session);
+		AuthenticationInfo authenticationInfo = checkAuthentication(servlet, secondRequest);
+		Assert.assertTrue(authenticationInfo.isAuthenticated());
+		Assert.assertEquals(authenticationInfo.getTenantId(), TENANT_ID);
+		servlet.destroy();
+	}
+
+	@Test
+	public void testStatelessAuthenticationDoesNotUseSessions() throws Exception {
+		HTTPMessageServlet servlet = createServlet("true");
+		cacheToken(servlet, TOKEN);
+		FakeRequest request = new FakeRequest(TOKEN, new FakeSession());
+		Assert.assertTrue(checkAuthentication(servlet, request).isAuthenticated());
+		Assert.assertEquals(request.sessionRequestCount, 0, "A session was used in stateless mode");
+
+		// Each request has to carry its own token
+		FakeRequest requestWithoutToken = new FakeRequest(null, request.session);
+		Assert.assertFalse(checkAuthentication(servlet, requestWithoutToken).isAuthenticated());
+		Assert.assertEquals(requestWithoutToken.sessionRequestCount, 0, "A session was used in stateless mode");
+		servlet.destroy();
+	}
+
+	@Test
+	public void testStatelessAuthenticationCanBeDisabledExplicitly() throws Exception {
+		HTTPMessageServlet servlet = createServlet("false");
+		cacheToken(servlet, TOKEN);
+		FakeRequest request = new FakeRequest(TOKEN, new FakeSession());
+		Assert.assertTrue(checkAuthentication(servlet, request).isAuthenticated());
+		Assert.assertTrue(request.sessionRequestCount > 0, "Session was not used");
+		servlet.destroy();
+	}
+
+	private HTTPMessageServlet createServlet(String statelessAuthentication) {
+		Map<String, String> properties = new HashMap<>();
+		properties.put(HTTPEventAdapterConstants.EXPOSED_TRANSPORTS, "all");
+		properties.put(HTTPEventAdapterConstants.ADAPTER_CONF_CONTENT_VALIDATOR_CLASSNAME,
+					   HTTPEventAdapterConstants.DEFAULT);
+		properties.put(HTTPEventAdapterConstants.ADAPTER_CONF_CONTENT_TRANSFORMER_CLASSNAME,
+					   HTTPEventAdapterConstants.DEFAULT);
+		properties.put(HTTPEventAdapterConstants.MAXIMUM_HTTP_CONNECTION_PER_HOST, "2");
+		properties.put(HTTPEventAdapterConstants.MAXIMUM_TOTAL_HTTP_CONNECTION, "100");
+		if (statelessAuthentication != null) {
+			properties.put(HTTPEventAdapterConstants.STATELESS_AUTHENTICATION, statelessAuthentication);
+		}
+		InputEventAdapterConfiguration eventAdapterConfiguration = new InputEventAdapterConfiguration();
+		eventAdapterConfiguration.setName("test_receiver");
+		eventAdapterConfiguration.setProperties(properties);
+		InputEventAdapterListener eventAdapterListener = new InputEventAdapterListener() {
+			@Override
+			public void onEvent(Object event) {
+			}
+		};
+		return new HTTPMessageServlet(eventAdapterListener, TENANT_ID, eventAdapterConfiguration, executorService);
+	}
+
+	/**
+	 * Marks the token as validated, so that the authenticator does not call the token validation service.
+	 */
+	private static void cacheToken(HTTPMessageServlet servlet, String token) throws Exception {
+		Field authenticatorField = HTTPMessageServlet.class.getDeclaredField("oAuthAuthenticator");
+		authenticatorField.setAccessible(true);
+		OAuthAuthenticator oAuthAuthenticator = (OAuthAuthenticator) authenticatorField.get(servlet);
+		AuthenticationInfo authenticationInfo = new AuthenticationInfo();
+		authenticationInfo.setAuthenticated(true);
+		authenticationInfo.setUsername("admin");
+		authenticationInfo.setTenantDomain("carbon.super");
+		authenticationInfo.setTenantId(TENANT_ID);
+		oAuthAuthenticator.getTokenCache().put(token, authenticationInfo, 60000);
+	}
+
+	private static AuthenticationInfo checkAuthentication(HTTPMessageServlet servlet, FakeRequest request)
+			throws Exception {
+		Method checkAuthentication = HTTPMessageServlet.class.getDeclaredMethod("checkAuthentication",
+																				HttpServletRequest.class);
+		checkAuthentication.setAccessible(true);
+		return (AuthenticationInfo) checkAuthentication.invoke(servlet, request.proxy());
+	}
+
+	private static class FakeSession implements InvocationHandler {
+		private final Map<String, Object> attributes = new HashMap<>();
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			if ("getAttribute".equals(method.getName())) {
+				return attributes.get(args[0]);
+			} else if ("setAttribute".equals(method.getName())) {
+				attributes.put((String) args[0], args[1]);
+			}
+			return null;
+		}
+
+		private HttpSession proxy() {
+			return (HttpSession) Proxy.newProxyInstance(HttpSession.class.getClassLoader(),
+														new Class[]{HttpSession.class}, this);
+		}
+	}
+
+	private static class FakeRequest implements InvocationHandler {
+		private final String token;
+		private final FakeSession session;
+		private int sessionRequestCount;
+
+		private FakeRequest(String token, FakeSession session) {
+			this.token = token;
+			this.session = session;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			switch (method.getName()) {
+				case "getHeader":
+					return "Authorization".equals(args[0]) && token != null ? "Bearer " + token : null;
+				case "getSession":
+					sessionRequestCount++;
+					return session.proxy();
+				default:
+					return null;
+			}
+		}
+
+		private HttpServletRequest proxy() {
+			return (HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+															   new Class[]{HttpServletRequest.class}, this);
+		}
+	}
+}
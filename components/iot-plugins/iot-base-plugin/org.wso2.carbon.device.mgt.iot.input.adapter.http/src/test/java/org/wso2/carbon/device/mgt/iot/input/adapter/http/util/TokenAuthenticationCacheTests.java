@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.device.mgt.iot.input.adapter.http.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Class for holding unit-tests related to TokenAuthenticationCache class.
+ */
+public class TokenAuthenticationCacheTests {
+
+	private static final long TIME_TO_LIVE_IN_MILLIS = 60000;
+
+	@Test
+	public void testHitAndMissCounts() {
+		TokenAuthenticationCache tokenCache = new TokenAuthenticationCache(100, TIME_TO_LIVE_IN_MILLIS,
+																		   TIME_TO_LIVE_IN_MILLIS);
+		Assert.assertNull(tokenCache.get("token"));
+		tokenCache.put("token", authenticationInfo(true), TIME_TO_LIVE_IN_MILLIS);
+		Assert.assertEquals(tokenCache.get("token").getUsername(), "admin");
+		Assert.assertEquals(tokenCache.get("token").getUsername(), "admin");
+		Assert.assertEquals(tokenCache.getMissCount(), 1);
+		Assert.assertEquals(tokenCache.getHitCount(), 2);
+		Assert.assertEquals(tokenCache.getSize(), 1);
+	}
+
+	@Test
+	public void testCachedResultIsCopied() {
+		TokenAuthenticationCache tokenCache = new TokenAuthenticationCache(100, TIME_TO_LIVE_IN_MILLIS,
+																		   TIME_TO_LIVE_IN_MILLIS);
+		AuthenticationInfo authenticationInfo = authenticationInfo(true);
+		authenticationInfo.setScopes(new String[]{"perm:device:publish"});
+		tokenCache.put("token", authenticationInfo, TIME_TO_LIVE_IN_MILLIS);
+		authenticationInfo.setUsername("changed");
+		AuthenticationInfo cachedAuthenticationInfo = tokenCache.get("token");
+		cachedAuthenticationInfo.setTenantId(1);
+		cachedAuthenticationInfo.getScopes()[0] = "changed";
+
+		AuthenticationInfo otherAuthenticationInfo = tokenCache.get("token");
+		Assert.assertNotSame(otherAuthenticationInfo, cachedAuthenticationInfo);
+		Assert.assertEquals(otherAuthenticationInfo.getUsername(), "admin");
+		Assert.assertEquals(otherAuthenticationInfo.getTenantId(), -1234);
+		Assert.assertEquals(otherAuthenticationInfo.getScopes()[0], "perm:device:publish");
+		Assert.assertTrue(otherAuthenticationInfo.isAuthenticated());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedTokensAreEvicted() {
+		int maxSize = 32;
+		TokenAuthenticationCache tokenCache = new TokenAuthenticationCache(maxSize, TIME_TO_LIVE_IN_MILLIS,
+																		   TIME_TO_LIVE_IN_MILLIS);
+		int tokenCount = 1000;
+		for (int i = 0; i < tokenCount; i++) {
+			tokenCache.put("token-" + i, authenticationInfo(true), TIME_TO_LIVE_IN_MILLIS);
+		}
+		Assert.assertTrue(tokenCache.getSize() <= maxSize, "Cache grew beyond its size : " + tokenCache.getSize());
+		Assert.assertEquals(tokenCache.getEvictionCount(), tokenCount - tokenCache.getSize());
+		Assert.assertNotNull(tokenCache.get("token-" + (tokenCount - 1)));
+	}
+
+	@Test
+	public void testExpiredTokenIsNotReturned() throws InterruptedException {
+		TokenAuthenticationCache tokenCache = new TokenAuthenticationCache(100, TIME_TO_LIVE_IN_MILLIS, 50);
+		tokenCache.put("token", authenticationInfo(false), 0);
+		Assert.assertNotNull(tokenCache.get("token"));
+		Thread.sleep(100);
+		Assert.assertNull(tokenCache.get("token"));
+		Assert.assertEquals(tokenCache.getSize(), 0);
+		Assert.assertEquals(tokenCache.getEvictionCount(), 0);
+	}
+
+	@Test
+	public void testValidTokenWithoutValidityIsNotCached() {
+		TokenAuthenticationCache tokenCache = new TokenAuthenticationCache(100, TIME_TO_LIVE_IN_MILLIS,
+																		   TIME_TO_LIVE_IN_MILLIS);
+		tokenCache.put("token", authenticationInfo(true), 0);
+		Assert.assertNull(tokenCache.get("token"));
+	}
+
+	@Test
+	public void testDisabledCache() {
+		TokenAuthenticationCache tokenCache = new TokenAuthenticationCache(0, TIME_TO_LIVE_IN_MILLIS,
+																		   TIME_TO_LIVE_IN_MILLIS);
+		tokenCache.put("token", authenticationInfo(true), TIME_TO_LIVE_IN_MILLIS);
+		Assert.assertNull(tokenCache.get("token"));
+		Assert.assertEquals(tokenCache.getSize(), 0);
+	}
+
+	private static AuthenticationInfo authenticationInfo(boolean authenticated) {
+		AuthenticationInfo authenticationInfo = new AuthenticationInfo();
+		authenticationInfo.setAuthenticated(authenticated);
+		authenticationInfo.setUsername("admin");
+		authenticationInfo.setTenantDomain("carbon.super");
+		authenticationInfo.setTenantId(-1234);
+		return authenticationInfo;
+	}
+}
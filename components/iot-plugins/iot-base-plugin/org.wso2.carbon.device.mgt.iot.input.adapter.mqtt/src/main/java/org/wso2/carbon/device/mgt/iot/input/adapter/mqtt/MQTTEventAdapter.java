@@ -26,6 +26,7 @@ import org.wso2.carbon.event.input.adapter.core.exception.InputEventAdapterExcep
 import org.wso2.carbon.event.input.adapter.core.exception.TestConnectionNotSupportedException;
 import org.wso2.carbon.device.mgt.iot.input.adapter.mqtt.util.MQTTAdapterListener;
 import org.wso2.carbon.device.mgt.iot.input.adapter.mqtt.util.MQTTEventAdapterConstants;
+import org.wso2.carbon.device.mgt.iot.input.adapter.mqtt.util.MQTTUtil;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -62,6 +63,8 @@ public class MQTTEventAdapter implements InputEventAdapter {
             } else {
                 keepAlive = MQTTEventAdapterConstants.ADAPTER_CONF_DEFAULT_KEEP_ALIVE;
             }
+            MQTTUtil.getCredentialCache().setRefreshFraction(
+                    globalProperties.get(MQTTEventAdapterConstants.ADAPTER_CONF_TOKEN_REFRESH_FRACTION));
             mqttBrokerConnectionConfiguration = new MQTTBrokerConnectionConfiguration(
                     eventAdapterConfiguration.getProperties().get(MQTTEventAdapterConstants.ADAPTER_CONF_URL),
                     eventAdapterConfiguration.getProperties().get(MQTTEventAdapterConstants.ADAPTER_CONF_USERNAME),
@@ -70,7 +73,11 @@ public class MQTTEventAdapter implements InputEventAdapter {
                     eventAdapterConfiguration.getProperties().get(MQTTEventAdapterConstants.ADAPTER_CONF_CLEAN_SESSION),
                     keepAlive,
                     eventAdapterConfiguration.getProperties().get(MQTTEventAdapterConstants.ADAPTER_CONF_CONTENT_VALIDATOR_CLASSNAME),
-                    eventAdapterConfiguration.getProperties().get(MQTTEventAdapterConstants.ADAPTER_CONF_CONTENT_TRANSFORMER_CLASSNAME)
+                    eventAdapterConfiguration.getProperties().get(MQTTEventAdapterConstants.ADAPTER_CONF_CONTENT_TRANSFORMER_CLASSNAME),
+                    eventAdapterConfiguration.getProperties().get(MQTTEventAdapterConstants.ADAPTER_CONF_WORKER_POOL_SIZE),
+                    eventAdapterConfiguration.getProperties().get(MQTTEventAdapterConstants.ADAPTER_CONF_EVENT_QUEUE_SIZE),
+                    eventAdapterConfiguration.getProperties().get(MQTTEventAdapterConstants.ADAPTER_CONF_BATCH_SIZE),
+                    eventAdapterConfiguration.getProperties().get(MQTTEventAdapterConstants.ADAPTER_CONF_OVERFLOW_POLICY)
                     );
             mqttAdapterListener = new MQTTAdapterListener(mqttBrokerConnectionConfiguration,
                     eventAdapterConfiguration.getProperties().get(MQTTEventAdapterConstants.ADAPTER_MESSAGE_TOPIC),
@@ -122,6 +122,41 @@ public class MQTTEventAdapterFactory extends InputEventAdapterFactory {
         clientId.setHint(resourceBundle.getString(MQTTEventAdapterConstants.ADAPTER_CONF_CLIENTID_HINT));
         propertyList.add(clientId);
 
+        //Event processing worker pool size
+        Property workerPoolSize = new Property(MQTTEventAdapterConstants.ADAPTER_CONF_WORKER_POOL_SIZE);
+        workerPoolSize.setDisplayName(resourceBundle.getString(MQTTEventAdapterConstants.ADAPTER_CONF_WORKER_POOL_SIZE));
+        workerPoolSize.setRequired(false);
+        workerPoolSize.setDefaultValue(String.valueOf(MQTTEventAdapterConstants.ADAPTER_CONF_DEFAULT_WORKER_POOL_SIZE));
+        workerPoolSize.setHint(resourceBundle.getString(MQTTEventAdapterConstants.ADAPTER_CONF_WORKER_POOL_SIZE_HINT));
+        propertyList.add(workerPoolSize);
+
+        //Event queue size
+        Property eventQueueSize = new Property(MQTTEventAdapterConstants.ADAPTER_CONF_EVENT_QUEUE_SIZE);
+        eventQueueSize.setDisplayName(resourceBundle.getString(MQTTEventAdapterConstants.ADAPTER_CONF_EVENT_QUEUE_SIZE));
+        eventQueueSize.setRequired(false);
+        eventQueueSize.setDefaultValue(String.valueOf(MQTTEventAdapterConstants.ADAPTER_CONF_DEFAULT_EVENT_QUEUE_SIZE));
+        eventQueueSize.setHint(resourceBundle.getString(MQTTEventAdapterConstants.ADAPTER_CONF_EVENT_QUEUE_SIZE_HINT));
+        propertyList.add(eventQueueSize);
+
+        //Event batch size
+        Property batchSize = new Property(MQTTEventAdapterConstants.ADAPTER_CONF_BATCH_SIZE);
+        batchSize.setDisplayName(resourceBundle.getString(MQTTEventAdapterConstants.ADAPTER_CONF_BATCH_SIZE));
+        batchSize.setRequired(false);
+        batchSize.setDefaultValue(String.valueOf(MQTTEventAdapterConstants.ADAPTER_CONF_DEFAULT_BATCH_SIZE));
+        batchSize.setHint(resourceBundle.getString(MQTTEventAdapterConstants.ADAPTER_CONF_BATCH_SIZE_HINT));
+        propertyList.add(batchSize);
+
+        //Event queue overflow policy
+        Property overflowPolicy = new Property(MQTTEventAdapterConstants.ADAPTER_CONF_OVERFLOW_POLICY);
+        overflowPolicy.setDisplayName(resourceBundle.getString(MQTTEventAdapterConstants.ADAPTER_CONF_OVERFLOW_POLICY));
+        overflowPolicy.setRequired(false);
+        overflowPolicy.setOptions(new String[]{MQTTEventAdapterConstants.OVERFLOW_POLICY_DROP_OLDEST,
+                MQTTEventAdapterConstants.OVERFLOW_POLICY_DROP_NEWEST,
+                MQTTEventAdapterConstants.OVERFLOW_POLICY_BLOCK});
+        overflowPolicy.setDefaultValue(MQTTEventAdapterConstants.OVERFLOW_POLICY_DROP_OLDEST);
+        overflowPolicy.setHint(resourceBundle.getString(MQTTEventAdapterConstants.ADAPTER_CONF_OVERFLOW_POLICY_HINT));
+        propertyList.add(overflowPolicy);
+
         return propertyList;
     }
 
@@ -0,0 +1,105 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.carbon.device.mgt.iot.input.adapter.mqtt.util;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.mqtt.MQTTCredentialCache;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.mqtt.exception.MQTTCredentialException;
+import org.wso2.carbon.identity.jwt.client.extension.dto.AccessTokenInfo;
+import org.wso2.carbon.identity.jwt.client.extension.exception.JWTClientException;
+import org.wso2.carbon.identity.jwt.client.extension.service.JWTClientManagerService;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.KeyManagementException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Registers the MQTT input adapter client through the dynamic client registration endpoint and obtains a JWT
+ * grant based access token through the JWT client.
+ */
+class DCRCredentialIssuer implements MQTTCredentialCache.CredentialIssuer {
+
+    @Override
+    public MQTTCredentialCache.ClientCredentials registerClient(int tenantId, String username, String dcrUrlString)
+            throws MQTTCredentialException {
+        try {
+            URL dcrUrl = new URL(dcrUrlString);
+            HttpClient httpClient = MQTTUtil.getHttpClient(dcrUrl.getProtocol());
+            HttpPost postMethod = new HttpPost(dcrUrlString);
+            RegistrationProfile registrationProfile = new RegistrationProfile();
+            registrationProfile.setCallbackUrl(MQTTEventAdapterConstants.EMPTY_STRING);
+            registrationProfile.setGrantType(MQTTEventAdapterConstants.GRANT_TYPE);
+            registrationProfile.setOwner(username);
+            registrationProfile.setTokenScope(MQTTEventAdapterConstants.TOKEN_SCOPE);
+            registrationProfile.setApplicationType(MQTTEventAdapterConstants.APPLICATION_TYPE);
+            registrationProfile.setClientName(username + "_" + tenantId);
+            String jsonString = registrationProfile.toJSON();
+            StringEntity requestEntity = new StringEntity(jsonString, ContentType.APPLICATION_JSON);
+            postMethod.setEntity(requestEntity);
+            HttpResponse httpResponse = httpClient.execute(postMethod);
+            if (httpResponse == null) {
+                throw new MQTTCredentialException("No response received from the dcr endpoint " + dcrUrlString);
+            }
+            String response = MQTTUtil.getResponseString(httpResponse);
+            JSONParser jsonParser = new JSONParser();
+            JSONObject jsonPayload = (JSONObject) jsonParser.parse(response);
+            return new MQTTCredentialCache.ClientCredentials(
+                    (String) jsonPayload.get(MQTTEventAdapterConstants.CLIENT_ID),
+                    (String) jsonPayload.get(MQTTEventAdapterConstants.CLIENT_SECRET));
+        } catch (MalformedURLException e) {
+            throw new MQTTCredentialException("Invalid dcrUrl : " + dcrUrlString, e);
+        } catch (ParseException e) {
+            throw new MQTTCredentialException("error occurred while parsing client credential payload", e);
+        } catch (KeyManagementException | NoSuchAlgorithmException | KeyStoreException | IOException e) {
+            throw new MQTTCredentialException("Failed to create an https connection.", e);
+        }
+    }
+
+    @Override
+    public MQTTCredentialCache.AccessToken getAccessToken(int tenantId,
+                                                          MQTTCredentialCache.ClientCredentials clientCredentials,
+                                                          String username, String scopes)
+            throws MQTTCredentialException {
+        PrivilegedCarbonContext.startTenantFlow();
+        PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(tenantId, true);
+        PrivilegedCarbonContext.getThreadLocalCarbonContext().setUsername(username);
+        try {
+            JWTClientManagerService jwtClientManagerService = MQTTUtil.getJWTClientManagerService();
+            AccessTokenInfo accessTokenInfo = jwtClientManagerService.getJWTClient().getAccessToken(
+                    clientCredentials.getClientId(), clientCredentials.getClientSecret(), username, scopes);
+            return new MQTTCredentialCache.AccessToken(accessTokenInfo.getAccessToken(),
+                                                       accessTokenInfo.getExpiresIn());
+        } catch (JWTClientException e) {
+            throw new MQTTCredentialException("error occurred while parsing the response from JWT Client", e);
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+}
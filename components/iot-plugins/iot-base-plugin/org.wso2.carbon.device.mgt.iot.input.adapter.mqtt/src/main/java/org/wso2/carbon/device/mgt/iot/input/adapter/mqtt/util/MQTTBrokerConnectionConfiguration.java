@@ -17,6 +17,10 @@
 */
 package org.wso2.carbon.device.mgt.iot.input.adapter.mqtt.util;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.EventDispatcher;
+
 import java.util.Map;
 
 /**
@@ -24,6 +28,8 @@ import java.util.Map;
  */
 public class MQTTBrokerConnectionConfiguration {
 
+    private static final Log log = LogFactory.getLog(MQTTBrokerConnectionConfiguration.class);
+
     private String brokerUsername = null;
     private String brokerScopes = null;
     private boolean cleanSession = true;
@@ -32,6 +38,10 @@ public class MQTTBrokerConnectionConfiguration {
     private String dcrUrl;
     private String contentValidatorClassName;
     private String contentTransformerClassName;
+    private int workerPoolSize = MQTTEventAdapterConstants.ADAPTER_CONF_DEFAULT_WORKER_POOL_SIZE;
+    private int eventQueueSize = MQTTEventAdapterConstants.ADAPTER_CONF_DEFAULT_EVENT_QUEUE_SIZE;
+    private int batchSize = MQTTEventAdapterConstants.ADAPTER_CONF_DEFAULT_BATCH_SIZE;
+    private String overflowPolicy = MQTTEventAdapterConstants.OVERFLOW_POLICY_DROP_OLDEST;
 
     public String getBrokerScopes() {
         return brokerScopes;
@@ -65,9 +75,27 @@ public class MQTTBrokerConnectionConfiguration {
         return contentTransformerClassName;
     }
 
+    public int getWorkerPoolSize() {
+        return workerPoolSize;
+    }
+
+    public int getEventQueueSize() {
+        return eventQueueSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public String getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
     public MQTTBrokerConnectionConfiguration(String brokerUrl, String brokerUsername, String brokerScopes,
                                              String dcrUrl, String cleanSession, int keepAlive,
-                                             String contentValidatorClassName, String contentTransformerClassName) {
+                                             String contentValidatorClassName, String contentTransformerClassName,
+                                             String workerPoolSize, String eventQueueSize, String batchSize,
+                                             String overflowPolicy) {
         this.brokerUsername = brokerUsername;
         this.brokerScopes = brokerScopes;
         if (brokerScopes == null) {
@@ -81,5 +109,29 @@ public class MQTTBrokerConnectionConfiguration {
         }
         this.keepAlive = keepAlive;
         this.contentTransformerClassName = contentTransformerClassName;
+        this.workerPoolSize = parseInt(workerPoolSize, 0, this.workerPoolSize);
+        this.eventQueueSize = parseInt(eventQueueSize, 1, this.eventQueueSize);
+        this.batchSize = parseInt(batchSize, 1, this.batchSize);
+        if (overflowPolicy != null && !overflowPolicy.trim().isEmpty()) {
+            if (EventDispatcher.OVERFLOW_POLICIES.contains(overflowPolicy.trim())) {
+                this.overflowPolicy = overflowPolicy.trim();
+            } else {
+                log.warn("Unknown overflow policy '" + overflowPolicy + "', expected one of "
+                                 + EventDispatcher.OVERFLOW_POLICIES
+                                 + ". Using the default policy '" + this.overflowPolicy + "' instead.");
+            }
+        }
+    }
+
+    private static int parseInt(String value, int minValue, int defaultValue) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int parsedValue = Integer.parseInt(value.trim());
+            return parsedValue >= minValue ? parsedValue : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
     }
 }
@@ -0,0 +1,80 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.carbon.device.mgt.iot.input.adapter.mqtt.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the MQTT connections shared among input adapters. A connection is created when the first adapter with a
+ * given broker url, credentials and client id acquires it and is closed when the last of them releases it.
+ */
+public final class MQTTConnectionRegistry {
+
+    private static final Map<ConnectionKey, MQTTSharedConnection> connections = new HashMap<>();
+
+    private MQTTConnectionRegistry() {
+    }
+
+    public static synchronized MQTTSharedConnection acquire(
+            MQTTBrokerConnectionConfiguration mqttBrokerConnectionConfiguration, String mqttClientId, int tenantId) {
+        ConnectionKey key = new ConnectionKey(mqttBrokerConnectionConfiguration, mqttClientId, tenantId);
+        MQTTSharedConnection connection = connections.get(key);
+        if (connection == null) {
+            connection = new MQTTSharedConnection(mqttBrokerConnectionConfiguration, mqttClientId, tenantId);
+            connections.put(key, connection);
+        }
+        connection.retain();
+        connection.connect();
+        return connection;
+    }
+
+    /**
+     * Releases the connection, closing it if no adapter uses it anymore. The connection is closed while holding the
+     * registry lock, so that a concurrent acquire cannot open another client with the same client id meanwhile.
+     */
+    public static synchronized void release(MQTTSharedConnection connection) {
+        if (connection.release() > 0) {
+            return;
+        }
+        connections.values().remove(connection);
+        connection.close();
+    }
+
+    private static class ConnectionKey {
+        private final Object[] values;
+
+        private ConnectionKey(MQTTBrokerConnectionConfiguration configuration, String mqttClientId, int tenantId) {
+            this.values = new Object[]{configuration.getBrokerUrl(), configuration.getBrokerUsername(),
+                    configuration.getBrokerScopes(), configuration.getDcrUrl(), configuration.isCleanSession(),
+                    configuration.getKeepAlive(), mqttClientId, tenantId};
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ConnectionKey && Arrays.equals(values, ((ConnectionKey) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+    }
+}
@@ -18,62 +18,70 @@
 
 package org.wso2.carbon.device.mgt.iot.input.adapter.mqtt.util;
 
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.InvalidJsonException;
 import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.PathNotFoundException;
+import com.jayway.jsonpath.spi.JsonProvider;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.json.simple.JSONArray;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
 import org.wso2.carbon.device.mgt.iot.input.adapter.extension.ContentInfo;
 import org.wso2.carbon.device.mgt.iot.input.adapter.extension.ContentValidator;
 
 import java.util.Map;
 
 public class MQTTContentValidator implements ContentValidator {
-    private static final String JSON_ARRAY_START_CHAR = "[";
     private static final Log log = LogFactory.getLog(MQTTContentValidator.class);
 
+    private final JsonProvider jsonProvider = Configuration.defaultConfiguration().getProvider();
+    private final JsonPath deviceIdJsonPath = JsonPath.compile(MQTTEventAdapterConstants.DEVICE_ID_JSON_PATH);
+
     @Override
     public ContentInfo validate(Object msgPayload, Map<String, Object> dynamicParams) {
         String topic = (String) dynamicParams.get(MQTTEventAdapterConstants.TOPIC);
         String topics[] = topic.split("/");
-        String deviceIdJsonPath = MQTTEventAdapterConstants.DEVICE_ID_JSON_PATH;
         int deviceIdInTopicHierarchyLevelIndex = MQTTEventAdapterConstants.DEVICE_ID_TOPIC_HIERARCHY_INDEX;
         String deviceIdFromTopic = topics[deviceIdInTopicHierarchyLevelIndex];
         boolean status;
         String message = (String) msgPayload;
-        if (message.startsWith(JSON_ARRAY_START_CHAR)) {
-            status = processMultipleEvents(message, deviceIdFromTopic, deviceIdJsonPath);
+        Object document;
+        try {
+            // The payload is parsed only once and array elements are validated within the parsed document
+            document = jsonProvider.parse(message);
+        } catch (InvalidJsonException e) {
+            log.error("Invalid input " + message, e);
+            return new ContentInfo(false, msgPayload);
+        }
+        if (jsonProvider.isArray(document)) {
+            status = processMultipleEvents(document, deviceIdFromTopic);
         } else {
-            status = processSingleEvent(message, deviceIdFromTopic, deviceIdJsonPath);
+            status = processSingleEvent(document, deviceIdFromTopic);
         }
         return new ContentInfo(status, msgPayload);
     }
 
-    private boolean processSingleEvent(String msg, String deviceIdFromTopic, String deviceIdJsonPath) {
-        Object res = JsonPath.read(msg, deviceIdJsonPath);
-        String deviceIdFromContent = (res != null) ? res.toString() : "";
-        if (deviceIdFromContent.equals(deviceIdFromTopic)) {
-            return true;
+    private boolean processSingleEvent(Object event, String deviceIdFromTopic) {
+        if (!jsonProvider.isMap(event)) {
+            return false;
         }
-        return false;
+        Object res;
+        try {
+            res = deviceIdJsonPath.read(event);
+        } catch (PathNotFoundException e) {
+            return false;
+        }
+        String deviceIdFromContent = (res != null) ? res.toString() : "";
+        return deviceIdFromContent.equals(deviceIdFromTopic);
     }
 
-    private boolean processMultipleEvents(String msg, String deviceIdFromTopic, String deviceIdJsonPath) {
-        try {
-            JSONParser jsonParser = new JSONParser();
-            JSONArray jsonArray = (JSONArray) jsonParser.parse(msg);
-            boolean status = false;
-            for (int i = 0; i < jsonArray.size(); i++) {
-                status = processSingleEvent(jsonArray.get(i).toString(), deviceIdFromTopic, deviceIdJsonPath);
-                if (!status) {
-                    return false;
-                }
+    private boolean processMultipleEvents(Object events, String deviceIdFromTopic) {
+        boolean status = false;
+        for (Object event : jsonProvider.toIterable(events)) {
+            status = processSingleEvent(event, deviceIdFromTopic);
+            if (!status) {
+                return false;
             }
-            return status;
-        } catch (ParseException e) {
-            log.error("Invalid input " + msg, e);
-            return false;
         }
+        return status;
     }
 }
@@ -17,6 +17,7 @@
 */
 package org.wso2.carbon.device.mgt.iot.input.adapter.mqtt.util;
 
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.EventDispatcher;
 
 /**
  * This holds the constants related to mqtt event adapter.
@@ -44,9 +45,26 @@ public class MQTTEventAdapterConstants {
     public static final String ADAPTER_CONF_CLEAN_SESSION_HINT = "cleanSession.hint";
     public static final String ADAPTER_CONF_KEEP_ALIVE = "keepAlive";
     public static final int ADAPTER_CONF_DEFAULT_KEEP_ALIVE = 60000;
+    public static final String ADAPTER_CONF_TOKEN_REFRESH_FRACTION = "tokenRefreshFraction";
+    public static final String ADAPTER_CONF_WORKER_POOL_SIZE = "workerPoolSize";
+    public static final String ADAPTER_CONF_WORKER_POOL_SIZE_HINT = "workerPoolSize.hint";
+    public static final int ADAPTER_CONF_DEFAULT_WORKER_POOL_SIZE = 4;
+    public static final String ADAPTER_CONF_EVENT_QUEUE_SIZE = "eventQueueSize";
+    public static final String ADAPTER_CONF_EVENT_QUEUE_SIZE_HINT = "eventQueueSize.hint";
+    public static final int ADAPTER_CONF_DEFAULT_EVENT_QUEUE_SIZE = 10000;
+    public static final String ADAPTER_CONF_BATCH_SIZE = "batchSize";
+    public static final String ADAPTER_CONF_BATCH_SIZE_HINT = "batchSize.hint";
+    public static final int ADAPTER_CONF_DEFAULT_BATCH_SIZE = 100;
+    public static final String ADAPTER_CONF_OVERFLOW_POLICY = "overflowPolicy";
+    public static final String ADAPTER_CONF_OVERFLOW_POLICY_HINT = "overflowPolicy.hint";
+    public static final String OVERFLOW_POLICY_BLOCK = EventDispatcher.OVERFLOW_POLICY_BLOCK;
+    public static final String OVERFLOW_POLICY_DROP_OLDEST = EventDispatcher.OVERFLOW_POLICY_DROP_OLDEST;
+    public static final String OVERFLOW_POLICY_DROP_NEWEST = EventDispatcher.OVERFLOW_POLICY_DROP_NEWEST;
 
     public static final int INITIAL_RECONNECTION_DURATION = 4000;
     public static final int RECONNECTION_PROGRESS_FACTOR = 2;
+    public static final int DEFAULT_SUBSCRIPTION_QOS = 1;
+    public static final int DISCONNECT_QUIESCE_TIMEOUT_IN_MILLIS = 3000;
 
     public static final String EMPTY_STRING = "";
     public static final String GRANT_TYPE = "urn:ietf:params:oauth:grant-type:jwt-bearer refresh_token";
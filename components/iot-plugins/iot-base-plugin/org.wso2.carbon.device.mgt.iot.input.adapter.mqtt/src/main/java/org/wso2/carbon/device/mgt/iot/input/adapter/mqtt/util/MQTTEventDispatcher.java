@@ -0,0 +1,116 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.carbon.device.mgt.iot.input.adapter.mqtt.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.ContentInfo;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.ContentTransformer;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.ContentValidator;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.EventDispatcher;
+import org.wso2.carbon.event.input.adapter.core.InputEventAdapterListener;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decouples the MQTT client callback thread from event processing. The messages of a topic are processed in order
+ * by the same worker, and the tenant flow is started once per batch.
+ * <p/>
+ * The MQTT client acknowledges a message once it is queued, hence queued messages are lost if the server goes
+ * down. With a worker pool size of 0 the messages are instead processed on the callback thread, so that they are
+ * acknowledged only after they are processed.
+ */
+public class MQTTEventDispatcher extends EventDispatcher<MQTTEventDispatcher.MQTTEvent> {
+
+    private static final Log log = LogFactory.getLog(MQTTEventDispatcher.class);
+
+    private final int tenantId;
+    private final ContentValidator contentValidator;
+    private final ContentTransformer contentTransformer;
+    private final InputEventAdapterListener eventAdapterListener;
+
+    public MQTTEventDispatcher(MQTTBrokerConnectionConfiguration mqttBrokerConnectionConfiguration,
+                               ContentValidator contentValidator, ContentTransformer contentTransformer,
+                               InputEventAdapterListener eventAdapterListener, int tenantId) {
+        super(mqttBrokerConnectionConfiguration.getWorkerPoolSize(),
+              mqttBrokerConnectionConfiguration.getEventQueueSize(), mqttBrokerConnectionConfiguration.getBatchSize(),
+              mqttBrokerConnectionConfiguration.getOverflowPolicy());
+        this.contentValidator = contentValidator;
+        this.contentTransformer = contentTransformer;
+        this.eventAdapterListener = eventAdapterListener;
+        this.tenantId = tenantId;
+    }
+
+    public void dispatch(String topic, MqttMessage mqttMessage) {
+        dispatch(new MQTTEvent(topic, mqttMessage));
+    }
+
+    @Override
+    protected String getOrderingKey(MQTTEvent event) {
+        return event.topic;
+    }
+
+    @Override
+    protected void processBatch(List<MQTTEvent> batch, Map<String, Object> dynamicProperties) {
+        try {
+            PrivilegedCarbonContext.startTenantFlow();
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(tenantId);
+            for (MQTTEvent event : batch) {
+                try {
+                    processEvent(event, dynamicProperties);
+                } catch (RuntimeException e) {
+                    log.error("Error occurred while processing the event received on topic " + event.topic, e);
+                }
+            }
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+
+    private void processEvent(MQTTEvent event, Map<String, Object> dynamicProperties) {
+        String msgText = event.mqttMessage.toString();
+        if (log.isDebugEnabled()) {
+            log.debug("Event received in MQTT Event Adapter - " + msgText);
+        }
+        if (contentValidator != null && contentTransformer != null) {
+            dynamicProperties.clear();
+            dynamicProperties.put(MQTTEventAdapterConstants.TOPIC, event.topic);
+            msgText = (String) contentTransformer.transform(msgText, dynamicProperties);
+            ContentInfo contentInfo = contentValidator.validate(msgText, dynamicProperties);
+            if (contentInfo != null && contentInfo.isValidContent()) {
+                eventAdapterListener.onEvent(contentInfo.getMessage());
+            }
+        } else {
+            eventAdapterListener.onEvent(msgText);
+        }
+    }
+
+    static class MQTTEvent {
+        private final String topic;
+        private final MqttMessage mqttMessage;
+
+        private MQTTEvent(String topic, MqttMessage mqttMessage) {
+            this.topic = topic;
+            this.mqttMessage = mqttMessage;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.carbon.device.mgt.iot.input.adapter.mqtt.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
+import org.wso2.carbon.core.ServerStatus;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.mqtt.exception.MQTTCredentialException;
+import org.wso2.carbon.event.input.adapter.core.exception.InputEventAdapterRuntimeException;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A single MQTT broker connection shared by all the input adapters that use the same broker, credentials and
+ * client id. Topic subscriptions of the adapters are multiplexed over one {@link MqttAsyncClient} and every
+ * arrived message is routed to the adapter listeners whose topic filter matches it.
+ */
+public class MQTTSharedConnection implements MqttCallback, Runnable {
+
+    private static final Log log = LogFactory.getLog(MQTTSharedConnection.class);
+
+    private final MQTTBrokerConnectionConfiguration mqttBrokerConnectionConfiguration;
+    private final MQTTTopicFilterTrie<MQTTAdapterListener> subscriptions = new MQTTTopicFilterTrie<>();
+    private final MqttAsyncClient mqttClient;
+    private final MqttConnectOptions connectionOptions;
+    private final int tenantId;
+    private int referenceCount;
+    private volatile boolean connected;
+    private volatile boolean connecting;
+    private volatile boolean closed;
+
+    public MQTTSharedConnection(MQTTBrokerConnectionConfiguration mqttBrokerConnectionConfiguration,
+                                String mqttClientId, int tenantId) {
+        this.mqttBrokerConnectionConfiguration = mqttBrokerConnectionConfiguration;
+        this.tenantId = tenantId;
+        if (mqttClientId == null || mqttClientId.trim().isEmpty()) {
+            mqttClientId = MqttAsyncClient.generateClientId();
+        }
+
+        //SORTING messages until the server fetches them
+        String temp_directory = System.getProperty("java.io.tmpdir");
+        MqttDefaultFilePersistence dataStore = new MqttDefaultFilePersistence(temp_directory);
+
+        try {
+            connectionOptions = new MqttConnectOptions();
+            connectionOptions.setCleanSession(mqttBrokerConnectionConfiguration.isCleanSession());
+            connectionOptions.setKeepAliveInterval(mqttBrokerConnectionConfiguration.getKeepAlive());
+
+            mqttClient = new MqttAsyncClient(mqttBrokerConnectionConfiguration.getBrokerUrl(), mqttClientId,
+                                             dataStore);
+            mqttClient.setCallback(this);
+        } catch (MqttException e) {
+            log.error("Exception occurred while creating the client for MQTT broker at "
+                              + mqttBrokerConnectionConfiguration.getBrokerUrl());
+            throw new InputEventAdapterRuntimeException(e);
+        }
+    }
+
+    /**
+     * Registers an adapter listener for the given topic filter, subscribing to the broker if this is the first
+     * listener for the filter and the connection is already established. Otherwise the subscription is made once
+     * the connection succeeds.
+     */
+    public void subscribe(String topic, MQTTAdapterListener listener) {
+        if (subscriptions.add(topic, listener) && connected) {
+            try {
+                mqttClient.subscribe(topic, MQTTEventAdapterConstants.DEFAULT_SUBSCRIPTION_QOS);
+            } catch (MqttException e) {
+                log.error("Failed to subscribe to the topic " + topic, e);
+            }
+        }
+    }
+
+    public void unsubscribe(String topic, MQTTAdapterListener listener) {
+        if (subscriptions.remove(topic, listener) && connected) {
+            try {
+                if (!ServerStatus.getCurrentStatus().equals(ServerStatus.STATUS_SHUTTING_DOWN) ||
+                        mqttBrokerConnectionConfiguration.isCleanSession()) {
+                    mqttClient.unsubscribe(topic);
+                }
+            } catch (MqttException e) {
+                log.error("Can not unsubscribe from the destination " + topic, e);
+            }
+        }
+    }
+
+    synchronized void connect() {
+        if (connected || connecting || closed) {
+            return;
+        }
+        connecting = true;
+        new Thread(this).start();
+    }
+
+    void close() {
+        closed = true;
+        try {
+            if (connected) {
+                mqttClient.disconnect(MQTTEventAdapterConstants.DISCONNECT_QUIESCE_TIMEOUT_IN_MILLIS)
+                        .waitForCompletion(MQTTEventAdapterConstants.DISCONNECT_QUIESCE_TIMEOUT_IN_MILLIS);
+            }
+            mqttClient.close();
+        } catch (MqttException e) {
+            log.error("Error occurred while closing the connection to MQTT broker at "
+                              + mqttBrokerConnectionConfiguration.getBrokerUrl(), e);
+        }
+        connected = false;
+    }
+
+    int retain() {
+        return ++referenceCount;
+    }
+
+    int release() {
+        return --referenceCount;
+    }
+
+    @Override
+    public void connectionLost(Throwable throwable) {
+        log.warn("MQTT connection not reachable " + throwable);
+        connected = false;
+        connect();
+    }
+
+    @Override
+    public void messageArrived(String topic, MqttMessage mqttMessage) throws Exception {
+        List<MQTTAdapterListener> listeners = subscriptions.match(topic);
+        if (listeners.isEmpty() && log.isDebugEnabled()) {
+            log.debug("No adapter listener is subscribed to the topic " + topic);
+        }
+        for (MQTTAdapterListener listener : listeners) {
+            listener.onMessage(topic, mqttMessage);
+        }
+    }
+
+    @Override
+    public void deliveryComplete(IMqttDeliveryToken iMqttDeliveryToken) {
+
+    }
+
+    @Override
+    public void run() {
+        int connectionDuration = MQTTEventAdapterConstants.INITIAL_RECONNECTION_DURATION;
+        try {
+            while (!connected && !closed) {
+                try {
+                    connectionDuration = connectionDuration * MQTTEventAdapterConstants.RECONNECTION_PROGRESS_FACTOR;
+                    Thread.sleep(connectionDuration);
+                    setAccessToken();
+                    mqttClient.connect(connectionOptions).waitForCompletion();
+                    connected = true;
+                    subscribeAll();
+                    log.info("MQTT Connection successful");
+                } catch (InterruptedException e) {
+                    log.error("Interruption occurred while waiting for reconnection", e);
+                } catch (MqttException e) {
+                    if (e.getReasonCode() == MqttException.REASON_CODE_FAILED_AUTHENTICATION ||
+                            e.getReasonCode() == MqttException.REASON_CODE_NOT_AUTHORIZED) {
+                        invalidateAccessToken();
+                    }
+                    log.error("MQTT Exception occurred when connecting to the broker", e);
+                }
+            }
+        } finally {
+            connecting = false;
+        }
+    }
+
+    private void subscribeAll() throws MqttException {
+        String[] topics = subscriptions.getTopicFilters();
+        if (topics.length > 0) {
+            int[] qos = new int[topics.length];
+            Arrays.fill(qos, MQTTEventAdapterConstants.DEFAULT_SUBSCRIPTION_QOS);
+            mqttClient.subscribe(topics, qos);
+        }
+    }
+
+    private void setAccessToken() {
+        String username = mqttBrokerConnectionConfiguration.getBrokerUsername();
+        String dcrUrl = mqttBrokerConnectionConfiguration.getDcrUrl();
+        if (username != null && dcrUrl != null && !dcrUrl.isEmpty()) {
+            try {
+                connectionOptions.setUserName(MQTTUtil.getCredentialCache().getAccessToken(
+                        tenantId, username, mqttBrokerConnectionConfiguration.getBrokerScopes(), dcrUrl,
+                        MQTTUtil.getCredentialIssuer()));
+            } catch (MQTTCredentialException e) {
+                log.error("Failed to obtain the access token to connect to the broker", e);
+            }
+        }
+    }
+
+    private void invalidateAccessToken() {
+        String username = mqttBrokerConnectionConfiguration.getBrokerUsername();
+        String dcrUrl = mqttBrokerConnectionConfiguration.getDcrUrl();
+        if (username != null && dcrUrl != null && !dcrUrl.isEmpty()) {
+            MQTTUtil.getCredentialCache().invalidateAccessToken(
+                    tenantId, username, mqttBrokerConnectionConfiguration.getBrokerScopes(), dcrUrl);
+        }
+    }
+}
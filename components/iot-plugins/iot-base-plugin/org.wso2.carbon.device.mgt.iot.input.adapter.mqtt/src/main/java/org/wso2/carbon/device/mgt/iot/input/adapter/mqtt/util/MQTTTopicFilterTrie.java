@@ -0,0 +1,185 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.carbon.device.mgt.iot.input.adapter.mqtt.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Maps MQTT topic filters, including the '+' and '#' wildcards, to the values subscribed with them so that the
+ * values interested in a published topic are found by walking the topic levels once.
+ *
+ * @param <T> type of the subscribed values
+ */
+public class MQTTTopicFilterTrie<T> {
+
+    private static final String TOPIC_LEVEL_SEPARATOR = "/";
+    private static final String SINGLE_LEVEL_WILDCARD = "+";
+    private static final String MULTI_LEVEL_WILDCARD = "#";
+    private static final String SYSTEM_TOPIC_PREFIX = "$";
+
+    private final Node<T> root = new Node<>();
+    private final Map<String, Integer> filterCounts = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Adds a value against the given topic filter.
+     *
+     * @return true if this is the first value subscribed with the filter.
+     */
+    public boolean add(String topicFilter, T value) {
+        lock.writeLock().lock();
+        try {
+            Node<T> node = root;
+            for (String level : split(topicFilter)) {
+                Node<T> child = node.children.get(level);
+                if (child == null) {
+                    child = new Node<>();
+                    node.children.put(level, child);
+                }
+                node = child;
+            }
+            if (!node.values.add(value)) {
+                return false;
+            }
+            Integer count = filterCounts.get(topicFilter);
+            filterCounts.put(topicFilter, count == null ? 1 : count + 1);
+            return count == null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a value subscribed with the given topic filter.
+     *
+     * @return true if no value is subscribed with the filter anymore.
+     */
+    public boolean remove(String topicFilter, T value) {
+        lock.writeLock().lock();
+        try {
+            if (!remove(root, split(topicFilter), 0, value)) {
+                return false;
+            }
+            Integer count = filterCounts.get(topicFilter);
+            if (count == null || count <= 1) {
+                filterCounts.remove(topicFilter);
+                return true;
+            }
+            filterCounts.put(topicFilter, count - 1);
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the values whose topic filter matches the given topic name.
+     */
+    public List<T> match(String topic) {
+        Set<T> matches = new LinkedHashSet<>();
+        lock.readLock().lock();
+        try {
+            match(root, split(topic), 0, topic.startsWith(SYSTEM_TOPIC_PREFIX), matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new ArrayList<>(matches);
+    }
+
+    /**
+     * Returns the topic filters that currently have at least one value subscribed.
+     */
+    public String[] getTopicFilters() {
+        lock.readLock().lock();
+        try {
+            return filterCounts.keySet().toArray(new String[filterCounts.size()]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        lock.readLock().lock();
+        try {
+            return filterCounts.isEmpty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean remove(Node<T> node, String[] levels, int index, T value) {
+        if (index == levels.length) {
+            return node.values.remove(value);
+        }
+        Node<T> child = node.children.get(levels[index]);
+        if (child == null) {
+            return false;
+        }
+        boolean removed = remove(child, levels, index + 1, value);
+        if (removed && child.isEmpty()) {
+            node.children.remove(levels[index]);
+        }
+        return removed;
+    }
+
+    private void match(Node<T> node, String[] levels, int index, boolean systemTopic, Set<T> matches) {
+        // Wildcards at the first level must not match topics starting with '$'
+        boolean wildcardsAllowed = !(systemTopic && index == 0);
+        if (wildcardsAllowed) {
+            Node<T> multiLevelNode = node.children.get(MULTI_LEVEL_WILDCARD);
+            if (multiLevelNode != null) {
+                matches.addAll(multiLevelNode.values);
+            }
+        }
+        if (index == levels.length) {
+            matches.addAll(node.values);
+            return;
+        }
+        Node<T> child = node.children.get(levels[index]);
+        if (child != null) {
+            match(child, levels, index + 1, systemTopic, matches);
+        }
+        if (wildcardsAllowed) {
+            Node<T> singleLevelNode = node.children.get(SINGLE_LEVEL_WILDCARD);
+            if (singleLevelNode != null) {
+                match(singleLevelNode, levels, index + 1, systemTopic, matches);
+            }
+        }
+    }
+
+    private static String[] split(String topic) {
+        return topic.split(TOPIC_LEVEL_SEPARATOR, -1);
+    }
+
+    private static class Node<T> {
+        private final Map<String, Node<T>> children = new HashMap<>();
+        private final Set<T> values = new LinkedHashSet<>();
+
+        private boolean isEmpty() {
+            return children.isEmpty() && values.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.input.adapter.mqtt.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.ContentInfo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class for holding unit-tests related to MQTTContentValidator class.
+ */
+public class MQTTContentValidatorTests {
+
+    private static final String TOPIC = "carbon.super/firealarm/device1/temperature";
+
+    private final MQTTContentValidator contentValidator = new MQTTContentValidator();
+
+    @Test
+    public void testEventOfTopicDeviceIsValid() {
+        String payload = event("device1");
+        ContentInfo contentInfo = contentValidator.validate(payload, dynamicParams());
+        Assert.assertTrue(contentInfo.isValidContent());
+        Assert.assertSame(contentInfo.getMessage(), payload);
+    }
+
+    @Test
+    public void testEventOfOtherDeviceIsInvalid() {
+        Assert.assertFalse(contentValidator.validate(event("device2"), dynamicParams()).isValidContent());
+    }
+
+    @Test
+    public void testEventWithoutDeviceIdIsInvalid() {
+        Assert.assertFalse(contentValidator.validate("{\"event\":{\"payloadData\":{}}}", dynamicParams())
+                                   .isValidContent());
+    }
+
+    @Test
+    public void testArrayOfTopicDeviceEventsIsValid() {
+        String payload = "[" + event("device1") + "," + event("device1") + "]";
+        Assert.assertTrue(contentValidator.validate(payload, dynamicParams()).isValidContent());
+    }
+
+    @Test
+    public void testArrayWithEventOfOtherDeviceIsInvalid() {
+        String payload = "[" + event("device1") + "," + event("device2") + "]";
+        Assert.assertFalse(contentValidator.validate(payload, dynamicParams()).isValidContent());
+    }
+
+    @Test
+    public void testEmptyArrayIsInvalid() {
+        Assert.assertFalse(contentValidator.validate("[]", dynamicParams()).isValidContent());
+    }
+
+    @Test
+    public void testArrayOfNonObjectsIsInvalid() {
+        Assert.assertFalse(contentValidator.validate("[\"device1\"]", dynamicParams()).isValidContent());
+    }
+
+    @Test
+    public void testMalformedPayloadIsInvalid() {
+        Assert.assertFalse(contentValidator.validate("{\"event\":", dynamicParams()).isValidContent());
+    }
+
+    private static String event(String deviceId) {
+        return "{\"event\":{\"metaData\":{\"deviceId\":\"" + deviceId + "\"},\"payloadData\":{\"temperature\":27}}}";
+    }
+
+    private static Map<String, Object> dynamicParams() {
+        Map<String, Object> dynamicParams = new HashMap<>();
+        dynamicParams.put(MQTTEventAdapterConstants.TOPIC, TOPIC);
+        return dynamicParams;
+    }
+}
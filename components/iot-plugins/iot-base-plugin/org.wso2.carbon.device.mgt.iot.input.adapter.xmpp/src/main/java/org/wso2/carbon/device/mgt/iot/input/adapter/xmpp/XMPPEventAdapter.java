@@ -78,7 +78,10 @@ public class XMPPEventAdapter implements InputEventAdapter {
                                                                           .ADAPTER_CONF_CONTENT_VALIDATOR_CLASSNAME),
                         eventAdapterConfiguration.getProperties().get(XMPPEventAdapterConstants.ADAPTER_CONF_RECIEVER_JID),
                         eventAdapterConfiguration.getProperties().get(XMPPEventAdapterConstants
-                                                                              .ADAPTER_CONF_CONTENT_TRANSFORMER_CLASSNAME)
+                                                                              .ADAPTER_CONF_CONTENT_TRANSFORMER_CLASSNAME),
+                        eventAdapterConfiguration.getProperties().get(XMPPEventAdapterConstants.ADAPTER_CONF_WORKER_POOL_SIZE),
+                        eventAdapterConfiguration.getProperties().get(XMPPEventAdapterConstants.ADAPTER_CONF_EVENT_QUEUE_SIZE),
+                        eventAdapterConfiguration.getProperties().get(XMPPEventAdapterConstants.ADAPTER_CONF_OVERFLOW_POLICY)
                     );
 
             xmppAdapterListener = new XMPPAdapterListener(xmppServerConnectionConfiguration,
@@ -103,14 +106,17 @@ public class XMPPEventAdapter implements InputEventAdapter {
 
     @Override
     public void connect() {
-        if (xmppAdapterListener.isConnectionInitialized()) {
+        if (!xmppAdapterListener.isConnectionInitialized()) {
             xmppAdapterListener.createConnection();
+            xmppAdapterListener.registerMBean(eventAdapterConfiguration.getName(),
+                                              PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId());
         }
     }
 
     @Override
     public void disconnect() {
         if (xmppAdapterListener != null) {
+            xmppAdapterListener.unregisterMBean();
             xmppAdapterListener.stopListener(eventAdapterConfiguration.getName());
         }
     }
@@ -115,6 +115,30 @@ public class XMPPEventAdapterFactory extends InputEventAdapterFactory {
                 resourceBundle.getString(XMPPEventAdapterConstants.ADAPTER_CONF_CONTENT_TRANSFORMER_CLASSNAME_HINT));
         contentTransformer.setDefaultValue(XMPPEventAdapterConstants.DEFAULT);
 
+        //Event processing worker pool size
+        Property workerPoolSize = new Property(XMPPEventAdapterConstants.ADAPTER_CONF_WORKER_POOL_SIZE);
+        workerPoolSize.setDisplayName(resourceBundle.getString(XMPPEventAdapterConstants.ADAPTER_CONF_WORKER_POOL_SIZE));
+        workerPoolSize.setRequired(false);
+        workerPoolSize.setDefaultValue(String.valueOf(XMPPEventAdapterConstants.ADAPTER_CONF_DEFAULT_WORKER_POOL_SIZE));
+        workerPoolSize.setHint(resourceBundle.getString(XMPPEventAdapterConstants.ADAPTER_CONF_WORKER_POOL_SIZE_HINT));
+
+        //Event queue size
+        Property eventQueueSize = new Property(XMPPEventAdapterConstants.ADAPTER_CONF_EVENT_QUEUE_SIZE);
+        eventQueueSize.setDisplayName(resourceBundle.getString(XMPPEventAdapterConstants.ADAPTER_CONF_EVENT_QUEUE_SIZE));
+        eventQueueSize.setRequired(false);
+        eventQueueSize.setDefaultValue(String.valueOf(XMPPEventAdapterConstants.ADAPTER_CONF_DEFAULT_EVENT_QUEUE_SIZE));
+        eventQueueSize.setHint(resourceBundle.getString(XMPPEventAdapterConstants.ADAPTER_CONF_EVENT_QUEUE_SIZE_HINT));
+
+        //Event queue overflow policy
+        Property overflowPolicy = new Property(XMPPEventAdapterConstants.ADAPTER_CONF_OVERFLOW_POLICY);
+        overflowPolicy.setDisplayName(resourceBundle.getString(XMPPEventAdapterConstants.ADAPTER_CONF_OVERFLOW_POLICY));
+        overflowPolicy.setRequired(false);
+        overflowPolicy.setOptions(new String[]{XMPPEventAdapterConstants.OVERFLOW_POLICY_DROP_OLDEST,
+                XMPPEventAdapterConstants.OVERFLOW_POLICY_DROP_NEWEST,
+                XMPPEventAdapterConstants.OVERFLOW_POLICY_BLOCK});
+        overflowPolicy.setDefaultValue(XMPPEventAdapterConstants.OVERFLOW_POLICY_DROP_OLDEST);
+        overflowPolicy.setHint(resourceBundle.getString(XMPPEventAdapterConstants.ADAPTER_CONF_OVERFLOW_POLICY_HINT));
+
         propertyList.add(host);
         propertyList.add(port);
         propertyList.add(userName);
@@ -124,6 +148,9 @@ public class XMPPEventAdapterFactory extends InputEventAdapterFactory {
         propertyList.add(contentValidator);
         propertyList.add(jid);
         propertyList.add(contentTransformer);
+        propertyList.add(workerPoolSize);
+        propertyList.add(eventQueueSize);
+        propertyList.add(overflowPolicy);
         return propertyList;
     }
 
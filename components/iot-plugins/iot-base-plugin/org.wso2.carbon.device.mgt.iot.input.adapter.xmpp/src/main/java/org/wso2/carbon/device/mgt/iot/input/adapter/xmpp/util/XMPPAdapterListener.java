@@ -31,30 +31,32 @@ import org.jivesoftware.smack.filter.PacketTypeFilter;
 import org.jivesoftware.smack.filter.ToContainsFilter;
 import org.jivesoftware.smack.packet.Message;
 import org.jivesoftware.smack.packet.Packet;
-import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.core.ServerStatus;
-import org.wso2.carbon.device.mgt.iot.input.adapter.extension.ContentInfo;
 import org.wso2.carbon.device.mgt.iot.input.adapter.extension.ContentTransformer;
 import org.wso2.carbon.device.mgt.iot.input.adapter.extension.ContentValidator;
 import org.wso2.carbon.device.mgt.iot.input.adapter.extension.DefaultContentTransformer;
 import org.wso2.carbon.device.mgt.iot.input.adapter.extension.DefaultContentValidator;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.util.AdapterMBeanUtil;
 import org.wso2.carbon.device.mgt.iot.input.adapter.xmpp.exception.XMPPContentInitializationException;
 import org.wso2.carbon.event.input.adapter.core.InputEventAdapterListener;
 import org.wso2.carbon.event.input.adapter.core.exception.InputEventAdapterRuntimeException;
-import java.util.HashMap;
-import java.util.Map;
 
-public class XMPPAdapterListener implements Runnable {
+import javax.management.ObjectName;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class XMPPAdapterListener implements Runnable, XMPPAdapterListenerMBean {
     private static final Log log = LogFactory.getLog(XMPPAdapterListener.class);
 
     private XMPPConnection xmppConnection;
     private XMPPServerConnectionConfiguration xmppServerConnectionConfiguration;
     private int tenantId;
-    private boolean connectionSucceeded = false;
+    private volatile boolean connectionSucceeded = false;
     private ContentValidator contentValidator;
     private ContentTransformer contentTransformer;
     private PacketListener packetListener;
     private boolean connectionInitialized;
+    private XMPPEventDispatcher eventDispatcher;
+    private volatile ObjectName mBeanName;
 
     private InputEventAdapterListener eventAdapterListener = null;
 
@@ -108,7 +110,8 @@ public class XMPPAdapterListener implements Runnable {
                               + xmppServerConnectionConfiguration.getHost());
             throw new InputEventAdapterRuntimeException(e);
         }
-
+        eventDispatcher = new XMPPEventDispatcher(xmppServerConnectionConfiguration, contentValidator,
+                                                  contentTransformer, eventAdapterListener, tenantId);
     }
 
     public void startListener() throws XMPPException {
@@ -132,6 +135,7 @@ public class XMPPAdapterListener implements Runnable {
         } catch (XMPPException e) {
             String errorMsg = "Login attempt to the XMPP Server  with username - " + username + " failed.";
             log.info(errorMsg);
+            xmppConnection.disconnect();
             throw new InputEventAdapterRuntimeException(errorMsg, e);
         }
     }
@@ -146,6 +150,7 @@ public class XMPPAdapterListener implements Runnable {
         }
         //This is to stop all running reconnection threads
         connectionSucceeded = true;
+        eventDispatcher.stop();
     }
 
     protected void setFilterOnReceiver(String receiverJID) {
@@ -155,71 +160,64 @@ public class XMPPAdapterListener implements Runnable {
             @Override
             public void processPacket(Packet packet) {
                 if (packet instanceof Message) {
-                    final Message xmppMessage = (Message) packet;
-                    Thread msgProcessThread = new Thread() {
-                        public void run() {
-                            processIncomingMessage(xmppMessage);
-                        }
-                    };
-                    msgProcessThread.start();
+                    eventDispatcher.dispatch((Message) packet);
                 }
             }
         };
         xmppConnection.addPacketListener(packetListener, packetFilter);
     }
 
-    public void processIncomingMessage(Message xmppMessage) {
-        try {
-            String from = xmppMessage.getFrom();
-            String subject = xmppMessage.getSubject();
-            String message = xmppMessage.getBody();
-            if (log.isDebugEnabled()) {
-                log.debug(message);
-            }
-            PrivilegedCarbonContext.startTenantFlow();
-            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(tenantId);
+    @Override
+    public int getQueueDepth() {
+        return eventDispatcher.getQueueDepth();
+    }
 
-            if (log.isDebugEnabled()) {
-                log.debug("Event received in MQTT Event Adapter - " + message);
-            }
+    @Override
+    public long getDroppedEventCount() {
+        return eventDispatcher.getDroppedEventCount();
+    }
 
-            if (contentValidator != null && contentTransformer != null) {
-                Map<String, Object> dynamicParmaters = new HashMap<>();
-                dynamicParmaters.put(XMPPEventAdapterConstants.FROM_KEY, from);
-                dynamicParmaters.put(XMPPEventAdapterConstants.SUBJECT_KEY, subject);
-                message = (String) contentTransformer.transform(message, dynamicParmaters);
-                ContentInfo contentInfo = contentValidator.validate(message, dynamicParmaters);
-                if (contentInfo != null && contentInfo.isValidContent()) {
-                    eventAdapterListener.onEvent(contentInfo.getMessage());
-                }
-            } else {
-                eventAdapterListener.onEvent(message);
-            }
-        } finally {
-            PrivilegedCarbonContext.endTenantFlow();
-        }
+    public void registerMBean(String adapterName, int tenantId) {
+        mBeanName = AdapterMBeanUtil.registerMBean(this, XMPPEventAdapterConstants.MBEAN_TYPE, tenantId, adapterName);
+    }
+
+    public void unregisterMBean() {
+        ObjectName name = mBeanName;
+        mBeanName = null;
+        AdapterMBeanUtil.unregisterMBean(name);
     }
 
     @Override
     public void run() {
+        int connectionDuration = XMPPEventAdapterConstants.INITIAL_RECONNECTION_DURATION;
         while (!connectionSucceeded) {
-            int connectionDuration = XMPPEventAdapterConstants.INITIAL_RECONNECTION_DURATION;
             try {
-                connectionDuration = connectionDuration * XMPPEventAdapterConstants.RECONNECTION_PROGRESS_FACTOR;
-                Thread.sleep(connectionDuration);
+                Thread.sleep(connectionDuration + (long) (ThreadLocalRandom.current().nextDouble()
+                        * connectionDuration * XMPPEventAdapterConstants.RECONNECTION_JITTER_FACTOR));
+                if (connectionSucceeded) {
+                    // The listener was stopped while waiting
+                    return;
+                }
                 startListener();
                 connectionSucceeded = true;
                 log.info("XMPP Connection successful");
             } catch (InterruptedException e) {
                 log.error("Interruption occurred while waiting for reconnection", e);
+                Thread.currentThread().interrupt();
+                return;
             } catch (XMPPException e) {
                 log.error("XMPP Exception occurred when starting listener", e);
+            } catch (InputEventAdapterRuntimeException e) {
+                log.error("Error occurred when starting listener", e);
             }
+            connectionDuration = Math.min(connectionDuration * XMPPEventAdapterConstants.RECONNECTION_PROGRESS_FACTOR,
+                                          XMPPEventAdapterConstants.MAX_RECONNECTION_DURATION);
         }
     }
 
     public void createConnection() {
         connectionInitialized = true;
+        eventDispatcher.start();
         new Thread(this).start();
     }
 
@@ -17,6 +17,7 @@
 */
 package org.wso2.carbon.device.mgt.iot.input.adapter.xmpp.util;
 
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.EventDispatcher;
 
 /**
  * This holds the constants related to xmpp event adapter.
@@ -47,8 +48,26 @@ public class XMPPEventAdapterConstants {
     public static final int DEFAULT_XMPP_PORT = 5222;
     public static final int DEFAULT_TIMEOUT_INTERVAL = 5000;
 
-    public static int INITIAL_RECONNECTION_DURATION = 4000;
+    public static final String ADAPTER_CONF_WORKER_POOL_SIZE = "workerPoolSize";
+    public static final String ADAPTER_CONF_WORKER_POOL_SIZE_HINT = "workerPoolSize.hint";
+    public static final int ADAPTER_CONF_DEFAULT_WORKER_POOL_SIZE = 4;
+    public static final String ADAPTER_CONF_EVENT_QUEUE_SIZE = "eventQueueSize";
+    public static final String ADAPTER_CONF_EVENT_QUEUE_SIZE_HINT = "eventQueueSize.hint";
+    public static final int ADAPTER_CONF_DEFAULT_EVENT_QUEUE_SIZE = 10000;
+    public static final String ADAPTER_CONF_OVERFLOW_POLICY = "overflowPolicy";
+    public static final String ADAPTER_CONF_OVERFLOW_POLICY_HINT = "overflowPolicy.hint";
+    public static final String OVERFLOW_POLICY_BLOCK = EventDispatcher.OVERFLOW_POLICY_BLOCK;
+    public static final String OVERFLOW_POLICY_DROP_OLDEST = EventDispatcher.OVERFLOW_POLICY_DROP_OLDEST;
+    public static final String OVERFLOW_POLICY_DROP_NEWEST = EventDispatcher.OVERFLOW_POLICY_DROP_NEWEST;
+    public static final int WORKER_BATCH_SIZE = 100;
+
+    public static final int INITIAL_RECONNECTION_DURATION = 4000;
     public static final int RECONNECTION_PROGRESS_FACTOR = 2;
+    public static final int MAX_RECONNECTION_DURATION = 300000;
+    // fraction of the reconnection duration added at random, so that adapters do not reconnect in lockstep
+    public static final double RECONNECTION_JITTER_FACTOR = 0.5;
+
+    public static final String MBEAN_TYPE = "XMPPInputAdapter";
 
     public static final String DEFAULT = "default";
     public static final String FROM_KEY = "from";
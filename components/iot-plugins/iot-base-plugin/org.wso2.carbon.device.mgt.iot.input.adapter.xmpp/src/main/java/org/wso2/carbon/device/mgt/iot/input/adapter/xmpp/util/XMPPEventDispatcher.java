@@ -0,0 +1,100 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.carbon.device.mgt.iot.input.adapter.xmpp.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jivesoftware.smack.packet.Message;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.ContentInfo;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.ContentTransformer;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.ContentValidator;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.EventDispatcher;
+import org.wso2.carbon.event.input.adapter.core.InputEventAdapterListener;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decouples the XMPP packet listener from message processing. The messages of a sender JID are processed in the
+ * order they were received by the same worker, while different senders are processed in parallel.
+ */
+public class XMPPEventDispatcher extends EventDispatcher<Message> {
+
+    private static final Log log = LogFactory.getLog(XMPPEventDispatcher.class);
+
+    private final int tenantId;
+    private final ContentValidator contentValidator;
+    private final ContentTransformer contentTransformer;
+    private final InputEventAdapterListener eventAdapterListener;
+
+    public XMPPEventDispatcher(XMPPServerConnectionConfiguration xmppServerConnectionConfiguration,
+                               ContentValidator contentValidator, ContentTransformer contentTransformer,
+                               InputEventAdapterListener eventAdapterListener, int tenantId) {
+        super(xmppServerConnectionConfiguration.getWorkerPoolSize(),
+              xmppServerConnectionConfiguration.getEventQueueSize(), XMPPEventAdapterConstants.WORKER_BATCH_SIZE,
+              xmppServerConnectionConfiguration.getOverflowPolicy());
+        this.contentValidator = contentValidator;
+        this.contentTransformer = contentTransformer;
+        this.eventAdapterListener = eventAdapterListener;
+        this.tenantId = tenantId;
+    }
+
+    @Override
+    protected String getOrderingKey(Message xmppMessage) {
+        return xmppMessage.getFrom();
+    }
+
+    @Override
+    protected void processBatch(List<Message> batch, Map<String, Object> dynamicProperties) {
+        try {
+            PrivilegedCarbonContext.startTenantFlow();
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(tenantId);
+            for (Message xmppMessage : batch) {
+                try {
+                    processMessage(xmppMessage, dynamicProperties);
+                } catch (RuntimeException e) {
+                    log.error("Error occurred while processing the message received from " + xmppMessage.getFrom(),
+                              e);
+                }
+            }
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+
+    private void processMessage(Message xmppMessage, Map<String, Object> dynamicProperties) {
+        String message = xmppMessage.getBody();
+        if (log.isDebugEnabled()) {
+            log.debug("Event received in XMPP Event Adapter - " + message);
+        }
+        if (contentValidator != null && contentTransformer != null) {
+            dynamicProperties.clear();
+            dynamicProperties.put(XMPPEventAdapterConstants.FROM_KEY, xmppMessage.getFrom());
+            dynamicProperties.put(XMPPEventAdapterConstants.SUBJECT_KEY, xmppMessage.getSubject());
+            message = (String) contentTransformer.transform(message, dynamicProperties);
+            ContentInfo contentInfo = contentValidator.validate(message, dynamicProperties);
+            if (contentInfo != null && contentInfo.isValidContent()) {
+                eventAdapterListener.onEvent(contentInfo.getMessage());
+            }
+        } else {
+            eventAdapterListener.onEvent(message);
+        }
+    }
+}
@@ -17,13 +17,17 @@
 */
 package org.wso2.carbon.device.mgt.iot.input.adapter.xmpp.util;
 
-import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.EventDispatcher;
 
 /**
- * This holds the configurations related to MQTT Broker.
+ * This holds the configurations related to the XMPP Server.
  */
 public class XMPPServerConnectionConfiguration {
 
+    private static final Log log = LogFactory.getLog(XMPPServerConnectionConfiguration.class);
+
     private String host;
     private int port;
     private String username;
@@ -33,6 +37,9 @@ public class XMPPServerConnectionConfiguration {
     private String jid;
     private String contentValidatorClassName;
     private String contentTransformerClassName;
+    private int workerPoolSize = XMPPEventAdapterConstants.ADAPTER_CONF_DEFAULT_WORKER_POOL_SIZE;
+    private int eventQueueSize = XMPPEventAdapterConstants.ADAPTER_CONF_DEFAULT_EVENT_QUEUE_SIZE;
+    private String overflowPolicy = XMPPEventAdapterConstants.OVERFLOW_POLICY_DROP_OLDEST;
 
     public String getHost() {
         return host;
@@ -70,9 +77,22 @@ public class XMPPServerConnectionConfiguration {
         return contentTransformerClassName;
     }
 
+    public int getWorkerPoolSize() {
+        return workerPoolSize;
+    }
+
+    public int getEventQueueSize() {
+        return eventQueueSize;
+    }
+
+    public String getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
     public XMPPServerConnectionConfiguration(String host, int port, String username, String password,
                                              int timeoutInterval, String resource, String contentValidatorClassName, String jid,
-                                             String contentTransformerClassName) {
+                                             String contentTransformerClassName, String workerPoolSize,
+                                             String eventQueueSize, String overflowPolicy) {
         this.host = host;
         this.port = port;
         this.username = username;
@@ -82,6 +102,29 @@ public class XMPPServerConnectionConfiguration {
         this.contentValidatorClassName = contentValidatorClassName;
         this.contentTransformerClassName = contentTransformerClassName;
         this.jid = jid;
+        this.workerPoolSize = parsePositiveInt(workerPoolSize, this.workerPoolSize);
+        this.eventQueueSize = parsePositiveInt(eventQueueSize, this.eventQueueSize);
+        if (overflowPolicy != null && !overflowPolicy.trim().isEmpty()) {
+            if (EventDispatcher.OVERFLOW_POLICIES.contains(overflowPolicy.trim())) {
+                this.overflowPolicy = overflowPolicy.trim();
+            } else {
+                log.warn("Unknown overflow policy '" + overflowPolicy + "', expected one of "
+                                 + EventDispatcher.OVERFLOW_POLICIES
+                                 + ". Using the default policy '" + this.overflowPolicy + "' instead.");
+            }
+        }
+    }
+
+    private static int parsePositiveInt(String value, int defaultValue) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int parsedValue = Integer.parseInt(value.trim());
+            return parsedValue > 0 ? parsedValue : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
     }
 
 }
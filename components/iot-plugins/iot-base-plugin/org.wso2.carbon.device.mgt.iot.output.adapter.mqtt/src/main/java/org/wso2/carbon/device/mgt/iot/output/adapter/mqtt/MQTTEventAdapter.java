@@ -23,17 +23,15 @@ import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.device.mgt.iot.output.adapter.mqtt.util.MQTTAdapterPublisher;
 import org.wso2.carbon.device.mgt.iot.output.adapter.mqtt.util.MQTTEventAdapterConstants;
 import org.wso2.carbon.device.mgt.iot.output.adapter.mqtt.util.MQTTBrokerConnectionConfiguration;
+import org.wso2.carbon.device.mgt.iot.output.adapter.mqtt.util.MQTTUtil;
 import org.wso2.carbon.event.output.adapter.core.EventAdapterUtil;
 import org.wso2.carbon.event.output.adapter.core.OutputEventAdapter;
 import org.wso2.carbon.event.output.adapter.core.OutputEventAdapterConfiguration;
 import org.wso2.carbon.event.output.adapter.core.exception.OutputEventAdapterException;
 import org.wso2.carbon.event.output.adapter.core.exception.TestConnectionNotSupportedException;
 
+import java.nio.charset.Charset;
 import java.util.Map;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Output MQTTEventAdapter will be used to publish events with MQTT protocol to specified broker and topic.
@@ -44,8 +42,10 @@ public class MQTTEventAdapter implements OutputEventAdapter {
     private Map<String, String> globalProperties;
     private MQTTAdapterPublisher mqttAdapterPublisher;
     private int connectionKeepAliveInterval;
-    private String qos;
-    private static ThreadPoolExecutor threadPoolExecutor;
+    private int qos;
+    private int maxInFlight;
+    private int jobQueueSize;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
     private static final Log log = LogFactory.getLog(MQTTEventAdapter.class);
     private int tenantId;
 
@@ -64,49 +64,30 @@ public class MQTTEventAdapter implements OutputEventAdapter {
         } else {
             connectionKeepAliveInterval = MQTTEventAdapterConstants.DEFAULT_CONNECTION_KEEP_ALIVE_INTERVAL;
         }
+        MQTTUtil.getCredentialCache().setRefreshFraction(
+                globalProperties.get(MQTTEventAdapterConstants.ADAPTER_CONF_TOKEN_REFRESH_FRACTION));
     }
 
     @Override
     public void init() throws OutputEventAdapterException {
         tenantId = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId(true);
-        //ThreadPoolExecutor will be assigned  if it is null
-        if (threadPoolExecutor == null) {
-            int minThread;
-            int maxThread;
-            int jobQueSize;
-            long defaultKeepAliveTime;
-            //If global properties are available those will be assigned else constant values will be assigned
-            if (globalProperties.get(MQTTEventAdapterConstants.ADAPTER_MIN_THREAD_POOL_SIZE_NAME) != null) {
-                minThread = Integer.parseInt(globalProperties.get(
-                        MQTTEventAdapterConstants.ADAPTER_MIN_THREAD_POOL_SIZE_NAME));
-            } else {
-                minThread = MQTTEventAdapterConstants.DEFAULT_MIN_THREAD_POOL_SIZE;
-            }
-
-            if (globalProperties.get(MQTTEventAdapterConstants.ADAPTER_MAX_THREAD_POOL_SIZE_NAME) != null) {
-                maxThread = Integer.parseInt(globalProperties.get(
-                        MQTTEventAdapterConstants.ADAPTER_MAX_THREAD_POOL_SIZE_NAME));
-            } else {
-                maxThread = MQTTEventAdapterConstants.DEFAULT_MAX_THREAD_POOL_SIZE;
-            }
-
-            if (globalProperties.get(MQTTEventAdapterConstants.ADAPTER_KEEP_ALIVE_TIME_NAME) != null) {
-                defaultKeepAliveTime = Integer.parseInt(globalProperties.get(
-                        MQTTEventAdapterConstants.ADAPTER_KEEP_ALIVE_TIME_NAME));
-            } else {
-                defaultKeepAliveTime = MQTTEventAdapterConstants.DEFAULT_KEEP_ALIVE_TIME_IN_MILLIS;
-            }
-
-            if (globalProperties.get(MQTTEventAdapterConstants.ADAPTER_EXECUTOR_JOB_QUEUE_SIZE_NAME) != null) {
-                jobQueSize = Integer.parseInt(globalProperties.get(
-                        MQTTEventAdapterConstants.ADAPTER_EXECUTOR_JOB_QUEUE_SIZE_NAME));
-            } else {
-                jobQueSize = MQTTEventAdapterConstants.DEFAULT_EXECUTOR_JOB_QUEUE_SIZE;
-            }
+        //If global properties are available those will be assigned else constant values will be assigned
+        if (globalProperties.get(MQTTEventAdapterConstants.ADAPTER_MAX_INFLIGHT_NAME) != null) {
+            maxInFlight = Integer.parseInt(globalProperties.get(MQTTEventAdapterConstants.ADAPTER_MAX_INFLIGHT_NAME));
+        } else {
+            maxInFlight = MQTTEventAdapterConstants.DEFAULT_MAX_INFLIGHT;
+        }
+        if (maxInFlight > MQTTEventAdapterConstants.MAX_INFLIGHT_LIMIT) {
+            log.warn("Maximum in-flight messages of Output MQTT Adapter '" + eventAdapterConfiguration.getName() +
+                             "' is limited to " + MQTTEventAdapterConstants.MAX_INFLIGHT_LIMIT);
+            maxInFlight = MQTTEventAdapterConstants.MAX_INFLIGHT_LIMIT;
+        }
 
-            threadPoolExecutor = new ThreadPoolExecutor(minThread, maxThread, defaultKeepAliveTime,
-                                                        TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(
-                    jobQueSize));
+        if (globalProperties.get(MQTTEventAdapterConstants.ADAPTER_EXECUTOR_JOB_QUEUE_SIZE_NAME) != null) {
+            jobQueueSize = Integer.parseInt(globalProperties.get(
+                    MQTTEventAdapterConstants.ADAPTER_EXECUTOR_JOB_QUEUE_SIZE_NAME));
+        } else {
+            jobQueueSize = MQTTEventAdapterConstants.DEFAULT_EXECUTOR_JOB_QUEUE_SIZE;
         }
     }
 
@@ -133,17 +114,26 @@ public class MQTTEventAdapter implements OutputEventAdapter {
 
         String clientId = eventAdapterConfiguration.getStaticProperties().get(
                 MQTTEventAdapterConstants.ADAPTER_CONF_CLIENTID);
-        qos = eventAdapterConfiguration.getStaticProperties().get(MQTTEventAdapterConstants.ADAPTER_MESSAGE_QOS);
-        mqttAdapterPublisher = new MQTTAdapterPublisher(mqttBrokerConnectionConfiguration, clientId);
+        String qosValue = eventAdapterConfiguration.getStaticProperties().get(
+                MQTTEventAdapterConstants.ADAPTER_MESSAGE_QOS);
+        // A negative qos publishes with the default qos of the client
+        qos = qosValue == null || qosValue.trim().isEmpty() ? -1 : Integer.parseInt(qosValue.trim());
+        mqttAdapterPublisher = new MQTTAdapterPublisher(mqttBrokerConnectionConfiguration, clientId, maxInFlight,
+                                                        jobQueueSize);
+        mqttAdapterPublisher.registerMBean(eventAdapterConfiguration.getName(), tenantId);
     }
 
     @Override
     public void publish(Object message, Map<String, String> dynamicProperties) {
         String topic = dynamicProperties.get(MQTTEventAdapterConstants.ADAPTER_MESSAGE_TOPIC);
-        try {
-            threadPoolExecutor.submit(new MQTTSender(topic, message));
-        } catch (RejectedExecutionException e) {
-            EventAdapterUtil.logAndDrop(eventAdapterConfiguration.getName(), message, "Job queue is full", e, log,
+        MQTTAdapterPublisher publisher = mqttAdapterPublisher;
+        if (publisher == null) {
+            EventAdapterUtil.logAndDrop(eventAdapterConfiguration.getName(), message, "Publisher is not connected",
+                                        log, tenantId);
+            return;
+        }
+        if (!publisher.publish(qos, message.toString().getBytes(UTF_8), topic)) {
+            EventAdapterUtil.logAndDrop(eventAdapterConfiguration.getName(), message, "Job queue is full", log,
                                         tenantId);
         }
     }
@@ -152,6 +142,7 @@ public class MQTTEventAdapter implements OutputEventAdapter {
     public void disconnect() {
         try {
             if (mqttAdapterPublisher != null) {
+                mqttAdapterPublisher.unregisterMBean();
                 mqttAdapterPublisher.close();
                 mqttAdapterPublisher = null;
             }
@@ -170,35 +161,4 @@ public class MQTTEventAdapter implements OutputEventAdapter {
     public boolean isPolled() {
         return false;
     }
-
-    class MQTTSender implements Runnable {
-
-        String topic;
-        Object message;
-
-        MQTTSender(String topic, Object message) {
-            this.topic = topic;
-            this.message = message;
-        }
-
-        @Override
-        public void run() {
-            try {
-                if (!mqttAdapterPublisher.isConnected()) {
-                    synchronized (MQTTEventAdapter.class) {
-                        if (!mqttAdapterPublisher.isConnected()) {
-                            mqttAdapterPublisher.connect();
-                        }
-                    }
-                }
-                if (qos == null || qos.trim().isEmpty()) {
-                    mqttAdapterPublisher.publish(message.toString(), topic);
-                } else {
-                    mqttAdapterPublisher.publish(Integer.parseInt(qos), message.toString(), topic);
-                }
-            } catch (Throwable t) {
-                EventAdapterUtil.logAndDrop(eventAdapterConfiguration.getName(), message, null, t, log, tenantId);
-            }
-        }
-    }
 }
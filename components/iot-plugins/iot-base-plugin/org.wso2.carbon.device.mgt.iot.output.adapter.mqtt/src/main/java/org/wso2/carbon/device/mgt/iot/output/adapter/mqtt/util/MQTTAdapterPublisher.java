@@ -19,60 +19,211 @@ package org.wso2.carbon.device.mgt.iot.output.adapter.mqtt.util;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
-import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
-import org.wso2.carbon.event.output.adapter.core.exception.ConnectionUnavailableException;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.mqtt.exception.MQTTCredentialException;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.util.AdapterMBeanUtil;
 import org.wso2.carbon.event.output.adapter.core.exception.OutputEventAdapterException;
 import org.wso2.carbon.event.output.adapter.core.exception.OutputEventAdapterRuntimeException;
-import org.wso2.carbon.identity.jwt.client.extension.dto.AccessTokenInfo;
-import org.wso2.carbon.identity.jwt.client.extension.exception.JWTClientException;
-import org.wso2.carbon.identity.jwt.client.extension.service.JWTClientManagerService;
 
-import java.io.IOException;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.security.KeyManagementException;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
+import javax.management.ObjectName;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * MQTT publisher related configuration initialization and publishing capabilties are implemented here.
+ * <p/>
+ * Messages are published through an asynchronous client. They are queued, and up to the in-flight window of them is
+ * handed to the client at a time; each acknowledgement releases the window for the next one, so publishing never
+ * waits for the broker. The connection is owned by the publisher and is established on its own thread, so a broker
+ * that is slow to answer only holds back the messages of this publisher.
  */
-public class MQTTAdapterPublisher {
+public class MQTTAdapterPublisher implements MQTTAdapterPublisherMBean {
 
     private static final Log log = LogFactory.getLog(MQTTAdapterPublisher.class);
-    private MqttClient mqttClient;
+    private static final long DISCONNECT_TIMEOUT_IN_MILLIS = 1000;
+
+    // Created on the connector thread and read by publishing and callback threads
+    private volatile MqttAsyncClient mqttClient;
     private MQTTBrokerConnectionConfiguration mqttBrokerConnectionConfiguration;
+    private int tenantId;
     String clientId;
 
-    public MQTTAdapterPublisher(MQTTBrokerConnectionConfiguration mqttBrokerConnectionConfiguration, String clientId) {
+    private final int maxInFlight;
+    private final BlockingQueue<PendingMessage> pendingMessages;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean connecting = new AtomicBoolean();
+    private volatile boolean closed;
+    private volatile long lastConnectAttemptTime;
+    private ScheduledExecutorService connector;
+
+    private final AtomicLong acknowledgedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong totalLatencyInMillis = new AtomicLong();
+    private volatile long maxLatencyInMillis;
+    private volatile ObjectName mBeanName;
+
+    /**
+     * @param maxInFlight  maximum number of messages handed to the client and not yet acknowledged.
+     * @param maxQueueSize maximum number of messages waiting for the in-flight window or for the connection.
+     */
+    public MQTTAdapterPublisher(MQTTBrokerConnectionConfiguration mqttBrokerConnectionConfiguration, String clientId,
+                                int maxInFlight, int maxQueueSize) {
         if (clientId == null || clientId.trim().isEmpty()) {
-            this.clientId = MqttClient.generateClientId();
+            this.clientId = MqttAsyncClient.generateClientId();
+        } else {
+            this.clientId = clientId;
         }
         this.mqttBrokerConnectionConfiguration = mqttBrokerConnectionConfiguration;
+        this.tenantId = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId(true);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.pendingMessages = new ArrayBlockingQueue<>(Math.max(1, maxQueueSize));
         connect();
     }
 
+    /**
+     * Starts connecting to the broker unless a connection attempt is already in progress. Returns without waiting
+     * for the connection, queued messages are sent once it is established.
+     */
     public void connect() {
-        if (clientId == null || clientId.trim().isEmpty()) {
-            clientId = MqttClient.generateClientId();
+        if (closed || isConnected() || !connecting.compareAndSet(false, true)) {
+            return;
+        }
+        lastConnectAttemptTime = System.currentTimeMillis();
+        try {
+            getConnector().execute(new Runnable() {
+                @Override
+                public void run() {
+                    doConnect();
+                }
+            });
+        } catch (RuntimeException e) {
+            connecting.set(false);
+            log.error("Cannot start connecting to MQTT broker : " + mqttBrokerConnectionConfiguration.getBrokerUrl(),
+                      e);
+        }
+    }
+
+    public boolean isConnected() {
+        return mqttClient != null && mqttClient.isConnected();
+    }
+
+    /**
+     * Queues a message to be published.
+     *
+     * @param qos     quality of service of the message, the client default is used when it is negative.
+     * @param payload encoded payload, which is used as is.
+     * @return "false" if the queue is full and the message was dropped.
+     */
+    public boolean publish(int qos, byte[] payload, String topic) {
+        MqttMessage message = new MqttMessage(payload);
+        if (qos >= 0) {
+            message.setQos(qos);
+        }
+        if (!pendingMessages.offer(new PendingMessage(topic, message))) {
+            return false;
+        }
+        if (isConnected()) {
+            drain();
+        } else if (System.currentTimeMillis() - lastConnectAttemptTime >=
+                MQTTEventAdapterConstants.DEFAULT_RECONNECT_INTERVAL_IN_MILLIS) {
+            connect();
+        }
+        return true;
+    }
+
+    public void close() throws OutputEventAdapterException {
+        closed = true;
+        pendingMessages.clear();
+        if (connector != null) {
+            connector.shutdownNow();
+        }
+        try {
+            if (mqttClient != null) {
+                if (mqttClient.isConnected()) {
+                    mqttClient.disconnect(DISCONNECT_TIMEOUT_IN_MILLIS).waitForCompletion(DISCONNECT_TIMEOUT_IN_MILLIS);
+                }
+                mqttClient.close();
+            }
+        } catch (MqttException e) {
+            throw new OutputEventAdapterException(e);
+        }
+    }
+
+    @Override
+    public long getAcknowledgedCount() {
+        return acknowledgedCount.get();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    @Override
+    public long getAverageLatencyInMillis() {
+        long acknowledged = acknowledgedCount.get();
+        return acknowledged == 0 ? 0 : totalLatencyInMillis.get() / acknowledged;
+    }
+
+    @Override
+    public long getMaxLatencyInMillis() {
+        return maxLatencyInMillis;
+    }
+
+    @Override
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return pendingMessages.size();
+    }
+
+    public void registerMBean(String adapterName, int tenantId) {
+        mBeanName = AdapterMBeanUtil.registerMBean(this, MQTTEventAdapterConstants.MBEAN_TYPE, tenantId, adapterName);
+    }
+
+    public void unregisterMBean() {
+        ObjectName name = mBeanName;
+        mBeanName = null;
+        AdapterMBeanUtil.unregisterMBean(name);
+    }
+
+    private synchronized ScheduledExecutorService getConnector() {
+        if (connector == null) {
+            connector = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "MQTT-Publisher-Connector-" + clientId);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
         }
+        return connector;
+    }
+
+    private void doConnect() {
         boolean cleanSession = mqttBrokerConnectionConfiguration.isCleanSession();
         int keepAlive = mqttBrokerConnectionConfiguration.getKeepAlive();
         String temp_directory = System.getProperty(MQTTEventAdapterConstants.ADAPTER_TEMP_DIRECTORY_NAME);
-        MqttDefaultFilePersistence dataStore = new MqttDefaultFilePersistence(temp_directory);
         try {
             MqttConnectOptions connectionOptions = new MqttConnectOptions();
             connectionOptions.setCleanSession(cleanSession);
@@ -83,104 +234,166 @@ public class MQTTAdapterPublisher {
                                                        mqttBrokerConnectionConfiguration.getScopes()));
                 connectionOptions.setPassword(MQTTEventAdapterConstants.DEFAULT_PASSWORD.toCharArray());
             }
-            // Construct an MQTT blocking mode client
-            mqttClient = new MqttClient(mqttBrokerConnectionConfiguration.getBrokerUrl(), clientId, dataStore);
-            mqttClient.connect(connectionOptions);
+            if (mqttClient == null) {
+                // Construct an MQTT asynchronous mode client
+                MqttDefaultFilePersistence dataStore = new MqttDefaultFilePersistence(temp_directory);
+                mqttClient = new MqttAsyncClient(mqttBrokerConnectionConfiguration.getBrokerUrl(), clientId, dataStore);
+                mqttClient.setCallback(new ConnectionCallback());
+            }
+            mqttClient.connect(connectionOptions, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken asyncActionToken) {
+                    connecting.set(false);
+                    if (log.isDebugEnabled()) {
+                        log.debug("Connected to MQTT broker : " + mqttBrokerConnectionConfiguration.getBrokerUrl());
+                    }
+                    drain();
+                }
 
+                @Override
+                public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                    connecting.set(false);
+                    handleConnectionFailure(exception);
+                }
+            });
         } catch (MqttException e) {
+            connecting.set(false);
+            handleConnectionFailure(e);
+        } catch (RuntimeException e) {
+            connecting.set(false);
             log.error("Error occurred when constructing MQTT client for broker url : "
                               + mqttBrokerConnectionConfiguration.getBrokerUrl(), e);
-            handleException(e);
+            scheduleReconnect();
         }
     }
 
-    public boolean isConnected() {
-        return mqttClient.isConnected();
-    }
-
-    public void publish(int qos, String payload, String topic) {
-        try {
-            // Create and configure a message
-            MqttMessage message = new MqttMessage(payload.getBytes());
-            message.setQos(qos);
-            mqttClient.publish(topic, message);
-        } catch (MqttException e) {
-            log.error("Error occurred when publishing message for MQTT server : " + mqttClient.getServerURI(), e);
-            handleException(e);
+    private void handleConnectionFailure(Throwable exception) {
+        if (exception instanceof MqttException && mqttBrokerConnectionConfiguration.getBrokerUsername() != null) {
+            int reasonCode = ((MqttException) exception).getReasonCode();
+            if (reasonCode == MqttException.REASON_CODE_FAILED_AUTHENTICATION ||
+                    reasonCode == MqttException.REASON_CODE_NOT_AUTHORIZED) {
+                MQTTUtil.getCredentialCache().invalidateAccessToken(
+                        tenantId, mqttBrokerConnectionConfiguration.getBrokerUsername(),
+                        mqttBrokerConnectionConfiguration.getScopes(), mqttBrokerConnectionConfiguration.getDcrUrl());
+            }
         }
+        log.error("Error occurred when connecting to MQTT broker : "
+                          + mqttBrokerConnectionConfiguration.getBrokerUrl(), exception);
+        scheduleReconnect();
     }
 
-    public void publish(String payload, String topic) {
-        try {
-            // Create and configure a message
-            MqttMessage message = new MqttMessage(payload.getBytes());
-            mqttClient.publish(topic, message);
-        } catch (MqttException e) {
-            log.error("Error occurred when publishing message for MQTT server : " + mqttClient.getServerURI(), e);
-            handleException(e);
+    /**
+     * Retries connecting after the reconnect interval if messages are waiting for the connection.
+     */
+    private void scheduleReconnect() {
+        if (closed || pendingMessages.isEmpty()) {
+            return;
         }
-    }
-
-    public void close() throws OutputEventAdapterException {
         try {
-            mqttClient.disconnect(1000);
-            mqttClient.close();
-        } catch (MqttException e) {
-            throw new OutputEventAdapterException(e);
+            getConnector().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    connect();
+                }
+            }, MQTTEventAdapterConstants.DEFAULT_RECONNECT_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            log.error("Cannot schedule reconnecting to MQTT broker : " +
+                              mqttBrokerConnectionConfiguration.getBrokerUrl(), e);
         }
     }
 
-    private void handleException(MqttException e) {
-        //Check for Client not connected exception code and throw ConnectionUnavailableException
-        if (e.getReasonCode() == 32104) {
-            throw new ConnectionUnavailableException(e);
-        } else {
-            throw new OutputEventAdapterRuntimeException(e);
+    /**
+     * Hands queued messages to the client while the in-flight window has room.
+     */
+    private void drain() {
+        while (!closed && isConnected()) {
+            if (inFlight.incrementAndGet() > maxInFlight) {
+                // The window is full, the completion of an in-flight message drains the rest.
+                inFlight.decrementAndGet();
+                return;
+            }
+            PendingMessage pendingMessage = pendingMessages.poll();
+            if (pendingMessage == null) {
+                inFlight.decrementAndGet();
+                // A message queued while the window was being claimed would otherwise wait for the next publish.
+                if (pendingMessages.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                mqttClient.publish(pendingMessage.topic, pendingMessage.message, pendingMessage, pendingMessage);
+            } catch (MqttException e) {
+                inFlight.decrementAndGet();
+                failedCount.incrementAndGet();
+                log.error("Error occurred when publishing message for MQTT server : " + mqttClient.getServerURI(), e);
+            }
         }
     }
 
     private String getToken(String username, String dcrUrlString, String scopes) {
-        int tenantId = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId(true);
         if (dcrUrlString != null && !dcrUrlString.isEmpty()) {
             try {
-                URL dcrUrl = new URL(dcrUrlString);
-                HttpClient httpClient = MQTTUtil.getHttpClient(dcrUrl.getProtocol());
-                HttpPost postMethod = new HttpPost(dcrUrlString);
-                RegistrationProfile registrationProfile = new RegistrationProfile();
-                registrationProfile.setCallbackUrl(MQTTEventAdapterConstants.DEFAULT_CALLBACK);
-                registrationProfile.setGrantType(MQTTEventAdapterConstants.GRANT_TYPE);
-                registrationProfile.setOwner(username);
-                registrationProfile.setTokenScope(MQTTEventAdapterConstants.TOKEN_SCOPE);
-                registrationProfile.setApplicationType(MQTTEventAdapterConstants.APPLICATION_TYPE);
-                registrationProfile.setClientName(username + "_" + tenantId);
-                String jsonString = registrationProfile.toJSON();
-                StringEntity requestEntity = new StringEntity(jsonString, ContentType.APPLICATION_JSON);
-                postMethod.setEntity(requestEntity);
-                HttpResponse httpResponse = httpClient.execute(postMethod);
-                String response = MQTTUtil.getResponseString(httpResponse);
-                try {
-                    JSONParser jsonParser = new JSONParser();
-                    JSONObject jsonPayload = (JSONObject) jsonParser.parse(response);
-                    String clientId = (String) jsonPayload.get(MQTTEventAdapterConstants.CLIENT_ID);
-                    String clientSecret = (String) jsonPayload.get(MQTTEventAdapterConstants.CLIENT_SECRET);
-                    JWTClientManagerService jwtClientManagerService = MQTTUtil.getJWTClientManagerService();
-                    AccessTokenInfo accessTokenInfo = jwtClientManagerService.getJWTClient().getAccessToken(
-                            clientId, clientSecret, username, scopes);
-                    return accessTokenInfo.getAccessToken();
-                } catch (ParseException e) {
-                    String msg = "error occurred while parsing client credential payload";
-                    throw new OutputEventAdapterRuntimeException(msg, e);
-                } catch (JWTClientException e) {
-                    String msg = "error occurred while parsing the response from JWT Client";
-                    throw new OutputEventAdapterRuntimeException(msg, e);
-                }
-            } catch (MalformedURLException e) {
-                throw new OutputEventAdapterRuntimeException("Invalid dcrUrl : " + dcrUrlString);
-            } catch (KeyManagementException | NoSuchAlgorithmException | KeyStoreException | IOException e) {
-                throw new OutputEventAdapterRuntimeException("Failed to create an https connection.", e);
+                return MQTTUtil.getCredentialCache().getAccessToken(tenantId, username, scopes, dcrUrlString,
+                                                                    MQTTUtil.getCredentialIssuer());
+            } catch (MQTTCredentialException e) {
+                throw new OutputEventAdapterRuntimeException("Failed to obtain the access token for " + username, e);
             }
         }
         throw new OutputEventAdapterRuntimeException("Invalid configuration for mqtt publisher");
     }
 
+    /**
+     * A queued message, which is also the listener of its own delivery.
+     */
+    private class PendingMessage implements IMqttActionListener {
+        private final String topic;
+        private final MqttMessage message;
+        private final long queuedTime = System.currentTimeMillis();
+
+        private PendingMessage(String topic, MqttMessage message) {
+            this.topic = topic;
+            this.message = message;
+        }
+
+        @Override
+        public void onSuccess(IMqttToken asyncActionToken) {
+            long latency = System.currentTimeMillis() - queuedTime;
+            acknowledgedCount.incrementAndGet();
+            totalLatencyInMillis.addAndGet(latency);
+            if (latency > maxLatencyInMillis) {
+                maxLatencyInMillis = latency;
+            }
+            inFlight.decrementAndGet();
+            drain();
+        }
+
+        @Override
+        public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+            failedCount.incrementAndGet();
+            log.error("Error occurred when publishing message for MQTT server : " +
+                              mqttBrokerConnectionConfiguration.getBrokerUrl(), exception);
+            inFlight.decrementAndGet();
+            drain();
+        }
+    }
+
+    private class ConnectionCallback implements MqttCallback {
+
+        @Override
+        public void connectionLost(Throwable cause) {
+            log.warn("Lost connection to MQTT broker : " + mqttBrokerConnectionConfiguration.getBrokerUrl(), cause);
+            connect();
+        }
+
+        @Override
+        public void messageArrived(String topic, MqttMessage message) {
+            // The publisher does not subscribe to any topic.
+        }
+
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token) {
+            // Deliveries are tracked through the listener of each message.
+        }
+    }
 }
@@ -38,18 +38,19 @@ public final class MQTTEventAdapterConstants {
     public static final String ADAPTER_CONF_CLEAN_SESSION_HINT = "cleanSession.hint";
     public static final String CONNECTION_KEEP_ALIVE_INTERVAL = "connectionKeepAliveInterval";
     public static final int DEFAULT_CONNECTION_KEEP_ALIVE_INTERVAL = 60;
+    public static final String ADAPTER_CONF_TOKEN_REFRESH_FRACTION = "tokenRefreshFraction";
     public static final String ADAPTER_TEMP_DIRECTORY_NAME = "java.io.tmpdir";
     public static final String ADAPTER_CONF_CLIENTID = "clientId";
     public static final String ADAPTER_CONF_CLIENTID_HINT = "clientId.hint";
 
-    public static final int DEFAULT_MIN_THREAD_POOL_SIZE = 8;
-    public static final int DEFAULT_MAX_THREAD_POOL_SIZE = 100;
     public static final int DEFAULT_EXECUTOR_JOB_QUEUE_SIZE = 2000;
-    public static final long DEFAULT_KEEP_ALIVE_TIME_IN_MILLIS = 20000;
-    public static final String ADAPTER_MIN_THREAD_POOL_SIZE_NAME = "minThread";
-    public static final String ADAPTER_MAX_THREAD_POOL_SIZE_NAME = "maxThread";
-    public static final String ADAPTER_KEEP_ALIVE_TIME_NAME = "keepAliveTimeInMillis";
     public static final String ADAPTER_EXECUTOR_JOB_QUEUE_SIZE_NAME = "jobQueueSize";
+    public static final String ADAPTER_MAX_INFLIGHT_NAME = "maxInflightMessages";
+    public static final int DEFAULT_MAX_INFLIGHT = 10;
+    // The asynchronous client rejects publishing more unacknowledged messages than this
+    public static final int MAX_INFLIGHT_LIMIT = 10;
+    public static final long DEFAULT_RECONNECT_INTERVAL_IN_MILLIS = 5000;
+    public static final String MBEAN_TYPE = "MQTTOutputAdapter";
 
     public static final String DEFAULT_CALLBACK = "";
     public static final String DEFAULT_PASSWORD = "";
@@ -28,6 +28,7 @@ import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.mqtt.MQTTCredentialCache;
 import org.wso2.carbon.identity.jwt.client.extension.service.JWTClientManagerService;
 
 import java.io.BufferedReader;
@@ -43,6 +44,22 @@ import java.security.NoSuchAlgorithmException;
 public class MQTTUtil {
 	private static final String HTTPS_PROTOCOL = "https";
 	private static final Log log = LogFactory.getLog(MQTTUtil.class);
+	private static final MQTTCredentialCache.CredentialIssuer credentialIssuer = new DCRCredentialIssuer();
+
+	/**
+	 * Returns the cache of the credentials used to connect to the broker, which is shared with the other MQTT
+	 * adapters.
+	 */
+	public static MQTTCredentialCache getCredentialCache() {
+		return MQTTCredentialCache.getInstance();
+	}
+
+	/**
+	 * Returns the issuer through which this adapter obtains the credentials used to connect to the broker.
+	 */
+	public static MQTTCredentialCache.CredentialIssuer getCredentialIssuer() {
+		return credentialIssuer;
+	}
 
 	/**
 	 * Return a http client instance
@@ -22,6 +22,7 @@ import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.device.mgt.iot.output.adapter.ui.authentication.AuthenticationInfo;
 import org.wso2.carbon.device.mgt.iot.output.adapter.ui.authentication.Authenticator;
 import org.wso2.carbon.device.mgt.iot.output.adapter.ui.authorization.Authorizer;
+import org.wso2.carbon.device.mgt.iot.output.adapter.ui.util.UIEventAdapterConstants;
 import util.ServiceHolder;
 import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
 
@@ -39,7 +40,8 @@ import java.io.IOException;
  * Connect to web socket with Super tenant
  */
 
-@ServerEndpoint(value = "/{streamname}/{version}")
+@ServerEndpoint(value = "/{streamname}/{version}",
+		subprotocols = {UIEventAdapterConstants.ADAPTER_UI_BINARY_SUBPROTOCOL})
 public class SuperTenantSubscriptionEndpoint extends SubscriptionEndpoint {
 
 	private static final Log log = LogFactory.getLog(SuperTenantSubscriptionEndpoint.class);
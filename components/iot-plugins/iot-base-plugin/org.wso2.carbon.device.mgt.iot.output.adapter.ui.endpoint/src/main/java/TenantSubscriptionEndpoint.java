@@ -22,6 +22,7 @@ import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.device.mgt.iot.output.adapter.ui.authentication.AuthenticationInfo;
 import org.wso2.carbon.device.mgt.iot.output.adapter.ui.authentication.Authenticator;
 import org.wso2.carbon.device.mgt.iot.output.adapter.ui.authorization.Authorizer;
+import org.wso2.carbon.device.mgt.iot.output.adapter.ui.util.UIEventAdapterConstants;
 import util.ServiceHolder;
 
 import javax.websocket.CloseReason;
@@ -38,7 +39,8 @@ import java.io.IOException;
  * Connect to web socket with a tenant
  */
 
-@ServerEndpoint(value = "/t/{tdomain}/{streamname}/{version}")
+@ServerEndpoint(value = "/t/{tdomain}/{streamname}/{version}",
+        subprotocols = {UIEventAdapterConstants.ADAPTER_UI_BINARY_SUBPROTOCOL})
 public class TenantSubscriptionEndpoint extends SubscriptionEndpoint {
 
     private static final Log log = LogFactory.getLog(TenantSubscriptionEndpoint.class);
@@ -25,7 +25,11 @@ import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.databridge.commons.Attribute;
 import org.wso2.carbon.databridge.commons.Event;
 import org.wso2.carbon.databridge.commons.StreamDefinition;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.util.AdapterMBeanUtil;
 import org.wso2.carbon.device.mgt.iot.output.adapter.ui.internal.UIEventAdaptorServiceDataHolder;
+import org.wso2.carbon.device.mgt.iot.output.adapter.ui.util.BinaryEventDispatcher;
+import org.wso2.carbon.device.mgt.iot.output.adapter.ui.util.BinaryEventEncoder;
+import org.wso2.carbon.device.mgt.iot.output.adapter.ui.util.StreamEventBuffer;
 import org.wso2.carbon.device.mgt.iot.output.adapter.ui.util.UIEventAdapterConstants;
 import org.wso2.carbon.event.output.adapter.core.EventAdapterUtil;
 import org.wso2.carbon.event.output.adapter.core.OutputEventAdapter;
@@ -33,18 +37,24 @@ import org.wso2.carbon.event.output.adapter.core.OutputEventAdapterConfiguration
 import org.wso2.carbon.event.output.adapter.core.exception.OutputEventAdapterException;
 import org.wso2.carbon.event.output.adapter.core.exception.OutputEventAdapterRuntimeException;
 import org.wso2.carbon.event.output.adapter.core.exception.TestConnectionNotSupportedException;
+import org.wso2.carbon.device.mgt.iot.output.adapter.ui.util.WebSocketOutboundQueue;
+import org.wso2.carbon.device.mgt.iot.output.adapter.ui.util.WebSocketOutboundStatistics;
+import org.wso2.carbon.device.mgt.iot.output.adapter.ui.util.WebSocketSessionIndex;
 import org.wso2.carbon.device.mgt.iot.output.adapter.ui.util.WebSocketSessionRequest;
 import org.wso2.carbon.event.stream.core.EventStreamService;
 import org.wso2.carbon.event.stream.core.exception.EventStreamConfigurationException;
 
-import java.io.IOException;
+import javax.management.ObjectName;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -58,8 +68,15 @@ public class UIEventAdapter implements OutputEventAdapter {
     private OutputEventAdapterConfiguration eventAdapterConfiguration;
     private Map<String, String> globalProperties;
     private int queueSize;
-    private LinkedBlockingDeque<Object> streamSpecificEvents;
+    private int sessionQueueSize;
+    private WebSocketOutboundQueue.SlowConsumerPolicy slowConsumerPolicy;
+    private final WebSocketOutboundStatistics outboundStatistics = new WebSocketOutboundStatistics();
+    private ObjectName mBeanName;
+    private StreamEventBuffer streamSpecificEvents;
     private static ThreadPoolExecutor executorService;
+    private static ScheduledExecutorService flushScheduler;
+    private BinaryEventDispatcher binaryEventDispatcher;
+    private ScheduledFuture<?> binaryFlushTask;
     private int tenantId;
     private boolean doLogDroppedMessage;
 
@@ -67,6 +84,7 @@ public class UIEventAdapter implements OutputEventAdapter {
     private List<Attribute> streamMetaAttributes;
     private List<Attribute> streamCorrelationAttributes;
     private List<Attribute> streamPayloadAttributes;
+    private WebSocketSessionIndex sessionIndex;
 
     public UIEventAdapter(OutputEventAdapterConfiguration eventAdapterConfiguration, Map<String,
             String> globalProperties) {
@@ -131,6 +149,43 @@ public class UIEventAdapter implements OutputEventAdapter {
         streamMetaAttributes = streamDefinition.getMetaData();
         streamCorrelationAttributes = streamDefinition.getCorrelationData();
         streamPayloadAttributes = streamDefinition.getPayloadData();
+        sessionIndex = UIEventAdaptorServiceDataHolder.getUIOutputCallbackRegisterServiceImpl()
+                .getSessionIndex(tenantId, streamId);
+        sessionIndex.setStreamAttributes(streamMetaAttributes, streamCorrelationAttributes, streamPayloadAttributes);
+
+        // Events for sessions using the binary sub protocol are encoded once per batch and flushed on an interval,
+        // every event is sent on its own when no interval is configured.
+        int binaryFlushInterval = getIntGlobalProperty(UIEventAdapterConstants.ADAPTER_BINARY_FLUSH_INTERVAL_NAME,
+                                                       UIEventAdapterConstants.BINARY_FLUSH_INTERVAL_IN_MILLIS);
+        int binaryBatchSize = binaryFlushInterval > 0 ? getIntGlobalProperty(
+                UIEventAdapterConstants.ADAPTER_BINARY_BATCH_SIZE_NAME, UIEventAdapterConstants.BINARY_BATCH_SIZE) : 1;
+        binaryEventDispatcher = new BinaryEventDispatcher(new BinaryEventEncoder(
+                streamMetaAttributes, streamCorrelationAttributes, streamPayloadAttributes), binaryBatchSize);
+        if (binaryFlushInterval > 0) {
+            binaryFlushTask = getFlushScheduler().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        binaryEventDispatcher.flush();
+                    } catch (RuntimeException e) {
+                        log.error("Error occurred while sending binary events of adapter " +
+                                          eventAdapterConfiguration.getName(), e);
+                    }
+                }
+            }, binaryFlushInterval, binaryFlushInterval, TimeUnit.MILLISECONDS);
+        }
+
+        if (globalProperties.get(UIEventAdapterConstants.ADAPTER_EVENT_QUEUE_SIZE_NAME) != null) {
+            try {
+                queueSize = Integer.parseInt(
+                        globalProperties.get(UIEventAdapterConstants.ADAPTER_EVENT_QUEUE_SIZE_NAME));
+            } catch (NumberFormatException e) {
+                log.error("String does not have the appropriate format for conversion." + e.getMessage());
+                queueSize = UIEventAdapterConstants.EVENTS_QUEUE_SIZE;
+            }
+        } else {
+            queueSize = UIEventAdapterConstants.EVENTS_QUEUE_SIZE;
+        }
 
         ConcurrentHashMap<Integer, ConcurrentHashMap<String, String>> tenantSpecifcEventOutputAdapterMap =
                 UIEventAdaptorServiceDataHolder.getTenantSpecificOutputEventStreamAdapterMap();
@@ -152,9 +207,9 @@ public class UIEventAdapter implements OutputEventAdapter {
         } else {
             streamSpecifAdapterMap.put(streamId, eventAdapterConfiguration.getName());
 
-            ConcurrentHashMap<Integer, ConcurrentHashMap<String, LinkedBlockingDeque<Object>>> tenantSpecificStreamMap =
+            ConcurrentHashMap<Integer, ConcurrentHashMap<String, StreamEventBuffer>> tenantSpecificStreamMap =
                     UIEventAdaptorServiceDataHolder.getTenantSpecificStreamEventMap();
-            ConcurrentHashMap<String, LinkedBlockingDeque<Object>> streamSpecificEventsMap =
+            ConcurrentHashMap<String, StreamEventBuffer> streamSpecificEventsMap =
                     tenantSpecificStreamMap.get(tenantId);
             if (streamSpecificEventsMap == null) {
                 streamSpecificEventsMap = new ConcurrentHashMap<>();
@@ -164,24 +219,50 @@ public class UIEventAdapter implements OutputEventAdapter {
             }
             streamSpecificEvents = streamSpecificEventsMap.get(streamId);
             if (streamSpecificEvents == null) {
-                streamSpecificEvents = new LinkedBlockingDeque<>();
+                streamSpecificEvents = new StreamEventBuffer(queueSize);
                 if (null != streamSpecificEventsMap.putIfAbsent(streamId, streamSpecificEvents)) {
                     streamSpecificEvents = streamSpecificEventsMap.get(streamId);
                 }
             }
         }
 
-        if (globalProperties.get(UIEventAdapterConstants.ADAPTER_EVENT_QUEUE_SIZE_NAME) != null) {
+        sessionQueueSize = getIntGlobalProperty(UIEventAdapterConstants.ADAPTER_SESSION_QUEUE_SIZE_NAME,
+                                                UIEventAdapterConstants.SESSION_QUEUE_SIZE);
+        String policy = globalProperties.get(UIEventAdapterConstants.ADAPTER_SLOW_CONSUMER_POLICY_NAME);
+        if (policy == null) {
+            policy = UIEventAdapterConstants.SLOW_CONSUMER_POLICY;
+        }
+        try {
+            slowConsumerPolicy = WebSocketOutboundQueue.SlowConsumerPolicy.valueOf(
+                    policy.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid slow consumer policy '" + policy + "', falling back to '" +
+                              UIEventAdapterConstants.SLOW_CONSUMER_POLICY + "'.");
+            slowConsumerPolicy = WebSocketOutboundQueue.SlowConsumerPolicy.valueOf(
+                    UIEventAdapterConstants.SLOW_CONSUMER_POLICY.toUpperCase(Locale.ENGLISH));
+        }
+        mBeanName = AdapterMBeanUtil.registerMBean(outboundStatistics, UIEventAdapterConstants.MBEAN_TYPE, tenantId,
+                                                   eventAdapterConfiguration.getName());
+    }
+
+    private static synchronized ScheduledExecutorService getFlushScheduler() {
+        if (flushScheduler == null) {
+            flushScheduler = Executors.newSingleThreadScheduledExecutor();
+        }
+        return flushScheduler;
+    }
+
+    private int getIntGlobalProperty(String name, int defaultValue) {
+        String value = globalProperties.get(name);
+        if (value != null) {
             try {
-                queueSize = Integer.parseInt(
-                        globalProperties.get(UIEventAdapterConstants.ADAPTER_EVENT_QUEUE_SIZE_NAME));
+                return Integer.parseInt(value.trim());
             } catch (NumberFormatException e) {
-                log.error("String does not have the appropriate format for conversion." + e.getMessage());
-                queueSize = UIEventAdapterConstants.EVENTS_QUEUE_SIZE;
+                log.error("Invalid value '" + value + "' for global property '" + name + "', using " +
+                                  defaultValue + ".");
             }
-        } else {
-            queueSize = UIEventAdapterConstants.EVENTS_QUEUE_SIZE;
         }
+        return defaultValue;
     }
 
     @Override
@@ -199,10 +280,6 @@ public class UIEventAdapter implements OutputEventAdapter {
         Event event = (Event) message;
         StringBuilder eventBuilder = new StringBuilder("[");
 
-        if (streamSpecificEvents.size() == queueSize) {
-            streamSpecificEvents.removeFirst();
-        }
-
         eventBuilder.append(event.getTimeStamp());
 
         if (event.getMetaData() != null) {
@@ -248,16 +325,13 @@ public class UIEventAdapter implements OutputEventAdapter {
 
         eventBuilder.append("]");
         String eventString = eventBuilder.toString();
-        Object[] eventValues = new Object[UIEventAdapterConstants.INDEX_TWO];
-        eventValues[UIEventAdapterConstants.INDEX_ZERO] = eventString;
-        eventValues[UIEventAdapterConstants.INDEX_ONE] = System.currentTimeMillis();
-        streamSpecificEvents.add(eventValues);
+        streamSpecificEvents.add(eventString, System.currentTimeMillis());
 
         // fetch all valid sessions checked against any queryParameters provided when subscribing.
-        CopyOnWriteArrayList<WebSocketSessionRequest> validSessions = getValidSessions(event);
+        List<WebSocketSessionRequest> validSessions = getValidSessions(event);
 
         try {
-            executorService.execute(new WebSocketSender(validSessions, eventString));
+            executorService.execute(new WebSocketSender(validSessions, eventString, event));
         } catch (RejectedExecutionException e) {
             EventAdapterUtil.logAndDrop(eventAdapterConfiguration.getName(), message, "Job queue is full", e, log,
                                         tenantId);
@@ -274,13 +348,20 @@ public class UIEventAdapter implements OutputEventAdapter {
     public void destroy() {
         int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
 
+        if (binaryFlushTask != null) {
+            binaryFlushTask.cancel(false);
+            binaryEventDispatcher.flush();
+        }
+        AdapterMBeanUtil.unregisterMBean(mBeanName);
+        mBeanName = null;
+
         ConcurrentHashMap<String, String> tenantSpecificAdapterMap = UIEventAdaptorServiceDataHolder
                 .getTenantSpecificOutputEventStreamAdapterMap().get(tenantId);
         if (tenantSpecificAdapterMap != null && streamId != null) {
             tenantSpecificAdapterMap.remove(streamId);      //Removing outputadapter and streamId
         }
 
-        ConcurrentHashMap<String, LinkedBlockingDeque<Object>> tenantSpecificStreamEventMap =
+        ConcurrentHashMap<String, StreamEventBuffer> tenantSpecificStreamEventMap =
                 UIEventAdaptorServiceDataHolder.getTenantSpecificStreamEventMap().get(tenantId);
         if (tenantSpecificStreamEventMap != null && streamId != null) {
             //Removing the streamId and events registered for the output adapter
@@ -322,97 +403,31 @@ public class UIEventAdapter implements OutputEventAdapter {
 
     /**
      * Fetches all valid web-socket sessions from the entire pool of subscribed sessions. The validity is checked
-     * against any queryString provided when subscribing to the web-socket endpoint.
+     * against any queryString provided when subscribing to the web-socket endpoint, through the session index of the
+     * stream so that only the sessions filtering on the values of this event are looked at.
      *
      * @param event the current event received and that which needs to be published to subscribed sessions.
-     * @return a list of all validated web-socket sessions against the queryString values.
+     * @return a list of all validated web-socket sessions against the queryString values, or null if no session is
+     * subscribed to the stream.
      */
-    private CopyOnWriteArrayList<WebSocketSessionRequest> getValidSessions(Event event) {
-        CopyOnWriteArrayList<WebSocketSessionRequest> validSessions = new CopyOnWriteArrayList<>();
-        UIOutputCallbackControllerServiceImpl uiOutputCallbackControllerServiceImpl =
-                UIEventAdaptorServiceDataHolder.getUIOutputCallbackRegisterServiceImpl();
-        // get all subscribed web-socket sessions.
-        CopyOnWriteArrayList<WebSocketSessionRequest> webSocketSessionUtils =
-                uiOutputCallbackControllerServiceImpl.getSessions(tenantId, streamId);
-        if (webSocketSessionUtils != null) {
-            for (WebSocketSessionRequest webSocketSessionUtil : webSocketSessionUtils) {
-                boolean isValidSession = validateEventAgainstSessionFilters(event, webSocketSessionUtil);
-                if (isValidSession) {
-                    validSessions.add(webSocketSessionUtil);
-                }
-            }
+    private List<WebSocketSessionRequest> getValidSessions(Event event) {
+        if (sessionIndex.isEmpty()) {
+            return null;
         }
-        return validSessions;
-    }
-
-
-    /**
-     * Processes the given session's validity to receive the current "event" against any queryParams that was used at
-     * the time when the web-socket-session is subscribed. This method can be extended to validate the event against
-     * any additional attribute of the given session too.
-     *
-     * @param event               the current event received and that which needs to be published to subscribed
-     *                            sessions.
-     * @param webSocketSessionUtil the session which needs validated for its authenticity to receive this event.
-     * @return "true" if the session is valid to receive the event else "false".
-     */
-    private boolean validateEventAgainstSessionFilters(Event event, WebSocketSessionRequest webSocketSessionUtil) {
-
-        // fetch the queryString Key:Value pair map of the given session.
-        Map<String, String> queryParamValuePairs = webSocketSessionUtil.getQueryParamValuePairs();
-        if (queryParamValuePairs != null) {
-            // fetch the different attribute values received as part of the current event.
-            Object[] eventMetaData = event.getMetaData();
-            Object[] eventCorrelationData = event.getCorrelationData();
-            Object[] eventPayloadData = event.getPayloadData();
-
-            if (streamMetaAttributes != null) {
-                for (int i = 0; i < streamMetaAttributes.size(); i++) {
-                    String attributeName = streamMetaAttributes.get(i).getName();
-                    String queryValue = queryParamValuePairs.get(attributeName);
-
-                    if (queryValue != null &&
-                            (eventMetaData == null || !eventMetaData[i].toString().equals(queryValue))) {
-                        return false;
-                    }
-                }
-            }
-
-            if (streamCorrelationAttributes != null) {
-                for (int i = 0; i < streamCorrelationAttributes.size(); i++) {
-                    String attributeName = streamCorrelationAttributes.get(i).getName();
-                    String queryValue = queryParamValuePairs.get(attributeName);
-
-                    if (queryValue != null &&
-                            (eventCorrelationData == null || !eventCorrelationData[i].toString().equals(queryValue))) {
-                        return false;
-                    }
-                }
-            }
-
-            if (streamPayloadAttributes != null) {
-                for (int i = 0; i < streamPayloadAttributes.size(); i++) {
-                    String attributeName = streamPayloadAttributes.get(i).getName();
-                    String queryValue = queryParamValuePairs.get(attributeName);
-
-                    if (queryValue != null && (eventPayloadData == null || !eventPayloadData[i].toString().equals(
-                            queryValue))) {
-                        return false;
-                    }
-                }
-            }
-        }
-        return true;
+        return sessionIndex.getMatchingSessions(event.getMetaData(), event.getCorrelationData(),
+                                                event.getPayloadData());
     }
 
     private class WebSocketSender implements Runnable {
 
         private String message;
-        private CopyOnWriteArrayList<WebSocketSessionRequest> webSocketSessionUtils;
+        private Event event;
+        private List<WebSocketSessionRequest> webSocketSessionUtils;
 
-        public WebSocketSender(CopyOnWriteArrayList<WebSocketSessionRequest> webSocketSessionUtils, String message) {
+        public WebSocketSender(List<WebSocketSessionRequest> webSocketSessionUtils, String message, Event event) {
             this.webSocketSessionUtils = webSocketSessionUtils;
             this.message = message;
+            this.event = event;
         }
 
         /**
@@ -430,16 +445,31 @@ public class UIEventAdapter implements OutputEventAdapter {
         public void run() {
             if (webSocketSessionUtils != null) {
                 doLogDroppedMessage = true;
+                List<WebSocketOutboundQueue> binaryOutboundQueues = null;
                 for (WebSocketSessionRequest webSocketSessionUtil : webSocketSessionUtils) {
-                    synchronized (WebSocketSessionRequest.class) {
-                        try {
-                            webSocketSessionUtil.getSession().getBasicRemote().sendText(message);
-                        } catch (IOException e) {
-                            EventAdapterUtil.logAndDrop(eventAdapterConfiguration.getName(), message,
-                                                        "Cannot send to endpoint", e, log, tenantId);
+                    // Each session is written asynchronously from its own queue, so a stalled client only
+                    // affects itself.
+                    WebSocketOutboundQueue outboundQueue = webSocketSessionUtil.getOutboundQueue(
+                            sessionQueueSize, slowConsumerPolicy, outboundStatistics);
+                    if (webSocketSessionUtil.isBinary()) {
+                        if (binaryOutboundQueues == null) {
+                            binaryOutboundQueues = new ArrayList<>();
                         }
+                        binaryOutboundQueues.add(outboundQueue);
+                        continue;
+                    }
+                    // The event text is built once and shared by every text session.
+                    if (!outboundQueue.offer(message) && log.isDebugEnabled()) {
+                        log.debug("Dropped event for web-socket session " + webSocketSessionUtil.getSession().getId()
+                                          + " of adapter " + eventAdapterConfiguration.getName() + ", queue depth: "
+                                          + outboundQueue.getQueueDepth() + ", dropped: "
+                                          + outboundQueue.getDroppedCount() + ", lag: "
+                                          + outboundQueue.getCurrentLagInMillis() + "ms");
                     }
                 }
+                if (binaryOutboundQueues != null) {
+                    binaryEventDispatcher.add(event, binaryOutboundQueues);
+                }
             } else if (doLogDroppedMessage) {
                 EventAdapterUtil.logAndDrop(eventAdapterConfiguration.getName(), message, "No clients registered", log,
                                             tenantId);
@@ -20,22 +20,22 @@ package org.wso2.carbon.device.mgt.iot.output.adapter.ui;
 
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.device.mgt.iot.output.adapter.ui.internal.UIEventAdaptorServiceDataHolder;
+import org.wso2.carbon.device.mgt.iot.output.adapter.ui.util.StreamEventBuffer;
+import org.wso2.carbon.device.mgt.iot.output.adapter.ui.util.WebSocketSessionIndex;
 import org.wso2.carbon.device.mgt.iot.output.adapter.ui.util.WebSocketSessionRequest;
 import org.wso2.carbon.device.mgt.iot.output.adapter.ui.util.UIEventAdapterConstants;
 
 import javax.websocket.Session;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.LinkedBlockingDeque;
 
 /**
  * Service implementation class which exposes to front end
  */
 public class UIOutputCallbackControllerServiceImpl implements UIOutputCallbackControllerService {
 
-    private ConcurrentHashMap<Integer, ConcurrentHashMap<String, CopyOnWriteArrayList<WebSocketSessionRequest>>>
-            outputEventAdaptorSessionMap;
+    private ConcurrentHashMap<Integer, ConcurrentHashMap<String, WebSocketSessionIndex>> outputEventAdaptorSessionMap;
 
     public UIOutputCallbackControllerServiceImpl() {
         outputEventAdaptorSessionMap = new ConcurrentHashMap<>();
@@ -56,7 +56,20 @@ public class UIOutputCallbackControllerServiceImpl implements UIOutputCallbackCo
             version = UIEventAdapterConstants.ADAPTER_UI_DEFAULT_OUTPUT_STREAM_VERSION;
         }
         String streamId = streamName + UIEventAdapterConstants.ADAPTER_UI_COLON + version;
-        ConcurrentHashMap<String, CopyOnWriteArrayList<WebSocketSessionRequest>> tenantSpecificAdaptorMap =
+        WebSocketSessionRequest webSocketSessionUtil = new WebSocketSessionRequest(session);
+        getSessionIndex(tenantId, streamId).add(webSocketSessionUtil);
+    }
+
+    /**
+     * Used to return the index of the sessions subscribed to a stream, which is created if no session has
+     * subscribed yet.
+     *
+     * @param tenantId - Tenant id of the user.
+     * @param streamId - Stream name and version which user register to.
+     * @return the session index of the stream.
+     */
+    public WebSocketSessionIndex getSessionIndex(int tenantId, String streamId) {
+        ConcurrentHashMap<String, WebSocketSessionIndex> tenantSpecificAdaptorMap =
                 outputEventAdaptorSessionMap.get(tenantId);
         if (tenantSpecificAdaptorMap == null) {
             tenantSpecificAdaptorMap = new ConcurrentHashMap<>();
@@ -64,16 +77,14 @@ public class UIOutputCallbackControllerServiceImpl implements UIOutputCallbackCo
                 tenantSpecificAdaptorMap = outputEventAdaptorSessionMap.get(tenantId);
             }
         }
-        CopyOnWriteArrayList<WebSocketSessionRequest> adapterSpecificSessions = tenantSpecificAdaptorMap.get(streamId);
-        if (adapterSpecificSessions == null) {
-            adapterSpecificSessions = new CopyOnWriteArrayList<>();
-            if (null != tenantSpecificAdaptorMap.putIfAbsent(streamId, adapterSpecificSessions)) {
-                adapterSpecificSessions = tenantSpecificAdaptorMap.get(streamId);
+        WebSocketSessionIndex sessionIndex = tenantSpecificAdaptorMap.get(streamId);
+        if (sessionIndex == null) {
+            sessionIndex = new WebSocketSessionIndex();
+            if (null != tenantSpecificAdaptorMap.putIfAbsent(streamId, sessionIndex)) {
+                sessionIndex = tenantSpecificAdaptorMap.get(streamId);
             }
         }
-
-        WebSocketSessionRequest webSocketSessionUtil = new WebSocketSessionRequest(session);
-        adapterSpecificSessions.add(webSocketSessionUtil);
+        return sessionIndex;
     }
 
     /**
@@ -83,11 +94,14 @@ public class UIOutputCallbackControllerServiceImpl implements UIOutputCallbackCo
      * @param streamId - Stream name and version which user register to.
      * @return the sessions list.
      */
-    public CopyOnWriteArrayList<WebSocketSessionRequest> getSessions(int tenantId, String streamId) {
-        ConcurrentHashMap<String, CopyOnWriteArrayList<WebSocketSessionRequest>> tenantSpecificAdaptorMap
+    public List<WebSocketSessionRequest> getSessions(int tenantId, String streamId) {
+        ConcurrentHashMap<String, WebSocketSessionIndex> tenantSpecificAdaptorMap
                 = outputEventAdaptorSessionMap.get(tenantId);
         if (tenantSpecificAdaptorMap != null) {
-            return tenantSpecificAdaptorMap.get(streamId);
+            WebSocketSessionIndex sessionIndex = tenantSpecificAdaptorMap.get(streamId);
+            if (sessionIndex != null) {
+                return sessionIndex.getSessions();
+            }
         }
         return null;
     }
@@ -100,8 +114,8 @@ public class UIOutputCallbackControllerServiceImpl implements UIOutputCallbackCo
      * @param version    - Stream version which user uses.
      * @return the events list.
      */
-    public LinkedBlockingDeque<Object> getEvents(int tenanId, String streamName, String version) {
-        ConcurrentHashMap<String, LinkedBlockingDeque<Object>> tenantSpecificStreamMap =
+    public StreamEventBuffer getEvents(int tenanId, String streamName, String version) {
+        ConcurrentHashMap<String, StreamEventBuffer> tenantSpecificStreamMap =
                 UIEventAdaptorServiceDataHolder.getTenantSpecificStreamEventMap().get(tenanId);
         if (tenantSpecificStreamMap != null) {
             String streamId = streamName + UIEventAdapterConstants.ADAPTER_UI_COLON + version;
@@ -110,6 +124,24 @@ public class UIOutputCallbackControllerServiceImpl implements UIOutputCallbackCo
         return null;
     }
 
+    /**
+     * Used to return the events of a streamId published after the last event a client has seen
+     *
+     * @param tenanId    - Tenant id of the user.
+     * @param streamName - Stream name which user register to.
+     * @param version    - Stream version which user uses.
+     * @param sequence   - Sequence of the last event the client has seen, 0 for all buffered events.
+     * @return the events after the sequence, oldest first.
+     */
+    public List<StreamEventBuffer.BufferedEvent> getEvents(int tenanId, String streamName, String version,
+                                                           long sequence) {
+        StreamEventBuffer streamEventBuffer = getEvents(tenanId, streamName, version);
+        if (streamEventBuffer == null) {
+            return Collections.emptyList();
+        }
+        return streamEventBuffer.getEventsAfter(sequence);
+    }
+
     /**
      * Used to return events per streamId
      *
@@ -123,22 +155,14 @@ public class UIOutputCallbackControllerServiceImpl implements UIOutputCallbackCo
             version = UIEventAdapterConstants.ADAPTER_UI_DEFAULT_OUTPUT_STREAM_VERSION;
         }
         String id = streamName + UIEventAdapterConstants.ADAPTER_UI_COLON + version;
-        ConcurrentHashMap<String, CopyOnWriteArrayList<WebSocketSessionRequest>> tenantSpecificAdaptorMap
+        ConcurrentHashMap<String, WebSocketSessionIndex> tenantSpecificAdaptorMap
                 = outputEventAdaptorSessionMap.get(tenantId);
         if (tenantSpecificAdaptorMap != null) {
-            CopyOnWriteArrayList<WebSocketSessionRequest> adapterSpecificSessions = tenantSpecificAdaptorMap.get(id);
-            if (adapterSpecificSessions != null) {
-                WebSocketSessionRequest sessionToRemove = null;
-                Iterator<WebSocketSessionRequest> iterator = adapterSpecificSessions.iterator();
-                while (iterator.hasNext()) {
-                    WebSocketSessionRequest webSocketSessionUtil = iterator.next();
-                    if (session.getId().equals(webSocketSessionUtil.getSession().getId())) {
-                        sessionToRemove = webSocketSessionUtil;
-                        break;
-                    }
-                }
-                if (sessionToRemove != null) {
-                    adapterSpecificSessions.remove(sessionToRemove);
+            WebSocketSessionIndex sessionIndex = tenantSpecificAdaptorMap.get(id);
+            if (sessionIndex != null) {
+                WebSocketSessionRequest sessionToRemove = sessionIndex.remove(session.getId());
+                if (sessionToRemove != null && sessionToRemove.getOutboundQueue() != null) {
+                    sessionToRemove.getOutboundQueue().close();
                 }
             }
         }
@@ -19,10 +19,10 @@
 package org.wso2.carbon.device.mgt.iot.output.adapter.ui.internal;
 
 import org.wso2.carbon.device.mgt.iot.output.adapter.ui.UIOutputCallbackControllerServiceImpl;
+import org.wso2.carbon.device.mgt.iot.output.adapter.ui.util.StreamEventBuffer;
 import org.wso2.carbon.event.stream.core.EventStreamService;
 
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingDeque;
 
 /**
  * Creates a holder of type UIOutputCallbackRegisterServiceImpl.
@@ -32,7 +32,7 @@ public final class UIEventAdaptorServiceDataHolder {
     private static UIOutputCallbackControllerServiceImpl UIOutputCallbackRegisterServiceImpl;
     private static ConcurrentHashMap<Integer, ConcurrentHashMap<String, String>>
             tenantSpecificOutputEventStreamAdapterMap = new ConcurrentHashMap<>();
-    private static ConcurrentHashMap<Integer, ConcurrentHashMap<String, LinkedBlockingDeque<Object>>>
+    private static ConcurrentHashMap<Integer, ConcurrentHashMap<String, StreamEventBuffer>>
             tenantSpecificStreamEventMap = new ConcurrentHashMap<>();
     private static EventStreamService eventStreamService;
 
@@ -59,7 +59,7 @@ public final class UIEventAdaptorServiceDataHolder {
         return tenantSpecificOutputEventStreamAdapterMap;
     }
 
-    public static ConcurrentHashMap<Integer, ConcurrentHashMap<String, LinkedBlockingDeque<Object>>>
+    public static ConcurrentHashMap<Integer, ConcurrentHashMap<String, StreamEventBuffer>>
     getTenantSpecificStreamEventMap() {
         return tenantSpecificStreamEventMap;
     }
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.output.adapter.ui.util;
+
+import org.wso2.carbon.databridge.commons.Event;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the events of a stream destined to sessions using the binary sub protocol and sends them as batches.
+ * A batch is sent when it reaches the maximum batch size or when it is flushed, which the adapter does on the
+ * configured flush interval. Sessions that receive the same events in a batch share one encoded frame, so a batch is
+ * encoded once per distinct set of events rather than once per session.
+ */
+public class BinaryEventDispatcher {
+
+    private final BinaryEventEncoder encoder;
+    private final int maxBatchSize;
+    // guarded by this
+    private List<PendingEvent> pendingEvents = new ArrayList<>();
+
+    /**
+     * @param maxBatchSize maximum number of events sent in one frame, 1 sends every event on its own.
+     */
+    public BinaryEventDispatcher(BinaryEventEncoder encoder, int maxBatchSize) {
+        this.encoder = encoder;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    /**
+     * Adds an event to the current batch.
+     *
+     * @param outboundQueues the queues of the binary sessions the event matches.
+     */
+    public void add(Event event, List<WebSocketOutboundQueue> outboundQueues) {
+        if (outboundQueues.isEmpty()) {
+            return;
+        }
+        List<PendingEvent> batch = null;
+        synchronized (this) {
+            pendingEvents.add(new PendingEvent(event, outboundQueues));
+            if (pendingEvents.size() >= maxBatchSize) {
+                batch = pendingEvents;
+                pendingEvents = new ArrayList<>();
+            }
+        }
+        if (batch != null) {
+            dispatch(batch);
+        }
+    }
+
+    /**
+     * Sends the events collected so far.
+     */
+    public void flush() {
+        List<PendingEvent> batch;
+        synchronized (this) {
+            if (pendingEvents.isEmpty()) {
+                return;
+            }
+            batch = pendingEvents;
+            pendingEvents = new ArrayList<>();
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(List<PendingEvent> batch) {
+        // events of the batch each session receives, by their position in the batch
+        Map<WebSocketOutboundQueue, List<Integer>> sessionEvents = new IdentityHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            for (WebSocketOutboundQueue outboundQueue : batch.get(i).outboundQueues) {
+                List<Integer> eventPositions = sessionEvents.get(outboundQueue);
+                if (eventPositions == null) {
+                    eventPositions = new ArrayList<>();
+                    sessionEvents.put(outboundQueue, eventPositions);
+                }
+                eventPositions.add(i);
+            }
+        }
+        Map<List<Integer>, List<WebSocketOutboundQueue>> frameReceivers = new HashMap<>();
+        for (Map.Entry<WebSocketOutboundQueue, List<Integer>> entry : sessionEvents.entrySet()) {
+            List<WebSocketOutboundQueue> receivers = frameReceivers.get(entry.getValue());
+            if (receivers == null) {
+                receivers = new ArrayList<>();
+                frameReceivers.put(entry.getValue(), receivers);
+            }
+            receivers.add(entry.getKey());
+        }
+        for (Map.Entry<List<Integer>, List<WebSocketOutboundQueue>> entry : frameReceivers.entrySet()) {
+            List<Event> events = new ArrayList<>(entry.getKey().size());
+            for (int position : entry.getKey()) {
+                events.add(batch.get(position).event);
+            }
+            ByteBuffer frame = encoder.encode(events);
+            for (WebSocketOutboundQueue outboundQueue : entry.getValue()) {
+                outboundQueue.offer(frame.duplicate());
+            }
+        }
+    }
+
+    private static class PendingEvent {
+        private final Event event;
+        private final List<WebSocketOutboundQueue> outboundQueues;
+
+        private PendingEvent(Event event, List<WebSocketOutboundQueue> outboundQueues) {
+            this.event = event;
+            this.outboundQueues = outboundQueues;
+        }
+    }
+}
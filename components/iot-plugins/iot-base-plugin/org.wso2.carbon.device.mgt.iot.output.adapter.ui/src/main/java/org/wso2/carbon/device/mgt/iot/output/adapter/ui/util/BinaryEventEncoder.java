@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.output.adapter.ui.util;
+
+import org.wso2.carbon.databridge.commons.Attribute;
+import org.wso2.carbon.databridge.commons.AttributeType;
+import org.wso2.carbon.databridge.commons.Event;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes a batch of events of a stream into the columnar binary frame sent to sessions which negotiated the binary
+ * sub protocol. All values are big endian, and the frame is laid out as
+ * <pre>
+ * byte          format version
+ * int           number of events (n)
+ * long[n]       event timestamps
+ * for each attribute of the stream, meta, correlation and payload attributes in stream definition order:
+ *   byte        attribute type: 'I' int, 'L' long, 'F' float, 'D' double, 'B' bool, 'S' string
+ *   values[n]   int32, int64, float32, float64 or one byte per value,
+ *               strings as an int32 byte length followed by the UTF-8 bytes, a length of -1 for null
+ * </pre>
+ * Numeric columns are contiguous, so a client can read them directly as typed arrays. A missing numeric value is
+ * sent as NaN for floating point attributes and 0 otherwise.
+ */
+public class BinaryEventEncoder {
+
+    public static final byte FORMAT_VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte TYPE_INT = 'I';
+    private static final byte TYPE_LONG = 'L';
+    private static final byte TYPE_FLOAT = 'F';
+    private static final byte TYPE_DOUBLE = 'D';
+    private static final byte TYPE_BOOL = 'B';
+    private static final byte TYPE_STRING = 'S';
+    private static final int NULL_STRING_LENGTH = -1;
+
+    private final List<Column> columns = new ArrayList<>();
+
+    public BinaryEventEncoder(List<Attribute> metaAttributes, List<Attribute> correlationAttributes,
+                              List<Attribute> payloadAttributes) {
+        addColumns(metaAttributes, Column.META);
+        addColumns(correlationAttributes, Column.CORRELATION);
+        addColumns(payloadAttributes, Column.PAYLOAD);
+    }
+
+    /**
+     * Encodes the events into a single frame.
+     *
+     * @return a read only buffer holding the frame, positioned at its start.
+     */
+    public ByteBuffer encode(List<Event> events) {
+        int eventCount = events.size();
+        byte[][][] strings = new byte[columns.size()][][];
+        int size = 1 + 4 + 8 * eventCount + columns.size();
+        for (int c = 0; c < columns.size(); c++) {
+            Column column = columns.get(c);
+            if (column.typeCode == TYPE_STRING) {
+                strings[c] = new byte[eventCount][];
+                for (int e = 0; e < eventCount; e++) {
+                    Object value = column.valueOf(events.get(e));
+                    if (value != null) {
+                        strings[c][e] = value.toString().getBytes(UTF_8);
+                        size += strings[c][e].length;
+                    }
+                    size += 4;
+                }
+            } else {
+                size += column.width * eventCount;
+            }
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(size);
+        frame.put(FORMAT_VERSION);
+        frame.putInt(eventCount);
+        for (Event event : events) {
+            frame.putLong(event.getTimeStamp());
+        }
+        for (int c = 0; c < columns.size(); c++) {
+            Column column = columns.get(c);
+            frame.put(column.typeCode);
+            for (int e = 0; e < eventCount; e++) {
+                if (column.typeCode == TYPE_STRING) {
+                    byte[] value = strings[c][e];
+                    if (value == null) {
+                        frame.putInt(NULL_STRING_LENGTH);
+                    } else {
+                        frame.putInt(value.length);
+                        frame.put(value);
+                    }
+                } else {
+                    column.put(frame, column.valueOf(events.get(e)));
+                }
+            }
+        }
+        frame.flip();
+        return frame.asReadOnlyBuffer();
+    }
+
+    private void addColumns(List<Attribute> attributes, int section) {
+        if (attributes == null) {
+            return;
+        }
+        for (int i = 0; i < attributes.size(); i++) {
+            columns.add(new Column(section, i, attributes.get(i).getType()));
+        }
+    }
+
+    private static class Column {
+        private static final int META = 0;
+        private static final int CORRELATION = 1;
+        private static final int PAYLOAD = 2;
+
+        private final int section;
+        private final int index;
+        private final byte typeCode;
+        private final int width;
+
+        private Column(int section, int index, AttributeType type) {
+            this.section = section;
+            this.index = index;
+            if (type == null) {
+                type = AttributeType.STRING;
+            }
+            switch (type) {
+                case INT:
+                    typeCode = TYPE_INT;
+                    width = 4;
+                    break;
+                case LONG:
+                    typeCode = TYPE_LONG;
+                    width = 8;
+                    break;
+                case FLOAT:
+                    typeCode = TYPE_FLOAT;
+                    width = 4;
+                    break;
+                case DOUBLE:
+                    typeCode = TYPE_DOUBLE;
+                    width = 8;
+                    break;
+                case BOOL:
+                    typeCode = TYPE_BOOL;
+                    width = 1;
+                    break;
+                default:
+                    typeCode = TYPE_STRING;
+                    width = 0;
+            }
+        }
+
+        private Object valueOf(Event event) {
+            Object[] data;
+            switch (section) {
+                case META:
+                    data = event.getMetaData();
+                    break;
+                case CORRELATION:
+                    data = event.getCorrelationData();
+                    break;
+                default:
+                    data = event.getPayloadData();
+            }
+            return data != null && index < data.length ? data[index] : null;
+        }
+
+        private void put(ByteBuffer frame, Object value) {
+            Number number = value instanceof Number ? (Number) value : null;
+            switch (typeCode) {
+                case TYPE_INT:
+                    frame.putInt(number != null ? number.intValue() : 0);
+                    break;
+                case TYPE_LONG:
+                    frame.putLong(number != null ? number.longValue() : 0L);
+                    break;
+                case TYPE_FLOAT:
+                    frame.putFloat(number != null ? number.floatValue() : Float.NaN);
+                    break;
+                case TYPE_DOUBLE:
+                    frame.putDouble(number != null ? number.doubleValue() : Double.NaN);
+                    break;
+                default:
+                    frame.put((byte) (Boolean.TRUE.equals(value) ? 1 : 0));
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.output.adapter.ui.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the last events of a stream in a fixed size ring so that polling clients can fetch what they missed. Every
+ * event gets a sequence number, and a client asks for the events after the last sequence it has seen. Publishers
+ * claim a sequence and write their slot without locking, so a publisher never waits for another publisher or for a
+ * reader.
+ */
+public class StreamEventBuffer {
+
+    private final int capacity;
+    private final AtomicReferenceArray<BufferedEvent> slots;
+    // sequence number of the next event to be added, sequences start from 1
+    private final AtomicLong nextSequence = new AtomicLong(1);
+
+    public StreamEventBuffer(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.slots = new AtomicReferenceArray<>(this.capacity);
+    }
+
+    /**
+     * Adds an event, overwriting the oldest one if the buffer is full.
+     *
+     * @return the sequence number of the event.
+     */
+    public long add(String event, long timestamp) {
+        long sequence = nextSequence.getAndIncrement();
+        BufferedEvent bufferedEvent = new BufferedEvent(sequence, event, timestamp);
+        int index = indexOf(sequence);
+        BufferedEvent current;
+        do {
+            current = slots.get(index);
+            // A publisher that claimed a later sequence for this slot has already written it.
+            if (current != null && current.sequence > sequence) {
+                break;
+            }
+        } while (!slots.compareAndSet(index, current, bufferedEvent));
+        return sequence;
+    }
+
+    /**
+     * Returns the events added after the given sequence, oldest first. Events that have already been overwritten are
+     * skipped, and the result stops before an event whose publisher has not finished writing it yet, so the last
+     * returned sequence can always be used for the next request.
+     *
+     * @param sequence the last sequence seen by the client, 0 to get all buffered events.
+     */
+    public List<BufferedEvent> getEventsAfter(long sequence) {
+        long end = nextSequence.get();
+        long start = Math.max(sequence + 1, end - capacity);
+        if (start >= end) {
+            return Collections.emptyList();
+        }
+        List<BufferedEvent> events = new ArrayList<>((int) (end - start));
+        for (long next = start; next < end; next++) {
+            BufferedEvent bufferedEvent = slots.get(indexOf(next));
+            if (bufferedEvent == null || bufferedEvent.sequence < next) {
+                break;
+            }
+            if (bufferedEvent.sequence == next) {
+                events.add(bufferedEvent);
+            }
+        }
+        return events;
+    }
+
+    /**
+     * @return all buffered events, oldest first.
+     */
+    public List<BufferedEvent> getEvents() {
+        return getEventsAfter(0);
+    }
+
+    /**
+     * @return sequence of the last event added, 0 if no event has been added.
+     */
+    public long getLastSequence() {
+        return nextSequence.get() - 1;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private int indexOf(long sequence) {
+        return (int) (sequence % capacity);
+    }
+
+    /**
+     * An event kept in the buffer.
+     */
+    public static class BufferedEvent {
+        private final long sequence;
+        private final String event;
+        private final long timestamp;
+
+        private BufferedEvent(long sequence, String event, long timestamp) {
+            this.sequence = sequence;
+            this.event = event;
+            this.timestamp = timestamp;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public String getEvent() {
+            return event;
+        }
+
+        /**
+         * @return time the event was published by the adapter.
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+}
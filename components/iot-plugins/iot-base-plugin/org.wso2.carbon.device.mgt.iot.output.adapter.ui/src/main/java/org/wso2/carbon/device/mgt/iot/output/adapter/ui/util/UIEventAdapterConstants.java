@@ -31,6 +31,7 @@ public class UIEventAdapterConstants {
     public static final String ADAPTER_USAGE_TIPS_POSTFIX = "ui.usage.tips_postfix";
     public static final String ADAPTER_UI_DEFAULT_OUTPUT_STREAM_VERSION = "1.0.0";
     public static final String ADAPTER_UI_COLON = ":";
+    public static final String ADAPTER_UI_BINARY_SUBPROTOCOL = "wso2.iot.ui.binary.v1";
     public static final int INDEX_ZERO = 0;
     public static final int INDEX_ONE = 1;
     public static final int INDEX_TWO = 2;
@@ -47,4 +48,16 @@ public class UIEventAdapterConstants {
     public static final String ADAPTER_EVENT_QUEUE_SIZE_NAME = "eventQueueSize";
     public static final int EVENTS_QUEUE_SIZE = 30;
 
+    public static final String ADAPTER_SESSION_QUEUE_SIZE_NAME = "sessionQueueSize";
+    public static final int SESSION_QUEUE_SIZE = 100;
+    public static final String ADAPTER_SLOW_CONSUMER_POLICY_NAME = "slowConsumerPolicy";
+    public static final String SLOW_CONSUMER_POLICY = "drop";
+
+    public static final String ADAPTER_BINARY_FLUSH_INTERVAL_NAME = "binaryFlushIntervalInMillis";
+    public static final int BINARY_FLUSH_INTERVAL_IN_MILLIS = 0;
+    public static final String ADAPTER_BINARY_BATCH_SIZE_NAME = "binaryBatchSize";
+    public static final int BINARY_BATCH_SIZE = 100;
+
+    public static final String MBEAN_TYPE = "UIOutputAdapter";
+
 }
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.output.adapter.ui.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.websocket.CloseReason;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded outbound queue of a single web-socket session. Messages are written through the asynchronous remote of the
+ * session, so a slow client only fills its own queue instead of holding up the delivery to every other session.
+ * When the queue is full the configured slow consumer policy decides what happens to the client.
+ * <p/>
+ * The container does not accept a new asynchronous write before the previous one completed, hence messages are
+ * written one at a time and the next one is started from the completion handler of the previous. A session whose
+ * write fails is closed, so that it is unsubscribed instead of silently receiving nothing.
+ * <p/>
+ * Deliveries, drops and lag are recorded in the {@link WebSocketOutboundStatistics} shared by the sessions of the
+ * adapter.
+ */
+public class WebSocketOutboundQueue {
+
+    private static final Log log = LogFactory.getLog(WebSocketOutboundQueue.class);
+
+    private static final String SLOW_CONSUMER_CLOSE_REASON = "Client is not consuming events fast enough";
+    private static final String SEND_FAILURE_CLOSE_REASON = "Failed to send events to the client";
+
+    /**
+     * What to do with a session whose outbound queue is full.
+     */
+    public enum SlowConsumerPolicy {
+        /**
+         * Drop the new message and keep the queued ones.
+         */
+        DROP,
+        /**
+         * Drop the queued messages and keep only the new one, so the client catches up with the latest value.
+         */
+        COALESCE,
+        /**
+         * Close the session, the client is expected to reconnect.
+         */
+        DISCONNECT
+    }
+
+    private final Session session;
+    private final int maxQueueSize;
+    private final SlowConsumerPolicy slowConsumerPolicy;
+    private final WebSocketOutboundStatistics statistics;
+
+    // queue, writing and closed are guarded by this
+    private final ArrayDeque<OutboundMessage> queue = new ArrayDeque<>();
+    private boolean writing;
+    private boolean closed;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    public WebSocketOutboundQueue(Session session, int maxQueueSize, SlowConsumerPolicy slowConsumerPolicy,
+                                  WebSocketOutboundStatistics statistics) {
+        this.session = session;
+        this.maxQueueSize = Math.max(1, maxQueueSize);
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Queues the message for the session and starts writing it unless a write is already in progress.
+     *
+     * @param message the text to be sent.
+     * @return "true" if the message was queued, "false" if it was dropped or the session is closed.
+     */
+    public boolean offer(String message) {
+        return offerMessage(message);
+    }
+
+    /**
+     * Queues a binary frame for the session. The buffer is sent from its position to its limit and must not be
+     * modified afterwards, a buffer shared between sessions is passed as a duplicate.
+     *
+     * @param frame the frame to be sent.
+     * @return "true" if the frame was queued, "false" if it was dropped or the session is closed.
+     */
+    public boolean offer(ByteBuffer frame) {
+        return offerMessage(frame);
+    }
+
+    private boolean offerMessage(Object message) {
+        OutboundMessage sendable;
+        boolean disconnect = false;
+        synchronized (this) {
+            if (closed) {
+                drop(1);
+                return false;
+            }
+            if (queue.size() >= maxQueueSize) {
+                switch (slowConsumerPolicy) {
+                    case COALESCE:
+                        droppedCount.addAndGet(queue.size());
+                        statistics.onCoalesced(queue.size());
+                        queue.clear();
+                        break;
+                    case DISCONNECT:
+                        drop(queue.size() + 1);
+                        queue.clear();
+                        closed = true;
+                        disconnect = true;
+                        statistics.onDisconnected();
+                        break;
+                    default:
+                        drop(1);
+                        return false;
+                }
+            }
+            if (disconnect) {
+                sendable = null;
+            } else {
+                queue.add(new OutboundMessage(message, System.currentTimeMillis()));
+                sendable = pollSendable();
+            }
+        }
+        if (disconnect) {
+            log.warn("Closing web-socket session " + session.getId() + " since its outbound queue of " +
+                             maxQueueSize + " messages is full.");
+            closeSession(CloseReason.CloseCodes.TRY_AGAIN_LATER, SLOW_CONSUMER_CLOSE_REASON);
+            return false;
+        }
+        send(sendable);
+        return true;
+    }
+
+    /**
+     * Discards the queued messages, messages already handed to the container are not affected.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            queue.clear();
+        }
+    }
+
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return time the oldest queued message has been waiting, or 0 if nothing is queued.
+     */
+    public long getCurrentLagInMillis() {
+        OutboundMessage oldest;
+        synchronized (this) {
+            oldest = queue.peek();
+        }
+        return oldest == null ? 0 : System.currentTimeMillis() - oldest.queuedTime;
+    }
+
+    /**
+     * @return messages of this session that were dropped or coalesced.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public SlowConsumerPolicy getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    private void drop(int count) {
+        droppedCount.addAndGet(count);
+        statistics.onDropped(count);
+    }
+
+    /**
+     * Takes the message at the head of the queue unless a write is in progress. Must be called holding the lock of
+     * this queue.
+     */
+    private OutboundMessage pollSendable() {
+        if (writing || queue.isEmpty()) {
+            return null;
+        }
+        writing = true;
+        return queue.poll();
+    }
+
+    private void send(OutboundMessage message) {
+        if (message == null) {
+            return;
+        }
+        try {
+            if (message.payload instanceof ByteBuffer) {
+                session.getAsyncRemote().sendBinary((ByteBuffer) message.payload, message);
+            } else {
+                session.getAsyncRemote().sendText((String) message.payload, message);
+            }
+        } catch (RuntimeException e) {
+            // The container rejects the write when the session is already closed.
+            failed(e);
+        }
+    }
+
+    private void completed() {
+        OutboundMessage sendable;
+        synchronized (this) {
+            writing = false;
+            sendable = closed ? null : pollSendable();
+        }
+        send(sendable);
+    }
+
+    private void failed(Throwable cause) {
+        statistics.onFailed();
+        if (log.isDebugEnabled()) {
+            log.debug("Cannot send to the web-socket session " + session.getId(), cause);
+        }
+        synchronized (this) {
+            writing = false;
+            if (closed) {
+                return;
+            }
+            closed = true;
+            drop(queue.size());
+            queue.clear();
+        }
+        closeSession(CloseReason.CloseCodes.UNEXPECTED_CONDITION, SEND_FAILURE_CLOSE_REASON);
+    }
+
+    /**
+     * Closes the session, which unsubscribes it through the close handler of the endpoint.
+     */
+    private void closeSession(CloseReason.CloseCode closeCode, String reason) {
+        try {
+            session.close(new CloseReason(closeCode, reason));
+        } catch (IOException e) {
+            log.error("Error occurred while closing the web-socket session " + session.getId(), e);
+        }
+    }
+
+    /**
+     * A queued message, which is also the completion handler of its own write.
+     */
+    private class OutboundMessage implements SendHandler {
+        private final Object payload;
+        private final long queuedTime;
+
+        private OutboundMessage(Object payload, long queuedTime) {
+            this.payload = payload;
+            this.queuedTime = queuedTime;
+        }
+
+        @Override
+        public void onResult(SendResult result) {
+            if (!result.isOK()) {
+                failed(result.getException());
+                return;
+            }
+            statistics.onSent(System.currentTimeMillis() - queuedTime);
+            completed();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.output.adapter.ui.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivery statistics shared by the outbound queues of all web-socket sessions of a UI output adapter.
+ */
+public class WebSocketOutboundStatistics implements WebSocketOutboundStatisticsMBean {
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong disconnectedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private volatile long lastLagInMillis;
+    private final AtomicLong maxLagInMillis = new AtomicLong();
+
+    void onSent(long lagInMillis) {
+        sentCount.incrementAndGet();
+        lastLagInMillis = lagInMillis;
+        long maxLag = maxLagInMillis.get();
+        while (lagInMillis > maxLag && !maxLagInMillis.compareAndSet(maxLag, lagInMillis)) {
+            maxLag = maxLagInMillis.get();
+        }
+    }
+
+    void onDropped(int count) {
+        droppedCount.addAndGet(count);
+    }
+
+    void onCoalesced(int count) {
+        coalescedCount.addAndGet(count);
+    }
+
+    void onDisconnected() {
+        disconnectedCount.incrementAndGet();
+    }
+
+    void onFailed() {
+        failedCount.incrementAndGet();
+    }
+
+    @Override
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    @Override
+    public long getDisconnectedCount() {
+        return disconnectedCount.get();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    @Override
+    public long getLastLagInMillis() {
+        return lastLagInMillis;
+    }
+
+    @Override
+    public long getMaxLagInMillis() {
+        return maxLagInMillis.get();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.output.adapter.ui.util;
+
+/**
+ * Delivery statistics of the web-socket sessions of a UI output adapter, exposed through JMX.
+ */
+public interface WebSocketOutboundStatisticsMBean {
+
+    long getSentCount();
+
+    /**
+     * @return messages dropped because a queue was full, a session was closed or a write failed.
+     */
+    long getDroppedCount();
+
+    /**
+     * @return queued messages replaced by a newer one under the coalesce policy.
+     */
+    long getCoalescedCount();
+
+    /**
+     * @return sessions closed under the disconnect policy.
+     */
+    long getDisconnectedCount();
+
+    long getFailedCount();
+
+    /**
+     * @return time between queueing and completing the write of the last message sent.
+     */
+    long getLastLagInMillis();
+
+    long getMaxLagInMillis();
+}
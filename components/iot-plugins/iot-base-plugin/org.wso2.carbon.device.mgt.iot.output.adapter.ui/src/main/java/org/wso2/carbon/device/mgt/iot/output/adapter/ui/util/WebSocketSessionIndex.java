@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.output.adapter.ui.util;
+
+import org.wso2.carbon.databridge.commons.Attribute;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sessions subscribed to a single stream, indexed by the attribute values they filter on. A session filters on an
+ * attribute by passing the attribute name and the expected value in its query string. Query parameters that are not
+ * attributes of the stream, such as the access token, are not filters. Sessions without any filter are kept in a
+ * wildcard set, so an event is routed with one lookup per attribute instead of checking every session.
+ * <p/>
+ * The attributes of the stream are only known once its adapter is initialized, until then the sessions are kept
+ * without being indexed.
+ * <p/>
+ * Sessions are keyed by their id, so subscribing and unsubscribing do not depend on the number of sessions. The
+ * list of all sessions is a snapshot which is only rebuilt when it is asked for after a change.
+ */
+public class WebSocketSessionIndex {
+
+    // session id -> session
+    private final ConcurrentHashMap<String, WebSocketSessionRequest> sessions = new ConcurrentHashMap<>();
+    private volatile List<WebSocketSessionRequest> sessionsSnapshot;
+    private final Set<WebSocketSessionRequest> wildcardSessions =
+            Collections.newSetFromMap(new ConcurrentHashMap<WebSocketSessionRequest, Boolean>());
+    // session -> number of attribute values that have to match, an attribute present in several of the meta,
+    // correlation and payload data has to match in each of them
+    private final ConcurrentHashMap<WebSocketSessionRequest, Integer> filteredSessions = new ConcurrentHashMap<>();
+    // attribute name -> attribute value -> sessions expecting that value
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Set<WebSocketSessionRequest>>> filterIndex =
+            new ConcurrentHashMap<>();
+
+    private volatile String[] metaAttributeNames;
+    private volatile String[] correlationAttributeNames;
+    private volatile String[] payloadAttributeNames;
+    private volatile Set<String> attributeNames;
+    // attribute name -> number of times it appears in the meta, correlation and payload data
+    private volatile Map<String, Integer> attributeOccurrences;
+
+    /**
+     * Sets the attributes of the stream and re-indexes the subscribed sessions against them.
+     */
+    public synchronized void setStreamAttributes(List<Attribute> metaAttributes,
+                                                 List<Attribute> correlationAttributes,
+                                                 List<Attribute> payloadAttributes) {
+        Map<String, Integer> occurrences = new HashMap<>();
+        metaAttributeNames = toNames(metaAttributes, occurrences);
+        correlationAttributeNames = toNames(correlationAttributes, occurrences);
+        payloadAttributeNames = toNames(payloadAttributes, occurrences);
+        attributeOccurrences = occurrences;
+        attributeNames = occurrences.keySet();
+
+        wildcardSessions.clear();
+        filteredSessions.clear();
+        filterIndex.clear();
+        for (WebSocketSessionRequest session : sessions.values()) {
+            index(session);
+        }
+    }
+
+    /**
+     * Adds a session, replacing the session previously added with the same id.
+     */
+    public synchronized void add(WebSocketSessionRequest session) {
+        WebSocketSessionRequest previous = sessions.put(session.getSession().getId(), session);
+        if (previous != null) {
+            unindex(previous);
+        }
+        sessionsSnapshot = null;
+        if (attributeNames != null) {
+            index(session);
+        }
+    }
+
+    /**
+     * Removes the session with the given id.
+     *
+     * @return the removed session, or null if no session with the id is subscribed.
+     */
+    public synchronized WebSocketSessionRequest remove(String sessionId) {
+        WebSocketSessionRequest session = sessions.remove(sessionId);
+        if (session != null) {
+            unindex(session);
+            sessionsSnapshot = null;
+        }
+        return session;
+    }
+
+    private void unindex(WebSocketSessionRequest session) {
+        wildcardSessions.remove(session);
+        if (filteredSessions.remove(session) != null) {
+            for (Map.Entry<String, String> filter : session.getQueryParamValuePairs().entrySet()) {
+                Map<String, Set<WebSocketSessionRequest>> valueIndex = filterIndex.get(filter.getKey());
+                if (valueIndex == null) {
+                    continue;
+                }
+                Set<WebSocketSessionRequest> valueSessions = valueIndex.get(filter.getValue());
+                if (valueSessions != null) {
+                    valueSessions.remove(session);
+                    if (valueSessions.isEmpty()) {
+                        valueIndex.remove(filter.getValue());
+                    }
+                }
+                if (valueIndex.isEmpty()) {
+                    filterIndex.remove(filter.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return an unmodifiable snapshot of all sessions subscribed to the stream.
+     */
+    public List<WebSocketSessionRequest> getSessions() {
+        List<WebSocketSessionRequest> snapshot = sessionsSnapshot;
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = sessionsSnapshot;
+                if (snapshot == null) {
+                    snapshot = Collections.unmodifiableList(new ArrayList<>(sessions.values()));
+                    sessionsSnapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the sessions whose filters all match the given event data. A session matches when each of its filter
+     * attributes has the expected value in the event.
+     */
+    public List<WebSocketSessionRequest> getMatchingSessions(Object[] metaData, Object[] correlationData,
+                                                             Object[] payloadData) {
+        if (attributeNames == null) {
+            return new ArrayList<>(getSessions());
+        }
+        List<WebSocketSessionRequest> matchingSessions = new ArrayList<>(wildcardSessions);
+        if (!filteredSessions.isEmpty()) {
+            Map<WebSocketSessionRequest, int[]> matchCounts = new IdentityHashMap<>();
+            match(metaAttributeNames, metaData, matchCounts, matchingSessions);
+            match(correlationAttributeNames, correlationData, matchCounts, matchingSessions);
+            match(payloadAttributeNames, payloadData, matchCounts, matchingSessions);
+        }
+        return matchingSessions;
+    }
+
+    public boolean isEmpty() {
+        return sessions.isEmpty();
+    }
+
+    /**
+     * Looks up the sessions filtering on each attribute with the value it has in the event, and collects the ones
+     * for which this completes the intersection of all their filters.
+     */
+    private void match(String[] names, Object[] data, Map<WebSocketSessionRequest, int[]> matchCounts,
+                       List<WebSocketSessionRequest> matchingSessions) {
+        if (names == null || data == null) {
+            return;
+        }
+        for (int i = 0; i < names.length && i < data.length; i++) {
+            Map<String, Set<WebSocketSessionRequest>> valueIndex = filterIndex.get(names[i]);
+            if (valueIndex == null) {
+                continue;
+            }
+            Set<WebSocketSessionRequest> valueSessions = valueIndex.get(String.valueOf(data[i]));
+            if (valueSessions == null) {
+                continue;
+            }
+            for (WebSocketSessionRequest session : valueSessions) {
+                Integer filterCount = filteredSessions.get(session);
+                if (filterCount == null) {
+                    continue;
+                }
+                int[] matchCount = matchCounts.get(session);
+                if (matchCount == null) {
+                    matchCount = new int[1];
+                    matchCounts.put(session, matchCount);
+                }
+                if (++matchCount[0] == filterCount) {
+                    matchingSessions.add(session);
+                }
+            }
+        }
+    }
+
+    private void index(WebSocketSessionRequest session) {
+        Map<String, String> filters = new HashMap<>();
+        Map<String, String> queryParamValuePairs = session.getQueryParamValuePairs();
+        if (queryParamValuePairs != null) {
+            for (Map.Entry<String, String> queryParam : queryParamValuePairs.entrySet()) {
+                if (attributeNames.contains(queryParam.getKey())) {
+                    filters.put(queryParam.getKey(), queryParam.getValue());
+                }
+            }
+        }
+        if (filters.isEmpty()) {
+            wildcardSessions.add(session);
+            return;
+        }
+        int filterCount = 0;
+        for (Map.Entry<String, String> filter : filters.entrySet()) {
+            filterCount += attributeOccurrences.get(filter.getKey());
+            ConcurrentHashMap<String, Set<WebSocketSessionRequest>> valueIndex = filterIndex.get(filter.getKey());
+            if (valueIndex == null) {
+                valueIndex = new ConcurrentHashMap<>();
+                filterIndex.put(filter.getKey(), valueIndex);
+            }
+            Set<WebSocketSessionRequest> valueSessions = valueIndex.get(filter.getValue());
+            if (valueSessions == null) {
+                valueSessions = Collections.newSetFromMap(new ConcurrentHashMap<WebSocketSessionRequest, Boolean>());
+                valueIndex.put(filter.getValue(), valueSessions);
+            }
+            valueSessions.add(session);
+        }
+        filteredSessions.put(session, filterCount);
+    }
+
+    private static String[] toNames(List<Attribute> attributes, Map<String, Integer> occurrences) {
+        if (attributes == null) {
+            return null;
+        }
+        String[] attributeNames = new String[attributes.size()];
+        for (int i = 0; i < attributeNames.length; i++) {
+            attributeNames[i] = attributes.get(i).getName();
+            Integer count = occurrences.get(attributeNames[i]);
+            occurrences.put(attributeNames[i], count == null ? 1 : count + 1);
+        }
+        return attributeNames;
+    }
+}
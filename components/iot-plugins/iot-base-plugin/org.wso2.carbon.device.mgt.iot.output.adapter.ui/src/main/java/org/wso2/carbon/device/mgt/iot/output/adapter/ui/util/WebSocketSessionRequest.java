@@ -37,9 +37,12 @@ public class WebSocketSessionRequest {
     private static final String QUERY_KEY_VALUE_SEPERATOR = "=";
     private Map<String, String> queryParamValuePairs = null;
     private Session session;
+    private volatile WebSocketOutboundQueue outboundQueue;
+    private final boolean binary;
 
     public WebSocketSessionRequest(Session session) {
         this.session = session;
+        this.binary = UIEventAdapterConstants.ADAPTER_UI_BINARY_SUBPROTOCOL.equals(session.getNegotiatedSubprotocol());
         setQueryParamValuePairs();
     }
 
@@ -51,6 +54,45 @@ public class WebSocketSessionRequest {
         return session;
     }
 
+    /**
+     * @return "true" if the client negotiated the binary sub protocol, in which case events are sent as binary frames
+     * encoded by {@link BinaryEventEncoder}.
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Returns the outbound queue of the session, which is created with the given limits when it is first requested.
+     *
+     * @param maxQueueSize       maximum number of messages waiting to be written to the session.
+     * @param slowConsumerPolicy what to do when the queue is full.
+     * @param statistics         delivery statistics of the adapter.
+     * @return the outbound queue of the session.
+     */
+    public WebSocketOutboundQueue getOutboundQueue(int maxQueueSize,
+                                                   WebSocketOutboundQueue.SlowConsumerPolicy slowConsumerPolicy,
+                                                   WebSocketOutboundStatistics statistics) {
+        WebSocketOutboundQueue queue = outboundQueue;
+        if (queue == null) {
+            synchronized (this) {
+                queue = outboundQueue;
+                if (queue == null) {
+                    queue = new WebSocketOutboundQueue(session, maxQueueSize, slowConsumerPolicy, statistics);
+                    outboundQueue = queue;
+                }
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * @return the outbound queue of the session, or null if nothing has been sent to the session yet.
+     */
+    public WebSocketOutboundQueue getOutboundQueue() {
+        return outboundQueue;
+    }
+
     /**
      * Processes the queryString from the current instance's Session attribute and constructs a map of Query
      * Key:Value pair.
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.output.adapter.ui.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.websocket.CloseReason;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class for holding unit-tests related to WebSocketOutboundQueue class. The client is a stub session that completes
+ * a write only when the test says so, which makes it a consumer as slow as the test needs it to be.
+ */
+public class WebSocketOutboundQueueTests {
+
+    private static final int MAX_QUEUE_SIZE = 2;
+
+    @Test
+    public void testMessagesAreWrittenOneAtATime() {
+        SlowSession session = new SlowSession();
+        WebSocketOutboundStatistics statistics = new WebSocketOutboundStatistics();
+        WebSocketOutboundQueue queue = createQueue(session, WebSocketOutboundQueue.SlowConsumerPolicy.DROP,
+                                                   statistics);
+        Assert.assertTrue(queue.offer("m1"));
+        Assert.assertTrue(queue.offer("m2"));
+        Assert.assertEquals(session.sentMessages.size(), 1, "A write was started before the previous completed");
+        session.complete();
+        session.complete();
+        Assert.assertEquals(session.sentMessages, list("m1", "m2"));
+        Assert.assertEquals(statistics.getSentCount(), 2);
+        Assert.assertEquals(queue.getQueueDepth(), 0);
+    }
+
+    @Test
+    public void testDropPolicyDropsNewMessage() {
+        SlowSession session = new SlowSession();
+        WebSocketOutboundStatistics statistics = new WebSocketOutboundStatistics();
+        WebSocketOutboundQueue queue = createQueue(session, WebSocketOutboundQueue.SlowConsumerPolicy.DROP,
+                                                   statistics);
+        fillQueue(queue);
+        Assert.assertFalse(queue.offer("m4"));
+        Assert.assertEquals(queue.getQueueDepth(), MAX_QUEUE_SIZE);
+        Assert.assertEquals(queue.getDroppedCount(), 1);
+        Assert.assertEquals(statistics.getDroppedCount(), 1);
+        Assert.assertEquals(statistics.getCoalescedCount(), 0);
+
+        completeAll(session);
+        Assert.assertEquals(session.sentMessages, list("m1", "m2", "m3"));
+        Assert.assertNull(session.closeReason);
+    }
+
+    @Test
+    public void testCoalescePolicyKeepsLatestMessage() {
+        SlowSession session = new SlowSession();
+        WebSocketOutboundStatistics statistics = new WebSocketOutboundStatistics();
+        WebSocketOutboundQueue queue = createQueue(session, WebSocketOutboundQueue.SlowConsumerPolicy.COALESCE,
+                                                   statistics);
+        fillQueue(queue);
+        Assert.assertTrue(queue.offer("m4"));
+        Assert.assertEquals(queue.getQueueDepth(), 1);
+        Assert.assertEquals(queue.getDroppedCount(), MAX_QUEUE_SIZE);
+        Assert.assertEquals(statistics.getCoalescedCount(), MAX_QUEUE_SIZE);
+        Assert.assertEquals(statistics.getDroppedCount(), 0);
+
+        completeAll(session);
+        Assert.assertEquals(session.sentMessages, list("m1", "m4"));
+        Assert.assertNull(session.closeReason);
+    }
+
+    @Test
+    public void testDisconnectPolicyClosesSession() {
+        SlowSession session = new SlowSession();
+        WebSocketOutboundStatistics statistics = new WebSocketOutboundStatistics();
+        WebSocketOutboundQueue queue = createQueue(session, WebSocketOutboundQueue.SlowConsumerPolicy.DISCONNECT,
+                                                   statistics);
+        fillQueue(queue);
+        Assert.assertFalse(queue.offer("m4"));
+        Assert.assertNotNull(session.closeReason, "Slow session was not closed");
+        Assert.assertEquals(session.closeReason.getCloseCode(), CloseReason.CloseCodes.TRY_AGAIN_LATER);
+        Assert.assertEquals(statistics.getDisconnectedCount(), 1);
+        Assert.assertEquals(statistics.getDroppedCount(), MAX_QUEUE_SIZE + 1);
+        Assert.assertEquals(queue.getQueueDepth(), 0);
+
+        // Completing the write in flight does not start another one, and nothing is queued afterwards
+        completeAll(session);
+        Assert.assertEquals(session.sentMessages, list("m1"));
+        Assert.assertFalse(queue.offer("m5"));
+        Assert.assertEquals(statistics.getDroppedCount(), MAX_QUEUE_SIZE + 2);
+    }
+
+    @Test
+    public void testFailedWriteClosesSession() {
+        SlowSession session = new SlowSession();
+        WebSocketOutboundStatistics statistics = new WebSocketOutboundStatistics();
+        WebSocketOutboundQueue queue = createQueue(session, WebSocketOutboundQueue.SlowConsumerPolicy.DROP,
+                                                   statistics);
+        fillQueue(queue);
+        session.fail(new IOException("Broken pipe"));
+        Assert.assertNotNull(session.closeReason, "Session was not closed after a failed write");
+        Assert.assertEquals(session.closeReason.getCloseCode(), CloseReason.CloseCodes.UNEXPECTED_CONDITION);
+        Assert.assertEquals(statistics.getFailedCount(), 1);
+        Assert.assertEquals(statistics.getDroppedCount(), MAX_QUEUE_SIZE);
+        Assert.assertEquals(session.pendingHandlers.size(), 0);
+    }
+
+    @Test
+    public void testLagOfSlowWriteIsRecorded() throws InterruptedException {
+        SlowSession session = new SlowSession();
+        WebSocketOutboundStatistics statistics = new WebSocketOutboundStatistics();
+        WebSocketOutboundQueue queue = createQueue(session, WebSocketOutboundQueue.SlowConsumerPolicy.DROP,
+                                                   statistics);
+        queue.offer("m1");
+        queue.offer("m2");
+        Thread.sleep(50);
+        Assert.assertTrue(queue.getCurrentLagInMillis() >= 50);
+        completeAll(session);
+        Assert.assertTrue(statistics.getMaxLagInMillis() >= 50);
+        Assert.assertTrue(statistics.getLastLagInMillis() >= 50);
+        Assert.assertEquals(queue.getCurrentLagInMillis(), 0);
+    }
+
+    private static WebSocketOutboundQueue createQueue(SlowSession session,
+                                                      WebSocketOutboundQueue.SlowConsumerPolicy policy,
+                                                      WebSocketOutboundStatistics statistics) {
+        return new WebSocketOutboundQueue(session.proxy(), MAX_QUEUE_SIZE, policy, statistics);
+    }
+
+    /**
+     * Leaves "m1" in flight and "m2", "m3" queued.
+     */
+    private static void fillQueue(WebSocketOutboundQueue queue) {
+        for (int i = 1; i <= MAX_QUEUE_SIZE + 1; i++) {
+            Assert.assertTrue(queue.offer("m" + i));
+        }
+        Assert.assertEquals(queue.getQueueDepth(), MAX_QUEUE_SIZE);
+    }
+
+    private static void completeAll(SlowSession session) {
+        while (!session.pendingHandlers.isEmpty()) {
+            session.complete();
+        }
+    }
+
+    private static List<String> list(String... messages) {
+        List<String> list = new ArrayList<>();
+        for (String message : messages) {
+            list.add(message);
+        }
+        return list;
+    }
+
+    /**
+     * Session whose asynchronous writes stay in flight until they are completed by the test.
+     */
+    private static class SlowSession implements InvocationHandler {
+        private final List<String> sentMessages = new ArrayList<>();
+        private final List<SendHandler> pendingHandlers = new ArrayList<>();
+        private CloseReason closeReason;
+
+        private void complete() {
+            pendingHandlers.remove(0).onResult(new SendResult());
+        }
+
+        private void fail(Throwable cause) {
+            pendingHandlers.remove(0).onResult(new SendResult(cause));
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getId":
+                    return "1";
+                case "getAsyncRemote":
+                    return Proxy.newProxyInstance(RemoteEndpoint.Async.class.getClassLoader(),
+                                                  new Class[]{RemoteEndpoint.Async.class}, this);
+                case "sendText":
+                    sentMessages.add((String) args[0]);
+                    pendingHandlers.add((SendHandler) args[1]);
+                    return null;
+                case "close":
+                    closeReason = (CloseReason) args[0];
+                    return null;
+                default:
+                    return null;
+            }
+        }
+
+        private Session proxy() {
+            return (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class[]{Session.class}, this);
+        }
+    }
+}
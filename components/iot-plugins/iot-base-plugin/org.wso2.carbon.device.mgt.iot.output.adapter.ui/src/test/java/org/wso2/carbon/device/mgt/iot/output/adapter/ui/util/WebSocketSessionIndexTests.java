@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.output.adapter.ui.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.databridge.commons.Attribute;
+import org.wso2.carbon.databridge.commons.AttributeType;
+
+import javax.websocket.Session;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Class for holding unit-tests related to WebSocketSessionIndex class. Sessions are subscribed and unsubscribed from
+ * several threads while events are being routed, after which the index has to hold exactly the remaining sessions.
+ */
+public class WebSocketSessionIndexTests {
+
+    private static final int SESSION_COUNT = 10000;
+    private static final int DEVICE_COUNT = 50;
+    private static final int WRITER_COUNT = 8;
+    private static final int READER_COUNT = 2;
+    private static final int CHURN_ROUNDS = 3;
+
+    @Test
+    public void testConcurrentChurnKeepsIndexConsistent() throws Exception {
+        final WebSocketSessionIndex sessionIndex = createIndex();
+        final WebSocketSessionRequest[] sessions = new WebSocketSessionRequest[SESSION_COUNT];
+        for (int i = 0; i < SESSION_COUNT; i++) {
+            sessions[i] = new WebSocketSessionRequest(new FakeSession(i).proxy());
+        }
+
+        // Each writer subscribes and unsubscribes its share of the sessions a few times and leaves the even ones
+        // subscribed, while the readers keep routing events.
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch writersDone = new CountDownLatch(WRITER_COUNT);
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < WRITER_COUNT; w++) {
+            final int writer = w;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int round = 0; round < CHURN_ROUNDS; round++) {
+                            for (int i = writer; i < SESSION_COUNT; i += WRITER_COUNT) {
+                                sessionIndex.add(sessions[i]);
+                            }
+                            for (int i = writer; i < SESSION_COUNT; i += WRITER_COUNT) {
+                                if (round < CHURN_ROUNDS - 1 || i % 2 == 1) {
+                                    Assert.assertSame(sessionIndex.remove(sessions[i].getSession().getId()),
+                                                      sessions[i]);
+                                }
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        writersDone.countDown();
+                    }
+                }
+            }));
+        }
+        for (int r = 0; r < READER_COUNT; r++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random();
+                    try {
+                        while (writersDone.getCount() > 0) {
+                            int device = random.nextInt(DEVICE_COUNT);
+                            for (WebSocketSessionRequest session : route(sessionIndex, device)) {
+                                int i = indexOf(session);
+                                Assert.assertTrue(isWildcard(i) || i % DEVICE_COUNT == device,
+                                                  "Session " + i + " was routed an event of device " + device);
+                            }
+                            Assert.assertTrue(sessionIndex.getSessions().size() <= SESSION_COUNT);
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.MINUTES.toMillis(1));
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("Concurrent subscription failed", failure.get());
+        }
+
+        Assert.assertEquals(sessionIndex.getSessions().size(), SESSION_COUNT / 2);
+        for (int device = 0; device < DEVICE_COUNT; device++) {
+            List<WebSocketSessionRequest> matchingSessions = route(sessionIndex, device);
+            Set<Integer> matched = new HashSet<>();
+            for (WebSocketSessionRequest session : matchingSessions) {
+                Assert.assertTrue(matched.add(indexOf(session)), "Session was routed the same event twice");
+            }
+            Set<Integer> expected = new HashSet<>();
+            for (int i = 0; i < SESSION_COUNT; i += 2) {
+                if (isWildcard(i) || i % DEVICE_COUNT == device) {
+                    expected.add(i);
+                }
+            }
+            Assert.assertEquals(matched, expected, "Wrong sessions were routed an event of device " + device);
+        }
+
+        for (int i = 0; i < SESSION_COUNT; i += 2) {
+            sessionIndex.remove(sessions[i].getSession().getId());
+        }
+        Assert.assertTrue(sessionIndex.isEmpty());
+        Assert.assertTrue(route(sessionIndex, 1).isEmpty());
+        Assert.assertTrue(getFilterIndex(sessionIndex).isEmpty(), "Filter index kept values of removed sessions");
+    }
+
+    @Test
+    public void testSessionsAddedBeforeAttributesAreIndexed() {
+        WebSocketSessionIndex sessionIndex = new WebSocketSessionIndex();
+        for (int i = 1; i <= 4; i++) {
+            sessionIndex.add(new WebSocketSessionRequest(new FakeSession(i).proxy()));
+        }
+        // Without the attributes of the stream every session receives every event
+        Assert.assertEquals(route(sessionIndex, 1).size(), 4);
+        setStreamAttributes(sessionIndex);
+        // The session of the device and the wildcard session 4
+        Assert.assertEquals(route(sessionIndex, 1).size(), 2);
+        Assert.assertEquals(route(sessionIndex, 2).size(), 2);
+        Assert.assertEquals(route(sessionIndex, 5).size(), 1);
+    }
+
+    private static WebSocketSessionIndex createIndex() {
+        WebSocketSessionIndex sessionIndex = new WebSocketSessionIndex();
+        setStreamAttributes(sessionIndex);
+        return sessionIndex;
+    }
+
+    private static void setStreamAttributes(WebSocketSessionIndex sessionIndex) {
+        List<Attribute> metaAttributes = Collections.singletonList(new Attribute("deviceId", AttributeType.STRING));
+        List<Attribute> payloadAttributes = Collections.singletonList(new Attribute("temperature",
+                                                                                    AttributeType.DOUBLE));
+        sessionIndex.setStreamAttributes(metaAttributes, null, payloadAttributes);
+    }
+
+    private static List<WebSocketSessionRequest> route(WebSocketSessionIndex sessionIndex, int device) {
+        return sessionIndex.getMatchingSessions(new Object[]{"dev-" + device}, null, new Object[]{27.5});
+    }
+
+    /**
+     * Every fourth session does not filter on the device, the access token is not an attribute of the stream.
+     */
+    private static boolean isWildcard(int i) {
+        return i % 4 == 0;
+    }
+
+    private static int indexOf(WebSocketSessionRequest session) {
+        return Integer.parseInt(session.getSession().getId().substring(1));
+    }
+
+    private static Map<?, ?> getFilterIndex(WebSocketSessionIndex sessionIndex) throws Exception {
+        Field filterIndex = WebSocketSessionIndex.class.getDeclaredField("filterIndex");
+        filterIndex.setAccessible(true);
+        return (Map<?, ?>) filterIndex.get(sessionIndex);
+    }
+
+    private static class FakeSession implements InvocationHandler {
+        private final int index;
+
+        private FakeSession(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getId":
+                    return "s" + index;
+                case "getQueryString":
+                    return isWildcard(index) ? "token=a1b2c3d4" : "token=a1b2c3d4&deviceId=dev-" + index % DEVICE_COUNT;
+                case "hashCode":
+                    return index;
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    return null;
+            }
+        }
+
+        private Session proxy() {
+            return (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class[]{Session.class}, this);
+        }
+    }
+}
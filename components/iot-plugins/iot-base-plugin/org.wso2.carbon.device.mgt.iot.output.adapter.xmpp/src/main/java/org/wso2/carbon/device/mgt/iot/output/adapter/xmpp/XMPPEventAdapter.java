@@ -30,10 +30,6 @@ import org.wso2.carbon.event.output.adapter.core.exception.OutputEventAdapterExc
 import org.wso2.carbon.event.output.adapter.core.exception.TestConnectionNotSupportedException;
 
 import java.util.Map;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Output XMPPEventAdapter will be used to publish events with MQTT protocol to specified broker and topic.
@@ -42,8 +38,10 @@ public class XMPPEventAdapter implements OutputEventAdapter {
 
     private OutputEventAdapterConfiguration eventAdapterConfiguration;
     private Map<String, String> globalProperties;
-    private XMPPAdapterPublisher xmppAdapterPublisher;
-    private static ThreadPoolExecutor threadPoolExecutor;
+    // Published to the threads calling publish() once connected, and cleared when disconnecting
+    private volatile XMPPAdapterPublisher xmppAdapterPublisher;
+    private int jobQueueSize;
+    private long coalesceWindowInMillis;
     private static final Log log = LogFactory.getLog(XMPPEventAdapter.class);
     private int tenantId;
 
@@ -56,44 +54,19 @@ public class XMPPEventAdapter implements OutputEventAdapter {
     @Override
     public void init() throws OutputEventAdapterException {
         tenantId = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId();
-        //ThreadPoolExecutor will be assigned  if it is null
-        if (threadPoolExecutor == null) {
-            int minThread;
-            int maxThread;
-            int jobQueSize;
-            long defaultKeepAliveTime;
-            //If global properties are available those will be assigned else constant values will be assigned
-            if (globalProperties.get(XMPPEventAdapterConstants.ADAPTER_MIN_THREAD_POOL_SIZE_NAME) != null) {
-                minThread = Integer.parseInt(globalProperties.get(
-                        XMPPEventAdapterConstants.ADAPTER_MIN_THREAD_POOL_SIZE_NAME));
-            } else {
-                minThread = XMPPEventAdapterConstants.DEFAULT_MIN_THREAD_POOL_SIZE;
-            }
-
-            if (globalProperties.get(XMPPEventAdapterConstants.ADAPTER_MAX_THREAD_POOL_SIZE_NAME) != null) {
-                maxThread = Integer.parseInt(globalProperties.get(
-                        XMPPEventAdapterConstants.ADAPTER_MAX_THREAD_POOL_SIZE_NAME));
-            } else {
-                maxThread = XMPPEventAdapterConstants.DEFAULT_MAX_THREAD_POOL_SIZE;
-            }
-
-            if (globalProperties.get(XMPPEventAdapterConstants.ADAPTER_KEEP_ALIVE_TIME_NAME) != null) {
-                defaultKeepAliveTime = Integer.parseInt(globalProperties.get(
-                        XMPPEventAdapterConstants.ADAPTER_KEEP_ALIVE_TIME_NAME));
-            } else {
-                defaultKeepAliveTime = XMPPEventAdapterConstants.DEFAULT_KEEP_ALIVE_TIME_IN_MILLIS;
-            }
-
-            if (globalProperties.get(XMPPEventAdapterConstants.ADAPTER_EXECUTOR_JOB_QUEUE_SIZE_NAME) != null) {
-                jobQueSize = Integer.parseInt(globalProperties.get(
-                        XMPPEventAdapterConstants.ADAPTER_EXECUTOR_JOB_QUEUE_SIZE_NAME));
-            } else {
-                jobQueSize = XMPPEventAdapterConstants.DEFAULT_EXECUTOR_JOB_QUEUE_SIZE;
-            }
+        //If global properties are available those will be assigned else constant values will be assigned
+        if (globalProperties.get(XMPPEventAdapterConstants.ADAPTER_EXECUTOR_JOB_QUEUE_SIZE_NAME) != null) {
+            jobQueueSize = Integer.parseInt(globalProperties.get(
+                    XMPPEventAdapterConstants.ADAPTER_EXECUTOR_JOB_QUEUE_SIZE_NAME));
+        } else {
+            jobQueueSize = XMPPEventAdapterConstants.DEFAULT_EXECUTOR_JOB_QUEUE_SIZE;
+        }
 
-            threadPoolExecutor = new ThreadPoolExecutor(minThread, maxThread, defaultKeepAliveTime,
-                                                        TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(
-                    jobQueSize));
+        if (globalProperties.get(XMPPEventAdapterConstants.ADAPTER_COALESCE_WINDOW_NAME) != null) {
+            coalesceWindowInMillis = Long.parseLong(globalProperties.get(
+                    XMPPEventAdapterConstants.ADAPTER_COALESCE_WINDOW_NAME));
+        } else {
+            coalesceWindowInMillis = XMPPEventAdapterConstants.DEFAULT_COALESCE_WINDOW_IN_MILLIS;
         }
     }
 
@@ -128,7 +101,10 @@ public class XMPPEventAdapter implements OutputEventAdapter {
                                                       eventAdapterConfiguration.getStaticProperties()
                                                               .get(XMPPEventAdapterConstants.ADAPTER_CONF_RESOURCE)
                 );
-        xmppAdapterPublisher = new XMPPAdapterPublisher(xmppServerConnectionConfiguration);
+        XMPPAdapterPublisher publisher = new XMPPAdapterPublisher(xmppServerConnectionConfiguration, jobQueueSize,
+                                                                  coalesceWindowInMillis);
+        publisher.registerMBean(eventAdapterConfiguration.getName(), tenantId);
+        xmppAdapterPublisher = publisher;
     }
 
     @Override
@@ -136,10 +112,14 @@ public class XMPPEventAdapter implements OutputEventAdapter {
         String jid = dynamicProperties.get(XMPPEventAdapterConstants.ADAPTER_CONF_JID);
         String subject = dynamicProperties.get(XMPPEventAdapterConstants.ADAPTER_CONF_SUBJECT);
         String messageType = dynamicProperties.get(XMPPEventAdapterConstants.ADAPTER_CONF_MESSAGETYPE);
-        try {
-            threadPoolExecutor.submit(new XMPPSender(jid, subject, (String)message, messageType));
-        } catch (RejectedExecutionException e) {
-            EventAdapterUtil.logAndDrop(eventAdapterConfiguration.getName(), message, "Job queue is full", e, log,
+        XMPPAdapterPublisher publisher = xmppAdapterPublisher;
+        if (publisher == null) {
+            EventAdapterUtil.logAndDrop(eventAdapterConfiguration.getName(), message, "Publisher is not connected",
+                                        log, tenantId);
+            return;
+        }
+        if (!publisher.publish(jid, subject, (String) message, messageType)) {
+            EventAdapterUtil.logAndDrop(eventAdapterConfiguration.getName(), message, "Job queue is full", log,
                                         tenantId);
         }
     }
@@ -147,12 +127,14 @@ public class XMPPEventAdapter implements OutputEventAdapter {
     @Override
     public void disconnect() {
         try {
-            if (xmppAdapterPublisher != null) {
-                xmppAdapterPublisher.close();
+            XMPPAdapterPublisher publisher = xmppAdapterPublisher;
+            if (publisher != null) {
                 xmppAdapterPublisher = null;
+                publisher.unregisterMBean();
+                publisher.close();
             }
         } catch (OutputEventAdapterException e) {
-            log.error("Exception when closing the mqtt publisher connection on Output MQTT Adapter '" +
+            log.error("Exception when closing the xmpp publisher connection on Output XMPP Adapter '" +
                               eventAdapterConfiguration.getName() + "'", e);
         }
     }
@@ -166,35 +148,4 @@ public class XMPPEventAdapter implements OutputEventAdapter {
     public boolean isPolled() {
         return false;
     }
-
-    class XMPPSender implements Runnable {
-
-        String jid;
-        String subject;
-        String message;
-        String messageType;
-
-        XMPPSender(String jid, String subject, String message, String messageType) {
-            this.jid = jid;
-            this.message = message;
-            this.subject = subject;
-            this.messageType = messageType;
-        }
-
-        @Override
-        public void run() {
-            try {
-                if (!xmppAdapterPublisher.isConnected()) {
-                    synchronized (XMPPEventAdapter.class) {
-                        if (!xmppAdapterPublisher.isConnected()) {
-                            xmppAdapterPublisher.connect();
-                        }
-                    }
-                }
-                xmppAdapterPublisher.publish(jid, subject, message, messageType);
-            } catch (Throwable t) {
-                EventAdapterUtil.logAndDrop(eventAdapterConfiguration.getName(), message, null, t, log, tenantId);
-            }
-        }
-    }
 }
@@ -24,56 +24,171 @@ import org.jivesoftware.smack.SmackConfiguration;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.XMPPException;
 import org.jivesoftware.smack.packet.Message;
+import org.wso2.carbon.device.mgt.iot.input.adapter.extension.util.AdapterMBeanUtil;
 import org.wso2.carbon.event.output.adapter.core.exception.OutputEventAdapterException;
-import org.wso2.carbon.event.output.adapter.core.exception.OutputEventAdapterRuntimeException;
+
+import javax.management.ObjectName;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * XMPP publisher related configuration initialization and publishing capabilties are implemented here.
+ * <p/>
+ * Each publisher owns its connection and a sender thread. Published messages are queued, and the sender thread
+ * connects when needed and sends them, so a slow XMPP server only holds back the messages of this publisher. When
+ * the queue is full new messages are dropped.
+ * <p/>
+ * If a coalesce window is configured, messages queued within the window for the same JID, subject and message type
+ * are sent as a single stanza, with their bodies separated by a new line.
  */
-public class XMPPAdapterPublisher {
+public class XMPPAdapterPublisher implements XMPPAdapterPublisherMBean {
 
     private static final Log log = LogFactory.getLog(XMPPAdapterPublisher.class);
     private XMPPServerConnectionConfiguration xmppServerConnectionConfiguration;
-    XMPPConnection xmppConnection;
+    private volatile XMPPConnection xmppConnection;
+
+    private final BlockingQueue<OutboundMessage> outboundMessages;
+    private final long coalesceWindowInMillis;
+    private final ExecutorService sender;
+    private volatile boolean closed;
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private volatile ObjectName mBeanName;
 
-    public XMPPAdapterPublisher(XMPPServerConnectionConfiguration xmppServerConnectionConfiguration) {
+    /**
+     * @param maxQueueSize           maximum number of messages waiting to be sent.
+     * @param coalesceWindowInMillis time for which messages to the same JID are collected into one stanza, 0 sends
+     *                               every message on its own.
+     */
+    public XMPPAdapterPublisher(XMPPServerConnectionConfiguration xmppServerConnectionConfiguration,
+                                int maxQueueSize, long coalesceWindowInMillis) {
         this.xmppServerConnectionConfiguration = xmppServerConnectionConfiguration;
-        connect();
+        this.outboundMessages = new ArrayBlockingQueue<>(Math.max(1, maxQueueSize));
+        this.coalesceWindowInMillis = Math.max(0, coalesceWindowInMillis);
+        final String threadName = "XMPP-Publisher-" + xmppServerConnectionConfiguration.getUsername() + "@" +
+                xmppServerConnectionConfiguration.getHost();
+        this.sender = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.sender.execute(new Sender());
     }
 
-    public void connect() {
+    /**
+     * Connects and logs in to the XMPP server. This blocks until the server answers, so it is only called from the
+     * sender thread.
+     *
+     * @return "true" if the connection is established.
+     */
+    private boolean connect() {
         SmackConfiguration.setPacketReplyTimeout(xmppServerConnectionConfiguration.getTimeoutInterval());
         ConnectionConfiguration config = new ConnectionConfiguration(xmppServerConnectionConfiguration.getHost(),
                                                                      xmppServerConnectionConfiguration.getPort());
         config.setSASLAuthenticationEnabled(false);
         config.setSecurityMode(ConnectionConfiguration.SecurityMode.disabled);
-        xmppConnection = new XMPPConnection(config);
+        XMPPConnection connection = new XMPPConnection(config);
         String resource = xmppServerConnectionConfiguration.getResource();
         String username = xmppServerConnectionConfiguration.getUsername();
         String password = xmppServerConnectionConfiguration.getPassword();
         try {
-            xmppConnection.connect();
+            connection.connect();
             if (resource == null || resource.trim().isEmpty()) {
-                xmppConnection.login(username, password);
+                connection.login(username, password);
             } else {
-                xmppConnection.login(username, password, resource);
+                connection.login(username, password, resource);
             }
         } catch (XMPPException e) {
-            String errorMsg = "Login attempt to the XMPP Server  with username - " + username + " failed.";
-            log.info(errorMsg);
-            throw new OutputEventAdapterRuntimeException(errorMsg, e);
+            log.error("Login attempt to the XMPP Server  with username - " + username + " failed.", e);
+            if (connection.isConnected()) {
+                connection.disconnect();
+            }
+            return false;
+        }
+        xmppConnection = connection;
+        if (closed) {
+            connection.disconnect();
+            return false;
         }
+        return true;
     }
 
     public boolean isConnected() {
-        return xmppConnection.isConnected();
+        XMPPConnection connection = xmppConnection;
+        return connection != null && connection.isConnected();
+    }
+
+    /**
+     * Queues a message to be sent.
+     *
+     * @return "false" if the queue is full and the message was dropped.
+     */
+    public boolean publish(String JID, String subject, String message, String messageType) {
+        if (closed || !outboundMessages.offer(new OutboundMessage(JID, subject, message, messageType))) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public void close() throws OutputEventAdapterException {
+        closed = true;
+        sender.shutdownNow();
+        outboundMessages.clear();
+        XMPPConnection connection = xmppConnection;
+        if (connection != null && connection.isConnected()) {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount.get();
     }
 
-    public void publish(String JID, String subject, String message, String messageType) {
+    @Override
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return outboundMessages.size();
+    }
+
+    public void registerMBean(String adapterName, int tenantId) {
+        mBeanName = AdapterMBeanUtil.registerMBean(this, XMPPEventAdapterConstants.MBEAN_TYPE, tenantId, adapterName);
+    }
+
+    public void unregisterMBean() {
+        ObjectName name = mBeanName;
+        mBeanName = null;
+        AdapterMBeanUtil.unregisterMBean(name);
+    }
+
+    private void send(OutboundMessage outboundMessage) {
         Message xmppMessage = new Message();
-        xmppMessage.setTo(JID);
-        xmppMessage.setSubject(subject);
-        xmppMessage.setBody(message);
+        xmppMessage.setTo(outboundMessage.jid);
+        xmppMessage.setSubject(outboundMessage.subject);
+        xmppMessage.setBody(outboundMessage.body.toString());
+        String messageType = outboundMessage.messageType;
         if (messageType != null) {
             switch (messageType) {
                 case XMPPEventAdapterConstants.MessageType.CHAT:
@@ -97,9 +212,95 @@ public class XMPPAdapterPublisher {
         xmppConnection.sendPacket(xmppMessage);
     }
 
-    public void close() throws OutputEventAdapterException {
-        if (xmppConnection != null && isConnected()) {
-            xmppConnection.disconnect();
+    /**
+     * Collects the messages queued within the coalesce window of the given message, merging the ones addressed to
+     * the same JID with the same subject and message type.
+     *
+     * @return the stanzas to send, in the order their first message was queued.
+     */
+    private Iterable<OutboundMessage> coalesce(OutboundMessage first) throws InterruptedException {
+        Map<String, OutboundMessage> stanzas = new LinkedHashMap<>();
+        stanzas.put(first.getCoalesceKey(), first);
+        long deadline = first.queuedTime + coalesceWindowInMillis;
+        long remaining;
+        while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+            OutboundMessage next = outboundMessages.poll(remaining, TimeUnit.MILLISECONDS);
+            if (next == null) {
+                break;
+            }
+            OutboundMessage stanza = stanzas.get(next.getCoalesceKey());
+            if (stanza == null) {
+                stanzas.put(next.getCoalesceKey(), next);
+            } else {
+                stanza.body.append(XMPPEventAdapterConstants.COALESCED_MESSAGE_SEPARATOR).append(next.body);
+            }
+        }
+        return stanzas.values();
+    }
+
+    private class Sender implements Runnable {
+
+        @Override
+        public void run() {
+            OutboundMessage outboundMessage = null;
+            while (!closed) {
+                try {
+                    if (outboundMessage == null) {
+                        outboundMessage = outboundMessages.take();
+                    }
+                    if (!isConnected() && !connect()) {
+                        // Messages keep queuing, and are dropped once the queue is full, until the server is back.
+                        Thread.sleep(XMPPEventAdapterConstants.DEFAULT_RECONNECT_INTERVAL_IN_MILLIS);
+                        continue;
+                    }
+                    if (coalesceWindowInMillis > 0) {
+                        for (OutboundMessage stanza : coalesce(outboundMessage)) {
+                            sendStanza(stanza);
+                        }
+                    } else {
+                        sendStanza(outboundMessage);
+                    }
+                    outboundMessage = null;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (RuntimeException e) {
+                    failedCount.incrementAndGet();
+                    outboundMessage = null;
+                    log.error("Error occurred when connecting to XMPP server : " +
+                                      xmppServerConnectionConfiguration.getHost(), e);
+                }
+            }
+        }
+
+        private void sendStanza(OutboundMessage stanza) {
+            try {
+                send(stanza);
+                sentCount.incrementAndGet();
+            } catch (RuntimeException e) {
+                failedCount.incrementAndGet();
+                log.error("Error occurred when sending message to " + stanza.jid + " through XMPP server : " +
+                                  xmppServerConnectionConfiguration.getHost(), e);
+            }
+        }
+    }
+
+    private static class OutboundMessage {
+        private final String jid;
+        private final String subject;
+        private final StringBuilder body;
+        private final String messageType;
+        private final long queuedTime = System.currentTimeMillis();
+
+        private OutboundMessage(String jid, String subject, String body, String messageType) {
+            this.jid = jid;
+            this.subject = subject;
+            this.body = new StringBuilder(body == null ? "" : body);
+            this.messageType = messageType;
+        }
+
+        private String getCoalesceKey() {
+            return jid + '\0' + subject + '\0' + messageType;
         }
     }
 
@@ -50,14 +50,13 @@ public final class XMPPEventAdapterConstants {
     public static final int DEFAULT_TIMEOUT_INTERVAL = 5000;
 
     //global properties
-    public static final int DEFAULT_MIN_THREAD_POOL_SIZE = 8;
-    public static final int DEFAULT_MAX_THREAD_POOL_SIZE = 100;
     public static final int DEFAULT_EXECUTOR_JOB_QUEUE_SIZE = 2000;
-    public static final long DEFAULT_KEEP_ALIVE_TIME_IN_MILLIS = 20000;
-    public static final String ADAPTER_MIN_THREAD_POOL_SIZE_NAME = "minThread";
-    public static final String ADAPTER_MAX_THREAD_POOL_SIZE_NAME = "maxThread";
-    public static final String ADAPTER_KEEP_ALIVE_TIME_NAME = "keepAliveTimeInMillis";
     public static final String ADAPTER_EXECUTOR_JOB_QUEUE_SIZE_NAME = "jobQueueSize";
+    public static final String ADAPTER_COALESCE_WINDOW_NAME = "coalesceWindowInMillis";
+    public static final long DEFAULT_COALESCE_WINDOW_IN_MILLIS = 0;
+    public static final String COALESCED_MESSAGE_SEPARATOR = "\n";
+    public static final long DEFAULT_RECONNECT_INTERVAL_IN_MILLIS = 5000;
+    public static final String MBEAN_TYPE = "XMPPOutputAdapter";
 
     public static final class MessageType {
         public static final String NORMAL = "normal";
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.stats;
+
+/**
+ * The functions the numeric values of the events falling into a time bucket can be aggregated with.
+ */
+public enum DeviceStatsAggregate {
+
+    AVG, MIN, MAX, COUNT, LAST;
+
+    /**
+     * @param name the name of the aggregate, case insensitive, null for the default {@link #AVG}.
+     * @throws IllegalArgumentException if there is no aggregate by the given name.
+     */
+    public static DeviceStatsAggregate fromString(String name) {
+        if (name == null || name.isEmpty()) {
+            return AVG;
+        }
+        for (DeviceStatsAggregate aggregate : values()) {
+            if (aggregate.name().equalsIgnoreCase(name)) {
+                return aggregate;
+            }
+        }
+        throw new IllegalArgumentException("Invalid aggregate '" + name + "', must be one of avg, min, max, count " +
+                                                   "or last.");
+    }
+}
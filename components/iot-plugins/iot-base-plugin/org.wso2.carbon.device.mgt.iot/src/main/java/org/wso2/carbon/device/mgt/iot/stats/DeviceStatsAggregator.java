@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.stats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Aggregates events, given in ascending order of time, into time buckets of a fixed interval. Only the bucket the
+ * events are currently falling into is held, which is handed out as soon as an event falls into a later bucket.
+ * <p/>
+ * The numeric values of a bucket are aggregated per field, while the other values are taken from the first event of
+ * the bucket, or from the last one for {@link DeviceStatsAggregate#LAST}. The time of a bucket is the time it starts.
+ */
+class DeviceStatsAggregator {
+
+    private final String timeField;
+    private final long interval;
+    private final DeviceStatsAggregate aggregate;
+    private final Map<String, FieldAggregate> fieldAggregates = new LinkedHashMap<>();
+    private long bucketStart;
+    private Map<String, Object> firstValues;
+    private Map<String, Object> lastValues;
+
+    DeviceStatsAggregator(String timeField, long interval, DeviceStatsAggregate aggregate) {
+        this.timeField = timeField;
+        this.interval = interval;
+        this.aggregate = aggregate;
+    }
+
+    /**
+     * @return the values of the previous bucket if the event falls into a later bucket, null otherwise.
+     */
+    Map<String, Object> add(long time, Map<String, Object> values) {
+        long start = time - ((time % interval) + interval) % interval;
+        Map<String, Object> completed = null;
+        if (firstValues != null && start != bucketStart) {
+            completed = finish();
+        }
+        if (firstValues == null) {
+            bucketStart = start;
+            firstValues = values;
+        }
+        lastValues = values;
+        if (aggregate == DeviceStatsAggregate.LAST) {
+            return completed;
+        }
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            if (entry.getValue() instanceof Number && !entry.getKey().equals(timeField)) {
+                FieldAggregate fieldAggregate = fieldAggregates.get(entry.getKey());
+                if (fieldAggregate == null) {
+                    fieldAggregate = new FieldAggregate();
+                    fieldAggregates.put(entry.getKey(), fieldAggregate);
+                }
+                fieldAggregate.add(((Number) entry.getValue()).doubleValue());
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * @return the values of the current bucket, null if no event has been added since the last bucket was handed out.
+     */
+    Map<String, Object> finish() {
+        if (firstValues == null) {
+            return null;
+        }
+        Map<String, Object> bucket;
+        if (aggregate == DeviceStatsAggregate.LAST) {
+            bucket = new LinkedHashMap<>(lastValues);
+        } else {
+            bucket = new LinkedHashMap<>(firstValues);
+            for (Map.Entry<String, FieldAggregate> entry : fieldAggregates.entrySet()) {
+                bucket.put(entry.getKey(), entry.getValue().getValue(aggregate));
+            }
+        }
+        bucket.put(timeField, bucketStart);
+        fieldAggregates.clear();
+        firstValues = null;
+        lastValues = null;
+        return bucket;
+    }
+
+    private static class FieldAggregate {
+        private long count;
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        private void add(double value) {
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        private Object getValue(DeviceStatsAggregate aggregate) {
+            switch (aggregate) {
+                case MIN:
+                    return min;
+                case MAX:
+                    return max;
+                case COUNT:
+                    return count;
+                default:
+                    return sum / count;
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.stats;
+
+import org.wso2.carbon.analytics.dataservice.commons.SortByField;
+import org.wso2.carbon.analytics.dataservice.commons.SortType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes a query for the events a device published to an analytics table. The events are selected by a search
+ * query and, unless the table has no time field, by a time window which is sorted on in ascending order.
+ * <p/>
+ * Missing bounds of the time window are defaulted, the upper bound to the current time and the lower bound to
+ * {@link #DEFAULT_TIME_WINDOW_IN_HOURS} before the upper bound. A page of events is selected by an offset and a limit.
+ * To continue from where a previous page ended, pass the time of its last event as the cursor and the number of
+ * events of the previous page having that time as the offset.
+ * <p/>
+ * Instead of the events themselves, a time bounded query may select an aggregate of the events falling into each
+ * interval of its time window. The number of such buckets is limited to {@link #MAX_BUCKET_COUNT}, and as a bucket is
+ * not an event, such a query is not paged by an offset and a limit.
+ */
+public class DeviceStatsQuery {
+
+    public static final String TIMESTAMP_FIELD = "_timestamp";
+    public static final int DEFAULT_TIME_WINDOW_IN_HOURS = 24;
+    public static final int MAX_BUCKET_COUNT = 5000;
+
+    private final String tableName;
+    private final String query;
+    private final String timeField;
+    private final TimeUnit timeUnit;
+    private long from;
+    private long to;
+    private long cursor;
+    private int offset;
+    private int limit;
+    private long interval;
+    private DeviceStatsAggregate aggregate;
+
+    /**
+     * Creates a query for a table without a time field, the events of which are returned in the order of the search.
+     */
+    public DeviceStatsQuery(String tableName, String query) {
+        this(tableName, query, null, null);
+    }
+
+    /**
+     * @param timeField the field holding the event time, {@link #TIMESTAMP_FIELD} for the time the event was
+     *                  recorded.
+     * @param timeUnit  the unit of the values of the time field.
+     */
+    public DeviceStatsQuery(String tableName, String query, String timeField, TimeUnit timeUnit) {
+        this.tableName = tableName;
+        this.query = query;
+        this.timeField = timeField;
+        this.timeUnit = timeUnit;
+        if (timeField != null) {
+            setTimeWindow(0, 0);
+        }
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getTimeField() {
+        return timeField;
+    }
+
+    public boolean isTimeBounded() {
+        return timeField != null;
+    }
+
+    /**
+     * Sets the time window, a bound of 0 or less takes its default.
+     */
+    public void setTimeWindow(long from, long to) {
+        this.to = to > 0 ? to : timeUnit.convert(System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        this.from = from > 0 ? from : this.to - timeUnit.convert(DEFAULT_TIME_WINDOW_IN_HOURS, TimeUnit.HOURS);
+    }
+
+    /**
+     * @param cursor the time of the last event received, 0 or less to start from the beginning of the time window.
+     */
+    public void setCursor(long cursor) {
+        this.cursor = cursor;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset must not be negative : " + offset);
+        }
+        this.offset = offset;
+    }
+
+    /**
+     * @return the maximum number of events to return, 0 for all the events in the time window.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative : " + limit);
+        }
+        this.limit = limit;
+    }
+
+    /**
+     * Aggregates the events falling into each interval of the time window, the intervals being aligned to the epoch.
+     *
+     * @param intervalInSeconds the length of the intervals, 0 to select the events themselves.
+     * @param aggregate         the name of the aggregate, null for the average.
+     * @throws IllegalArgumentException if the aggregate is unknown, or the query cannot be aggregated as given.
+     */
+    public void setAggregation(long intervalInSeconds, String aggregate) {
+        if (intervalInSeconds < 0) {
+            throw new IllegalArgumentException("Interval must not be negative : " + intervalInSeconds);
+        }
+        if (intervalInSeconds == 0) {
+            if (aggregate != null) {
+                throw new IllegalArgumentException("An interval is required to aggregate events.");
+            }
+            return;
+        }
+        if (!isTimeBounded()) {
+            throw new IllegalArgumentException("Events of table " + tableName + " cannot be aggregated by time.");
+        }
+        this.interval = Math.max(1, timeUnit.convert(intervalInSeconds, TimeUnit.SECONDS));
+        this.aggregate = DeviceStatsAggregate.fromString(aggregate);
+    }
+
+    public boolean isAggregated() {
+        return interval > 0;
+    }
+
+    /**
+     * @return the length of the aggregation intervals, in the unit of the time field.
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    public DeviceStatsAggregate getAggregate() {
+        return aggregate;
+    }
+
+    /**
+     * @return the lower bound of the time window, moved up to the cursor when there is one.
+     */
+    public long getLowerBound() {
+        return Math.max(from, cursor);
+    }
+
+    public long getUpperBound() {
+        return to;
+    }
+
+    /**
+     * Validates the time window and the aggregation.
+     *
+     * @throws IllegalArgumentException if the time window is empty, or the aggregation would yield too many buckets
+     *                                  or is combined with an offset or a limit.
+     */
+    public void validate() {
+        if (isTimeBounded() && getLowerBound() > to) {
+            throw new IllegalArgumentException("Invalid time window, 'from' must not be after 'to'.");
+        }
+        if (isAggregated()) {
+            if (offset > 0 || limit > 0) {
+                throw new IllegalArgumentException("Aggregated events cannot be paged by an offset or a limit.");
+            }
+            if ((to - getLowerBound()) / interval >= MAX_BUCKET_COUNT) {
+                throw new IllegalArgumentException("The time window spans more than " + MAX_BUCKET_COUNT
+                                                           + " intervals, use a longer interval.");
+            }
+        }
+    }
+
+    /**
+     * @return the search query selecting the events within the given bounds of time, both inclusive, or the search
+     * query as it is if the table has no time field.
+     */
+    public String getSearchQuery(long lowerBound, long upperBound) {
+        if (!isTimeBounded()) {
+            return query;
+        }
+        return "(" + query + ") AND " + timeField + " : [" + lowerBound + " TO " + upperBound + "]";
+    }
+
+    /**
+     * @return the fields to sort the search on, null if the table has no time field.
+     */
+    public List<SortByField> getSortByFields() {
+        if (!isTimeBounded()) {
+            return null;
+        }
+        List<SortByField> sortByFields = new ArrayList<>();
+        sortByFields.add(new SortByField(timeField, SortType.ASC));
+        return sortByFields;
+    }
+}
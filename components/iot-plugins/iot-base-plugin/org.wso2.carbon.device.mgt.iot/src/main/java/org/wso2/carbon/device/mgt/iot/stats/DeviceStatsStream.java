@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.stats;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.wso2.carbon.analytics.api.AnalyticsDataAPI;
+import org.wso2.carbon.analytics.dataservice.commons.AnalyticsDataResponse;
+import org.wso2.carbon.analytics.dataservice.commons.SearchResultEntry;
+import org.wso2.carbon.analytics.dataservice.core.AnalyticsDataServiceUtils;
+import org.wso2.carbon.analytics.datasource.commons.Record;
+import org.wso2.carbon.analytics.datasource.commons.exception.AnalyticsException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the events selected by a {@link DeviceStatsQuery} as a JSON array of <code>{"values":{..},"id":".."}</code>
+ * objects, fetching them from the analytics data service a page at a time, so that the memory used does not depend
+ * on the number of events written.
+ * <p/>
+ * Pages of time bounded queries are fetched by moving the lower bound of the time window up to the time of the last
+ * event written, rather than by increasing the search offset, as the cost of a search grows with its offset.
+ * <p/>
+ * The events of an aggregated query are read the same way, but are written as one <code>{"values":{..}}</code> object
+ * per time bucket, so that the size of the response is bounded by the number of buckets rather than of events.
+ */
+public class DeviceStatsStream {
+
+    public static final int PAGE_SIZE = 500;
+    private static final Log log = LogFactory.getLog(DeviceStatsStream.class);
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final AnalyticsDataAPI analyticsDataAPI;
+    private final int tenantId;
+    private final DeviceStatsQuery query;
+    private List<SearchResultEntry> firstPage;
+
+    /**
+     * Searches for the first page of events, so that an invalid query fails before the response is started.
+     *
+     * @throws IllegalArgumentException if the time window of the query is invalid.
+     */
+    public DeviceStatsStream(AnalyticsDataAPI analyticsDataAPI, int tenantId, DeviceStatsQuery query)
+            throws AnalyticsException {
+        query.validate();
+        this.analyticsDataAPI = analyticsDataAPI;
+        this.tenantId = tenantId;
+        this.query = query;
+        this.firstPage = search(query.getLowerBound(), query.getOffset(), getPageSize(query.getLimit()));
+    }
+
+    /**
+     * @return true if there are no events to write.
+     */
+    public boolean isEmpty() {
+        return firstPage != null && firstPage.isEmpty();
+    }
+
+    public void write(OutputStream outputStream) throws IOException {
+        JsonGenerator generator = jsonFactory.createJsonGenerator(outputStream, JsonEncoding.UTF8);
+        generator.writeStartArray();
+        try {
+            writeRecords(generator);
+        } catch (AnalyticsException e) {
+            String msg = "Error occurred while reading events of table " + query.getTableName();
+            log.error(msg, e);
+            throw new IOException(msg, e);
+        }
+        generator.writeEndArray();
+        generator.flush();
+    }
+
+    private void writeRecords(JsonGenerator generator) throws AnalyticsException, IOException {
+        DeviceStatsAggregator aggregator = null;
+        if (query.isAggregated()) {
+            aggregator = new DeviceStatsAggregator(query.getTimeField(), query.getInterval(), query.getAggregate());
+        }
+        int remaining = query.getLimit() > 0 ? query.getLimit() : Integer.MAX_VALUE;
+        long lowerBound = query.getLowerBound();
+        // number of events from the lower bound of the time window which are already written or skipped
+        int start = query.getOffset();
+        int pageSize = getPageSize(remaining);
+        List<SearchResultEntry> page = firstPage != null ? firstPage : search(lowerBound, start, pageSize);
+        firstPage = null;
+        while (!page.isEmpty()) {
+            List<Record> records = getRecords(page);
+            for (Record record : records) {
+                if (aggregator == null) {
+                    writeRecord(generator, record);
+                } else {
+                    writeBucket(generator, aggregator.add(getTime(record), record.getValues()));
+                }
+            }
+            generator.flush();
+            remaining -= page.size();
+            if (remaining <= 0 || page.size() < pageSize) {
+                break;
+            }
+            if (!query.isTimeBounded() || records.isEmpty()) {
+                start += page.size();
+            } else {
+                long lastTime = getTime(records.get(records.size() - 1));
+                int lastTimeCount = 0;
+                for (int i = records.size() - 1; i >= 0 && getTime(records.get(i)) == lastTime; i--) {
+                    lastTimeCount++;
+                }
+                if (lastTime == lowerBound) {
+                    start += page.size();
+                } else if (lastTimeCount < records.size()) {
+                    start = lastTimeCount;
+                } else {
+                    // the whole page has the same time, events before the page may have it as well
+                    int earlierCount = analyticsDataAPI.searchCount(tenantId, query.getTableName(),
+                                                                    query.getSearchQuery(lowerBound, lastTime - 1));
+                    start = Math.max(0, start + page.size() - earlierCount);
+                }
+                lowerBound = lastTime;
+            }
+            pageSize = getPageSize(remaining);
+            page = search(lowerBound, start, pageSize);
+        }
+        if (aggregator != null) {
+            writeBucket(generator, aggregator.finish());
+        }
+    }
+
+    private List<SearchResultEntry> search(long lowerBound, int start, int count) throws AnalyticsException {
+        return analyticsDataAPI.search(tenantId, query.getTableName(),
+                                       query.getSearchQuery(lowerBound, query.getUpperBound()), start, count,
+                                       query.getSortByFields());
+    }
+
+    /**
+     * @return the records of the search results, in the order of the search.
+     */
+    private List<Record> getRecords(List<SearchResultEntry> searchResults) throws AnalyticsException {
+        List<String> ids = new ArrayList<>(searchResults.size());
+        for (SearchResultEntry searchResult : searchResults) {
+            ids.add(searchResult.getId());
+        }
+        AnalyticsDataResponse response = analyticsDataAPI.get(tenantId, query.getTableName(), 1, null, ids);
+        Map<String, Record> recordsById = new HashMap<>();
+        for (Record record : AnalyticsDataServiceUtils.listRecords(analyticsDataAPI, response)) {
+            recordsById.put(record.getId(), record);
+        }
+        List<Record> records = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Record record = recordsById.get(id);
+            if (record != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private long getTime(Record record) {
+        if (DeviceStatsQuery.TIMESTAMP_FIELD.equals(query.getTimeField())) {
+            return record.getTimestamp();
+        }
+        Object time = record.getValue(query.getTimeField());
+        return time instanceof Number ? ((Number) time).longValue() : Long.parseLong(String.valueOf(time));
+    }
+
+    private static int getPageSize(int limit) {
+        return limit > 0 ? Math.min(limit, PAGE_SIZE) : PAGE_SIZE;
+    }
+
+    private static void writeRecord(JsonGenerator generator, Record record) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName("values");
+        writeValue(generator, record.getValues());
+        generator.writeStringField("id", record.getId());
+        generator.writeEndObject();
+    }
+
+    private static void writeBucket(JsonGenerator generator, Map<String, Object> bucket) throws IOException {
+        if (bucket != null) {
+            generator.writeStartObject();
+            generator.writeFieldName("values");
+            writeValue(generator, bucket);
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeValue(JsonGenerator generator, Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte) {
+            generator.writeNumber(((Number) value).longValue());
+        } else if (value instanceof Double) {
+            generator.writeNumber((Double) value);
+        } else if (value instanceof Float) {
+            generator.writeNumber((Float) value);
+        } else if (value instanceof Number) {
+            generator.writeNumber(value.toString());
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof byte[]) {
+            generator.writeBinary((byte[]) value);
+        } else if (value instanceof Map) {
+            generator.writeStartObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                generator.writeFieldName(String.valueOf(entry.getKey()));
+                writeValue(generator, entry.getValue());
+            }
+            generator.writeEndObject();
+        } else if (value instanceof Collection) {
+            generator.writeStartArray();
+            for (Object element : (Collection<?>) value) {
+                writeValue(generator, element);
+            }
+            generator.writeEndArray();
+        } else {
+            generator.writeString(value.toString());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.stats;
+
+/**
+ * Tells whether the device stats classes can be used. The analytics and jackson packages they depend on are optional
+ * imports of this bundle, so that it resolves on servers without the analytics features, in which case the stats
+ * classes cannot be loaded. This class does not refer to any of those packages, hence it can always be loaded.
+ */
+public final class DeviceStatsSupport {
+
+    private static final String[] REQUIRED_CLASSES = {
+            "org.wso2.carbon.analytics.api.AnalyticsDataAPI",
+            "org.wso2.carbon.analytics.dataservice.core.AnalyticsDataServiceUtils",
+            "org.codehaus.jackson.JsonFactory"
+    };
+    private static volatile Boolean available;
+
+    private DeviceStatsSupport() {
+    }
+
+    /**
+     * @return true if the packages required by the device stats classes are wired to this bundle.
+     */
+    public static boolean isAvailable() {
+        Boolean isAvailable = available;
+        if (isAvailable == null) {
+            isAvailable = true;
+            for (String className : REQUIRED_CLASSES) {
+                try {
+                    Class.forName(className, false, DeviceStatsSupport.class.getClassLoader());
+                } catch (ClassNotFoundException | LinkageError e) {
+                    isAvailable = false;
+                    break;
+                }
+            }
+            available = isAvailable;
+        }
+        return isAvailable;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.apimgt.application.extension.APIManagementProviderService;
+import org.wso2.carbon.apimgt.application.extension.dto.ApiApplicationKey;
+import org.wso2.carbon.apimgt.application.extension.exception.APIManagerException;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.user.api.UserStoreException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Caches the API application keys that the device type APIs hand out with agent downloads, per tenant, device type
+ * and key type. The application is registered for the admin user of the tenant on first use. Concurrent downloads
+ * wait on the same registration rather than each calling the key manager, and a failed registration is not cached so
+ * that the next download retries it. A key that the key manager no longer accepts, e.g. because the application was
+ * removed, is evicted with {@link #invalidate(String, String)}.
+ */
+public class ApiApplicationKeyCache {
+
+    private static final Log log = LogFactory.getLog(ApiApplicationKeyCache.class);
+    private static final ApiApplicationKeyCache instance = new ApiApplicationKeyCache();
+
+    private final ConcurrentMap<String, FutureTask<ApiApplicationKey>> apiApplicationKeys =
+            new ConcurrentHashMap<>();
+
+    private ApiApplicationKeyCache() {
+    }
+
+    public static ApiApplicationKeyCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the API application key of the given device type for the current tenant, registering the application
+     * if it is not cached yet.
+     */
+    public ApiApplicationKey getApiApplicationKey(final String deviceType, final String keyType)
+            throws APIManagerException, UserStoreException {
+        final String applicationUsername = getApplicationUsername();
+        String cacheKey = getCacheKey(applicationUsername, deviceType, keyType);
+        FutureTask<ApiApplicationKey> registration = new FutureTask<>(new Callable<ApiApplicationKey>() {
+            @Override
+            public ApiApplicationKey call() throws APIManagerException {
+                String[] tags = {deviceType};
+                return getAPIManagementProviderService().generateAndRetrieveApplicationKeys(
+                        deviceType, tags, keyType, applicationUsername, true);
+            }
+        });
+        FutureTask<ApiApplicationKey> cachedRegistration = apiApplicationKeys.putIfAbsent(cacheKey, registration);
+        if (cachedRegistration == null) {
+            registration.run();
+            cachedRegistration = registration;
+        }
+        try {
+            return cachedRegistration.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new APIManagerException("Interrupted while waiting for the API application key of " + deviceType, e);
+        } catch (ExecutionException e) {
+            apiApplicationKeys.remove(cacheKey, cachedRegistration);
+            if (e.getCause() instanceof APIManagerException) {
+                throw (APIManagerException) e.getCause();
+            }
+            throw new APIManagerException("Failed to generate the API application key of " + deviceType, e);
+        }
+    }
+
+    /**
+     * Evicts the API application key of the given device type for the current tenant, so that the next request
+     * retrieves it from the key manager again.
+     */
+    public void invalidate(String deviceType, String keyType) throws UserStoreException {
+        apiApplicationKeys.remove(getCacheKey(getApplicationUsername(), deviceType, keyType));
+        if (log.isDebugEnabled()) {
+            log.debug("Evicted the cached API application key of device type " + deviceType);
+        }
+    }
+
+    private static String getApplicationUsername() throws UserStoreException {
+        return PrivilegedCarbonContext.getThreadLocalCarbonContext().getUserRealm().getRealmConfiguration()
+                .getAdminUserName();
+    }
+
+    private static String getCacheKey(String applicationUsername, String deviceType, String keyType) {
+        String tenantDomain = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantDomain();
+        return tenantDomain + "/" + applicationUsername + "/" + deviceType + "/" + keyType;
+    }
+
+    private static APIManagementProviderService getAPIManagementProviderService() {
+        PrivilegedCarbonContext ctx = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+        APIManagementProviderService apiManagementProviderService =
+                (APIManagementProviderService) ctx.getOSGiService(APIManagementProviderService.class, null);
+        if (apiManagementProviderService == null) {
+            String msg = "API management provider service has not initialized.";
+            log.error(msg);
+            throw new IllegalStateException(msg);
+        }
+        return apiManagementProviderService;
+    }
+}
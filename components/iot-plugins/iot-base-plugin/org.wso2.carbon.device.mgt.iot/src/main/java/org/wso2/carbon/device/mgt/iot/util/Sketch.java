@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * The files of a device agent sketch held in memory, the static files as they are and the templates compiled, so that
+ * an archive of the sketch can be written without touching the file system.
+ */
+class Sketch {
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    void addFile(String name, byte[] content) {
+        entries.add(new Entry(name, content, null));
+    }
+
+    void addTemplate(String name, SketchTemplate template) {
+        entries.add(new Entry(name, null, template));
+    }
+
+    /**
+     * Writes the sketch as a zip archive, rendering the templates with the given parameters. The stream is finished,
+     * but not closed.
+     */
+    void writeArchive(OutputStream outputStream, Map contextParams) throws IOException {
+        ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream);
+        for (Entry entry : entries) {
+            zipOutputStream.putNextEntry(new ZipEntry(entry.name));
+            if (entry.template != null) {
+                zipOutputStream.write(entry.template.render(contextParams).getBytes(StandardCharsets.UTF_8));
+            } else {
+                zipOutputStream.write(entry.content);
+            }
+            zipOutputStream.closeEntry();
+        }
+        zipOutputStream.finish();
+    }
+
+    private static class Entry {
+        private final String name;
+        private final byte[] content;
+        private final SketchTemplate template;
+
+        private Entry(String name, byte[] content, SketchTemplate template) {
+            this.name = name;
+            this.content = content;
+            this.template = template;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A sketch file containing <code>${name}</code> placeholders, split once into the literal text and the placeholders
+ * in between, so that rendering it only appends the segments in order.
+ */
+class SketchTemplate {
+
+    private static final String PLACEHOLDER_PREFIX = "${";
+    private static final String PLACEHOLDER_SUFFIX = "}";
+
+    // there is one more literal than placeholders, the literal before each placeholder and the one after the last
+    private final String[] literals;
+    private final String[] placeholders;
+
+    private SketchTemplate(String[] literals, String[] placeholders) {
+        this.literals = literals;
+        this.placeholders = placeholders;
+    }
+
+    static SketchTemplate compile(String content) {
+        List<String> literals = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        int literalStart = 0;
+        int placeholderStart = content.indexOf(PLACEHOLDER_PREFIX);
+        while (placeholderStart >= 0) {
+            int nameStart = placeholderStart + PLACEHOLDER_PREFIX.length();
+            int nameEnd = content.indexOf(PLACEHOLDER_SUFFIX, nameStart);
+            if (nameEnd < 0) {
+                break;
+            }
+            literals.add(content.substring(literalStart, placeholderStart));
+            placeholders.add(content.substring(nameStart, nameEnd));
+            literalStart = nameEnd + PLACEHOLDER_SUFFIX.length();
+            placeholderStart = content.indexOf(PLACEHOLDER_PREFIX, literalStart);
+        }
+        literals.add(content.substring(literalStart));
+        return new SketchTemplate(literals.toArray(new String[literals.size()]),
+                                  placeholders.toArray(new String[placeholders.size()]));
+    }
+
+    /**
+     * Replaces the placeholders with the values of the parameters by the same name, a placeholder without such a
+     * parameter is left as it is.
+     */
+    String render(Map contextParams) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < placeholders.length; i++) {
+            content.append(literals[i]);
+            Object value = contextParams.get(placeholders[i]);
+            if (value != null) {
+                content.append(value.toString());
+            } else {
+                content.append(PLACEHOLDER_PREFIX).append(placeholders[i]).append(PLACEHOLDER_SUFFIX);
+            }
+        }
+        content.append(literals[placeholders.length]);
+        return content.toString();
+    }
+}
@@ -18,26 +18,34 @@
 
 package org.wso2.carbon.device.mgt.iot.util;
 
-import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
 
 /**
- * This is an utility class to hold zip files.
+ * This is an utility class to hold zip files. The archive is not kept anywhere, but written out from the cached sketch
+ * when it is requested.
  */
 public class ZipArchive {
 
-    private File zipFile = null;
-    private String fileName = null;
+    private final String fileName;
+    private final Sketch sketch;
+    private final Map contextParams;
 
-    public ZipArchive(String fileName, File zipFile) {
+    ZipArchive(String fileName, Sketch sketch, Map contextParams) {
         this.fileName = fileName;
-        this.zipFile = zipFile;
-    }
-
-    public File getZipFile() {
-        return zipFile;
+        this.sketch = sketch;
+        this.contextParams = contextParams;
     }
 
     public String getFileName() {
         return fileName;
     }
+
+    /**
+     * Writes the zip archive to the given stream, which is left open.
+     */
+    public void write(OutputStream outputStream) throws IOException {
+        sketch.writeArchive(outputStream, contextParams);
+    }
 }
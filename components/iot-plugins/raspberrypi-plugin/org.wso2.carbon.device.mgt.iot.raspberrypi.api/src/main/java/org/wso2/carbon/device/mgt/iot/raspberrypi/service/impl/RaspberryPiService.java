@@ -46,7 +46,11 @@ public interface RaspberryPiService {
     @Produces("application/json")
     @Scope(key = "device:raspberrypi:enroll", name = "", description = "")
     Response getRaspberryPiTemperatureStats(@PathParam("deviceId") String deviceId,
-                                        @QueryParam("from") long from, @QueryParam("to") long to);
+                                            @QueryParam("from") long from, @QueryParam("to") long to,
+                                            @QueryParam("cursor") long cursor, @QueryParam("offset") int offset,
+                                            @QueryParam("limit") int limit,
+                                            @QueryParam("interval") long interval,
+                                            @QueryParam("aggregate") String aggregate);
 
     /**
      * download the agent.
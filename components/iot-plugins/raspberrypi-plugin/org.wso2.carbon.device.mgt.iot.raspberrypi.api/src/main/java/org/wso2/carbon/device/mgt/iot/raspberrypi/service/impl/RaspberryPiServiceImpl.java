@@ -18,16 +18,11 @@
 
 package org.wso2.carbon.device.mgt.iot.raspberrypi.service.impl;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.wso2.carbon.analytics.dataservice.commons.SortByField;
-import org.wso2.carbon.analytics.dataservice.commons.SortType;
 import org.wso2.carbon.analytics.datasource.commons.exception.AnalyticsException;
-import org.wso2.carbon.apimgt.application.extension.APIManagementProviderService;
 import org.wso2.carbon.apimgt.application.extension.dto.ApiApplicationKey;
 import org.wso2.carbon.apimgt.application.extension.exception.APIManagerException;
-import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.device.mgt.common.*;
 import org.wso2.carbon.device.mgt.common.authorization.DeviceAccessAuthorizationException;
 import org.wso2.carbon.device.mgt.common.group.mgt.DeviceGroupConstants;
@@ -35,9 +30,10 @@ import org.wso2.carbon.device.mgt.common.operation.mgt.Operation;
 import org.wso2.carbon.device.mgt.common.operation.mgt.OperationManagementException;
 import org.wso2.carbon.device.mgt.core.operation.mgt.CommandOperation;
 import org.wso2.carbon.device.mgt.iot.raspberrypi.plugin.constants.RaspberrypiConstants;
-import org.wso2.carbon.device.mgt.iot.raspberrypi.service.impl.dto.SensorRecord;
 import org.wso2.carbon.device.mgt.iot.raspberrypi.service.impl.util.APIUtil;
 import org.wso2.carbon.device.mgt.iot.raspberrypi.service.impl.util.ZipUtil;
+import org.wso2.carbon.device.mgt.iot.stats.DeviceStatsQuery;
+import org.wso2.carbon.device.mgt.iot.util.ApiApplicationKeyCache;
 import org.wso2.carbon.device.mgt.iot.util.ZipArchive;
 import org.wso2.carbon.identity.jwt.client.extension.JWTClient;
 import org.wso2.carbon.identity.jwt.client.extension.dto.AccessTokenInfo;
@@ -46,16 +42,18 @@ import org.wso2.carbon.user.api.UserStoreException;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 public class RaspberryPiServiceImpl implements RaspberryPiService {
 
     private static Log log = LogFactory.getLog(RaspberryPiServiceImpl.class);
     private static final String KEY_TYPE = "PRODUCTION";
-    private static ApiApplicationKey apiApplicationKey;
 
     @Path("device/{deviceId}/bulb")
     @POST
@@ -109,22 +107,28 @@ public class RaspberryPiServiceImpl implements RaspberryPiService {
     @Consumes("application/json")
     @Produces("application/json")
     public Response getRaspberryPiTemperatureStats(@PathParam("deviceId") String deviceId,
-                                                   @QueryParam("from") long from, @QueryParam("to") long to) {
-        String fromDate = String.valueOf(from);
-        String toDate = String.valueOf(to);
-        String query = "deviceId:" + deviceId + " AND deviceType:" +
-                RaspberrypiConstants.DEVICE_TYPE + " AND time : [" + fromDate + " TO " + toDate + "]";
+                                                   @QueryParam("from") long from, @QueryParam("to") long to,
+                                                   @QueryParam("cursor") long cursor, @QueryParam("offset") int offset,
+                                                   @QueryParam("limit") int limit,
+                                                   @QueryParam("interval") long interval,
+                                                   @QueryParam("aggregate") String aggregate) {
+        String query = "deviceId:" + deviceId + " AND deviceType:" + RaspberrypiConstants.DEVICE_TYPE;
         String sensorTableName = RaspberrypiConstants.TEMPERATURE_EVENT_TABLE;
         try {
             if (!APIUtil.getDeviceAccessAuthorizationService().isUserAuthorized(new DeviceIdentifier(deviceId,
                     RaspberrypiConstants.DEVICE_TYPE), DeviceGroupConstants.Permissions.DEFAULT_STATS_MONITOR_PERMISSIONS)) {
                 return Response.status(Response.Status.UNAUTHORIZED.getStatusCode()).build();
             }
-            List<SortByField> sortByFields = new ArrayList<>();
-            SortByField sortByField = new SortByField("time", SortType.ASC);
-            sortByFields.add(sortByField);
-            List<SensorRecord> sensorRecords = APIUtil.getAllEventsForDevice(sensorTableName, query, sortByFields);
-            return Response.status(Response.Status.OK.getStatusCode()).entity(sensorRecords).build();
+            DeviceStatsQuery statsQuery = new DeviceStatsQuery(sensorTableName, query, "time", TimeUnit.SECONDS);
+            statsQuery.setTimeWindow(from, to);
+            statsQuery.setCursor(cursor);
+            statsQuery.setAggregation(interval, aggregate);
+            statsQuery.setOffset(offset);
+            statsQuery.setLimit(limit);
+            return Response.status(Response.Status.OK.getStatusCode()).entity(APIUtil.getDeviceStats(statsQuery))
+                    .build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST.getStatusCode()).entity(e.getMessage()).build();
         } catch (AnalyticsException e) {
             String errorMsg = "Error on retrieving stats on table " + sensorTableName + " with query " + query;
             log.error(errorMsg);
@@ -141,14 +145,18 @@ public class RaspberryPiServiceImpl implements RaspberryPiService {
     @Produces("application/zip")
     public Response downloadSketch(@QueryParam("deviceName") String deviceName, @QueryParam("sketchType") String sketchType) {
         try {
-            ZipArchive zipFile = createDownloadFile(APIUtil.getAuthenticatedUser(), deviceName, sketchType);
-            Response.ResponseBuilder response = Response.ok(FileUtils.readFileToByteArray(zipFile.getZipFile()));
+            final ZipArchive zipFile = createDownloadFile(APIUtil.getAuthenticatedUser(), deviceName, sketchType);
+            StreamingOutput zipOutput = new StreamingOutput() {
+                @Override
+                public void write(OutputStream outputStream) throws IOException {
+                    zipFile.write(outputStream);
+                }
+            };
+            Response.ResponseBuilder response = Response.ok(zipOutput);
             response.status(Response.Status.OK);
             response.type("application/zip");
             response.header("Content-Disposition", "attachment; filename=\"" + zipFile.getFileName() + "\"");
-            Response resp = response.build();
-            zipFile.getZipFile().delete();
-            return resp;
+            return response.build();
         } catch (IllegalArgumentException ex) {
             return Response.status(400).entity(ex.getMessage()).build();//bad request
         } catch (DeviceManagementException ex) {
@@ -160,9 +168,6 @@ public class RaspberryPiServiceImpl implements RaspberryPiService {
         } catch (APIManagerException ex) {
             log.error(ex.getMessage(), ex);
             return Response.status(500).entity(ex.getMessage()).build();
-        } catch (IOException ex) {
-            log.error(ex.getMessage(), ex);
-            return Response.status(500).entity(ex.getMessage()).build();
         } catch (UserStoreException ex) {
             log.error(ex.getMessage(), ex);
             return Response.status(500).entity(ex.getMessage()).build();
@@ -204,18 +209,20 @@ public class RaspberryPiServiceImpl implements RaspberryPiService {
             String msg = "Error occurred while registering the device with " + "id: " + deviceId + " owner:" + owner;
             throw new DeviceManagementException(msg);
         }
-        if (apiApplicationKey == null) {
-            String applicationUsername = PrivilegedCarbonContext.getThreadLocalCarbonContext().getUserRealm()
-                    .getRealmConfiguration().getAdminUserName();
-            APIManagementProviderService apiManagementProviderService = APIUtil.getAPIManagementProviderService();
-            String[] tags = {RaspberrypiConstants.DEVICE_TYPE};
-            apiApplicationKey = apiManagementProviderService.generateAndRetrieveApplicationKeys(
-                    RaspberrypiConstants.DEVICE_TYPE, tags, KEY_TYPE, applicationUsername, true);
-        }
+        ApiApplicationKeyCache apiApplicationKeyCache = ApiApplicationKeyCache.getInstance();
+        ApiApplicationKey apiApplicationKey = apiApplicationKeyCache.getApiApplicationKey(
+                RaspberrypiConstants.DEVICE_TYPE, KEY_TYPE);
         JWTClient jwtClient = APIUtil.getJWTClientManagerService().getJWTClient();
         String scopes = "cdmf/" + RaspberrypiConstants.DEVICE_TYPE + "/" + deviceId;
-        AccessTokenInfo accessTokenInfo = jwtClient.getAccessToken(apiApplicationKey.getConsumerKey(),
-                                                                   apiApplicationKey.getConsumerSecret(), owner, scopes);
+        AccessTokenInfo accessTokenInfo;
+        try {
+            accessTokenInfo = jwtClient.getAccessToken(apiApplicationKey.getConsumerKey(),
+                                                       apiApplicationKey.getConsumerSecret(), owner, scopes);
+        } catch (JWTClientException e) {
+            // the cached key may belong to an application that no longer exists
+            apiApplicationKeyCache.invalidate(RaspberrypiConstants.DEVICE_TYPE, KEY_TYPE);
+            throw e;
+        }
         //create token
         String accessToken = accessTokenInfo.getAccessToken();
         String refreshToken = accessTokenInfo.getRefreshToken();
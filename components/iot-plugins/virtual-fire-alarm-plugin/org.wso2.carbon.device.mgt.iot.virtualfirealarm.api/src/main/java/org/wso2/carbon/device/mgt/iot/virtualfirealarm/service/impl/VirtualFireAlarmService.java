@@ -62,7 +62,9 @@ public interface VirtualFireAlarmService {
     @Consumes("application/json")
     @Produces("application/json")
     Response getVirtualFirealarmStats(@PathParam("deviceId") String deviceId, @QueryParam("from") long from,
-                                                 @QueryParam("to") long to);
+                                      @QueryParam("to") long to, @QueryParam("cursor") long cursor,
+                                      @QueryParam("offset") int offset, @QueryParam("limit") int limit,
+                                      @QueryParam("interval") long interval, @QueryParam("aggregate") String aggregate);
 
     @Path("device/download")
     @GET
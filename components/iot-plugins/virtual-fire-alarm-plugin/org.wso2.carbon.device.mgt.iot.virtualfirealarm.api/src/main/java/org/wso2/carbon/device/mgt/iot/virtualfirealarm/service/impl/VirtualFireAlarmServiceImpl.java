@@ -19,22 +19,19 @@
 package org.wso2.carbon.device.mgt.iot.virtualfirealarm.service.impl;
 
 import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.wso2.carbon.analytics.dataservice.commons.SortByField;
-import org.wso2.carbon.analytics.dataservice.commons.SortType;
 import org.wso2.carbon.analytics.datasource.commons.exception.AnalyticsException;
-import org.wso2.carbon.apimgt.application.extension.APIManagementProviderService;
 import org.wso2.carbon.apimgt.application.extension.dto.ApiApplicationKey;
 import org.wso2.carbon.apimgt.application.extension.exception.APIManagerException;
-import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.device.mgt.common.*;
 import org.wso2.carbon.device.mgt.common.authorization.DeviceAccessAuthorizationException;
 import org.wso2.carbon.device.mgt.common.group.mgt.DeviceGroupConstants;
 import org.wso2.carbon.device.mgt.common.operation.mgt.Operation;
 import org.wso2.carbon.device.mgt.common.operation.mgt.OperationManagementException;
 import org.wso2.carbon.device.mgt.core.operation.mgt.CommandOperation;
+import org.wso2.carbon.device.mgt.iot.stats.DeviceStatsQuery;
+import org.wso2.carbon.device.mgt.iot.util.ApiApplicationKeyCache;
 import org.wso2.carbon.device.mgt.iot.util.ZipArchive;
 import org.wso2.carbon.device.mgt.iot.virtualfirealarm.plugin.constants.VirtualFireAlarmConstants;
 import org.wso2.carbon.device.mgt.iot.virtualfirealarm.plugin.exception.VirtualFirealarmDeviceMgtPluginException;
@@ -42,7 +39,6 @@ import org.wso2.carbon.device.mgt.iot.virtualfirealarm.plugin.impl.util.VirtualF
 import org.wso2.carbon.device.mgt.iot.virtualfirealarm.plugin.xmpp.XmppAccount;
 import org.wso2.carbon.device.mgt.iot.virtualfirealarm.plugin.xmpp.XmppConfig;
 import org.wso2.carbon.device.mgt.iot.virtualfirealarm.plugin.xmpp.XmppServerClient;
-import org.wso2.carbon.device.mgt.iot.virtualfirealarm.service.impl.dto.SensorRecord;
 import org.wso2.carbon.device.mgt.iot.virtualfirealarm.service.impl.exception.VirtualFireAlarmException;
 import org.wso2.carbon.device.mgt.iot.virtualfirealarm.service.impl.util.APIUtil;
 import org.wso2.carbon.device.mgt.iot.virtualfirealarm.service.impl.util.VirtualFireAlarmServiceUtils;
@@ -62,7 +58,9 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.PrivateKey;
@@ -73,13 +71,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 public class VirtualFireAlarmServiceImpl implements VirtualFireAlarmService {
 
     private static final String XMPP_PROTOCOL = "XMPP";
     private static final String MQTT_PROTOCOL = "MQTT";
     private static final String KEY_TYPE = "PRODUCTION";
-    private static ApiApplicationKey apiApplicationKey;
     private static final String DEVICE_MGT_SCOPE_IDENTIFIER = "device-mgt";
     private static Log log = LogFactory.getLog(VirtualFireAlarmServiceImpl.class);
 
@@ -202,11 +200,11 @@ public class VirtualFireAlarmServiceImpl implements VirtualFireAlarmService {
     @Consumes("application/json")
     @Produces("application/json")
     public Response getVirtualFirealarmStats(@PathParam("deviceId") String deviceId, @QueryParam("from") long from,
-                                             @QueryParam("to") long to) {
-        String fromDate = String.valueOf(from);
-        String toDate = String.valueOf(to);
-        String query = "deviceId:" + deviceId + " AND deviceType:" +
-                VirtualFireAlarmConstants.DEVICE_TYPE + " AND time : [" + fromDate + " TO " + toDate + "]";
+                                             @QueryParam("to") long to, @QueryParam("cursor") long cursor,
+                                             @QueryParam("offset") int offset, @QueryParam("limit") int limit,
+                                             @QueryParam("interval") long interval,
+                                             @QueryParam("aggregate") String aggregate) {
+        String query = "deviceId:" + deviceId + " AND deviceType:" + VirtualFireAlarmConstants.DEVICE_TYPE;
         String sensorTableName = VirtualFireAlarmConstants.TEMPERATURE_EVENT_TABLE;
         try {
             if (!APIUtil.getDeviceAccessAuthorizationService().isUserAuthorized(
@@ -214,11 +212,16 @@ public class VirtualFireAlarmServiceImpl implements VirtualFireAlarmService {
                     DeviceGroupConstants.Permissions.DEFAULT_STATS_MONITOR_PERMISSIONS)) {
                 return Response.status(Response.Status.UNAUTHORIZED.getStatusCode()).build();
             }
-            List<SortByField> sortByFields = new ArrayList<>();
-            SortByField sortByField = new SortByField("time", SortType.ASC);
-            sortByFields.add(sortByField);
-            List<SensorRecord> sensorRecords = APIUtil.getAllEventsForDevice(sensorTableName, query, sortByFields);
-            return Response.status(Response.Status.OK.getStatusCode()).entity(sensorRecords).build();
+            DeviceStatsQuery statsQuery = new DeviceStatsQuery(sensorTableName, query, "time", TimeUnit.SECONDS);
+            statsQuery.setTimeWindow(from, to);
+            statsQuery.setCursor(cursor);
+            statsQuery.setAggregation(interval, aggregate);
+            statsQuery.setOffset(offset);
+            statsQuery.setLimit(limit);
+            return Response.status(Response.Status.OK.getStatusCode()).entity(APIUtil.getDeviceStats(statsQuery))
+                    .build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST.getStatusCode()).entity(e.getMessage()).build();
         } catch (AnalyticsException e) {
             String errorMsg = "Error on retrieving stats on table " + sensorTableName + " with query " + query;
             log.error(errorMsg);
@@ -235,14 +238,18 @@ public class VirtualFireAlarmServiceImpl implements VirtualFireAlarmService {
     public Response downloadSketch(@QueryParam("deviceName") String deviceName,
                                    @QueryParam("sketchType") String sketchType) {
         try {
-            ZipArchive zipFile = createDownloadFile(APIUtil.getAuthenticatedUser(), deviceName, sketchType);
-            Response.ResponseBuilder response = Response.ok(FileUtils.readFileToByteArray(zipFile.getZipFile()));
+            final ZipArchive zipFile = createDownloadFile(APIUtil.getAuthenticatedUser(), deviceName, sketchType);
+            StreamingOutput zipOutput = new StreamingOutput() {
+                @Override
+                public void write(OutputStream outputStream) throws IOException {
+                    zipFile.write(outputStream);
+                }
+            };
+            Response.ResponseBuilder response = Response.ok(zipOutput);
             response.status(Response.Status.OK);
             response.type("application/zip");
             response.header("Content-Disposition", "attachment; filename=\"" + zipFile.getFileName() + "\"");
-            Response resp = response.build();
-            zipFile.getZipFile().delete();
-            return resp;
+            return response.build();
         } catch (IllegalArgumentException ex) {
             return Response.status(400).entity(ex.getMessage()).build();//bad request
         } catch (DeviceManagementException ex) {
@@ -254,9 +261,6 @@ public class VirtualFireAlarmServiceImpl implements VirtualFireAlarmService {
         } catch (APIManagerException ex) {
             log.error(ex.getMessage(), ex);
             return Response.status(500).entity(ex.getMessage()).build();
-        } catch (IOException ex) {
-            log.error(ex.getMessage(), ex);
-            return Response.status(500).entity(ex.getMessage()).build();
         } catch (UserStoreException ex) {
             log.error(ex.getMessage(), ex);
             return Response.status(500).entity(ex.getMessage()).build();
@@ -302,23 +306,23 @@ public class VirtualFireAlarmServiceImpl implements VirtualFireAlarmService {
             String msg = "Error occurred while registering the device with " + "id: " + deviceId + " owner:" + owner;
             throw new DeviceManagementException(msg);
         }
-        if (apiApplicationKey == null) {
-            String applicationUsername =
-                    PrivilegedCarbonContext.getThreadLocalCarbonContext().getUserRealm().getRealmConfiguration()
-                            .getAdminUserName();
-            APIManagementProviderService apiManagementProviderService = APIUtil.getAPIManagementProviderService();
-            String[] tags = {VirtualFireAlarmConstants.DEVICE_TYPE};
-            apiApplicationKey = apiManagementProviderService.generateAndRetrieveApplicationKeys(
-                    VirtualFireAlarmConstants.DEVICE_TYPE, tags, KEY_TYPE, applicationUsername, true);
-        }
+        ApiApplicationKeyCache apiApplicationKeyCache = ApiApplicationKeyCache.getInstance();
+        ApiApplicationKey apiApplicationKey = apiApplicationKeyCache.getApiApplicationKey(
+                VirtualFireAlarmConstants.DEVICE_TYPE, KEY_TYPE);
         JWTClient jwtClient = APIUtil.getJWTClientManagerService().getJWTClient();
         String device = "{ \"scope\":\"mqtt-publisher mqtt-subscriber\", \"deviceIdentifiers\":[{\"id\":\""+deviceId+"\", " +
                 "\"type\":\""+VirtualFireAlarmConstants.DEVICE_TYPE+"\"}]}";
         Map<String, String> params = new HashMap<String, String>();
         params.put("device", Base64.encodeBase64String(device.getBytes()));
-        AccessTokenInfo accessTokenInfo = jwtClient.getAccessToken(apiApplicationKey.getConsumerKey(),
-                                                                   apiApplicationKey.getConsumerSecret(), owner,
-                                                                   null, params);
+        AccessTokenInfo accessTokenInfo;
+        try {
+            accessTokenInfo = jwtClient.getAccessToken(apiApplicationKey.getConsumerKey(),
+                                                       apiApplicationKey.getConsumerSecret(), owner, null, params);
+        } catch (JWTClientException e) {
+            // the cached key may belong to an application that no longer exists
+            apiApplicationKeyCache.invalidate(VirtualFireAlarmConstants.DEVICE_TYPE, KEY_TYPE);
+            throw e;
+        }
         String accessToken = accessTokenInfo.getAccessToken();
         String refreshToken = accessTokenInfo.getRefreshToken();
         XmppAccount newXmppAccount = new XmppAccount();
@@ -326,14 +330,8 @@ public class VirtualFireAlarmServiceImpl implements VirtualFireAlarmService {
         newXmppAccount.setUsername(deviceId);
         newXmppAccount.setPassword(accessToken);
         newXmppAccount.setEmail(deviceId + "@" + APIUtil.getTenantDomainOftheUser());
-
-        status = XmppServerClient.createAccount(newXmppAccount);
-        if (!status) {
-            String msg = "XMPP Account was not created for device - " + deviceId + " of owner - " + owner +
-                    ".XMPP might have been disabled in org.wso2.carbon.device.mgt.iot" +
-                    ".common.config.server.configs";
-            throw new DeviceManagementException(msg);
-        }
+        // the agent only connects to XMPP after it is downloaded and started, hence the account is not waited on
+        XmppServerClient.createAccountAsync(newXmppAccount);
         ZipUtil ziputil = new ZipUtil();
         return ziputil.createZipFile(owner, sketchType, deviceId, deviceName, apiApplicationKey.toString(),
                                      accessToken, refreshToken);
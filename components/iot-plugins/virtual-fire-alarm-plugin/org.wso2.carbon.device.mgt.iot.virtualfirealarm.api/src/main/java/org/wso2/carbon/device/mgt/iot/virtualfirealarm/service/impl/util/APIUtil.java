@@ -3,12 +3,7 @@ package org.wso2.carbon.device.mgt.iot.virtualfirealarm.service.impl.util;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.analytics.api.AnalyticsDataAPI;
-import org.wso2.carbon.analytics.dataservice.commons.AnalyticsDataResponse;
 import org.wso2.carbon.analytics.dataservice.commons.AnalyticsDrillDownRequest;
-import org.wso2.carbon.analytics.dataservice.commons.SearchResultEntry;
-import org.wso2.carbon.analytics.dataservice.commons.SortByField;
-import org.wso2.carbon.analytics.dataservice.core.AnalyticsDataServiceUtils;
-import org.wso2.carbon.analytics.datasource.commons.Record;
 import org.wso2.carbon.analytics.datasource.commons.exception.AnalyticsException;
 import org.wso2.carbon.apimgt.application.extension.APIManagementProviderService;
 import org.wso2.carbon.context.CarbonContext;
@@ -16,15 +11,16 @@ import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.device.mgt.common.authorization.DeviceAccessAuthorizationService;
 import org.wso2.carbon.device.mgt.common.configuration.mgt.PlatformConfigurationManagementService;
 import org.wso2.carbon.device.mgt.core.service.DeviceManagementProviderService;
-import org.wso2.carbon.device.mgt.iot.virtualfirealarm.service.impl.dto.SensorRecord;
+import org.wso2.carbon.device.mgt.iot.stats.DeviceStatsQuery;
+import org.wso2.carbon.device.mgt.iot.stats.DeviceStatsStream;
+import org.wso2.carbon.device.mgt.iot.stats.DeviceStatsSupport;
 import org.wso2.carbon.event.output.adapter.core.OutputEventAdapterService;
 import org.wso2.carbon.identity.jwt.client.extension.service.JWTClientManagerService;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import javax.ws.rs.core.StreamingOutput;
+
+import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * This class provides utility functions used by REST-API.
@@ -67,67 +63,23 @@ public class APIUtil {
 		return analyticsDataAPI;
 	}
 
-	public static List<SensorRecord> getAllEventsForDevice(String tableName, String query,
-														   List<SortByField> sortByFields) throws AnalyticsException {
-		int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
-		AnalyticsDataAPI analyticsDataAPI = getAnalyticsDataAPI();
-		int eventCount = analyticsDataAPI.searchCount(tenantId, tableName, query);
-		if (eventCount == 0) {
-			return null;
-		}
-		List<SearchResultEntry> resultEntries = analyticsDataAPI.search(tenantId, tableName, query, 0, eventCount,
-																		sortByFields);
-		List<String> recordIds = getRecordIds(resultEntries);
-		AnalyticsDataResponse response = analyticsDataAPI.get(tenantId, tableName, 1, null, recordIds);
-		Map<String, SensorRecord> sensorDatas = createSensorData(AnalyticsDataServiceUtils.listRecords(
-				analyticsDataAPI, response));
-		List<SensorRecord> sortedSensorData = getSortedSensorData(sensorDatas, resultEntries);
-		return sortedSensorData;
-	}
-
-	private static List<String> getRecordIds(List<SearchResultEntry> searchResults) {
-		List<String> ids = new ArrayList<>();
-		for (SearchResultEntry searchResult : searchResults) {
-			ids.add(searchResult.getId());
-		}
-		return ids;
-	}
-
-	public static List<SensorRecord> getSortedSensorData(Map<String, SensorRecord> sensorDatas,
-														List<SearchResultEntry> searchResults) {
-		List<SensorRecord> sortedRecords = new ArrayList<>();
-		for (SearchResultEntry searchResultEntry : searchResults) {
-			sortedRecords.add(sensorDatas.get(searchResultEntry.getId()));
-		}
-		return sortedRecords;
-	}
-
 	/**
-	 * Creates the SensorDatas from records.
-	 *
-	 * @param records the records
-	 * @return the Map of SensorRecord <id, SensorRecord>
+	 * Streams the events selected by the given query as a JSON array, a page of events at a time.
 	 */
-	public static Map<String, SensorRecord> createSensorData(List<Record> records) {
-		Map<String, SensorRecord> sensorDatas = new HashMap<>();
-		for (Record record : records) {
-			SensorRecord sensorData = createSensorData(record);
-			sensorDatas.put(sensorData.getId(), sensorData);
+	public static StreamingOutput getDeviceStats(DeviceStatsQuery query) throws AnalyticsException {
+		if (!DeviceStatsSupport.isAvailable()) {
+			String msg = "Device stats are not available since the analytics features are not installed.";
+			log.error(msg);
+			throw new IllegalStateException(msg);
 		}
-		return sensorDatas;
-	}
-
-	/**
-	 * Create a SensorRecord object out of a Record object
-	 *
-	 * @param record the record object
-	 * @return SensorRecord object
-	 */
-	public static SensorRecord createSensorData(Record record) {
-		SensorRecord recordBean = new SensorRecord();
-		recordBean.setId(record.getId());
-		recordBean.setValues(record.getValues());
-		return recordBean;
+		int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
+		final DeviceStatsStream deviceStatsStream = new DeviceStatsStream(getAnalyticsDataAPI(), tenantId, query);
+		return new StreamingOutput() {
+			@Override
+			public void write(OutputStream outputStream) throws IOException {
+				deviceStatsStream.write(outputStream);
+			}
+		};
 	}
 
 	public static APIManagementProviderService getAPIManagementProviderService() {
@@ -30,7 +30,6 @@ import org.wso2.carbon.device.mgt.common.configuration.mgt.PlatformConfiguration
 import org.wso2.carbon.device.mgt.iot.util.Utils;
 import org.wso2.carbon.device.mgt.iot.util.ZipArchive;
 import org.wso2.carbon.device.mgt.iot.virtualfirealarm.plugin.xmpp.XmppConfig;
-import org.wso2.carbon.utils.CarbonUtils;
 
 import java.io.File;
 import java.io.IOException;
@@ -58,9 +57,6 @@ public class ZipUtil {
             throws DeviceManagementException {
 
         String sketchFolder = "repository" + File.separator + "resources" + File.separator + "sketches";
-        String archivesPath =
-                CarbonUtils.getCarbonHome() + File.separator + sketchFolder + File.separator + "archives" +
-                        File.separator + deviceId;
         String templateSketchPath = sketchFolder + File.separator + deviceType;
         String iotServerIP;
 
@@ -125,7 +121,7 @@ public class ZipUtil {
                     ? "" : XmppConfig.getInstance().getJid());
 
             ZipArchive zipFile;
-            zipFile = Utils.getSketchArchive(archivesPath, templateSketchPath, contextParams, deviceName);
+            zipFile = Utils.getSketchArchive(templateSketchPath, contextParams, deviceName);
             return zipFile;
         } catch (IOException e) {
             throw new DeviceManagementException("Zip File Creation Failed", e);
@@ -76,6 +76,7 @@ public class VirtualFireAlarmConstants {
     public static final String TEMPERATURE_STREAM_DEFINITION = "org.wso2.iot.devices.temperature";
     public static final String JSON_MESSAGE_KEY = "Msg";
     public static final String JSON_SIGNATURE_KEY = "Sig";
+    public static final int DEVICE_PUBLIC_KEY_CACHE_SIZE = 10000;
 
     public static final String HOST_KEY = "host";
     public static final String PORT_KEY = "port";
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.virtualfirealarm.plugin.impl.util;
+
+import org.wso2.carbon.device.mgt.iot.virtualfirealarm.plugin.constants.VirtualFireAlarmConstants;
+
+import java.security.PublicKey;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of device public keys keyed by tenant and certificate alias, so that verifying the signature of a
+ * device message does not read the certificate store every time. The cache is split into segments, each of which is
+ * a least recently used map guarded by its own lock. A device that enrolls again through SCEP gets a new
+ * certificate, hence the cache is invalidated on every SCEP enrollment.
+ * <p/>
+ * A key read from the certificate store is only cached if the cache was not invalidated while it was being read,
+ * otherwise the key of the certificate replaced by the enrollment could be cached after the invalidation.
+ */
+public class DevicePublicKeyCache {
+
+    private static final int SEGMENT_COUNT = 16;
+    private static final DevicePublicKeyCache instance =
+            new DevicePublicKeyCache(VirtualFireAlarmConstants.DEVICE_PUBLIC_KEY_CACHE_SIZE);
+
+    private final Segment[] segments;
+    // incremented on every invalidation, so that a key read before an invalidation is not cached after it
+    private final AtomicLong generation = new AtomicLong();
+
+    DevicePublicKeyCache(int maxSize) {
+        int segmentCapacity = Math.max(1, (maxSize + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+        segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    public static DevicePublicKeyCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return the cached public key of the device certificate, or null if it is not cached.
+     */
+    public PublicKey get(int tenantId, String alias) {
+        String key = getKey(tenantId, alias);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.get(key);
+        }
+    }
+
+    /**
+     * @return the current generation of the cache, to be read before reading a key that is to be cached.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Caches the public key unless the cache was invalidated since the given generation was read.
+     *
+     * @param generation the generation of the cache before the key was read from the certificate store.
+     */
+    public void put(int tenantId, String alias, PublicKey publicKey, long generation) {
+        String key = getKey(tenantId, alias);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            if (this.generation.get() == generation) {
+                segment.put(key, publicKey);
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    private static String getKey(int tenantId, String alias) {
+        return tenantId + ":" + alias;
+    }
+
+    private Segment segmentFor(String key) {
+        return segments[(key.hashCode() & Integer.MAX_VALUE) % SEGMENT_COUNT];
+    }
+
+    private static class Segment extends LinkedHashMap<String, PublicKey> {
+        private final int capacity;
+
+        private Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PublicKey> eldest) {
+            return size() > capacity;
+        }
+    }
+}
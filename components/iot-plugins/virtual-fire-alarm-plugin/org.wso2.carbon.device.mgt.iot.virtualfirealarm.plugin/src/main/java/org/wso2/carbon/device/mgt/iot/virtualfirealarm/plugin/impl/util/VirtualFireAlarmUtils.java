@@ -193,14 +193,24 @@ public class VirtualFireAlarmUtils {
         return actualMessage;
     }
 
+    /**
+     * Returns the public key of the device certificate with the given alias. Keys are cached per tenant, and the
+     * cache is invalidated when a device enrolls through SCEP.
+     */
     public static PublicKey getDevicePublicKey(String alias) throws VirtualFirealarmDeviceMgtPluginException {
-        PublicKey clientPublicKey;
+        int tenantId = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId();
+        PublicKey clientPublicKey = DevicePublicKeyCache.getInstance().get(tenantId, alias);
+        if (clientPublicKey != null) {
+            return clientPublicKey;
+        }
+        long generation = DevicePublicKeyCache.getInstance().getGeneration();
         try {
             CertificateManagementService certificateManagementService =
                     VirtualFirealarmManagementDataHolder.getInstance().getCertificateManagementService();
             X509Certificate clientCertificate = (X509Certificate) certificateManagementService.getCertificateByAlias(
                     alias);
             clientPublicKey = clientCertificate.getPublicKey();
+            DevicePublicKeyCache.getInstance().put(tenantId, alias, clientPublicKey, generation);
         } catch (KeystoreException e) {
             String errorMsg;
             if (e.getMessage().contains("NULL_CERT")) {
@@ -54,6 +54,11 @@ public class VirtualFirealarmSecurityManager {
     private static final String SIGNATURE_ALG = "SHA1withRSA";
     private static final String CIPHER_PADDING = "RSA/ECB/PKCS1Padding";
     private static CertificateKeystoreConfig certificateKeystoreConfig;
+    // Signature and Cipher instances are not thread safe, but can be reused once initialized again, hence each
+    // thread keeps its own.
+    private static final ThreadLocal<Signature> signatures = new ThreadLocal<>();
+    private static final ThreadLocal<Cipher> ciphers = new ThreadLocal<>();
+
     private VirtualFirealarmSecurityManager() {
 
     }
@@ -65,6 +70,24 @@ public class VirtualFirealarmSecurityManager {
         return certificateKeystoreConfig;
     }
 
+    private static Signature getSignature() throws NoSuchAlgorithmException {
+        Signature signature = signatures.get();
+        if (signature == null) {
+            signature = Signature.getInstance(SIGNATURE_ALG);
+            signatures.set(signature);
+        }
+        return signature;
+    }
+
+    private static Cipher getCipher() throws NoSuchAlgorithmException, NoSuchPaddingException {
+        Cipher cipher = ciphers.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(CIPHER_PADDING);
+            ciphers.set(cipher);
+        }
+        return cipher;
+    }
+
     public static void initVerificationManager() {
         serverPrivateKey = retrievePrivateKey();
     }
@@ -127,7 +150,7 @@ public class VirtualFirealarmSecurityManager {
         byte[] cipherData;
 
         try {
-            encrypter = Cipher.getInstance(CIPHER_PADDING);
+            encrypter = getCipher();
             encrypter.init(Cipher.ENCRYPT_MODE, encryptionKey);
             cipherData = encrypter.doFinal(message.getBytes(StandardCharsets.UTF_8));
 
@@ -162,7 +185,7 @@ public class VirtualFirealarmSecurityManager {
         String signedEncodedString;
 
         try {
-            signature = Signature.getInstance(SIGNATURE_ALG);
+            signature = getSignature();
             signature.initSign(signatureKey);
             signature.update(Base64.decodeBase64(encryptedData));
 
@@ -193,7 +216,7 @@ public class VirtualFirealarmSecurityManager {
         boolean verified;
 
         try {
-            signature = Signature.getInstance(SIGNATURE_ALG);
+            signature = getSignature();
             signature.initVerify(verificationKey);
             signature.update(Base64.decodeBase64(data));
 
@@ -223,7 +246,7 @@ public class VirtualFirealarmSecurityManager {
 
         try {
 
-            decrypter = Cipher.getInstance(CIPHER_PADDING);
+            decrypter = getCipher();
             decrypter.init(Cipher.DECRYPT_MODE, decryptKey);
             decryptedMessage = new String(decrypter.doFinal(Base64.decodeBase64(encryptedMessage)), StandardCharsets.UTF_8);
 
@@ -33,6 +33,7 @@ import org.wso2.carbon.device.mgt.iot.virtualfirealarm.plugin.impl.VirtualFireAl
 import org.wso2.carbon.device.mgt.iot.virtualfirealarm.plugin.impl.util.VirtualFireAlarmUtils;
 import org.wso2.carbon.device.mgt.iot.virtualfirealarm.plugin.impl.util.VirtualFirealarmSecurityManager;
 import org.wso2.carbon.device.mgt.iot.virtualfirealarm.plugin.impl.util.VirtualFirealarmStartupListener;
+import org.wso2.carbon.device.mgt.iot.virtualfirealarm.plugin.xmpp.XmppServerClient;
 import org.wso2.carbon.event.input.adapter.core.InputEventAdapterService;
 
 /**
@@ -110,6 +111,7 @@ public class VirtualFirealarmManagementServiceComponent {
             if (firealarmServiceRegRef != null) {
                 firealarmServiceRegRef.unregister();
             }
+            XmppServerClient.shutdown();
             if (log.isDebugEnabled()) {
                 log.debug("Virtual Firealarm Device Management Service Component has been successfully de-activated");
             }
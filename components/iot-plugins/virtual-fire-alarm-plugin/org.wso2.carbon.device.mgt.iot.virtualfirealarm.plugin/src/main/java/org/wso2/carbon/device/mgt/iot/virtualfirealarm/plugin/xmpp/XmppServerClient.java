@@ -18,6 +18,8 @@
 
 package org.wso2.carbon.device.mgt.iot.virtualfirealarm.plugin.xmpp;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.jivesoftware.smack.AccountManager;
 import org.jivesoftware.smack.ConnectionConfiguration;
 import org.jivesoftware.smack.XMPPConnection;
@@ -26,17 +28,31 @@ import org.wso2.carbon.device.mgt.iot.virtualfirealarm.plugin.exception.VirtualF
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class XmppServerClient {
 
+    private static final Log log = LogFactory.getLog(XmppServerClient.class);
+    private static final int ACCOUNT_CREATION_THREADS = 4;
+    private static final int MAX_ACCOUNT_CREATION_ATTEMPTS = 3;
+    private static final long INITIAL_RETRY_DELAY_IN_SECONDS = 2;
+    private static final int XMPP_ERROR_CONFLICT = 409;
+    private static ScheduledExecutorService accountCreationExecutor;
+
     public static boolean createAccount(XmppAccount xmppAccount) throws VirtualFirealarmDeviceMgtPluginException {
         if (XmppConfig.getInstance().isEnabled()) {
             if (xmppAccount != null) {
+                XMPPConnection xmppConnection = null;
                 try {
                     ConnectionConfiguration config = new ConnectionConfiguration(XmppConfig.getInstance().getHost(),
                                                                                  XmppConfig.getInstance().getPort(),
                                                                                  "Accounts");
-                    XMPPConnection xmppConnection = new XMPPConnection(config);
+                    xmppConnection = new XMPPConnection(config);
                     xmppConnection.connect();
                     xmppConnection.login(XmppConfig.getInstance().getUsername(), XmppConfig.getInstance().getPassword());
                     AccountManager accountManager = xmppConnection.getAccountManager();
@@ -46,16 +62,19 @@ public class XmppServerClient {
                     attributes.put("email", xmppAccount.getEmail());
                     attributes.put("name", xmppAccount.getAccountName());
                     accountManager.createAccount(xmppAccount.getUsername(), xmppAccount.getPassword(), attributes);
-                    xmppConnection.disconnect();
                     return true;
                 } catch (XMPPException e) {
-                    if (e.getXMPPError().getCode() == 409) {
+                    if (e.getXMPPError() != null && e.getXMPPError().getCode() == XMPP_ERROR_CONFLICT) {
                         //AccountAlreadyExist
                         return true;
                     } else {
                         throw new VirtualFirealarmDeviceMgtPluginException(
                                 "XMPP account creation failed. Error: " + e.getLocalizedMessage(), e);
                     }
+                } finally {
+                    if (xmppConnection != null && xmppConnection.isConnected()) {
+                        xmppConnection.disconnect();
+                    }
                 }
             } else {
                 throw new VirtualFirealarmDeviceMgtPluginException("Invalid XMPP attributes");
@@ -64,4 +83,90 @@ public class XmppServerClient {
             return true;
         }
     }
+
+    /**
+     * Creates the account in the background, so that the caller does not wait on the XMPP server. As an existing
+     * account is taken as created, a failed attempt is retried a few times with an increasing delay.
+     *
+     * @return false if XMPP is disabled, in which case no account is created.
+     */
+    public static boolean createAccountAsync(final XmppAccount xmppAccount)
+            throws VirtualFirealarmDeviceMgtPluginException {
+        if (xmppAccount == null) {
+            throw new VirtualFirealarmDeviceMgtPluginException("Invalid XMPP attributes");
+        }
+        if (!XmppConfig.getInstance().isEnabled()) {
+            return false;
+        }
+        ScheduledExecutorService executor = getAccountCreationExecutor();
+        executor.execute(new AccountCreationTask(executor, xmppAccount, 1));
+        return true;
+    }
+
+    /**
+     * Stops the background account creation, the accounts that are still waiting to be created are not created. The
+     * next asynchronous account creation starts it again.
+     */
+    public static synchronized void shutdown() {
+        if (accountCreationExecutor != null) {
+            accountCreationExecutor.shutdownNow();
+            accountCreationExecutor = null;
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getAccountCreationExecutor() {
+        if (accountCreationExecutor == null) {
+            accountCreationExecutor = Executors.newScheduledThreadPool(ACCOUNT_CREATION_THREADS, new ThreadFactory() {
+                private final AtomicInteger threadCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "xmpp-account-creator-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return accountCreationExecutor;
+    }
+
+    private static class AccountCreationTask implements Runnable {
+
+        // retries stay on the executor of the first attempt, so that they end with it when it is shut down
+        private final ScheduledExecutorService executor;
+        private final XmppAccount xmppAccount;
+        private final int attempt;
+
+        private AccountCreationTask(ScheduledExecutorService executor, XmppAccount xmppAccount, int attempt) {
+            this.executor = executor;
+            this.xmppAccount = xmppAccount;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public void run() {
+            try {
+                createAccount(xmppAccount);
+                if (log.isDebugEnabled()) {
+                    log.debug("XMPP account created for " + xmppAccount.getUsername());
+                }
+            } catch (VirtualFirealarmDeviceMgtPluginException | RuntimeException e) {
+                if (attempt < MAX_ACCOUNT_CREATION_ATTEMPTS) {
+                    long delay = INITIAL_RETRY_DELAY_IN_SECONDS << (attempt - 1);
+                    log.warn("XMPP account creation failed for " + xmppAccount.getUsername() + ", retrying in "
+                                     + delay + " seconds. Error: " + e.getMessage());
+                    try {
+                        executor.schedule(new AccountCreationTask(executor, xmppAccount, attempt + 1), delay,
+                                          TimeUnit.SECONDS);
+                    } catch (RejectedExecutionException rejected) {
+                        log.warn("XMPP account creation for " + xmppAccount.getUsername()
+                                         + " was not retried as it has been shut down");
+                    }
+                } else {
+                    log.error("XMPP account creation failed for " + xmppAccount.getUsername() + " after " + attempt
+                                      + " attempts", e);
+                }
+            }
+        }
+    }
 }
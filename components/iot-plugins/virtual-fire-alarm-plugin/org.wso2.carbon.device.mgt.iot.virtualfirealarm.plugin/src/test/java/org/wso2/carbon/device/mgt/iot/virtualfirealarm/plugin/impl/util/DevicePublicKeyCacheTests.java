@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.iot.virtualfirealarm.plugin.impl.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Class for holding unit-tests related to DevicePublicKeyCache class.
+ */
+public class DevicePublicKeyCacheTests {
+
+    private static final int TENANT_ID = -1234;
+    private static final String ALIAS = "device1";
+
+    @Test
+    public void testKeyIsCachedWhenNotInvalidated() {
+        DevicePublicKeyCache publicKeyCache = new DevicePublicKeyCache(100);
+        long generation = publicKeyCache.getGeneration();
+        FakePublicKey publicKey = new FakePublicKey(1);
+        publicKeyCache.put(TENANT_ID, ALIAS, publicKey, generation);
+        Assert.assertSame(publicKeyCache.get(TENANT_ID, ALIAS), publicKey);
+        Assert.assertNull(publicKeyCache.get(TENANT_ID + 1, ALIAS), "Key was shared between tenants");
+    }
+
+    @Test
+    public void testKeyReadBeforeInvalidationIsNotCached() {
+        DevicePublicKeyCache publicKeyCache = new DevicePublicKeyCache(100);
+        long generation = publicKeyCache.getGeneration();
+        // The device enrolls again while its old certificate is being read from the store
+        publicKeyCache.invalidateAll();
+        publicKeyCache.put(TENANT_ID, ALIAS, new FakePublicKey(1), generation);
+        Assert.assertNull(publicKeyCache.get(TENANT_ID, ALIAS), "Key of the replaced certificate was cached");
+    }
+
+    @Test
+    public void testInvalidationRemovesCachedKeys() {
+        DevicePublicKeyCache publicKeyCache = new DevicePublicKeyCache(100);
+        publicKeyCache.put(TENANT_ID, ALIAS, new FakePublicKey(1), publicKeyCache.getGeneration());
+        publicKeyCache.invalidateAll();
+        Assert.assertNull(publicKeyCache.get(TENANT_ID, ALIAS));
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        // A single entry per segment
+        DevicePublicKeyCache publicKeyCache = new DevicePublicKeyCache(16);
+        long generation = publicKeyCache.getGeneration();
+        for (int i = 0; i < 1000; i++) {
+            publicKeyCache.put(TENANT_ID, "device" + i, new FakePublicKey(i), generation);
+        }
+        int cachedKeys = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (publicKeyCache.get(TENANT_ID, "device" + i) != null) {
+                cachedKeys++;
+            }
+        }
+        Assert.assertTrue(cachedKeys > 0 && cachedKeys <= 16, cachedKeys + " keys were cached");
+        Assert.assertNotNull(publicKeyCache.get(TENANT_ID, "device999"), "Last cached key was evicted");
+    }
+
+    /**
+     * Readers keep caching the key of the current certificate of a device while the device keeps enrolling again.
+     * Once an invalidation completed, the cache must never hand out the key of a certificate replaced before it.
+     */
+    @Test
+    public void testInvalidationRacingWithReaders() throws Exception {
+        final DevicePublicKeyCache publicKeyCache = new DevicePublicKeyCache(100);
+        // version of the certificate in the store, and of the last certificate whose invalidation completed
+        final AtomicInteger certificateVersion = new AtomicInteger();
+        final AtomicInteger invalidatedVersion = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(2);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < 4; r++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (System.currentTimeMillis() < deadline && failure.get() == null) {
+                            int minimumVersion = invalidatedVersion.get();
+                            FakePublicKey cachedKey = (FakePublicKey) publicKeyCache.get(TENANT_ID, ALIAS);
+                            if (cachedKey != null) {
+                                Assert.assertTrue(cachedKey.version >= minimumVersion, "Key of version "
+                                        + cachedKey.version + " was cached after version " + minimumVersion
+                                        + " was enrolled");
+                                continue;
+                            }
+                            long generation = publicKeyCache.getGeneration();
+                            FakePublicKey publicKey = new FakePublicKey(certificateVersion.get());
+                            Thread.yield();
+                            publicKeyCache.put(TENANT_ID, ALIAS, publicKey, generation);
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }));
+        }
+        threads.add(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (System.currentTimeMillis() < deadline && failure.get() == null) {
+                    int version = certificateVersion.incrementAndGet();
+                    publicKeyCache.invalidateAll();
+                    invalidatedVersion.set(version);
+                    Thread.yield();
+                }
+            }
+        }));
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("Stale key was cached", failure.get());
+        }
+        Assert.assertTrue(invalidatedVersion.get() > 0, "Cache was never invalidated");
+    }
+
+    private static class FakePublicKey implements PublicKey {
+        private final int version;
+
+        private FakePublicKey(int version) {
+            this.version = version;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return "RSA";
+        }
+
+        @Override
+        public String getFormat() {
+            return "X.509";
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return new byte[]{(byte) version};
+        }
+    }
+}
@@ -23,6 +23,7 @@ import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.certificate.mgt.core.dto.SCEPResponse;
 import org.wso2.carbon.certificate.mgt.core.exception.KeystoreException;
 import org.wso2.carbon.certificate.mgt.core.service.CertificateManagementService;
+import org.wso2.carbon.device.mgt.iot.virtualfirealarm.plugin.impl.util.DevicePublicKeyCache;
 import org.wso2.carbon.device.mgt.iot.virtualfirealarm.scep.service.impl.exception.VirtualFireAlarmException;
 import org.wso2.carbon.device.mgt.iot.virtualfirealarm.scep.service.impl.util.scep.ContentType;
 import org.wso2.carbon.device.mgt.iot.virtualfirealarm.scep.service.impl.util.scep.SCEPOperation;
@@ -123,6 +124,8 @@ public class VirtualFireAlarmScepServerImpl implements VirtualFireAlarmScepServe
                 CertificateManagementService certificateManagementService = VirtualFireAlarmServiceUtils.
                         getCertificateManagementService();
                 byte pkiMessage[] = certificateManagementService.getPKIMessageSCEP(inputStream);
+                // A device enrolling again gets a new certificate, so public keys of earlier ones must not be used.
+                DevicePublicKeyCache.getInstance().invalidateAll();
                 return Response.ok(pkiMessage, ContentType.X_PKI_MESSAGE).build();
             } catch (VirtualFireAlarmException e) {
                 log.error("Error occurred while enrolling the device", e);
@@ -166,6 +166,17 @@ public interface EventReceiverService {
                     name = "If-Modified-Since",
                     value = "Validates if the requested variant has not been modified since the time specified",
                     required = false)
-            @HeaderParam("If-Modified-Since") String ifModifiedSince);
+            @HeaderParam("If-Modified-Since") String ifModifiedSince,
+            @ApiParam(
+                    name = "offset",
+                    value = "Number of events to skip, the events are ordered by the time they were published, " +
+                            "latest first.",
+                    defaultValue = "0")
+            @QueryParam("offset") int offset,
+            @ApiParam(
+                    name = "limit",
+                    value = "Maximum number of events to return, at most 1000.",
+                    defaultValue = "100")
+            @QueryParam("limit") int limit);
 
 }
@@ -26,7 +26,6 @@ import org.wso2.carbon.mdm.services.android.bean.DeviceState;
 import org.wso2.carbon.mdm.services.android.bean.ErrorResponse;
 import org.wso2.carbon.mdm.services.android.bean.wrapper.EventBeanWrapper;
 import org.wso2.carbon.mdm.services.android.exception.BadRequestException;
-import org.wso2.carbon.mdm.services.android.exception.NotFoundException;
 import org.wso2.carbon.mdm.services.android.exception.UnexpectedServerErrorException;
 import org.wso2.carbon.mdm.services.android.services.EventReceiverService;
 import org.wso2.carbon.mdm.services.android.util.AndroidAPIUtils;
@@ -42,6 +41,8 @@ import java.util.List;
 public class EventReceiverServiceImpl implements EventReceiverService {
 
     private static final String EVENT_STREAM_DEFINITION = "android_agent";
+    private static final int DEFAULT_EVENT_LIMIT = 100;
+    private static final int MAX_EVENT_LIMIT = 1000;
     private static final Log log = LogFactory.getLog(EventReceiverServiceImpl.class);
 
     @POST
@@ -82,14 +83,24 @@ public class EventReceiverServiceImpl implements EventReceiverService {
                                    @QueryParam("to") long to,
                                        @Size(min = 2, max = 45)
                                    @QueryParam("type") String type,
-                                   @HeaderParam("If-Modified-Since") String ifModifiedSince) {
+                                   @HeaderParam("If-Modified-Since") String ifModifiedSince,
+                                   @QueryParam("offset") int offset,
+                                   @QueryParam("limit") int limit) {
 
+        if (limit == 0) {
+            limit = DEFAULT_EVENT_LIMIT;
+        }
+        if (offset < 0 || limit < 0 || limit > MAX_EVENT_LIMIT) {
+            throw new BadRequestException(
+                    new ErrorResponse.ErrorResponseBuilder().setCode(400l).setMessage("Offset must not be " +
+                            "negative and limit must be between 1 and " + MAX_EVENT_LIMIT + ".").build());
+        }
         if (from != 0l && to != 0l && deviceId != null) {
-            return retrieveAlertFromDate(deviceId, from, to);
+            return retrieveAlertFromDate(deviceId, from, to, offset, limit);
         } else if (deviceId != null && type != null) {
-            return retrieveAlertByType(deviceId, type);
+            return retrieveAlertByType(deviceId, type, offset, limit);
         } else if (deviceId != null) {
-            return retrieveAlert(deviceId);
+            return retrieveAlert(deviceId, offset, limit);
         } else {
             throw new BadRequestException(
                     new ErrorResponse.ErrorResponseBuilder().setCode(400l).setMessage("Request must contain " +
@@ -98,21 +109,15 @@ public class EventReceiverServiceImpl implements EventReceiverService {
         }
     }
 
-    private Response retrieveAlert(String deviceId) {
+    private Response retrieveAlert(String deviceId, int offset, int limit) {
         if (log.isDebugEnabled()) {
             log.debug("Retrieving events for given device Identifier.");
         }
         String query = "deviceIdentifier:" + deviceId;
         List<DeviceState> deviceStates;
         try {
-            deviceStates = AndroidAPIUtils.getAllEventsForDevice(EVENT_STREAM_DEFINITION, query);
-            if (deviceStates == null) {
-                throw new NotFoundException(
-                        new ErrorResponse.ErrorResponseBuilder().setCode(404l).setMessage("No any alerts are " +
-                                "published for Device: " + deviceId + ".").build());
-            } else {
-                return Response.status(Response.Status.OK).entity(deviceStates).build();
-            }
+            deviceStates = AndroidAPIUtils.getEventsForDevice(EVENT_STREAM_DEFINITION, query, offset, limit);
+            return Response.status(Response.Status.OK).entity(deviceStates).build();
         } catch (AnalyticsException e) {
             String msg = "Error occurred while getting published events for specific device: " + deviceId + ".";
             log.error(msg, e);
@@ -121,7 +126,7 @@ public class EventReceiverServiceImpl implements EventReceiverService {
         }
     }
 
-    private Response retrieveAlertFromDate(String deviceId, long from, long to) {
+    private Response retrieveAlertFromDate(String deviceId, long from, long to, int offset, int limit) {
         String fromDate = String.valueOf(from);
         String toDate = String.valueOf(to);
         if (log.isDebugEnabled()) {
@@ -131,15 +136,8 @@ public class EventReceiverServiceImpl implements EventReceiverService {
         String query = "deviceIdentifier:" + deviceId + " AND _timestamp: [" + fromDate + " TO " + toDate + "]";
         List<DeviceState> deviceStates;
         try {
-            deviceStates = AndroidAPIUtils.getAllEventsForDevice(EVENT_STREAM_DEFINITION, query);
-            if (deviceStates == null) {
-                throw new NotFoundException(
-                        new ErrorResponse.ErrorResponseBuilder().setCode(404l).setMessage("No any alerts are " +
-                                "published on given date for given Device: " + deviceId + ".").build());
-
-            } else {
-                return Response.status(Response.Status.OK).entity(deviceStates).build();
-            }
+            deviceStates = AndroidAPIUtils.getEventsForDevice(EVENT_STREAM_DEFINITION, query, offset, limit);
+            return Response.status(Response.Status.OK).entity(deviceStates).build();
         } catch (AnalyticsException e) {
             String msg = "Error occurred while getting published events for specific " +
                     "Device: " + deviceId + " on given Date.";
@@ -149,22 +147,15 @@ public class EventReceiverServiceImpl implements EventReceiverService {
         }
     }
 
-    private Response retrieveAlertByType(String deviceId, String type) {
+    private Response retrieveAlertByType(String deviceId, String type, int offset, int limit) {
         if (log.isDebugEnabled()) {
             log.debug("Retrieving events for given device identifier and type.");
         }
         String query = "deviceIdentifier:" + deviceId + " AND type:" + type;
         List<DeviceState> deviceStates;
         try {
-            deviceStates = AndroidAPIUtils.getAllEventsForDevice(EVENT_STREAM_DEFINITION, query);
-            if (deviceStates == null) {
-                throw new NotFoundException(
-                        new ErrorResponse.ErrorResponseBuilder().setCode(404l).setMessage("No any alerts are " +
-                                "published for given Device: '" + deviceId + "' and given specific Type.").build());
-
-            } else {
-                return Response.status(Response.Status.OK).entity(deviceStates).build();
-            }
+            deviceStates = AndroidAPIUtils.getEventsForDevice(EVENT_STREAM_DEFINITION, query, offset, limit);
+            return Response.status(Response.Status.OK).entity(deviceStates).build();
         } catch (AnalyticsException e) {
             String msg = "Error occurred while getting published events for specific " +
                     "Device: " + deviceId + "and given specific Type.";
@@ -24,6 +24,8 @@ import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.analytics.api.AnalyticsDataAPI;
 import org.wso2.carbon.analytics.dataservice.commons.AnalyticsDataResponse;
 import org.wso2.carbon.analytics.dataservice.commons.SearchResultEntry;
+import org.wso2.carbon.analytics.dataservice.commons.SortByField;
+import org.wso2.carbon.analytics.dataservice.commons.SortType;
 import org.wso2.carbon.analytics.dataservice.core.AnalyticsDataServiceUtils;
 import org.wso2.carbon.analytics.datasource.commons.Record;
 import org.wso2.carbon.analytics.datasource.commons.exception.AnalyticsException;
@@ -63,6 +65,7 @@ import java.util.Map;
 public class AndroidAPIUtils {
 
     private static Log log = LogFactory.getLog(AndroidAPIUtils.class);
+    private static final String TIMESTAMP_FIELD = "_timestamp";
 
     public static DeviceIdentifier convertToDeviceIdentifierObject(String deviceId) {
         DeviceIdentifier identifier = new DeviceIdentifier();
@@ -208,14 +211,23 @@ public class AndroidAPIUtils {
         return analyticsDataAPI;
     }
 
-    public static List<DeviceState> getAllEventsForDevice(String tableName, String query) throws AnalyticsException {
+    /**
+     * Returns a page of the events matching the given query, latest first. Only the events of the page are read, hence
+     * the memory used is bounded by the limit rather than the number of matching events.
+     *
+     * @return the events of the page, or an empty list if there are none.
+     */
+    public static List<DeviceState> getEventsForDevice(String tableName, String query, int offset, int limit)
+            throws AnalyticsException {
         int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
         AnalyticsDataAPI analyticsDataAPI = getAnalyticsDataAPI();
-        int eventCount = analyticsDataAPI.searchCount(tenantId, tableName, query);
-        if (eventCount == 0) {
-            return null;
+        List<SortByField> sortByFields = new ArrayList<>();
+        sortByFields.add(new SortByField(TIMESTAMP_FIELD, SortType.DESC));
+        List<SearchResultEntry> resultEntries = analyticsDataAPI.search(tenantId, tableName, query, offset, limit,
+                                                                        sortByFields);
+        if (resultEntries.isEmpty()) {
+            return new ArrayList<>();
         }
-        List<SearchResultEntry> resultEntries = analyticsDataAPI.search(tenantId, tableName, query, 0, eventCount);
         List<String> recordIds = getRecordIds(resultEntries);
         AnalyticsDataResponse response = analyticsDataAPI.get(tenantId, tableName, 1, null, recordIds);
         Map<String, DeviceState> deviceStateses = createDeviceStatusData(AnalyticsDataServiceUtils.listRecords(
@@ -33,10 +33,10 @@ import org.wso2.carbon.device.mgt.common.license.mgt.LicenseManagementException;
 import org.wso2.carbon.device.mgt.common.license.mgt.LicenseManager;
 import org.wso2.carbon.device.mgt.extensions.license.mgt.registry.RegistryBasedLicenseManager;
 import org.wso2.carbon.device.mgt.mobile.android.impl.dao.AndroidDAOFactory;
+import org.wso2.carbon.device.mgt.mobile.android.impl.gcm.GCMUtil;
 import org.wso2.carbon.device.mgt.mobile.android.impl.util.AndroidPluginUtils;
 import org.wso2.carbon.device.mgt.mobile.common.MobileDeviceMgtPluginException;
 import org.wso2.carbon.device.mgt.mobile.common.MobilePluginConstants;
-import org.wso2.carbon.device.mgt.mobile.dao.AbstractMobileDeviceManagementDAOFactory;
 import org.wso2.carbon.device.mgt.mobile.dao.MobileDeviceManagementDAOException;
 import org.wso2.carbon.device.mgt.mobile.dto.MobileDevice;
 import org.wso2.carbon.device.mgt.mobile.util.MobileDeviceManagementUtil;
@@ -52,10 +52,11 @@ import java.io.StringWriter;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class AndroidDeviceManager implements DeviceManager {
 
-    private AbstractMobileDeviceManagementDAOFactory daoFactory;
+    private AndroidDAOFactory daoFactory;
     private static final Log log = LogFactory.getLog(AndroidDeviceManagementService.class);
     private FeatureManager featureManager = new AndroidFeatureManager();
     private LicenseManager licenseManager;
@@ -104,6 +105,7 @@ public class AndroidDeviceManager implements DeviceManager {
             resource.setContent(writer.toString());
             resource.setMediaType(MobilePluginConstants.MEDIA_TYPE_XML);
             MobileDeviceManagementUtil.putRegistryResource(resourcePath, resource);
+            GCMUtil.resetTenantConfigCache();
             status = true;
         } catch (MobileDeviceMgtPluginException e) {
             throw new DeviceManagementException(
@@ -333,6 +335,35 @@ public class AndroidDeviceManager implements DeviceManager {
         return status;
     }
 
+    /**
+     * Updates the GCM tokens of devices as reported by GCM, a null token clearing that of the device.
+     *
+     * @param gcmTokens GCM tokens mapped to the ids of the devices they belong to.
+     */
+    public void updateGCMTokens(Map<String, String> gcmTokens) throws DeviceManagementException {
+        try {
+            if (log.isDebugEnabled()) {
+                log.debug("Updating the GCM tokens of " + gcmTokens.size() + " Android devices");
+            }
+            AndroidDAOFactory.beginTransaction();
+            daoFactory.getMobileDeviceDAO().updateGCMTokens(gcmTokens);
+            AndroidDAOFactory.commitTransaction();
+        } catch (MobileDeviceManagementDAOException e) {
+            try {
+                AndroidDAOFactory.rollbackTransaction();
+            } catch (MobileDeviceManagementDAOException mobileDAOEx) {
+                log.warn("Error occurred while roll back the update GCM tokens transaction", mobileDAOEx);
+            }
+            throw new DeviceManagementException("Error occurred while updating the GCM tokens of Android devices", e);
+        } finally {
+            try {
+                AndroidDAOFactory.closeConnection();
+            } catch (MobileDeviceManagementDAOException e) {
+                log.warn("Error occurred while closing the connection", e);
+            }
+        }
+    }
+
     @Override
     public List<Device> getAllDevices() throws DeviceManagementException {
         List<Device> devices = null;
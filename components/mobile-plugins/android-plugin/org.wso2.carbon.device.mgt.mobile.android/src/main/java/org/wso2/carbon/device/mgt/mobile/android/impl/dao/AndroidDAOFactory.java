@@ -24,7 +24,6 @@ import org.wso2.carbon.device.mgt.common.DeviceManagementConstants;
 import org.wso2.carbon.device.mgt.mobile.android.impl.dao.impl.AndroidDeviceDAOImpl;
 import org.wso2.carbon.device.mgt.mobile.android.impl.dao.impl.AndroidFeatureDAOImpl;
 import org.wso2.carbon.device.mgt.mobile.dao.AbstractMobileDeviceManagementDAOFactory;
-import org.wso2.carbon.device.mgt.mobile.dao.MobileDeviceDAO;
 import org.wso2.carbon.device.mgt.mobile.dao.MobileDeviceManagementDAOException;
 import org.wso2.carbon.device.mgt.mobile.dao.MobileFeatureDAO;
 
@@ -43,7 +42,7 @@ public class AndroidDAOFactory extends AbstractMobileDeviceManagementDAOFactory
     }
 
     @Override
-    public MobileDeviceDAO getMobileDeviceDAO() {
+    public AndroidDeviceDAO getMobileDeviceDAO() {
         return new AndroidDeviceDAOImpl();
     }
 
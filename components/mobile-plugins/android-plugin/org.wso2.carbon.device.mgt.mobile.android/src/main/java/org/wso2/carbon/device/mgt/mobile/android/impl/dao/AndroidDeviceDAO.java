@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+*/
+
+package org.wso2.carbon.device.mgt.mobile.android.impl.dao;
+
+import org.wso2.carbon.device.mgt.mobile.dao.MobileDeviceDAO;
+import org.wso2.carbon.device.mgt.mobile.dao.MobileDeviceManagementDAOException;
+
+import java.util.Map;
+
+/**
+ * This class represents the operations associated with persisting Android device related information, in addition
+ * to those common to all mobile devices.
+ */
+public interface AndroidDeviceDAO extends MobileDeviceDAO {
+
+    /**
+     * Sets the GCM tokens of the given devices, a null token clearing that of the device.
+     *
+     * @param gcmTokens GCM tokens mapped to the ids of the devices they belong to.
+     * @throws MobileDeviceManagementDAOException
+     */
+    void updateGCMTokens(Map<String, String> gcmTokens) throws MobileDeviceManagementDAOException;
+}
@@ -21,8 +21,8 @@ package org.wso2.carbon.device.mgt.mobile.android.impl.dao.impl;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.device.mgt.mobile.android.impl.dao.AndroidDAOFactory;
+import org.wso2.carbon.device.mgt.mobile.android.impl.dao.AndroidDeviceDAO;
 import org.wso2.carbon.device.mgt.mobile.android.impl.util.AndroidPluginConstants;
-import org.wso2.carbon.device.mgt.mobile.dao.MobileDeviceDAO;
 import org.wso2.carbon.device.mgt.mobile.dao.MobileDeviceManagementDAOException;
 import org.wso2.carbon.device.mgt.mobile.dao.util.MobileDeviceManagementDAOUtil;
 import org.wso2.carbon.device.mgt.mobile.dto.MobileDevice;
@@ -37,9 +37,9 @@ import java.util.List;
 import java.util.Map;
 
 /**
- * Implements MobileDeviceDAO for Android Devices.
+ * Implements AndroidDeviceDAO for Android Devices.
  */
-public class AndroidDeviceDAOImpl implements MobileDeviceDAO{
+public class AndroidDeviceDAOImpl implements AndroidDeviceDAO {
 
 	private static final Log log = LogFactory.getLog(AndroidDeviceDAOImpl.class);
 
@@ -188,6 +188,34 @@ public class AndroidDeviceDAOImpl implements MobileDeviceDAO{
 		return status;
 	}
 
+	/**
+	 * Sets the GCM tokens of the given devices in a single batch.
+	 */
+	@Override
+	public void updateGCMTokens(Map<String, String> gcmTokens) throws MobileDeviceManagementDAOException {
+		Connection conn;
+		PreparedStatement stmt = null;
+		try {
+			conn = AndroidDAOFactory.getConnection();
+			String updateDBQuery = "UPDATE AD_DEVICE SET GCM_TOKEN = ? WHERE DEVICE_ID = ?";
+			stmt = conn.prepareStatement(updateDBQuery);
+			for (Map.Entry<String, String> gcmToken : gcmTokens.entrySet()) {
+				stmt.setString(1, gcmToken.getValue());
+				stmt.setString(2, gcmToken.getKey());
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+			if (log.isDebugEnabled()) {
+				log.debug("GCM tokens of " + gcmTokens.size() + " Android devices have been updated.");
+			}
+		} catch (SQLException e) {
+			throw new MobileDeviceManagementDAOException("Error occurred while updating the GCM tokens of " +
+			                                              gcmTokens.size() + " Android devices", e);
+		} finally {
+			MobileDeviceManagementDAOUtil.cleanupResources(stmt, null);
+		}
+	}
+
 	@Override
 	public boolean deleteMobileDevice(String mblDeviceId)
 			throws MobileDeviceManagementDAOException {
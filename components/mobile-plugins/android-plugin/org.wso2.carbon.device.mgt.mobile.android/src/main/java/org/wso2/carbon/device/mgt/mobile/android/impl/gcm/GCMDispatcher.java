@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.device.mgt.mobile.android.impl.gcm;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Sends a GCM message to any number of registration ids. The ids are split into requests of at most
+ * {@link #MAX_REGISTRATION_IDS_PER_REQUEST}, which are sent concurrently. A request that fails with a server error,
+ * and the ids that GCM reports as temporarily unavailable, are retried after the delay given by the Retry-After
+ * header, or else an exponentially growing delay. A request is not retried when GCM asks to wait longer than
+ * {@link #MAX_BACKOFF_IN_MILLISECONDS}.
+ * <p/>
+ * Connections are not disconnected and the responses are read to the end, so that the JDK keeps the connections
+ * to the GCM server alive and reuses them for later requests.
+ */
+class GCMDispatcher {
+
+    private static final Log log = LogFactory.getLog(GCMDispatcher.class);
+
+    static final int MAX_REGISTRATION_IDS_PER_REQUEST = 1000;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long INITIAL_BACKOFF_IN_MILLISECONDS = 1000;
+    private static final long MAX_BACKOFF_IN_MILLISECONDS = 10000;
+    private static final int CONNECT_TIMEOUT_IN_MILLISECONDS = 10000;
+    private static final int READ_TIMEOUT_IN_MILLISECONDS = 30000;
+    private static final int TIME_TO_LIVE = 60;
+    private static final int HTTP_STATUS_CODE_OK = 200;
+    private static final int HTTP_STATUS_CODE_SERVER_ERROR = 500;
+    private static final String RETRY_AFTER_HEADER = "Retry-After";
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+    private static final String ERROR_UNAVAILABLE = "Unavailable";
+    private static final String ERROR_INTERNAL_SERVER_ERROR = "InternalServerError";
+    private static final String ERROR_NOT_REGISTERED = "NotRegistered";
+    private static final String ERROR_INVALID_REGISTRATION = "InvalidRegistration";
+
+    private final String endpoint;
+    private final ExecutorService executor;
+
+    GCMDispatcher(String endpoint, ExecutorService executor) {
+        this.endpoint = endpoint;
+        this.executor = executor;
+    }
+
+    GCMResult send(String apiKey, String message, List<String> registrationIds) {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < registrationIds.size(); i += MAX_REGISTRATION_IDS_PER_REQUEST) {
+            chunks.add(registrationIds.subList(i, Math.min(i + MAX_REGISTRATION_IDS_PER_REQUEST,
+                                                           registrationIds.size())));
+        }
+        GCMResult result = new GCMResult();
+        result.setStatusCode(HTTP_STATUS_CODE_OK);
+        if (chunks.size() == 1) {
+            // no need to hand a single request over to another thread
+            merge(result, new ChunkSender(apiKey, message, chunks.get(0)).call());
+            return result;
+        }
+        List<Future<GCMResult>> futures = new ArrayList<>(chunks.size());
+        for (List<String> chunk : chunks) {
+            try {
+                futures.add(executor.submit(new ChunkSender(apiKey, message, chunk)));
+            } catch (RejectedExecutionException e) {
+                // the senders have been shut down, the chunk is failed below
+                futures.add(null);
+            }
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            GCMResult chunkResult;
+            if (futures.get(i) == null) {
+                merge(result, getFailedResult(chunks.get(i).size(), 0, "GCM senders have been shut down"));
+                continue;
+            }
+            try {
+                chunkResult = futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                chunkResult = getFailedResult(chunks.get(i).size(), 0,
+                                              "Interrupted while waiting for the GCM request to complete");
+            } catch (ExecutionException e) {
+                log.error("Exception occurred while sending the GCM request.", e.getCause());
+                chunkResult = getFailedResult(chunks.get(i).size(), 0, String.valueOf(e.getCause()));
+            }
+            merge(result, chunkResult);
+        }
+        return result;
+    }
+
+    private static void merge(GCMResult result, GCMResult chunkResult) {
+        result.setSuccessCount(result.getSuccessCount() + chunkResult.getSuccessCount());
+        result.setFailureCount(result.getFailureCount() + chunkResult.getFailureCount());
+        result.getCanonicalIds().putAll(chunkResult.getCanonicalIds());
+        result.getUnregisteredIds().addAll(chunkResult.getUnregisteredIds());
+        if (chunkResult.getStatusCode() != HTTP_STATUS_CODE_OK) {
+            result.setStatusCode(chunkResult.getStatusCode());
+            result.setErrorMsg(chunkResult.getErrorMsg());
+        }
+        result.setMsg("success: " + result.getSuccessCount() + ", failure: " + result.getFailureCount() +
+                              ", canonical_ids: " + result.getCanonicalIds().size());
+    }
+
+    private static GCMResult getFailedResult(int failureCount, int statusCode, String errorMsg) {
+        GCMResult result = new GCMResult();
+        result.setFailureCount(failureCount);
+        result.setStatusCode(statusCode);
+        result.setErrorMsg(errorMsg);
+        return result;
+    }
+
+    /**
+     * Sends one request of at most {@link #MAX_REGISTRATION_IDS_PER_REQUEST} registration ids, retrying it as
+     * needed.
+     */
+    private class ChunkSender implements Callable<GCMResult> {
+
+        private final String apiKey;
+        private final String message;
+        private final List<String> registrationIds;
+
+        private ChunkSender(String apiKey, String message, List<String> registrationIds) {
+            this.apiKey = apiKey;
+            this.message = message;
+            this.registrationIds = registrationIds;
+        }
+
+        @Override
+        public GCMResult call() {
+            GCMResult result = new GCMResult();
+            List<String> pendingIds = registrationIds;
+            for (int attempt = 1; ; attempt++) {
+                long retryAfter = -1;
+                int status;
+                String errorMsg;
+                try {
+                    HttpURLConnection conn = post(getGCMRequest(message, pendingIds));
+                    status = conn.getResponseCode();
+                    if (status == HTTP_STATUS_CODE_OK) {
+                        pendingIds = handleResponse(result, pendingIds, getString(conn.getInputStream()));
+                        if (pendingIds.isEmpty()) {
+                            result.setStatusCode(status);
+                            return result;
+                        }
+                        errorMsg = pendingIds.size() + " registration ids are temporarily unavailable";
+                    } else {
+                        errorMsg = getString(conn.getErrorStream());
+                        if (status < HTTP_STATUS_CODE_SERVER_ERROR) {
+                            // the request itself is invalid or unauthorized, sending it again will not help
+                            result.setFailureCount(result.getFailureCount() + pendingIds.size());
+                            result.setStatusCode(status);
+                            result.setErrorMsg(errorMsg);
+                            return result;
+                        }
+                    }
+                    retryAfter = getRetryAfter(conn.getHeaderField(RETRY_AFTER_HEADER));
+                } catch (IOException e) {
+                    status = 0;
+                    errorMsg = e.getMessage();
+                    if (log.isDebugEnabled()) {
+                        log.debug("Exception occurred while sending the GCM request.", e);
+                    }
+                }
+                if (attempt >= MAX_ATTEMPTS || retryAfter > MAX_BACKOFF_IN_MILLISECONDS) {
+                    if (retryAfter > MAX_BACKOFF_IN_MILLISECONDS) {
+                        log.warn("GCM request for " + pendingIds.size() + " registration ids failed and is not " +
+                                         "retried, as GCM asked to retry after " + retryAfter + " ms. Error : " +
+                                         errorMsg);
+                    }
+                    result.setFailureCount(result.getFailureCount() + pendingIds.size());
+                    result.setStatusCode(status);
+                    result.setErrorMsg(errorMsg);
+                    return result;
+                }
+                long delay = retryAfter >= 0 ? retryAfter :
+                             Math.min(INITIAL_BACKOFF_IN_MILLISECONDS << (attempt - 1), MAX_BACKOFF_IN_MILLISECONDS);
+                log.warn("GCM request for " + pendingIds.size() + " registration ids failed, retrying in " + delay +
+                                 " ms. Error : " + errorMsg);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    result.setFailureCount(result.getFailureCount() + pendingIds.size());
+                    result.setStatusCode(status);
+                    result.setErrorMsg(errorMsg);
+                    return result;
+                }
+            }
+        }
+
+        private HttpURLConnection post(byte[] bytes) throws IOException {
+            HttpURLConnection conn = (HttpURLConnection) (new URL(endpoint)).openConnection();
+            conn.setDoOutput(true);
+            conn.setUseCaches(false);
+            conn.setConnectTimeout(CONNECT_TIMEOUT_IN_MILLISECONDS);
+            conn.setReadTimeout(READ_TIMEOUT_IN_MILLISECONDS);
+            conn.setFixedLengthStreamingMode(bytes.length);
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty("Content-Type", "application/json");
+            conn.setRequestProperty("Authorization", "key=" + apiKey);
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(bytes);
+            }
+            return conn;
+        }
+
+        /**
+         * Records the outcome of each registration id of a successful request, and returns the ids to be retried.
+         */
+        private List<String> handleResponse(GCMResult result, List<String> sentIds, String response)
+                throws IOException {
+            JsonArray results;
+            try {
+                JsonElement resultsElement = new JsonParser().parse(response).getAsJsonObject().get("results");
+                results = resultsElement.getAsJsonArray();
+            } catch (JsonParseException | IllegalStateException | NullPointerException e) {
+                throw new IOException("Invalid GCM response : " + response, e);
+            }
+            List<String> retryIds = new ArrayList<>();
+            for (int i = 0; i < sentIds.size() && i < results.size(); i++) {
+                String registrationId = sentIds.get(i);
+                JsonObject idResult = results.get(i).getAsJsonObject();
+                if (idResult.has("message_id")) {
+                    result.setSuccessCount(result.getSuccessCount() + 1);
+                    if (idResult.has("registration_id")) {
+                        result.getCanonicalIds().put(registrationId, idResult.get("registration_id").getAsString());
+                    }
+                    continue;
+                }
+                String error = idResult.has("error") ? idResult.get("error").getAsString() : null;
+                if (ERROR_UNAVAILABLE.equals(error) || ERROR_INTERNAL_SERVER_ERROR.equals(error)) {
+                    retryIds.add(registrationId);
+                } else {
+                    result.setFailureCount(result.getFailureCount() + 1);
+                    if (ERROR_NOT_REGISTERED.equals(error) || ERROR_INVALID_REGISTRATION.equals(error)) {
+                        result.getUnregisteredIds().add(registrationId);
+                    } else if (log.isDebugEnabled()) {
+                        log.debug("GCM message to registration id " + registrationId + " failed : " + error);
+                    }
+                }
+            }
+            return retryIds;
+        }
+    }
+
+    private static byte[] getGCMRequest(String message, List<String> registrationIds) {
+        JsonObject gcmRequest = new JsonObject();
+        gcmRequest.addProperty("delay_while_idle", false);
+        gcmRequest.addProperty("time_to_live", TIME_TO_LIVE);
+
+        //Add message to GCM request
+        JsonObject data = new JsonObject();
+        if (message != null && !message.isEmpty()) {
+            data.addProperty("data", message);
+            gcmRequest.add("data", data);
+        }
+
+        //Set device reg-ids
+        JsonArray regIds = new JsonArray();
+        for (String regId : registrationIds) {
+            regIds.add(new JsonPrimitive(regId));
+        }
+
+        gcmRequest.add("registration_ids", regIds);
+        return gcmRequest.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the stream to the end and closes it, which lets the connection be reused.
+     */
+    private static String getString(InputStream stream) throws IOException {
+        if (stream == null) {
+            return null;
+        }
+        try (InputStream in = stream) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+            return new String(content.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Returns the delay in milliseconds given by a Retry-After header, either in seconds or as an HTTP date, or -1 if
+     * there is no valid header.
+     */
+    private static long getRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.isEmpty()) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                long retryTime = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US).parse(retryAfter).getTime();
+                return Math.max(0, retryTime - System.currentTimeMillis());
+            } catch (ParseException ex) {
+                return -1;
+            }
+        }
+    }
+}
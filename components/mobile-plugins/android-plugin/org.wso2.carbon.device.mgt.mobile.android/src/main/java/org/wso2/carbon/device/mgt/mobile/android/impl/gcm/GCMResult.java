@@ -18,6 +18,11 @@
 
 package org.wso2.carbon.device.mgt.mobile.android.impl.gcm;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Represents model object for holding GCM response data.
  */
@@ -26,6 +31,10 @@ public class GCMResult {
     private String errorMsg;
     private String msg;
     private int statusCode;
+    private int successCount;
+    private int failureCount;
+    private Map<String, String> canonicalIds = new HashMap<>();
+    private List<String> unregisteredIds = new ArrayList<>();
 
     public String getErrorMsg() {
         return errorMsg;
@@ -50,4 +59,42 @@ public class GCMResult {
     public void setStatusCode(int statusCode) {
         this.statusCode = statusCode;
     }
+
+    public int getSuccessCount() {
+        return successCount;
+    }
+
+    public void setSuccessCount(int successCount) {
+        this.successCount = successCount;
+    }
+
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    public void setFailureCount(int failureCount) {
+        this.failureCount = failureCount;
+    }
+
+    /**
+     * Registration ids for which GCM returned a canonical id, mapped to the canonical id that should be used instead.
+     */
+    public Map<String, String> getCanonicalIds() {
+        return canonicalIds;
+    }
+
+    public void setCanonicalIds(Map<String, String> canonicalIds) {
+        this.canonicalIds = canonicalIds;
+    }
+
+    /**
+     * Registration ids that GCM reported as no longer valid, e.g. because the app was uninstalled.
+     */
+    public List<String> getUnregisteredIds() {
+        return unregisteredIds;
+    }
+
+    public void setUnregisteredIds(List<String> unregisteredIds) {
+        this.unregisteredIds = unregisteredIds;
+    }
 }
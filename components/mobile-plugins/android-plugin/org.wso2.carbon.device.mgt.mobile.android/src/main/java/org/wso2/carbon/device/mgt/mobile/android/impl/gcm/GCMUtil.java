@@ -18,31 +18,31 @@
 
 package org.wso2.carbon.device.mgt.mobile.android.impl.gcm;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonPrimitive;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.device.mgt.common.Device;
 import org.wso2.carbon.device.mgt.common.DeviceManagementException;
+import org.wso2.carbon.device.mgt.common.DeviceManager;
 import org.wso2.carbon.device.mgt.common.configuration.mgt.ConfigurationEntry;
 import org.wso2.carbon.device.mgt.common.configuration.mgt.PlatformConfiguration;
 import org.wso2.carbon.device.mgt.common.spi.DeviceManagementService;
+import org.wso2.carbon.device.mgt.mobile.android.impl.AndroidDeviceManager;
 import org.wso2.carbon.device.mgt.mobile.android.impl.util.AndroidPluginConstants;
 import org.wso2.carbon.device.mgt.mobile.android.internal.AndroidDeviceManagementDataHolder;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.ProtocolException;
-import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implements utility methods used by GCMService.
@@ -53,98 +53,77 @@ public class GCMUtil {
 
     private final static String GCM_ENDPOINT = "https://gcm-http.googleapis.com/gcm/send";
     private static final String GCM_API_KEY = "gcmAPIKey";
-    private static final int TIME_TO_LIVE = 60;
-    private static final int HTTP_STATUS_CODE_OK = 200;
+    // matches the default number of idle connections the JDK keeps alive per host
+    private static final int GCM_SENDER_THREADS = 5;
 
-    private static HashMap<Integer, PlatformConfiguration> tenantConfigurationCache = new HashMap<>();
+    private static ExecutorService gcmSenders;
+    private static GCMDispatcher gcmDispatcher;
 
-    public static GCMResult sendWakeUpCall(String message, List<Device> devices) {
-        GCMResult result = new GCMResult();
+    private static final ConcurrentMap<Integer, Map<String, String>> tenantConfigurationCache =
+            new ConcurrentHashMap<>();
+    // incremented on every reset, so that a configuration read before a reset is not cached after it
+    private static final AtomicLong configurationGeneration = new AtomicLong();
 
-        byte[] bytes = getGCMRequest(message, getGCMTokens(devices)).getBytes();
-        HttpURLConnection conn;
-        try {
-            conn = (HttpURLConnection) (new URL(GCM_ENDPOINT)).openConnection();
-            conn.setDoOutput(true);
-            conn.setUseCaches(false);
-            conn.setFixedLengthStreamingMode(bytes.length);
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setRequestProperty("Authorization", "key=" + getConfigurationProperty(GCM_API_KEY));
-
-            OutputStream out = conn.getOutputStream();
-            out.write(bytes);
-            out.close();
-
-            int status = conn.getResponseCode();
-            result.setStatusCode(status);
-            if (status != HTTP_STATUS_CODE_OK) {
-                result.setErrorMsg(getString(conn.getErrorStream()));
-            } else {
-                result.setMsg(getString(conn.getInputStream()));
+    public static GCMResult sendWakeUpCall(String message, List<Device> devices) {
+        // GCM tokens mapped to the ids of the devices they belong to
+        Map<String, String> tokenDeviceIds = new HashMap<>(devices.size());
+        for (Device device : devices) {
+            String gcmToken = getGCMToken(device.getProperties());
+            if (gcmToken != null && !gcmToken.isEmpty()) {
+                tokenDeviceIds.put(gcmToken, device.getDeviceIdentifier());
             }
-        } catch (ProtocolException e) {
-            log.error("Exception occurred while setting the HTTP protocol.", e);
-        } catch (IOException ex) {
-            log.error("Exception occurred while sending the GCM request.", ex);
         }
-
+        GCMResult result = getGCMDispatcher().send(getConfigurationProperty(GCM_API_KEY), message,
+                                              new ArrayList<>(tokenDeviceIds.keySet()));
+        updateGCMTokens(result, tokenDeviceIds);
         return result;
     }
 
-    private static String getString(InputStream stream) throws IOException {
-        if (stream != null) {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
-            StringBuilder content = new StringBuilder();
-
-            String newLine;
-            do {
-                newLine = reader.readLine();
-                if (newLine != null) {
-                    content.append(newLine).append('\n');
-                }
-            } while (newLine != null);
-
-            if (content.length() > 0) {
-                content.setLength(content.length() - 1);
-            }
-
-            return content.toString();
+    /**
+     * Stops the threads sending GCM requests, the requests they have not sent yet fail. The next wake up call starts
+     * them again.
+     */
+    public static synchronized void shutdown() {
+        if (gcmSenders != null) {
+            gcmSenders.shutdownNow();
+            gcmSenders = null;
+            gcmDispatcher = null;
         }
-        return null;
     }
 
-    private static String getGCMRequest(String message, List<String> registrationIds) {
-        JsonObject gcmRequest = new JsonObject();
-        gcmRequest.addProperty("delay_while_idle", false);
-        gcmRequest.addProperty("time_to_live", TIME_TO_LIVE);
-
-        //Add message to GCM request
-        JsonObject data = new JsonObject();
-        if (message != null && !message.isEmpty()) {
-            data.addProperty("data", message);
-            gcmRequest.add("data", data);
-        }
-
-        //Set device reg-ids
-        JsonArray regIds = new JsonArray();
-        for (String regId : registrationIds) {
-            if (regId == null || regId.isEmpty()) {
-                continue;
-            }
-            regIds.add(new JsonPrimitive(regId));
+    private static synchronized GCMDispatcher getGCMDispatcher() {
+        if (gcmDispatcher == null) {
+            gcmSenders = Executors.newFixedThreadPool(GCM_SENDER_THREADS, new GCMSenderThreadFactory());
+            gcmDispatcher = new GCMDispatcher(GCM_ENDPOINT, gcmSenders);
         }
-
-        gcmRequest.add("registration_ids", regIds);
-        return gcmRequest.toString();
+        return gcmDispatcher;
     }
 
-    private static List<String> getGCMTokens(List<Device> devices) {
-        List<String> tokens = new ArrayList<>(devices.size());
-        for (Device device : devices) {
-            tokens.add(getGCMToken(device.getProperties()));
+    /**
+     * Replaces the tokens GCM returned canonical ids for and clears the tokens it no longer accepts, so that they are
+     * not sent to again.
+     */
+    private static void updateGCMTokens(GCMResult result, Map<String, String> tokenDeviceIds) {
+        if (result.getCanonicalIds().isEmpty() && result.getUnregisteredIds().isEmpty()) {
+            return;
+        }
+        Map<String, String> deviceTokens = new HashMap<>();
+        for (Map.Entry<String, String> canonicalId : result.getCanonicalIds().entrySet()) {
+            deviceTokens.put(tokenDeviceIds.get(canonicalId.getKey()), canonicalId.getValue());
+        }
+        for (String unregisteredId : result.getUnregisteredIds()) {
+            deviceTokens.put(tokenDeviceIds.get(unregisteredId), null);
+        }
+        DeviceManager deviceManager = AndroidDeviceManagementDataHolder.getInstance().
+                getAndroidDeviceManagementService().getDeviceManager();
+        if (!(deviceManager instanceof AndroidDeviceManager)) {
+            return;
+        }
+        try {
+            ((AndroidDeviceManager) deviceManager).updateGCMTokens(deviceTokens);
+        } catch (DeviceManagementException e) {
+            log.error("Exception occurred while updating the GCM tokens of " + deviceTokens.size() + " devices.", e);
         }
-        return tokens;
     }
 
     private static String getGCMToken(List<Device.Property> properties) {
@@ -159,46 +138,71 @@ public class GCMUtil {
     }
 
     public static String getConfigurationProperty(String property) {
-        DeviceManagementService androidDMService = AndroidDeviceManagementDataHolder.getInstance().
-                getAndroidDeviceManagementService();
         try {
-            //Get the TenantConfiguration from cache if not we'll get it from DM service
-            PlatformConfiguration tenantConfiguration = getTenantConfigurationFromCache();
-            if (tenantConfiguration == null) {
-                tenantConfiguration = androidDMService.getDeviceManager().getConfiguration();
-                if (tenantConfiguration != null) {
-                    addTenantConfigurationToCache(tenantConfiguration);
-                }
+            Map<String, String> tenantConfiguration = getTenantConfiguration();
+            String value = tenantConfiguration.get(property);
+            if (value == null && !tenantConfiguration.containsKey(property)) {
+                return "";
             }
-
-            if (tenantConfiguration != null) {
-                List<ConfigurationEntry> configs = tenantConfiguration.getConfiguration();
-                for (ConfigurationEntry entry : configs) {
-                    if (property.equals(entry.getName())) {
-                        return (String) entry.getValue();
-                    }
-                }
-            }
-            return "";
+            return value;
         } catch (DeviceManagementException e) {
             log.error("Exception occurred while fetching the tenant-config.",e);
         }
         return null;
     }
 
+    /**
+     * Discards the cached configuration of the current tenant, so that it is read again on the next lookup.
+     */
     public static void resetTenantConfigCache() {
+        configurationGeneration.incrementAndGet();
         tenantConfigurationCache.remove(getTenantId());
     }
 
-    private static void addTenantConfigurationToCache(PlatformConfiguration tenantConfiguration) {
-        tenantConfigurationCache.put(getTenantId(), tenantConfiguration);
-    }
-
-    private static PlatformConfiguration getTenantConfigurationFromCache() {
-        return tenantConfigurationCache.get(getTenantId());
+    /**
+     * Returns the configuration of the current tenant as an immutable map of property names to values, reading it
+     * through the DM service and caching it if it is not cached yet.
+     */
+    private static Map<String, String> getTenantConfiguration() throws DeviceManagementException {
+        int tenantId = getTenantId();
+        Map<String, String> tenantConfiguration = tenantConfigurationCache.get(tenantId);
+        if (tenantConfiguration != null) {
+            return tenantConfiguration;
+        }
+        long generation = configurationGeneration.get();
+        DeviceManagementService androidDMService = AndroidDeviceManagementDataHolder.getInstance().
+                getAndroidDeviceManagementService();
+        PlatformConfiguration platformConfiguration = androidDMService.getDeviceManager().getConfiguration();
+        Map<String, String> configuration = new HashMap<>();
+        if (platformConfiguration != null && platformConfiguration.getConfiguration() != null) {
+            for (ConfigurationEntry entry : platformConfiguration.getConfiguration()) {
+                if (!configuration.containsKey(entry.getName())) {
+                    configuration.put(entry.getName(), (String) entry.getValue());
+                }
+            }
+        }
+        tenantConfiguration = Collections.unmodifiableMap(configuration);
+        tenantConfigurationCache.putIfAbsent(tenantId, tenantConfiguration);
+        if (configurationGeneration.get() != generation) {
+            // the configuration was saved while it was being read, hence what was read may already be stale
+            tenantConfigurationCache.remove(tenantId, tenantConfiguration);
+        }
+        return tenantConfiguration;
     }
 
     private static int getTenantId() {
         return CarbonContext.getThreadLocalCarbonContext().getTenantId();
     }
+
+    private static class GCMSenderThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "gcm-sender-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
\ No newline at end of file
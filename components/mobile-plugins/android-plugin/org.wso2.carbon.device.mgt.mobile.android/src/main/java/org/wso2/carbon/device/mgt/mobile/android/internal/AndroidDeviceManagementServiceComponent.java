@@ -27,6 +27,7 @@ import org.wso2.carbon.device.mgt.common.spi.DeviceManagementService;
 import org.wso2.carbon.device.mgt.mobile.android.impl.AndroidDeviceManagementService;
 import org.wso2.carbon.device.mgt.mobile.android.impl.AndroidPolicyMonitoringService;
 import org.wso2.carbon.device.mgt.mobile.android.impl.gcm.GCMService;
+import org.wso2.carbon.device.mgt.mobile.android.impl.gcm.GCMUtil;
 import org.wso2.carbon.device.mgt.mobile.internal.MobileDeviceManagementDataHolder;
 import org.wso2.carbon.ndatasource.core.DataSourceService;
 import org.wso2.carbon.policy.mgt.common.spi.PolicyMonitoringService;
@@ -102,6 +103,7 @@ public class AndroidDeviceManagementServiceComponent {
             if (gcmServiceRegRef != null) {
                 gcmServiceRegRef.unregister();
             }
+            GCMUtil.shutdown();
             if (log.isDebugEnabled()) {
                 log.debug(
                         "Android Mobile Device Management Service Component has been successfully de-activated");
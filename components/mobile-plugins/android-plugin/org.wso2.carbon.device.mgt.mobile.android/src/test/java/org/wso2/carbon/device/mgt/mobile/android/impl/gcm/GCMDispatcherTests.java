@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * you may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.device.mgt.mobile.android.impl.gcm;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Class for holding unit-tests related to GCMDispatcher class, against a fake GCM server.
+ */
+public class GCMDispatcherTests {
+
+    private static final String API_KEY = "gcm-api-key";
+    private static final String MESSAGE = "wake up";
+    // the delay of the first retry when there is no valid Retry-After header
+    private static final long DEFAULT_RETRY_DELAY_IN_MILLISECONDS = 1000;
+
+    private HttpServer server;
+    private FakeGCMHandler gcmHandler;
+    private ExecutorService executorService;
+    private GCMDispatcher gcmDispatcher;
+
+    @BeforeClass
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        gcmHandler = new FakeGCMHandler();
+        server.createContext("/gcm/send", gcmHandler);
+        server.start();
+        executorService = Executors.newFixedThreadPool(3);
+        gcmDispatcher = new GCMDispatcher("http://localhost:" + server.getAddress().getPort() + "/gcm/send",
+                                          executorService);
+    }
+
+    @AfterClass
+    public void stopServer() {
+        server.stop(0);
+        executorService.shutdownNow();
+    }
+
+    @BeforeMethod
+    public void resetServer() {
+        gcmHandler.reset();
+    }
+
+    @Test
+    public void testRegistrationIdsAreSentInChunks() {
+        List<String> registrationIds = getRegistrationIds(2500);
+        GCMResult result = gcmDispatcher.send(API_KEY, MESSAGE, registrationIds);
+
+        List<Integer> chunkSizes = new ArrayList<>();
+        List<String> sentIds = new ArrayList<>();
+        for (List<String> requestIds : gcmHandler.getRequests()) {
+            chunkSizes.add(requestIds.size());
+            sentIds.addAll(requestIds);
+        }
+        Collections.sort(chunkSizes);
+        Assert.assertEquals(chunkSizes, Arrays.asList(500, 1000, 1000));
+        Collections.sort(sentIds);
+        Collections.sort(registrationIds);
+        Assert.assertEquals(sentIds, registrationIds);
+        Assert.assertEquals(result.getStatusCode(), 200);
+        Assert.assertEquals(result.getSuccessCount(), 2500);
+        Assert.assertEquals(result.getFailureCount(), 0);
+    }
+
+    @Test
+    public void testServerErrorIsRetriedAfterRetryAfterSeconds() {
+        gcmHandler.respondWith(new FakeResponse(503, "0", null));
+        long startTime = System.currentTimeMillis();
+        GCMResult result = gcmDispatcher.send(API_KEY, MESSAGE, getRegistrationIds(2));
+
+        Assert.assertTrue(System.currentTimeMillis() - startTime < DEFAULT_RETRY_DELAY_IN_MILLISECONDS,
+                          "Retry-After header was not used");
+        Assert.assertEquals(gcmHandler.getRequests().size(), 2);
+        Assert.assertEquals(result.getStatusCode(), 200);
+        Assert.assertEquals(result.getSuccessCount(), 2);
+        Assert.assertEquals(result.getFailureCount(), 0);
+    }
+
+    @Test
+    public void testServerErrorIsRetriedAfterRetryAfterDate() {
+        SimpleDateFormat httpDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        httpDateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        // a date already passed asks to retry right away
+        String retryAfter = httpDateFormat.format(new Date(System.currentTimeMillis() - 5000));
+        gcmHandler.respondWith(new FakeResponse(500, retryAfter, null));
+        long startTime = System.currentTimeMillis();
+        GCMResult result = gcmDispatcher.send(API_KEY, MESSAGE, getRegistrationIds(2));
+
+        Assert.assertTrue(System.currentTimeMillis() - startTime < DEFAULT_RETRY_DELAY_IN_MILLISECONDS,
+                          "Retry-After header was not used");
+        Assert.assertEquals(gcmHandler.getRequests().size(), 2);
+        Assert.assertEquals(result.getStatusCode(), 200);
+        Assert.assertEquals(result.getSuccessCount(), 2);
+    }
+
+    @Test
+    public void testRetryAfterBeyondBackoffCapFailsRequest() {
+        gcmHandler.respondWith(new FakeResponse(503, "60", null));
+        long startTime = System.currentTimeMillis();
+        GCMResult result = gcmDispatcher.send(API_KEY, MESSAGE, getRegistrationIds(3));
+
+        Assert.assertTrue(System.currentTimeMillis() - startTime < DEFAULT_RETRY_DELAY_IN_MILLISECONDS,
+                          "Request waited for the Retry-After delay");
+        Assert.assertEquals(gcmHandler.getRequests().size(), 1);
+        Assert.assertEquals(result.getStatusCode(), 503);
+        Assert.assertEquals(result.getSuccessCount(), 0);
+        Assert.assertEquals(result.getFailureCount(), 3);
+    }
+
+    @Test
+    public void testClientErrorIsNotRetried() {
+        gcmHandler.respondWith(new FakeResponse(401, "0", null));
+        GCMResult result = gcmDispatcher.send(API_KEY, MESSAGE, getRegistrationIds(2));
+
+        Assert.assertEquals(gcmHandler.getRequests().size(), 1);
+        Assert.assertEquals(result.getStatusCode(), 401);
+        Assert.assertEquals(result.getFailureCount(), 2);
+    }
+
+    @Test
+    public void testOnlyUnavailableIdsAreRetried() {
+        gcmHandler.respondWith(new FakeResponse(200, "0", new String[]{null, "Unavailable", null}));
+        GCMResult result = gcmDispatcher.send(API_KEY, MESSAGE, Arrays.asList("id-0", "id-1", "id-2"));
+
+        List<List<String>> requests = gcmHandler.getRequests();
+        Assert.assertEquals(requests.size(), 2);
+        Assert.assertEquals(requests.get(1), Collections.singletonList("id-1"));
+        Assert.assertEquals(result.getStatusCode(), 200);
+        Assert.assertEquals(result.getSuccessCount(), 3);
+        Assert.assertEquals(result.getFailureCount(), 0);
+    }
+
+    @Test
+    public void testCanonicalAndUnregisteredIdsAreReported() {
+        gcmHandler.respondWith(new FakeResponse(200, null, new String[]{"canonical:id-0-new", "NotRegistered",
+                                                                        "InvalidRegistration", null}));
+        GCMResult result = gcmDispatcher.send(API_KEY, MESSAGE, Arrays.asList("id-0", "id-1", "id-2", "id-3"));
+
+        Assert.assertEquals(gcmHandler.getRequests().size(), 1);
+        Assert.assertEquals(result.getSuccessCount(), 2);
+        Assert.assertEquals(result.getFailureCount(), 2);
+        Assert.assertEquals(result.getCanonicalIds(), Collections.singletonMap("id-0", "id-0-new"));
+        Assert.assertEquals(result.getUnregisteredIds(), Arrays.asList("id-1", "id-2"));
+    }
+
+    private static List<String> getRegistrationIds(int count) {
+        List<String> registrationIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            registrationIds.add("id-" + i);
+        }
+        return registrationIds;
+    }
+
+    /**
+     * A response of the fake GCM server. The outcome of each registration id is a GCM error, a canonical id prefixed
+     * with "canonical:", or null for a delivered message.
+     */
+    private static class FakeResponse {
+        private final int status;
+        private final String retryAfter;
+        private final String[] idResults;
+
+        private FakeResponse(int status, String retryAfter, String[] idResults) {
+            this.status = status;
+            this.retryAfter = retryAfter;
+            this.idResults = idResults;
+        }
+    }
+
+    /**
+     * Answers each request with the next queued response, and once they are used up delivers the message to all the
+     * registration ids of the request.
+     */
+    private static class FakeGCMHandler implements HttpHandler {
+        private final List<FakeResponse> responses = new ArrayList<>();
+        private final List<List<String>> requests = new ArrayList<>();
+
+        private synchronized void reset() {
+            responses.clear();
+            requests.clear();
+        }
+
+        private synchronized void respondWith(FakeResponse response) {
+            responses.add(response);
+        }
+
+        private synchronized List<List<String>> getRequests() {
+            return new ArrayList<>(requests);
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            List<String> registrationIds = new ArrayList<>();
+            JsonObject gcmRequest;
+            try (InputStreamReader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+                gcmRequest = new JsonParser().parse(reader).getAsJsonObject();
+            }
+            for (JsonElement registrationId : gcmRequest.getAsJsonArray("registration_ids")) {
+                registrationIds.add(registrationId.getAsString());
+            }
+            FakeResponse response;
+            synchronized (this) {
+                requests.add(registrationIds);
+                response = responses.isEmpty() ? new FakeResponse(200, null, null) : responses.remove(0);
+            }
+            if (response.retryAfter != null) {
+                exchange.getResponseHeaders().add("Retry-After", response.retryAfter);
+            }
+            byte[] body = (response.status == 200 ? getResponse(registrationIds, response.idResults) : "Error")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(response.status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+
+        private static String getResponse(List<String> registrationIds, String[] idResults) {
+            JsonArray results = new JsonArray();
+            for (int i = 0; i < registrationIds.size(); i++) {
+                String idResult = idResults != null && i < idResults.length ? idResults[i] : null;
+                JsonObject result = new JsonObject();
+                if (idResult == null) {
+                    result.addProperty("message_id", "0:" + i);
+                } else if (idResult.startsWith("canonical:")) {
+                    result.addProperty("message_id", "0:" + i);
+                    result.addProperty("registration_id", idResult.substring("canonical:".length()));
+                } else {
+                    result.addProperty("error", idResult);
+                }
+                results.add(result);
+            }
+            JsonObject response = new JsonObject();
+            response.add("results", results);
+            return response.toString();
+        }
+    }
+}